@@ -21,6 +21,7 @@ import com.google.dart.server.generated.AnalysisServer;
 import com.google.dart.server.internal.remote.DebugPrintStream;
 import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
 import com.google.dart.server.internal.remote.StdioServerSocket;
+import com.google.dart.server.internal.remote.utilities.RequestUtilities;
 import com.google.dart.server.utilities.logging.Logging;
 import com.google.gson.JsonObject;
 import com.intellij.codeInsight.intention.IntentionManager;
@@ -63,6 +64,7 @@ import com.intellij.psi.search.FilenameIndex;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.util.*;
 import com.intellij.util.Consumer;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.concurrency.QueueProcessor;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.ui.UIUtil;
@@ -94,6 +96,8 @@ import java.io.File;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DartAnalysisServerService implements Disposable {
 
@@ -119,6 +123,7 @@ public class DartAnalysisServerService implements Disposable {
   private static final long GET_TYPE_HIERARCHY_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
   private static final long EXECUTION_CREATE_CONTEXT_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
   private static final long EXECUTION_MAP_URI_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+  private static final long EXECUTION_MAP_URIS_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
   private static final long ANALYSIS_IN_TESTS_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
   private static final long TESTS_TIMEOUT_COEFF = 10;
 
@@ -148,7 +153,10 @@ public class DartAnalysisServerService implements Disposable {
   private final Map<String, Long> myFilePathWithOverlaidContentToTimestamp = new THashMap<>();
   private final List<String> myVisibleFiles = new ArrayList<>();
   private final Set<Document> myChangedDocuments = new THashSet<>();
+  // document changes not yet sent to the server for files with overlaid content, see doUpdateFilesContent()
+  private final Map<String, DartOverlayEditsCollector> myFilePathToOverlayEdits = new THashMap<>();
   private final Alarm myUpdateFilesAlarm;
+  @NotNull private final DartRateCounter myOverlayBytesCounter = new DartRateCounter();
 
   @NotNull private final Queue<CompletionInfo> myCompletionInfos = new LinkedList<>();
   @NotNull private final Queue<SearchResultsSet> mySearchResultSets = new LinkedList<>();
@@ -676,6 +684,22 @@ public class DartAnalysisServerService implements Disposable {
         myUpdateFilesAlarm.cancelAllRequests();
         myUpdateFilesAlarm.addRequest(DartAnalysisServerService.this::updateFilesContent, UPDATE_FILES_TIMEOUT);
       }
+
+      @Override
+      public void documentChanged(DocumentEvent e) {
+        if (myServer == null) return;
+
+        final VirtualFile file = FileDocumentManager.getInstance().getFile(e.getDocument());
+        if (file == null) return;
+
+        synchronized (myLock) {
+          final DartOverlayEditsCollector edits = myFilePathToOverlayEdits.get(file.getPath());
+          if (edits != null) {
+            edits.documentChanged(e.getOldTimeStamp(), e.getDocument().getModificationStamp(), e.getOffset(), e.getOldLength(),
+                                  e.getNewFragment());
+          }
+        }
+      }
     };
 
     EditorFactory.getInstance().getEventMulticaster().addDocumentListener(documentListener, myProject);
@@ -719,6 +743,24 @@ public class DartAnalysisServerService implements Disposable {
     return myServerData.getHighlight(file);
   }
 
+  /**
+   * @return errors with offset in the range [{@code startOffset}, {@code endOffset}), sorted by offset
+   */
+  @NotNull
+  public List<DartServerData.DartError> getErrors(@NotNull final VirtualFile file, final int startOffset, final int endOffset) {
+    return myServerData.getErrors(file, startOffset, endOffset);
+  }
+
+  /**
+   * @return highlight regions with offset in the range [{@code startOffset}, {@code endOffset}), sorted by offset
+   */
+  @NotNull
+  public List<DartServerData.DartHighlightRegion> getHighlight(@NotNull final VirtualFile file,
+                                                               final int startOffset,
+                                                               final int endOffset) {
+    return myServerData.getHighlight(file, startOffset, endOffset);
+  }
+
   @NotNull
   public List<DartServerData.DartNavigationRegion> getNavigation(@NotNull final VirtualFile file) {
     return myServerData.getNavigation(file);
@@ -796,9 +838,19 @@ public class DartAnalysisServerService implements Disposable {
     }
   }
 
-  private void doUpdateFilesContent() {
-    // may be use DocumentListener to collect deltas instead of sending the whole Document.getText() each time?
+  private static boolean isIncrementalOverlayUpdateEnabled() {
+    return Registry.is("dart.server.incremental.overlay.update", true);
+  }
+
+  /**
+   * Approximate number of bytes of overlaid file content sent to the server during the last second (and in total since server start).
+   */
+  @NotNull
+  public DartRateCounter getOverlayBytesCounter() {
+    return myOverlayBytesCounter;
+  }
 
+  private void doUpdateFilesContent() {
     AnalysisServer server = myServer;
     if (server == null) {
       return;
@@ -826,8 +878,12 @@ public class DartAnalysisServerService implements Disposable {
 
           final Long oldTimestamp = myFilePathWithOverlaidContentToTimestamp.get(file.getPath());
           if (oldTimestamp == null || document.getModificationStamp() != oldTimestamp) {
-            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), new AddContentOverlay(document.getText()));
+            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), createOverlay(file.getPath(), document, oldTimestamp));
             myFilePathWithOverlaidContentToTimestamp.put(file.getPath(), document.getModificationStamp());
+
+            if (isIncrementalOverlayUpdateEnabled()) {
+              myFilePathToOverlayEdits.put(file.getPath(), new DartOverlayEditsCollector(document.getModificationStamp()));
+            }
           }
         }
       }
@@ -836,6 +892,7 @@ public class DartAnalysisServerService implements Disposable {
       for (String oldPath : oldTrackedFiles) {
         final Long removed = myFilePathWithOverlaidContentToTimestamp.remove(oldPath);
         LOG.assertTrue(removed != null, oldPath);
+        myFilePathToOverlayEdits.remove(oldPath);
         filesToUpdate.put(FileUtil.toSystemDependentName(oldPath), new RemoveContentOverlay());
       }
 
@@ -856,9 +913,35 @@ public class DartAnalysisServerService implements Disposable {
 
     if (!filesToUpdate.isEmpty()) {
       server.analysis_updateContent(filesToUpdate, myServerData::onFilesContentUpdated);
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Overlaid content sent: " + myOverlayBytesCounter.getRatePerSecond() + " bytes/s, " +
+                  myOverlayBytesCounter.getTotal() + " bytes total");
+      }
     }
   }
 
+  /**
+   * Returns {@link ChangeContentOverlay} if the server already has overlaid content for the file and all document changes since then
+   * are known. Otherwise returns {@link AddContentOverlay} with the whole document text (full resync).
+   */
+  @NotNull
+  private Object createOverlay(@NotNull final String filePath, @NotNull final Document document, @Nullable final Long oldTimestamp) {
+    final DartOverlayEditsCollector edits = myFilePathToOverlayEdits.remove(filePath);
+    if (oldTimestamp != null && edits != null && edits.getBaseStamp() == oldTimestamp && isIncrementalOverlayUpdateEnabled()) {
+      final List<SourceEdit> sourceEdits = edits.getSourceEdits(document.getModificationStamp(), document.getTextLength());
+      if (sourceEdits != null) {
+        for (SourceEdit edit : sourceEdits) {
+          myOverlayBytesCounter.add(edit.getReplacement().length());
+        }
+        return new ChangeContentOverlay(sourceEdits);
+      }
+    }
+
+    myOverlayBytesCounter.add(document.getTextLength());
+    return new AddContentOverlay(document.getText());
+  }
+
   public boolean updateRoots(@NotNull final List<String> includedRoots, @NotNull final List<String> excludedRoots) {
     AnalysisServer server = myServer;
     if (server == null) {
@@ -931,6 +1014,15 @@ public class DartAnalysisServerService implements Disposable {
 
   @NotNull
   public List<HoverInformation> analysis_getHover(@NotNull final VirtualFile file, final int _offset) {
+    return analysis_getHover(file, _offset, true);
+  }
+
+  /**
+   * @param supersedable {@code false} if the request must be neither superseded by newer hover requests for the file nor supersede
+   *                     pending ones, e.g. for Quick Documentation that may be requested while a hover tooltip is being computed
+   */
+  @NotNull
+  public List<HoverInformation> analysis_getHover(@NotNull final VirtualFile file, final int _offset, final boolean supersedable) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
     final List<HoverInformation> result = Lists.newArrayList();
 
@@ -941,7 +1033,7 @@ public class DartAnalysisServerService implements Disposable {
 
     final CountDownLatch latch = new CountDownLatch(1);
     final int offset = getOriginalOffset(file, _offset);
-    server.analysis_getHover(filePath, offset, new GetHoverConsumer() {
+    final GetHoverConsumer consumer = new GetHoverConsumer() {
       @Override
       public void computedHovers(HoverInformation[] hovers) {
         Collections.addAll(result, hovers);
@@ -953,9 +1045,15 @@ public class DartAnalysisServerService implements Disposable {
         logError("analysis_getHover()", filePath, error);
         latch.countDown();
       }
-    });
+    };
+    if (!supersedable && server instanceof RemoteAnalysisServerImpl) {
+      ((RemoteAnalysisServerImpl)server).analysis_getHover(filePath, offset, consumer, false);
+    }
+    else {
+      server.analysis_getHover(filePath, offset, consumer);
+    }
 
-    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT, RequestUtilities.METHOD_ANALYSIS_GET_HOVER);
     return result;
   }
 
@@ -1002,7 +1100,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT, RequestUtilities.METHOD_ANALYSIS_GET_NAVIGATION);
 
     if (latch.getCount() > 0) {
       LOG.info("analysis_getNavigation() took more than " + GET_NAVIGATION_TIMEOUT + "ms for file " + filePath);
@@ -1038,7 +1136,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_ASSISTS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_ASSISTS_TIMEOUT, RequestUtilities.METHOD_EDIT_GET_ASSISTS);
     return results;
   }
 
@@ -1059,7 +1157,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT, RequestUtilities.METHOD_IS_POSTFIX_COMPLETION_APPLICABLE);
     return resultRef.get();
   }
 
@@ -1085,7 +1183,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_INITIALIZATION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, POSTFIX_INITIALIZATION_TIMEOUT, RequestUtilities.METHOD_LIST_POSTFIX_COMPLETION_TEMPLATES);
     return resultRef.get();
   }
 
@@ -1115,7 +1213,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT, RequestUtilities.METHOD_EDIT_GET_POSTFIX_COMPLETION);
     return resultRef.get();
   }
 
@@ -1139,7 +1237,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, STATEMENT_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, STATEMENT_COMPLETION_TIMEOUT, RequestUtilities.METHOD_EDIT_GET_STATEMENT_COMPLETION);
     return resultRef.get();
   }
 
@@ -1154,6 +1252,18 @@ public class DartAnalysisServerService implements Disposable {
     }
   }
 
+  /**
+   * Client-side statistics (data updates, traffic, per-method request latencies and timeouts) shown by the diagnostics action together with the server diagnostics page.
+   */
+  @NotNull
+  public String getClientStatistics() {
+    final AnalysisServer server = myServer;
+    return myServerData.getStatistics() + "\n" +
+           "Overlaid content sent: " + myOverlayBytesCounter.getRatePerSecond() + " bytes/s, " +
+           myOverlayBytesCounter.getTotal() + " bytes total" +
+           (server instanceof RemoteAnalysisServerImpl ? "\n" + ((RemoteAnalysisServerImpl)server).getRequestStatistics() : "");
+  }
+
   /**
    * If server responds in less than {@code GET_FIXES_TIMEOUT} then this method can be considered synchronous: when exiting this method
    * {@code consumer} is already notified. Otherwise this method is async.
@@ -1161,6 +1271,17 @@ public class DartAnalysisServerService implements Disposable {
   public void askForFixesAndWaitABitIfReceivedQuickly(@NotNull final VirtualFile file,
                                                       final int _offset,
                                                       @NotNull final Consumer<List<AnalysisErrorFixes>> consumer) {
+    askForFixesAndWaitABitIfReceivedQuickly(file, _offset, consumer, null);
+  }
+
+  /**
+   * @param onSuperseded called instead of {@code consumer} if the request has been superseded by a newer fixes request for the file,
+   *                     e.g. for another error, so that the caller can ask again later
+   */
+  public void askForFixesAndWaitABitIfReceivedQuickly(@NotNull final VirtualFile file,
+                                                      final int _offset,
+                                                      @NotNull final Consumer<List<AnalysisErrorFixes>> consumer,
+                                                      @Nullable final Runnable onSuperseded) {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
 
     final AnalysisServer server = myServer;
@@ -1177,12 +1298,15 @@ public class DartAnalysisServerService implements Disposable {
 
       @Override
       public void onError(final RequestError error) {
+        if (onSuperseded != null && RemoteAnalysisServerImpl.REQUEST_SUPERSEDED.equals(error.getCode())) {
+          onSuperseded.run();
+        }
         logError("edit_getFixes()", filePath, error);
         latch.countDown();
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_FIXES_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_FIXES_TIMEOUT, RequestUtilities.METHOD_EDIT_GET_FIXES);
   }
 
   public void search_findElementReferences(@NotNull final VirtualFile file,
@@ -1210,7 +1334,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, FIND_ELEMENT_REFERENCES_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, FIND_ELEMENT_REFERENCES_TIMEOUT, RequestUtilities.METHOD_SEARCH_FIND_ELEMENT_REFERENCES);
 
     if (latch.getCount() > 0) {
       LOG.info("search_findElementReferences() took too long for " + filePath + "@" + offset);
@@ -1271,7 +1395,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_TYPE_HIERARCHY_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_TYPE_HIERARCHY_TIMEOUT, RequestUtilities.METHOD_SEARCH_GET_TYPE_HIERARCHY);
     return results;
   }
 
@@ -1301,7 +1425,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT, RequestUtilities.METHOD_COMPLETION_GET_SUGGESTIONS);
     return resultRef.get();
   }
 
@@ -1339,7 +1463,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_FORMAT_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EDIT_FORMAT_TIMEOUT, RequestUtilities.METHOD_EDIT_FORMAT);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_format() took too long for file " + filePath);
@@ -1378,7 +1502,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT, RequestUtilities.METHOD_ANALYSIS_GET_IMPORTED_ELEMENTS);
 
     if (latch.getCount() > 0) {
       LOG.info("analysis_getImportedElements() took too long for file " + filePath);
@@ -1413,7 +1537,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT, RequestUtilities.METHOD_EDIT_IMPORT_ELEMENTS);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_importElements() took too long for file " + filePath);
@@ -1471,7 +1595,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_ORGANIZE_DIRECTIVES_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EDIT_ORGANIZE_DIRECTIVES_TIMEOUT, RequestUtilities.METHOD_EDIT_ORGANIZE_DIRECTIVES);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_organizeDirectives() took too long for file " + filePath);
@@ -1510,7 +1634,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_SORT_MEMBERS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EDIT_SORT_MEMBERS_TIMEOUT, RequestUtilities.METHOD_EDIT_SORT_MEMBERS);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_sortMembers() took too long for file " + filePath);
@@ -1588,7 +1712,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EXECUTION_CREATE_CONTEXT_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EXECUTION_CREATE_CONTEXT_TIMEOUT, RequestUtilities.METHOD_EXECUTION_CREATE_CONTEXT);
 
     if (latch.getCount() > 0) {
       LOG.info("execution_createContext() took too long for file " + filePath);
@@ -1641,7 +1765,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EXECUTION_MAP_URI_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EXECUTION_MAP_URI_TIMEOUT, RequestUtilities.METHOD_EXECUTION_MAP_URI);
 
     if (latch.getCount() > 0) {
       LOG.info("execution_mapUri() took too long for contextID " + _id + " and file or uri " + (filePath != null ? filePath : _uri));
@@ -1655,6 +1779,131 @@ public class DartAnalysisServerService implements Disposable {
     return resultRef.get();
   }
 
+  /**
+   * Batch version of {@link #execution_mapUri(String, String, String)} for uris: all requests are sent at once and then
+   * awaited together, so mapping N uris takes about one round trip instead of N.
+   *
+   * @return uri -> system-independent file path. If the server has answered without a file path or with an error,
+   * the map contains the uri with {@code null} value. Uris not answered within the timeout are absent in the map.
+   */
+  @NotNull
+  public Map<String, String> execution_mapUris(@NotNull final String _id, @NotNull final Collection<String> uris) {
+    final Set<String> uriSet = new THashSet<>(uris);
+    if (uriSet.isEmpty()) return new THashMap<>();
+
+    final AnalysisServer server = myServer;
+    if (server == null) return new THashMap<>();
+
+    final MapUrisBatch batch = new MapUrisBatch(_id, uriSet);
+    batch.send(server, null);
+
+    // a single uri is usually needed right now (e.g. for a source position), so don't wait for it longer than execution_mapUri() does
+    final long timeout = uriSet.size() == 1 ? EXECUTION_MAP_URI_TIMEOUT : EXECUTION_MAP_URIS_TIMEOUT;
+    awaitForLatchCheckingCanceled(server, batch.myLatch, timeout, RequestUtilities.METHOD_EXECUTION_MAP_URI);
+
+    return batch.getResult();
+  }
+
+  /**
+   * Asynchronous version of {@link #execution_mapUris(String, Collection)}. {@code callback} is called exactly once, with the same kind
+   * of map, when all uris are answered or when the timeout expires, on the Analysis Server reader thread or on a pooled thread.
+   */
+  public void execution_mapUris(@NotNull final String _id,
+                                @NotNull final Collection<String> uris,
+                                @NotNull final Consumer<Map<String, String>> callback) {
+    final Set<String> uriSet = new THashSet<>(uris);
+    final AnalysisServer server = myServer;
+    if (uriSet.isEmpty() || server == null) {
+      callback.consume(new THashMap<>());
+      return;
+    }
+
+    final MapUrisBatch batch = new MapUrisBatch(_id, uriSet);
+    final AtomicBoolean done = new AtomicBoolean();
+    final Runnable onDone = () -> {
+      if (done.compareAndSet(false, true)) {
+        callback.consume(batch.getResult());
+      }
+    };
+
+    batch.send(server, onDone);
+    AppExecutorUtil.getAppScheduledExecutorService().schedule(onDone, EXECUTION_MAP_URIS_TIMEOUT, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Answers to the execution_mapUri requests sent for a batch of uris.
+   */
+  private static class MapUrisBatch {
+    @NotNull private final String myContextId;
+    @NotNull private final Set<String> myUris;
+    @NotNull private final CountDownLatch myLatch;
+
+    private final Map<String, String> myFilePaths = ContainerUtil.newConcurrentMap();
+    // ConcurrentHashMap doesn't allow null values
+    private final Set<String> myUrisWithoutPath = ContainerUtil.newConcurrentSet();
+    private final AtomicInteger myErrorCount = new AtomicInteger();
+    private volatile RequestError myLastError;
+
+    private MapUrisBatch(@NotNull final String contextId, @NotNull final Set<String> uris) {
+      myContextId = contextId;
+      myUris = uris;
+      myLatch = new CountDownLatch(uris.size());
+    }
+
+    private void send(@NotNull final AnalysisServer server, @Nullable final Runnable onAllAnswered) {
+      for (String uri : myUris) {
+        server.execution_mapUri(myContextId, null, uri, new MapUriConsumer() {
+          @Override
+          public void computedFileOrUri(final String file, final String _uri) {
+            if (file != null) {
+              myFilePaths.put(uri, FileUtil.toSystemIndependentName(file));
+            }
+            else {
+              myUrisWithoutPath.add(uri);
+            }
+            answered();
+          }
+
+          @Override
+          public void onError(final RequestError error) {
+            // logged once for the whole batch in getResult()
+            myErrorCount.incrementAndGet();
+            myLastError = error;
+            myUrisWithoutPath.add(uri);
+            answered();
+          }
+
+          private void answered() {
+            myLatch.countDown();
+            if (myLatch.getCount() == 0 && onAllAnswered != null) {
+              onAllAnswered.run();
+            }
+          }
+        });
+      }
+    }
+
+    @NotNull
+    private Map<String, String> getResult() {
+      if (myLatch.getCount() > 0) {
+        LOG.info("execution_mapUri() took too long for contextID " + myContextId + ", " + myLatch.getCount() + " of " + myUris.size() +
+                 " uris not mapped");
+      }
+
+      final RequestError lastError = myLastError;
+      if (lastError != null) {
+        LOG.debug("execution_mapUri() returned errors for " + myErrorCount.get() + " of " + myUris.size() + " uris in contextID " +
+                  myContextId + ", last error " + lastError.getCode() + ": " + lastError.getMessage());
+      }
+
+      final Map<String, String> result = new THashMap<>(myFilePaths);
+      for (String uri : myUrisWithoutPath) {
+        result.put(uri, null);
+      }
+      return result;
+    }
+  }
+
   private void startServer(@NotNull final DartSdk sdk) {
     if (DartPubActionBase.isInProgress()) return; // DartPubActionBase will start the server itself when finished
 
@@ -1859,6 +2108,8 @@ public class DartAnalysisServerService implements Disposable {
       myServer = null;
       mySdkHome = null;
       myFilePathWithOverlaidContentToTimestamp.clear();
+      myFilePathToOverlayEdits.clear();
+      myOverlayBytesCounter.reset();
       myVisibleFiles.clear();
       myChangedDocuments.clear();
       myServerData.clearData();
@@ -1890,7 +2141,8 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, ANALYSIS_IN_TESTS_TIMEOUT / TESTS_TIMEOUT_COEFF);
+    awaitForLatchCheckingCanceled(server, latch, ANALYSIS_IN_TESTS_TIMEOUT / TESTS_TIMEOUT_COEFF,
+                                  RequestUtilities.METHOD_ANALYSIS_GET_ERRORS);
     assert latch.getCount() == 0 : "Analysis did't complete in " + ANALYSIS_IN_TESTS_TIMEOUT + "ms.";
   }
 
@@ -1933,6 +2185,9 @@ public class DartAnalysisServerService implements Disposable {
   }
 
   private void logError(@NotNull final String methodName, @Nullable final String filePath, @NotNull final RequestError error) {
+    // a newer request of the same kind has been sent, nothing wrong with that
+    if (RemoteAnalysisServerImpl.REQUEST_SUPERSEDED.equals(error.getCode())) return;
+
     final String trace = error.getStackTrace();
     final String partialTrace = trace == null || trace.isEmpty() ? "" : trace.substring(0, Math.min(trace.length(), 1000));
     final String message = getShortErrorMessage(methodName, filePath, error) + "\n" + partialTrace + "...";
@@ -1947,9 +2202,14 @@ public class DartAnalysisServerService implements Disposable {
            ", error code = " + error.getCode() + ": " + error.getMessage();
   }
 
+  /**
+   * @param method protocol name of the awaited request, the {@code RequestUtilities.METHOD_*} constant that the request is built with;
+   *               timeouts are counted per method and shown by {@link #getClientStatistics()}
+   */
   private static boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
                                                        @NotNull final CountDownLatch latch,
-                                                       long timeoutInMillis) {
+                                                       long timeoutInMillis,
+                                                       @NotNull final String method) {
     if (ApplicationManager.getApplication().isUnitTestMode()) {
       timeoutInMillis *= TESTS_TIMEOUT_COEFF;
     }
@@ -1961,6 +2221,9 @@ public class DartAnalysisServerService implements Disposable {
         return false;
       }
       if (timeoutInMillis != -1 && System.currentTimeMillis() > startTime + timeoutInMillis) {
+        if (server instanceof RemoteAnalysisServerImpl) {
+          ((RemoteAnalysisServerImpl)server).requestTimedOut(method);
+        }
         return false;
       }
       if (Uninterruptibles.awaitUninterruptibly(latch, CHECK_CANCELLED_PERIOD, TimeUnit.MILLISECONDS)) {
@@ -2121,6 +2384,15 @@ public class DartAnalysisServerService implements Disposable {
     myServerData.removeOutlineListener(listener);
   }
 
+  /**
+   * Called by the Structure view after it has applied an outline notification, shown by {@link #getClientStatistics()}
+   *
+   * @param changed {@code false} if the new outline differed from the previous one only in offsets and the view didn't need a refresh
+   */
+  public void outlineViewUpdated(final long nanos, final boolean changed) {
+    myServerData.outlineViewUpdated(nanos, changed);
+  }
+
   /**
    * Generate and return a unique {@link String} id to be used to sent requests.
    */
@@ -0,0 +1,167 @@
+// Copyright 2000-2018 JetBrains s.r.o.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Maps uris to file paths and vice versa within one execution context of the Analysis Server (debug session, coverage loading).
+ * Results are kept in an LRU cache for the life of the session; uris can be mapped in batches,
+ * see {@link DartAnalysisServerService#execution_mapUris(String, Collection)}.
+ */
+public class DartExecutionUriMapper {
+  private static final int CACHE_SIZE = 5000;
+
+  @NotNull private final Project myProject;
+  @NotNull private final String myContextId;
+
+  // values may be null: the server has answered that there's no mapping
+  private final Map<String, String> myUriToFilePath = createLruMap();
+  private final Map<String, String> myFilePathToUri = createLruMap();
+
+  public DartExecutionUriMapper(@NotNull final Project project, @NotNull final String contextId) {
+    myProject = project;
+    myContextId = contextId;
+  }
+
+  @NotNull
+  public String getContextId() {
+    return myContextId;
+  }
+
+  /**
+   * @return system-independent file path or {@code null}
+   */
+  @Nullable
+  public String getFilePath(@NotNull final String uri) {
+    synchronized (myUriToFilePath) {
+      if (myUriToFilePath.containsKey(uri)) return myUriToFilePath.get(uri);
+    }
+
+    // mapped as a batch of one so that 'no mapping' answers are cached the same way as in getFilePaths()
+    final Map<String, String> mapped =
+      DartAnalysisServerService.getInstance(myProject).execution_mapUris(myContextId, Collections.singletonList(uri));
+    cacheMappedUris(mapped);
+    return mapped.get(uri);
+  }
+
+  @Nullable
+  public String getUri(@NotNull final String filePath) {
+    synchronized (myFilePathToUri) {
+      if (myFilePathToUri.containsKey(filePath)) return myFilePathToUri.get(filePath);
+    }
+
+    final String uri = DartAnalysisServerService.getInstance(myProject).execution_mapUri(myContextId, filePath, null);
+    if (uri != null) {
+      synchronized (myFilePathToUri) {
+        myFilePathToUri.put(filePath, uri);
+      }
+    }
+    return uri;
+  }
+
+  /**
+   * Maps all not yet cached uris in one batch.
+   *
+   * @return uri -> system-independent file path; uris that can't be mapped are absent
+   */
+  @NotNull
+  public Map<String, String> getFilePaths(@NotNull final Collection<String> uris) {
+    final Map<String, String> result = new HashMap<>();
+    final List<String> urisToMap = getCachedFilePaths(uris, result);
+    if (urisToMap.isEmpty()) return result;
+
+    final Map<String, String> mapped = DartAnalysisServerService.getInstance(myProject).execution_mapUris(myContextId, urisToMap);
+    cacheMappedUris(mapped);
+    addNotNullValues(mapped, result);
+    return result;
+  }
+
+  /**
+   * Asynchronous version of {@link #getFilePaths(Collection)}; useful to fill the cache in advance without blocking the caller.
+   * {@code callback} is called on the caller thread if all uris are already cached, otherwise on the Analysis Server reader thread
+   * or on a pooled thread.
+   */
+  public void getFilePaths(@NotNull final Collection<String> uris, @NotNull final Consumer<Map<String, String>> callback) {
+    final Map<String, String> result = new HashMap<>();
+    final List<String> urisToMap = getCachedFilePaths(uris, result);
+    if (urisToMap.isEmpty()) {
+      callback.consume(result);
+      return;
+    }
+
+    DartAnalysisServerService.getInstance(myProject).execution_mapUris(myContextId, urisToMap, mapped -> {
+      cacheMappedUris(mapped);
+      addNotNullValues(mapped, result);
+      callback.consume(result);
+    });
+  }
+
+  /**
+   * Puts cached non-null file paths to {@code result}.
+   *
+   * @return uris that are not cached yet
+   */
+  @NotNull
+  private List<String> getCachedFilePaths(@NotNull final Collection<String> uris, @NotNull final Map<String, String> result) {
+    final List<String> urisToMap = new ArrayList<>();
+    synchronized (myUriToFilePath) {
+      for (String uri : uris) {
+        if (myUriToFilePath.containsKey(uri)) {
+          final String filePath = myUriToFilePath.get(uri);
+          if (filePath != null) {
+            result.put(uri, filePath);
+          }
+        }
+        else {
+          urisToMap.add(uri);
+        }
+      }
+    }
+    return urisToMap;
+  }
+
+  /**
+   * Caches both file paths and 'no mapping' answers (null values), so that unresolvable uris are not requested again.
+   * Uris that the server hasn't answered in time are absent in {@code mapped} and will be requested next time.
+   */
+  private void cacheMappedUris(@NotNull final Map<String, String> mapped) {
+    synchronized (myUriToFilePath) {
+      myUriToFilePath.putAll(mapped);
+    }
+  }
+
+  private static void addNotNullValues(@NotNull final Map<String, String> mapped, @NotNull final Map<String, String> result) {
+    for (Map.Entry<String, String> entry : mapped.entrySet()) {
+      if (entry.getValue() != null) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  @NotNull
+  private static Map<String, String> createLruMap() {
+    return new LinkedHashMap<String, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+        return size() > CACHE_SIZE;
+      }
+    };
+  }
+}
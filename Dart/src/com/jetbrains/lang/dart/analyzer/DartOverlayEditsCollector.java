@@ -0,0 +1,130 @@
+// Copyright 2000-2018 JetBrains s.r.o.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jetbrains.lang.dart.analyzer;
+
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects document changes made since the overlay content of a file has been sent to the Analysis Server last time,
+ * so that only a {@link org.dartlang.analysis.server.protocol.ChangeContentOverlay} needs to be sent instead of the whole document text.
+ * Consecutive typing and backspacing are coalesced into a single {@link SourceEdit}.
+ * <p/>
+ * Edits are applied by the server sequentially, each one to the result of the previous, which matches the order of document events.
+ * The collector becomes invalid if it misses an event (document modification stamps don't form a chain);
+ * in this case the caller must resend the whole content.
+ */
+class DartOverlayEditsCollector {
+
+  // Too many edits are more expensive to send and to apply than the document text itself
+  private static final int MAX_EDITS = 1000;
+
+  private final long myBaseStamp;
+  private long myCurrentStamp;
+  private boolean myValid = true;
+
+  private final List<Edit> myEdits = new ArrayList<>();
+  private int myTotalReplacementLength;
+
+  /**
+   * @param baseStamp modification stamp of the document content that is already known to the server
+   */
+  DartOverlayEditsCollector(final long baseStamp) {
+    myBaseStamp = baseStamp;
+    myCurrentStamp = baseStamp;
+  }
+
+  long getBaseStamp() {
+    return myBaseStamp;
+  }
+
+  /**
+   * @param oldStamp document modification stamp before the change
+   * @param newStamp document modification stamp after the change
+   */
+  void documentChanged(final long oldStamp,
+                       final long newStamp,
+                       final int offset,
+                       final int oldLength,
+                       @NotNull final CharSequence newFragment) {
+    if (!myValid) return;
+
+    if (oldStamp != myCurrentStamp) {
+      myValid = false;
+      myEdits.clear();
+      return;
+    }
+
+    myCurrentStamp = newStamp;
+
+    final Edit last = myEdits.isEmpty() ? null : myEdits.get(myEdits.size() - 1);
+    if (last != null && last.tryMerge(offset, oldLength, newFragment)) {
+      myTotalReplacementLength += newFragment.length() - oldLength;
+      return;
+    }
+
+    if (myEdits.size() >= MAX_EDITS) {
+      myValid = false;
+      myEdits.clear();
+      return;
+    }
+
+    myEdits.add(new Edit(offset, oldLength, newFragment));
+    myTotalReplacementLength += newFragment.length();
+  }
+
+  /**
+   * @return edits that transform the content with {@link #getBaseStamp()} to the content with {@code documentStamp},
+   * or {@code null} if this is not possible or not reasonable and the whole document text should be sent instead
+   */
+  @Nullable
+  List<SourceEdit> getSourceEdits(final long documentStamp, final int documentLength) {
+    if (!myValid || documentStamp != myCurrentStamp || myEdits.isEmpty()) return null;
+    if (myTotalReplacementLength > documentLength / 2) return null;
+
+    final List<SourceEdit> result = new ArrayList<>(myEdits.size());
+    for (Edit edit : myEdits) {
+      result.add(new SourceEdit(edit.myOffset, edit.myLength, edit.myReplacement.toString(), null));
+    }
+    return result;
+  }
+
+  private static class Edit {
+    private final int myOffset;
+    private final int myLength;
+    @NotNull private final StringBuilder myReplacement;
+
+    private Edit(final int offset, final int length, @NotNull final CharSequence replacement) {
+      myOffset = offset;
+      myLength = length;
+      myReplacement = new StringBuilder(replacement);
+    }
+
+    /**
+     * Merges the next change into this edit if the change is fully inside the text inserted by this edit (or right after it),
+     * that is the most common case of typing and backspacing.
+     */
+    private boolean tryMerge(final int offset, final int oldLength, @NotNull final CharSequence newFragment) {
+      final int startInReplacement = offset - myOffset;
+      if (startInReplacement < 0 || startInReplacement + oldLength > myReplacement.length()) return false;
+
+      myReplacement.replace(startInReplacement, startInReplacement + oldLength, newFragment.toString());
+      return true;
+    }
+  }
+}
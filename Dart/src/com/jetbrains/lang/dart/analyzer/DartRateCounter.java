@@ -0,0 +1,61 @@
+// Copyright 2000-2018 JetBrains s.r.o.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jetbrains.lang.dart.analyzer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts values (bytes, requests, etc.) and reports the rate per second measured over the last completed one-second window,
+ * as well as the total since creation.
+ */
+public class DartRateCounter {
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private long myTotal;
+  private long myWindowStart = System.nanoTime();
+  private long myCurrentWindowValue;
+  private long myLastWindowRate;
+
+  public synchronized void add(final long value) {
+    rollWindow(System.nanoTime());
+    myTotal += value;
+    myCurrentWindowValue += value;
+  }
+
+  public synchronized long getRatePerSecond() {
+    rollWindow(System.nanoTime());
+    return myLastWindowRate;
+  }
+
+  public synchronized long getTotal() {
+    return myTotal;
+  }
+
+  public synchronized void reset() {
+    myTotal = 0;
+    myWindowStart = System.nanoTime();
+    myCurrentWindowValue = 0;
+    myLastWindowRate = 0;
+  }
+
+  private void rollWindow(final long now) {
+    final long elapsed = now - myWindowStart;
+    if (elapsed < WINDOW_NANOS) return;
+
+    // if more than one window passed without values then the rate in the last window is zero
+    myLastWindowRate = elapsed < 2 * WINDOW_NANOS ? myCurrentWindowValue : 0;
+    myCurrentWindowValue = 0;
+    myWindowStart = now - elapsed % WINDOW_NANOS;
+  }
+}
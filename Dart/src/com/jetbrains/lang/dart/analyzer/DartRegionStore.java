@@ -0,0 +1,348 @@
+// Copyright 2000-2018 JetBrains s.r.o.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartNavigationRegion;
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartNavigationTarget;
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartRegion;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Keeps regions of a file sorted by offset and updates them on document changes lazily:
+ * <ul>
+ * <li>shifting of all regions after the changed offset is a single O(log n) update of a Fenwick tree over region indices,</li>
+ * <li>touched regions are found in O(log n) per region by a segment tree that keeps the maximal region end over index ranges,</li>
+ * <li>regions are updated (and deleted ones are dropped) only when the list is requested, in a single O(n) pass.</li>
+ * </ul>
+ * So typing costs O((touched + 1) * log n) instead of O(n) per keystroke, and the O(n) work is done once per highlighting pass.
+ * Regions starting in a range are found by binary search, see {@link #getRegionsStartingIn(int, int)}.
+ * <p/>
+ * Touched regions are either deleted ({@code deleteTouched == true}) or their length is updated, same as it was done
+ * by {@code DartServerData.updateRegionsDeletingTouched()} and {@code DartServerData.updateRegionsUpdatingTouched()}.
+ */
+class DartRegionStore<T extends DartRegion> {
+  // end offset of deleted regions in the segment tree, low enough to stay below any offset after all shifts
+  private static final int DELETED_END = Integer.MIN_VALUE / 2;
+
+  @NotNull private final String myFilePath;
+  private final boolean myDeleteTouched;
+
+  private T[] myRegions;
+  private int[] myBaseOffsets;
+  private int[] myLengths;
+  private BitSet myDeleted;
+  private int[] myShiftTree; // Fenwick tree, 1-based; prefix sum at index i is the shift of i-th region
+  private int[] myEndTree; // segment tree, 1-based; maximal current end offset of not deleted regions in the node range
+  private int[] myEndTreeAdd; // pending additions to the children of segment tree nodes
+
+  // (offset, delta) pairs of the changes not yet applied to the navigation targets
+  private final TIntArrayList myPendingTargetShifts = new TIntArrayList();
+
+  private boolean myDirty;
+  @NotNull private List<T> myView;
+
+  DartRegionStore(@NotNull final String filePath, @NotNull final List<T> regions, final boolean deleteTouched) {
+    myFilePath = filePath;
+    myDeleteTouched = deleteTouched;
+    init(regions);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void init(@NotNull final List<T> regions) {
+    final List<T> sorted = new ArrayList<>(regions);
+    sorted.sort(Comparator.comparingInt(DartRegion::getOffset)); // stable
+
+    final int size = sorted.size();
+    myRegions = (T[])sorted.toArray(new DartRegion[size]);
+    myBaseOffsets = new int[size];
+    myLengths = new int[size];
+    myDeleted = new BitSet(size);
+    myShiftTree = new int[size + 1];
+    myEndTree = new int[Math.max(1, 4 * size)];
+    myEndTreeAdd = new int[myEndTree.length];
+
+    for (int i = 0; i < size; i++) {
+      myBaseOffsets[i] = myRegions[i].myOffset;
+      myLengths[i] = myRegions[i].myLength;
+    }
+    if (size > 0) {
+      buildEndTree(1, 0, size);
+    }
+
+    myView = Collections.unmodifiableList(sorted);
+    myDirty = false;
+  }
+
+  /**
+   * @return regions sorted by offset, with offsets and lengths corresponding to the current document state
+   */
+  @NotNull
+  synchronized List<T> getRegions() {
+    if (myDirty) {
+      applyChanges();
+    }
+    return myView;
+  }
+
+  /**
+   * @return regions with offset in the range [{@code startOffset}, {@code endOffset}), sorted by offset,
+   * with offsets and lengths corresponding to the current document state
+   */
+  @NotNull
+  synchronized List<T> getRegionsStartingIn(final int startOffset, final int endOffset) {
+    final List<T> regions = getRegions();
+    final int from = findFirstWithOffsetNotLessThan(regions, startOffset);
+    final int to = Math.max(from, findFirstWithOffsetNotLessThan(regions, endOffset));
+    return regions.subList(from, to);
+  }
+
+  private static int findFirstWithOffsetNotLessThan(@NotNull final List<? extends DartRegion> regions, final int offset) {
+    int low = 0;
+    int high = regions.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (regions.get(mid).myOffset < offset) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return {@code true} if at least one region has been deleted, {@code false} if updated only or nothing done at all
+   */
+  synchronized boolean documentChanged(final int eventOffset, final int oldLength, final int newLength) {
+    final int deltaLength = newLength - oldLength;
+    if (deltaLength == 0 || myRegions.length == 0) return false;
+
+    myDirty = true;
+    if (myRegions[0] instanceof DartNavigationRegion) {
+      myPendingTargetShifts.add(eventOffset);
+      myPendingTargetShifts.add(deltaLength);
+    }
+
+    return deltaLength > 0 ? textInserted(eventOffset, deltaLength) : textDeleted(eventOffset, -deltaLength);
+  }
+
+  private boolean textInserted(final int eventOffset, final int deltaLength) {
+    // Something was typed. Shift untouched regions, delete or update touched.
+    final int firstShifted = findFirstWithOffsetNotLessThan(eventOffset);
+    addShift(firstShifted, deltaLength);
+
+    boolean regionDeleted = false;
+    final TIntArrayList touched = findEndingAfter(firstShifted, eventOffset);
+    for (int j = 0; j < touched.size(); j++) {
+      final int i = touched.get(j);
+      final int offset = getCurrentOffset(i);
+      if (offset < eventOffset && eventOffset < offset + myLengths[i]) {
+        if (myDeleteTouched) {
+          delete(i, offset);
+          regionDeleted = true;
+        }
+        else {
+          myLengths[i] += deltaLength;
+          addToEnds(1, 0, myRegions.length, i, i + 1, deltaLength);
+        }
+      }
+    }
+
+    return regionDeleted;
+  }
+
+  private boolean textDeleted(final int eventOffset, final int deletedLength) {
+    // Some text was deleted. Shift untouched regions, delete or update touched.
+    final int eventRightOffset = eventOffset + deletedLength;
+    final int firstShifted = findFirstWithOffsetNotLessThan(eventRightOffset);
+
+    boolean regionDeleted = false;
+    final TIntArrayList touched = findEndingAfter(firstShifted, eventOffset);
+    for (int j = 0; j < touched.size(); j++) {
+      final int i = touched.get(j);
+      final int offset = getCurrentOffset(i);
+      final int regionRightOffset = offset + myLengths[i];
+      if (!myDeleteTouched && offset <= eventOffset && eventRightOffset <= regionRightOffset && myLengths[i] != deletedLength) {
+        myLengths[i] -= deletedLength;
+        addToEnds(1, 0, myRegions.length, i, i + 1, -deletedLength);
+      }
+      else if (eventOffset < regionRightOffset) {
+        // keep offsets of deleted regions not greater than offsets of the following regions, so that binary search still works
+        delete(i, Math.min(offset, eventOffset));
+        regionDeleted = true;
+      }
+    }
+
+    // regions deleted earlier inside the removed text are not shifted, move them to its start to keep the order of offsets
+    final int firstInside = findFirstWithOffsetNotLessThan(eventOffset + 1);
+    for (int i = myDeleted.nextSetBit(firstInside); i >= 0 && i < firstShifted; i = myDeleted.nextSetBit(i + 1)) {
+      myBaseOffsets[i] = eventOffset - getShift(i);
+    }
+
+    addShift(firstShifted, -deletedLength);
+    return regionDeleted;
+  }
+
+  private void delete(final int index, final int currentOffset) {
+    myDeleted.set(index);
+    myBaseOffsets[index] = currentOffset - getShift(index);
+    addToEnds(1, 0, myRegions.length, index, index + 1, DELETED_END - getEnd(1, 0, myRegions.length, index));
+  }
+
+  private int getCurrentOffset(final int index) {
+    return myBaseOffsets[index] + getShift(index);
+  }
+
+  private int findFirstWithOffsetNotLessThan(final int offset) {
+    int low = 0;
+    int high = myRegions.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (getCurrentOffset(mid) < offset) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Adds {@code delta} to the shift of all regions starting from {@code fromIndex}
+   */
+  private void addShift(final int fromIndex, final int delta) {
+    for (int i = fromIndex + 1; i < myShiftTree.length; i += i & -i) {
+      myShiftTree[i] += delta;
+    }
+    addToEnds(1, 0, myRegions.length, fromIndex, myRegions.length, delta);
+  }
+
+  private int getShift(final int index) {
+    int result = 0;
+    for (int i = index + 1; i > 0; i -= i & -i) {
+      result += myShiftTree[i];
+    }
+    return result;
+  }
+
+  private void buildEndTree(final int node, final int from, final int to) {
+    if (to - from == 1) {
+      myEndTree[node] = myBaseOffsets[from] + myLengths[from];
+      return;
+    }
+    final int mid = (from + to) >>> 1;
+    buildEndTree(2 * node, from, mid);
+    buildEndTree(2 * node + 1, mid, to);
+    myEndTree[node] = Math.max(myEndTree[2 * node], myEndTree[2 * node + 1]);
+  }
+
+  /**
+   * Adds {@code delta} to the end offsets of regions with indices in [{@code addFrom}, {@code addTo})
+   */
+  private void addToEnds(final int node, final int from, final int to, final int addFrom, final int addTo, final int delta) {
+    if (addTo <= from || to <= addFrom) return;
+    if (addFrom <= from && to <= addTo) {
+      myEndTree[node] += delta;
+      myEndTreeAdd[node] += delta;
+      return;
+    }
+    pushEndTreeAdd(node);
+    final int mid = (from + to) >>> 1;
+    addToEnds(2 * node, from, mid, addFrom, addTo, delta);
+    addToEnds(2 * node + 1, mid, to, addFrom, addTo, delta);
+    myEndTree[node] = Math.max(myEndTree[2 * node], myEndTree[2 * node + 1]);
+  }
+
+  private int getEnd(final int node, final int from, final int to, final int index) {
+    if (to - from == 1) return myEndTree[node];
+    pushEndTreeAdd(node);
+    final int mid = (from + to) >>> 1;
+    return index < mid ? getEnd(2 * node, from, mid, index) : getEnd(2 * node + 1, mid, to, index);
+  }
+
+  private void pushEndTreeAdd(final int node) {
+    final int add = myEndTreeAdd[node];
+    if (add != 0) {
+      myEndTree[2 * node] += add;
+      myEndTreeAdd[2 * node] += add;
+      myEndTree[2 * node + 1] += add;
+      myEndTreeAdd[2 * node + 1] += add;
+      myEndTreeAdd[node] = 0;
+    }
+  }
+
+  /**
+   * @return indices of not deleted regions before {@code toIndex} that end after {@code offset}
+   */
+  @NotNull
+  private TIntArrayList findEndingAfter(final int toIndex, final int offset) {
+    final TIntArrayList result = new TIntArrayList();
+    if (toIndex > 0) {
+      findEndingAfter(1, 0, myRegions.length, toIndex, offset, result);
+    }
+    return result;
+  }
+
+  private void findEndingAfter(final int node, final int from, final int to, final int toIndex, final int offset,
+                               @NotNull final TIntArrayList result) {
+    if (from >= toIndex || myEndTree[node] <= offset) return;
+    if (to - from == 1) {
+      result.add(from);
+      return;
+    }
+    pushEndTreeAdd(node);
+    final int mid = (from + to) >>> 1;
+    findEndingAfter(2 * node, from, mid, toIndex, offset, result);
+    findEndingAfter(2 * node + 1, mid, to, toIndex, offset, result);
+  }
+
+  private void applyChanges() {
+    final List<T> regions = new ArrayList<>(myRegions.length - myDeleted.cardinality());
+    for (int i = 0; i < myRegions.length; i++) {
+      if (myDeleted.get(i)) continue;
+
+      final T region = myRegions[i];
+      region.myOffset = getCurrentOffset(i);
+      region.myLength = myLengths[i];
+      regions.add(region);
+    }
+
+    if (!myPendingTargetShifts.isEmpty() && !regions.isEmpty()) {
+      shiftNavigationTargets(regions);
+    }
+    myPendingTargetShifts.clear();
+
+    init(regions);
+  }
+
+  private void shiftNavigationTargets(@NotNull final List<T> regions) {
+    for (T region : regions) {
+      for (DartNavigationTarget target : ((DartNavigationRegion)region).getTargets()) {
+        if (target.myConvertedOffset == -1 || !target.myFile.equals(myFilePath)) continue;
+
+        for (int i = 0; i < myPendingTargetShifts.size(); i += 2) {
+          // may be we'd better delete target touched by editing?
+          if (target.myConvertedOffset >= myPendingTargetShifts.get(i)) {
+            target.myConvertedOffset += myPendingTargetShifts.get(i + 1);
+          }
+        }
+      }
+    }
+  }
+}
@@ -7,19 +7,23 @@ import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.impl.source.resolve.ResolveCache;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.util.EventDispatcher;
+import com.intellij.util.Function;
 import com.intellij.util.SmartList;
-import gnu.trove.THashMap;
 import org.dartlang.analysis.server.protocol.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DartServerData {
 
@@ -31,13 +35,17 @@ public class DartServerData {
 
   private final EventDispatcher<OutlineListener> myEventDispatcher = EventDispatcher.create(OutlineListener.class);
 
-  private final Map<String, List<DartError>> myErrorData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartHighlightRegion>> myHighlightData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartNavigationRegion>> myNavigationData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartOverrideMember>> myOverrideData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedClassData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedMemberData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, Outline> myOutlineData = Collections.synchronizedMap(new THashMap<>());
+  // Each notification replaces the whole immutable per-file record, so readers never take a lock on this map.
+  private final ConcurrentMap<String, FileData> myFileData = new ConcurrentHashMap<>();
+
+  private final DartRateCounter myUpdateCounter = new DartRateCounter();
+  private final AtomicLong myUpdateNanosTotal = new AtomicLong();
+  private final AtomicLong myUpdateNanosMax = new AtomicLong();
+
+  private final DartRateCounter myOutlineViewUpdateCounter = new DartRateCounter();
+  private final AtomicLong myOutlineViewChangedUpdates = new AtomicLong();
+  private final AtomicLong myOutlineViewUpdateNanosTotal = new AtomicLong();
+  private final AtomicLong myOutlineViewUpdateNanosMax = new AtomicLong();
 
   private final Set<String> myFilePathsWithUnsentChanges = Sets.newConcurrentHashSet();
 
@@ -69,7 +77,7 @@ public class DartServerData {
     }
 
     myFilePathsWithLostErrorInfo.remove(filePath);
-    myErrorData.put(filePath, newErrors);
+    update(filePath, data -> data.withErrors(new DartRegionStore<>(filePath, newErrors, true)));
 
     if (restartHighlighting) {
       forceFileAnnotation(file, false);
@@ -98,7 +106,7 @@ public class DartServerData {
       }
     }
 
-    myHighlightData.put(filePath, newRegions);
+    update(filePath, data -> data.withHighlights(new DartRegionStore<>(filePath, newRegions, false)));
     forceFileAnnotation(file, false);
   }
 
@@ -115,14 +123,14 @@ public class DartServerData {
       }
     }
 
-    myNavigationData.put(filePath, newRegions);
+    update(filePath, data -> data.withNavigation(new DartRegionStore<>(filePath, newRegions, true)));
     forceFileAnnotation(file, true);
   }
 
   void computedOutline(@NotNull final String filePath, @NotNull final Outline outline) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    myOutlineData.put(filePath, outline);
+    update(filePath, data -> data.withOutline(outline));
     ApplicationManager.getApplication().invokeLater(() -> myEventDispatcher.getMulticaster().outlineUpdated(filePath),
                                                     ModalityState.NON_MODAL,
                                                     myService.getProject().getDisposed());
@@ -155,7 +163,7 @@ public class DartServerData {
       }
     }
 
-    myOverrideData.put(filePath, newOverrides);
+    update(filePath, data -> data.withOverrides(new DartRegionStore<>(filePath, newOverrides, true)));
     forceFileAnnotation(file, false);
   }
 
@@ -180,20 +188,28 @@ public class DartServerData {
       newImplementedMembers.add(new DartRegion(offset, length));
     }
 
-    boolean hasChanges = false;
-    final List<DartRegion> oldClasses = myImplementedClassData.get(filePath);
-    if (oldClasses == null || !oldClasses.equals(newImplementedClasses)) {
-      hasChanges = true;
-      myImplementedClassData.put(filePath, newImplementedClasses);
-    }
+    // old regions are kept sorted by DartRegionStore, sort the new ones the same way before comparing
+    newImplementedClasses.sort(Comparator.comparingInt(DartRegion::getOffset));
+    newImplementedMembers.sort(Comparator.comparingInt(DartRegion::getOffset));
 
-    final List<DartRegion> oldMembers = myImplementedMemberData.get(filePath);
-    if (oldMembers == null || !oldMembers.equals(newImplementedMembers)) {
-      hasChanges = true;
-      myImplementedMemberData.put(filePath, newImplementedMembers);
-    }
+    final Ref<Boolean> hasChanges = Ref.create(false);
+    update(filePath, data -> {
+      final DartRegionStore<DartRegion> oldClasses = data.myImplementedClasses;
+      if (oldClasses == null || !oldClasses.getRegions().equals(newImplementedClasses)) {
+        hasChanges.set(true);
+        data = data.withImplementedClasses(new DartRegionStore<>(filePath, newImplementedClasses, true));
+      }
 
-    if (hasChanges) {
+      final DartRegionStore<DartRegion> oldMembers = data.myImplementedMembers;
+      if (oldMembers == null || !oldMembers.getRegions().equals(newImplementedMembers)) {
+        hasChanges.set(true);
+        data = data.withImplementedMembers(new DartRegionStore<>(filePath, newImplementedMembers, true));
+      }
+
+      return data;
+    });
+
+    if (hasChanges.get()) {
       forceFileAnnotation(file, false);
     }
   }
@@ -202,12 +218,13 @@ public class DartServerData {
   List<DartError> getErrors(@NotNull final SearchScope scope) {
     final List<DartError> errors = new ArrayList<>();
 
-    synchronized (myErrorData) {
-      for (Map.Entry<String, List<DartError>> entry : myErrorData.entrySet()) {
-        final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(entry.getKey());
-        if (file != null && scope.contains(file)) {
-          errors.addAll(entry.getValue());
-        }
+    for (Map.Entry<String, FileData> entry : myFileData.entrySet()) {
+      final DartRegionStore<DartError> fileErrors = entry.getValue().myErrors;
+      if (fileErrors == null) continue;
+
+      final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(entry.getKey());
+      if (file != null && scope.contains(file)) {
+        errors.addAll(fileErrors.getRegions());
       }
     }
 
@@ -216,43 +233,61 @@ public class DartServerData {
 
   @NotNull
   List<DartError> getErrors(@NotNull final VirtualFile file) {
-    final List<DartError> errors = myErrorData.get(file.getPath());
-    return errors != null ? errors : Collections.emptyList();
+    final DartRegionStore<DartError> errors = getFileData(file.getPath()).myErrors;
+    return errors != null ? errors.getRegions() : Collections.emptyList();
   }
 
   @NotNull
   List<DartHighlightRegion> getHighlight(@NotNull final VirtualFile file) {
-    final List<DartHighlightRegion> regions = myHighlightData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartRegionStore<DartHighlightRegion> regions = getFileData(file.getPath()).myHighlights;
+    return regions != null ? regions.getRegions() : Collections.emptyList();
+  }
+
+  /**
+   * @return errors with offset in the range [{@code startOffset}, {@code endOffset})
+   */
+  @NotNull
+  List<DartError> getErrors(@NotNull final VirtualFile file, final int startOffset, final int endOffset) {
+    final DartRegionStore<DartError> errors = getFileData(file.getPath()).myErrors;
+    return errors != null ? errors.getRegionsStartingIn(startOffset, endOffset) : Collections.emptyList();
+  }
+
+  /**
+   * @return highlight regions with offset in the range [{@code startOffset}, {@code endOffset})
+   */
+  @NotNull
+  List<DartHighlightRegion> getHighlight(@NotNull final VirtualFile file, final int startOffset, final int endOffset) {
+    final DartRegionStore<DartHighlightRegion> regions = getFileData(file.getPath()).myHighlights;
+    return regions != null ? regions.getRegionsStartingIn(startOffset, endOffset) : Collections.emptyList();
   }
 
   @NotNull
   List<DartNavigationRegion> getNavigation(@NotNull final VirtualFile file) {
-    final List<DartNavigationRegion> regions = myNavigationData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartRegionStore<DartNavigationRegion> regions = getFileData(file.getPath()).myNavigation;
+    return regions != null ? regions.getRegions() : Collections.emptyList();
   }
 
   @NotNull
   List<DartOverrideMember> getOverrideMembers(@NotNull final VirtualFile file) {
-    final List<DartOverrideMember> regions = myOverrideData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartRegionStore<DartOverrideMember> regions = getFileData(file.getPath()).myOverrides;
+    return regions != null ? regions.getRegions() : Collections.emptyList();
   }
 
   @NotNull
   List<DartRegion> getImplementedClasses(@NotNull final VirtualFile file) {
-    final List<DartRegion> classes = myImplementedClassData.get(file.getPath());
-    return classes != null ? classes : Collections.emptyList();
+    final DartRegionStore<DartRegion> classes = getFileData(file.getPath()).myImplementedClasses;
+    return classes != null ? classes.getRegions() : Collections.emptyList();
   }
 
   @NotNull
   List<DartRegion> getImplementedMembers(@NotNull final VirtualFile file) {
-    final List<DartRegion> classes = myImplementedMemberData.get(file.getPath());
-    return classes != null ? classes : Collections.emptyList();
+    final DartRegionStore<DartRegion> classes = getFileData(file.getPath()).myImplementedMembers;
+    return classes != null ? classes.getRegions() : Collections.emptyList();
   }
 
   @Nullable
   Outline getOutline(@NotNull final VirtualFile file) {
-    return myOutlineData.get(file.getPath());
+    return getFileData(file.getPath()).myOutline;
   }
 
   void addOutlineListener(@NotNull final OutlineListener listener) {
@@ -285,61 +320,64 @@ public class DartServerData {
   }
 
   void onFileClosed(@NotNull final VirtualFile file) {
-    // do not remove from myErrorData, this map is always kept up-to-date for all files, not only for visible
-    myHighlightData.remove(file.getPath());
-    myNavigationData.remove(file.getPath());
-    myOverrideData.remove(file.getPath());
-    myImplementedClassData.remove(file.getPath());
-    myImplementedMemberData.remove(file.getPath());
-    myOutlineData.remove(file.getPath());
+    // do not remove errors, they are always kept up-to-date for all files, not only for visible
+    update(file.getPath(), data -> data.myErrors == null ? FileData.EMPTY : FileData.EMPTY.withErrors(data.myErrors));
   }
 
   void onFlushedResults(@NotNull final List<String> filePaths) {
-    if (!myErrorData.isEmpty()) {
-      for (String path : filePaths) {
-        myErrorData.remove(path);
-      }
-    }
-    if (!myHighlightData.isEmpty()) {
-      for (String path : filePaths) {
-        myHighlightData.remove(path);
-      }
-    }
-    if (!myNavigationData.isEmpty()) {
-      for (String path : filePaths) {
-        myNavigationData.remove(path);
-      }
-    }
-    if (!myOverrideData.isEmpty()) {
-      for (String path : filePaths) {
-        myOverrideData.remove(path);
-      }
-    }
-    if (!myImplementedClassData.isEmpty()) {
-      for (String path : filePaths) {
-        myImplementedClassData.remove(path);
-      }
-    }
-    if (!myImplementedMemberData.isEmpty()) {
-      for (String path : filePaths) {
-        myImplementedMemberData.remove(path);
-      }
-    }
-    if (!myOutlineData.isEmpty()) {
+    if (!myFileData.isEmpty()) {
       for (String path : filePaths) {
-        myOutlineData.remove(path);
+        myFileData.remove(path);
       }
     }
   }
 
   void clearData() {
-    myErrorData.clear();
-    myHighlightData.clear();
-    myNavigationData.clear();
-    myOverrideData.clear();
-    myImplementedClassData.clear();
-    myImplementedMemberData.clear();
-    myOutlineData.clear();
+    myFileData.clear();
+  }
+
+  @NotNull
+  private FileData getFileData(@NotNull final String filePath) {
+    final FileData data = myFileData.get(filePath);
+    return data != null ? data : FileData.EMPTY;
+  }
+
+  private void update(@NotNull final String filePath, @NotNull final Function<FileData, FileData> updater) {
+    final long start = System.nanoTime();
+    myFileData.compute(filePath, (path, data) -> {
+      final FileData newData = updater.fun(data != null ? data : FileData.EMPTY);
+      return newData == FileData.EMPTY ? null : newData;
+    });
+
+    final long nanos = System.nanoTime() - start;
+    myUpdateCounter.add(1);
+    myUpdateNanosTotal.addAndGet(nanos);
+    myUpdateNanosMax.accumulateAndGet(nanos, Math::max);
+  }
+
+  void outlineViewUpdated(final long nanos, final boolean changed) {
+    myOutlineViewUpdateCounter.add(1);
+    if (changed) myOutlineViewChangedUpdates.incrementAndGet();
+    myOutlineViewUpdateNanosTotal.addAndGet(nanos);
+    myOutlineViewUpdateNanosMax.accumulateAndGet(nanos, Math::max);
+  }
+
+  /**
+   * Human-readable statistics of notification handling, shown by the Analysis Server diagnostics action
+   */
+  @NotNull
+  String getStatistics() {
+    final long updates = myUpdateCounter.getTotal();
+    final long outlineViewUpdates = myOutlineViewUpdateCounter.getTotal();
+    return "Files with analysis data: " + myFileData.size() + "\n" +
+           "Data updates: " + updates + " total, " + myUpdateCounter.getRatePerSecond() + "/s\n" +
+           "Data update time: " + (updates == 0 ? 0 : myUpdateNanosTotal.get() / updates / 1000) + " \u00B5s average, " +
+           myUpdateNanosMax.get() / 1000 + " \u00B5s max\n" +
+           "Structure view updates: " + outlineViewUpdates + " total, " + myOutlineViewChangedUpdates.get() + " with visible changes, " +
+           myOutlineViewUpdateCounter.getRatePerSecond() + "/s\n" +
+           "Structure view update time: " +
+           (outlineViewUpdates == 0 ? 0 : myOutlineViewUpdateNanosTotal.get() / outlineViewUpdates / 1000) + " \u00B5s average, " +
+           myOutlineViewUpdateNanosMax.get() / 1000 + " \u00B5s max";
   }
 
   void onDocumentChanged(@NotNull final DocumentEvent e) {
@@ -349,107 +387,85 @@ public class DartServerData {
     final String filePath = file.getPath();
     myFilePathsWithUnsentChanges.add(filePath);
 
-    boolean someRegionDeleted = updateRegionsDeletingTouched(filePath, myErrorData.get(filePath), e);
+    final FileData data = myFileData.get(filePath);
+    if (data == null) return;
+
+    boolean someRegionDeleted = updateRegions(data.myErrors, e);
     if (someRegionDeleted) {
       myFilePathsWithLostErrorInfo.add(filePath);
     }
-    updateRegionsUpdatingTouched(myHighlightData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myNavigationData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myOverrideData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedClassData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedMemberData.get(filePath), e);
+    updateRegions(data.myHighlights, e);
+    updateRegions(data.myNavigation, e);
+    updateRegions(data.myOverrides, e);
+    updateRegions(data.myImplementedClasses, e);
+    updateRegions(data.myImplementedMembers, e);
     // A bit outdated outline data is not a big problem, updated data will come shortly
   }
 
   /**
    * @return {@code true} if at least one region has been deleted, {@code false} if updated only or nothing done at all
    */
-  private static boolean updateRegionsDeletingTouched(@NotNull final String filePath,
-                                                      @Nullable final List<? extends DartRegion> regions,
-                                                      @NotNull final DocumentEvent e) {
-    if (regions == null) return false;
-
-    boolean regionDeleted = false;
-
-    // delete touched regions, shift untouched
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
-
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
-
-      if (region instanceof DartNavigationRegion) {
-        // may be we'd better delete target touched by editing?
-        for (DartNavigationTarget target : ((DartNavigationRegion)region).getTargets()) {
-          if (target.myFile.equals(filePath) && target.myConvertedOffset >= eventOffset) {
-            target.myConvertedOffset += deltaLength;
-          }
-        }
-      }
+  private static boolean updateRegions(@Nullable final DartRegionStore<?> regions, @NotNull final DocumentEvent e) {
+    return regions != null && regions.documentChanged(e.getOffset(), e.getOldLength(), e.getNewLength());
+  }
 
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, delete touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          iterator.remove();
-          regionDeleted = true;
-        }
-      }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete touched.
-        final int eventRightOffset = eventOffset - deltaLength;
-
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (eventOffset < region.myOffset + region.myLength) {
-          iterator.remove();
-          regionDeleted = true;
-        }
-      }
+  /**
+   * Immutable snapshot of everything known about a file. Region stores shift their regions on document changes,
+   * but a new server notification always results in a new FileData instance.
+   */
+  private static final class FileData {
+    private static final FileData EMPTY = new FileData(null, null, null, null, null, null, null);
+
+    @Nullable private final DartRegionStore<DartError> myErrors;
+    @Nullable private final DartRegionStore<DartHighlightRegion> myHighlights;
+    @Nullable private final DartRegionStore<DartNavigationRegion> myNavigation;
+    @Nullable private final DartRegionStore<DartOverrideMember> myOverrides;
+    @Nullable private final DartRegionStore<DartRegion> myImplementedClasses;
+    @Nullable private final DartRegionStore<DartRegion> myImplementedMembers;
+    @Nullable private final Outline myOutline;
+
+    private FileData(@Nullable final DartRegionStore<DartError> errors,
+                     @Nullable final DartRegionStore<DartHighlightRegion> highlights,
+                     @Nullable final DartRegionStore<DartNavigationRegion> navigation,
+                     @Nullable final DartRegionStore<DartOverrideMember> overrides,
+                     @Nullable final DartRegionStore<DartRegion> implementedClasses,
+                     @Nullable final DartRegionStore<DartRegion> implementedMembers,
+                     @Nullable final Outline outline) {
+      myErrors = errors;
+      myHighlights = highlights;
+      myNavigation = navigation;
+      myOverrides = overrides;
+      myImplementedClasses = implementedClasses;
+      myImplementedMembers = implementedMembers;
+      myOutline = outline;
     }
 
-    return regionDeleted;
-  }
+    private FileData withErrors(@NotNull final DartRegionStore<DartError> errors) {
+      return new FileData(errors, myHighlights, myNavigation, myOverrides, myImplementedClasses, myImplementedMembers, myOutline);
+    }
 
-  private static void updateRegionsUpdatingTouched(@Nullable final List<? extends DartRegion> regions,
-                                                   @NotNull final DocumentEvent e) {
-    if (regions == null) return;
+    private FileData withHighlights(@NotNull final DartRegionStore<DartHighlightRegion> highlights) {
+      return new FileData(myErrors, highlights, myNavigation, myOverrides, myImplementedClasses, myImplementedMembers, myOutline);
+    }
 
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
+    private FileData withNavigation(@NotNull final DartRegionStore<DartNavigationRegion> navigation) {
+      return new FileData(myErrors, myHighlights, navigation, myOverrides, myImplementedClasses, myImplementedMembers, myOutline);
+    }
 
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
+    private FileData withOverrides(@NotNull final DartRegionStore<DartOverrideMember> overrides) {
+      return new FileData(myErrors, myHighlights, myNavigation, overrides, myImplementedClasses, myImplementedMembers, myOutline);
+    }
 
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, update touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          region.myLength += deltaLength;
-        }
-      }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete or update touched.
-        final int eventRightOffset = eventOffset - deltaLength;
-        final int regionRightOffset = region.myOffset + region.myLength;
-
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset <= eventOffset && eventRightOffset <= regionRightOffset && region.myLength != -deltaLength) {
-          region.myLength += deltaLength;
-        }
-        else if (eventOffset < regionRightOffset) {
-          iterator.remove();
-        }
-      }
+    private FileData withImplementedClasses(@NotNull final DartRegionStore<DartRegion> implementedClasses) {
+      return new FileData(myErrors, myHighlights, myNavigation, myOverrides, implementedClasses, myImplementedMembers, myOutline);
+    }
+
+    private FileData withImplementedMembers(@NotNull final DartRegionStore<DartRegion> implementedMembers) {
+      return new FileData(myErrors, myHighlights, myNavigation, myOverrides, myImplementedClasses, implementedMembers, myOutline);
+    }
+
+    private FileData withOutline(@NotNull final Outline outline) {
+      return new FileData(myErrors, myHighlights, myNavigation, myOverrides, myImplementedClasses, myImplementedMembers, outline);
     }
   }
 
@@ -549,11 +565,11 @@ public class DartServerData {
   }
 
   public static class DartNavigationTarget {
-    private final String myFile;
+    final String myFile;
     private final int myOriginalOffset;
     private final String myKind;
 
-    private int myConvertedOffset = -1;
+    int myConvertedOffset = -1;
 
     private DartNavigationTarget(@NotNull final NavigationTarget target) {
       myFile = FileUtil.toSystemIndependentName(target.getFile().trim()).intern();
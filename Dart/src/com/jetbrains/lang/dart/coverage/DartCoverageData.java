@@ -15,82 +15,145 @@
  */
 package com.jetbrains.lang.dart.coverage;
 
-import com.intellij.util.containers.hash.HashMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.openapi.progress.ProgressManager;
+import gnu.trove.THashMap;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
+/**
+ * Coverage data in the format produced by the {@code coverage} package: <code>{"coverage": [{"source": uri, "hits": [line, count, line, count, ...]}, ...]}</code>.
+ * The file is read in a streaming manner and hits of the same source are merged right away into a primitive per-line array,
+ * so neither the JSON tree nor boxed line numbers are kept in memory.
+ */
 public class DartCoverageData {
-  @Nullable private List<DartFileCoverageData> coverage;
+  @NotNull private final Map<String, DartFileCoverageData> myMergedFileCoverageData = new THashMap<>();
 
-  @Nullable
-  public List<DartFileCoverageData> getCoverage() {
-    return coverage;
+  private DartCoverageData() {
   }
 
-  public void setCoverage(@Nullable List<DartFileCoverageData> coverage) {
-    this.coverage = coverage;
+  /**
+   * @return merged coverage data, source uri -> line hits
+   */
+  @NotNull
+  public Map<String, DartFileCoverageData> getMergedDartFileCoverageData() {
+    return myMergedFileCoverageData;
   }
 
-  @NotNull
-  public Map<String, SortedMap<Integer, Integer>> getMergedDartFileCoverageData() {
-    Map<String, SortedMap<Integer, Integer>> mergedCoverageData = new HashMap<>();
-    List<DartFileCoverageData> coverageData = getCoverage();
-    if (coverageData != null) {
-      for (DartFileCoverageData item : coverageData) {
-        String source = item.getSource();
-        if (source == null) {
-          continue;
-        }
-        if (!mergedCoverageData.containsKey(source)) {
-          mergedCoverageData.put(source, new TreeMap<>());
-        }
+  /**
+   * @return {@code null} if there's no coverage data in the file
+   * @throws IllegalStateException if JSON is malformed or has unexpected structure
+   * @throws NumberFormatException if hits are not integers
+   */
+  @Nullable
+  public static DartCoverageData load(@NotNull final Reader reader) throws IOException {
+    final JsonReader jsonReader = new JsonReader(reader);
+    if (jsonReader.peek() != JsonToken.BEGIN_OBJECT) return null;
+
+    final DartCoverageData result = new DartCoverageData();
+    boolean coverageFound = false;
+    final TIntArrayList hitsBuffer = new TIntArrayList();
 
-        SortedMap<Integer, Integer> fileData = mergedCoverageData.get(source);
-        List<Integer> hits = item.getHits();
-        if (hits == null) {
-          continue;
+    jsonReader.beginObject();
+    while (jsonReader.hasNext()) {
+      if ("coverage".equals(jsonReader.nextName()) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+        coverageFound = true;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+          ProgressManager.checkCanceled();
+          result.readFileCoverage(jsonReader, hitsBuffer);
         }
-        for (int i = 0; i < hits.size(); i += 2) {
-          Integer lineNumber = hits.get(i);
-          Integer hitCount = hits.get(i + 1);
-          if (!fileData.containsKey(lineNumber)) {
-            fileData.put(lineNumber, 0);
-          }
-
-          fileData.put(lineNumber, fileData.get(lineNumber) + hitCount);
+        jsonReader.endArray();
+      }
+      else {
+        jsonReader.skipValue();
+      }
+    }
+    jsonReader.endObject();
+
+    return coverageFound ? result : null;
+  }
+
+  private void readFileCoverage(@NotNull final JsonReader jsonReader, @NotNull final TIntArrayList hitsBuffer) throws IOException {
+    String source = null;
+    boolean hasHits = false;
+    hitsBuffer.resetQuick();
+
+    jsonReader.beginObject();
+    while (jsonReader.hasNext()) {
+      final String name = jsonReader.nextName();
+      if ("source".equals(name) && jsonReader.peek() == JsonToken.STRING) {
+        source = jsonReader.nextString();
+      }
+      else if ("hits".equals(name) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+        hasHits = true;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+          hitsBuffer.add(jsonReader.nextInt());
         }
+        jsonReader.endArray();
+      }
+      else {
+        jsonReader.skipValue();
       }
     }
+    jsonReader.endObject();
 
-    return mergedCoverageData;
+    if (source == null) return;
+
+    DartFileCoverageData fileData = myMergedFileCoverageData.get(source);
+    if (fileData == null) {
+      fileData = new DartFileCoverageData();
+      myMergedFileCoverageData.put(source, fileData);
+    }
+
+    if (hasHits) {
+      for (int i = 0; i + 1 < hitsBuffer.size(); i += 2) {
+        fileData.addHits(hitsBuffer.getQuick(i), hitsBuffer.getQuick(i + 1));
+      }
+    }
   }
 }
 
 
 class DartFileCoverageData {
-  @Nullable private String source;
-  @Nullable private List<Integer> hits;
+  private static final int NO_DATA = -1;
 
-  @Nullable
-  public String getSource() {
-    return source;
+  @NotNull private int[] myLineHits = new int[0];
+  private int myMaxLine = -1;
+
+  void addHits(final int line, final int hits) {
+    if (line < 0) return;
+
+    if (line >= myLineHits.length) {
+      final int oldLength = myLineHits.length;
+      myLineHits = Arrays.copyOf(myLineHits, Math.max(line + 1, oldLength * 2));
+      Arrays.fill(myLineHits, oldLength, myLineHits.length, NO_DATA);
+    }
+
+    myLineHits[line] = myLineHits[line] == NO_DATA ? hits : myLineHits[line] + hits;
+    myMaxLine = Math.max(myMaxLine, line);
   }
 
-  public void setSource(@Nullable String source) {
-    this.source = source;
+  /**
+   * @return max line number that has coverage data, or -1 if there's no data at all
+   */
+  int getMaxLine() {
+    return myMaxLine;
   }
 
-  @Nullable
-  public List<Integer> getHits() {
-    return hits;
+  boolean hasData(final int line) {
+    return line <= myMaxLine && myLineHits[line] != NO_DATA;
   }
 
-  public void setHits(@Nullable List<Integer> hits) {
-    this.hits = hits;
+  int getHits(final int line) {
+    return myLineHits[line];
   }
-}
\ No newline at end of file
+}
@@ -15,8 +15,6 @@
  */
 package com.jetbrains.lang.dart.coverage;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
 import com.intellij.coverage.CoverageEngine;
 import com.intellij.coverage.CoverageRunner;
 import com.intellij.coverage.CoverageSuite;
@@ -30,15 +28,15 @@ import com.intellij.rt.coverage.data.ClassData;
 import com.intellij.rt.coverage.data.LineData;
 import com.intellij.rt.coverage.data.ProjectData;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import com.jetbrains.lang.dart.analyzer.DartExecutionUriMapper;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
 
 public class DartCoverageRunner extends CoverageRunner {
   private static final String ID = "DartCoverageRunner";
@@ -97,37 +95,41 @@ public class DartCoverageRunner extends CoverageRunner {
 
     final ProjectData projectData = new ProjectData();
 
-    try {
-      DartCoverageData data = new Gson().fromJson(new BufferedReader(new FileReader(sessionDataFile)), DartCoverageData.class);
+    try (Reader reader = new BufferedReader(new FileReader(sessionDataFile))) {
+      final DartCoverageData data = DartCoverageData.load(reader);
       if (data == null) {
         LOG.warn("Coverage file does not contain valid data.");
         return null;
       }
 
-      for (Map.Entry<String, SortedMap<Integer, Integer>> entry : data.getMergedDartFileCoverageData().entrySet()) {
+      final Map<String, DartFileCoverageData> mergedData = data.getMergedDartFileCoverageData();
+      final Map<String, String> uriToFilePath = mapUris(project, contextId, mergedData.keySet());
+
+      for (Map.Entry<String, DartFileCoverageData> entry : mergedData.entrySet()) {
         ProgressManager.checkCanceled();
 
-        String filePath = getFileForUri(project, contextId, entry.getKey());
+        String filePath = uriToFilePath.get(entry.getKey());
         if (filePath == null) {
           // File is not found.
           continue;
         }
-        SortedMap<Integer, Integer> lineHits = entry.getValue();
+        DartFileCoverageData lineHits = entry.getValue();
         ClassData classData = projectData.getOrCreateClassData(filePath);
-        if (lineHits.size() == 0) {
+        if (lineHits.getMaxLine() < 0) {
           classData.setLines(new LineData[1]);
           continue;
         }
-        LineData[] lines = new LineData[lineHits.lastKey() + 1];
-        for (Map.Entry<Integer, Integer> hit : lineHits.entrySet()) {
-          LineData lineData = new LineData(hit.getKey(), null);
-          lineData.setHits(hit.getValue());
-          lines[hit.getKey()] = lineData;
+        LineData[] lines = new LineData[lineHits.getMaxLine() + 1];
+        for (int line = 0; line < lines.length; line++) {
+          if (!lineHits.hasData(line)) continue;
+          LineData lineData = new LineData(line, null);
+          lineData.setHits(lineHits.getHits(line));
+          lines[line] = lineData;
         }
         classData.setLines(lines);
       }
     }
-    catch (FileNotFoundException | JsonSyntaxException e) {
+    catch (IOException | IllegalStateException | NumberFormatException e) {
       LOG.warn(e);
     }
     finally {
@@ -137,14 +139,20 @@ public class DartCoverageRunner extends CoverageRunner {
     return projectData;
   }
 
-  @Nullable
-  private static String getFileForUri(@NotNull final Project project, @NotNull final String contextId, @NotNull final String uri) {
-    if (uri.startsWith("dart:_") || uri.startsWith("dart:") && uri.contains("-patch/")) {
-      // dart:_builtin or dart:core-patch/core_patch.dart
-      return null;
+  @NotNull
+  private static Map<String, String> mapUris(@NotNull final Project project,
+                                             @NotNull final String contextId,
+                                             @NotNull final Collection<String> uris) {
+    final List<String> urisToMap = new ArrayList<>(uris.size());
+    for (String uri : uris) {
+      if (uri.startsWith("dart:_") || uri.startsWith("dart:") && uri.contains("-patch/")) {
+        // dart:_builtin or dart:core-patch/core_patch.dart
+        continue;
+      }
+      urisToMap.add(uri);
     }
 
-    return DartAnalysisServerService.getInstance(project).execution_mapUri(contextId, null, uri);
+    return new DartExecutionUriMapper(project, contextId).getFilePaths(urisToMap);
   }
 
   @NotNull
@@ -87,6 +87,13 @@ public class DartQuickFixSet {
       }
     };
 
-    DartAnalysisServerService.getInstance(myPsiManager.getProject()).askForFixesAndWaitABitIfReceivedQuickly(myFile, myOffset, consumer);
+    // fixes for another error in the file may be requested meanwhile and supersede this request, then ask again next time
+    final Runnable onSuperseded = () -> {
+      myPsiModCountWhenRequestSent = -1;
+      myVfsModCountWhenRequestSent = -1;
+    };
+
+    DartAnalysisServerService.getInstance(myPsiManager.getProject())
+      .askForFixesAndWaitABitIfReceivedQuickly(myFile, myOffset, consumer, onSuperseded);
   }
 }
@@ -6,7 +6,6 @@ import com.intellij.openapi.project.Project;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.ArrayUtil;
 import com.jetbrains.lang.dart.ide.index.DartClassIndex;
-import com.jetbrains.lang.dart.psi.DartComponentName;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
@@ -26,7 +25,7 @@ public class DartClassContributor implements ChooseByNameContributor {
   @Override
   public NavigationItem[] getItemsByName(String name, String pattern, Project project, boolean includeNonProjectItems) {
     final GlobalSearchScope scope = includeNonProjectItems ? GlobalSearchScope.allScope(project) : GlobalSearchScope.projectScope(project);
-    final Collection<DartComponentName> result = DartClassIndex.getItemsByName(name, project, scope);
+    final Collection<NavigationItem> result = DartClassIndex.getNavigationItemsByName(name, project, scope);
     if (result.size() == 0) {
       return NavigationItem.EMPTY_NAVIGATION_ITEM_ARRAY;
     }
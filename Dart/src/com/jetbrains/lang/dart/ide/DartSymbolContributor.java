@@ -5,7 +5,6 @@ import com.intellij.navigation.NavigationItem;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.jetbrains.lang.dart.ide.index.DartSymbolIndex;
-import com.jetbrains.lang.dart.psi.DartComponentName;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
@@ -25,7 +24,7 @@ public class DartSymbolContributor implements ChooseByNameContributor {
                                          @NotNull final Project project,
                                          final boolean includeNonProjectItems) {
     final GlobalSearchScope scope = includeNonProjectItems ? GlobalSearchScope.allScope(project) : GlobalSearchScope.projectScope(project);
-    final Collection<DartComponentName> result = DartSymbolIndex.getItemsByName(name, project, scope);
+    final Collection<NavigationItem> result = DartSymbolIndex.getNavigationItemsByName(name, project, scope);
     return result.toArray(NavigationItem.EMPTY_NAVIGATION_ITEM_ARRAY);
   }
 }
@@ -1,5 +1,6 @@
 package com.jetbrains.lang.dart.ide.actions;
 
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ex.ApplicationManagerEx;
 import com.intellij.openapi.command.CommandProcessor;
@@ -20,12 +21,13 @@ import com.intellij.psi.codeStyle.CodeStyleSettingsManager;
 import com.jetbrains.lang.dart.DartBundle;
 import com.jetbrains.lang.dart.DartLanguage;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
-import gnu.trove.THashMap;
 import org.dartlang.analysis.server.protocol.SourceEdit;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DartStyleAction extends AbstractDartFileProcessingAction {
 
@@ -102,27 +104,29 @@ public class DartStyleAction extends AbstractDartFileProcessingAction {
 
   // keep public to be accessible in 3rd party plugins
   public static void runDartfmt(@NotNull final Project project, @NotNull final List<VirtualFile> dartFiles) {
-    final Map<VirtualFile, String> fileToNewContentMap = new THashMap<>();
+    final Map<VirtualFile, String> fileToNewContentMap = new ConcurrentHashMap<>();
     final int lineLength = getRightMargin(project);
 
+    // Files are independent, so edit_format requests are sent concurrently: the server still formats them one by one, but it doesn't
+    // wait for the IDE to receive each result and send the next request. All documents are updated later in a single command.
     final Runnable runnable = () -> {
-      double fraction = 0.0;
-      for (final VirtualFile virtualFile : dartFiles) {
-        fraction += 1.0;
-        final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
-        if (indicator != null) {
-          indicator.checkCanceled();
-          indicator.setFraction(fraction / dartFiles.size());
-          indicator.setText2(FileUtil.toSystemDependentName(virtualFile.getPath()));
-        }
+      final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+      final AtomicInteger processedCount = new AtomicInteger();
 
+      JobLauncher.getInstance().invokeConcurrentlyUnderProgress(dartFiles, indicator, false, virtualFile -> {
         final DartAnalysisServerService.FormatResult formatResult =
           DartAnalysisServerService.getInstance(project).edit_format(virtualFile, 0, 0, lineLength);
         if (formatResult != null && formatResult.getEdits() != null && formatResult.getEdits().size() == 1) {
           final String replacement = StringUtil.convertLineSeparators(formatResult.getEdits().get(0).getReplacement());
           fileToNewContentMap.put(virtualFile, replacement);
         }
-      }
+
+        if (indicator != null) {
+          indicator.setFraction((double)processedCount.incrementAndGet() / dartFiles.size());
+          indicator.setText2(FileUtil.toSystemDependentName(virtualFile.getPath()));
+        }
+        return true;
+      });
     };
 
     DartAnalysisServerService.getInstance(project).updateFilesContent();
@@ -134,12 +138,13 @@ public class DartStyleAction extends AbstractDartFileProcessingAction {
       final Runnable onSuccessRunnable = () -> {
         CommandProcessor.getInstance().markCurrentCommandAsGlobal(project);
 
-        for (Map.Entry<VirtualFile, String> entry : fileToNewContentMap.entrySet()) {
-          final VirtualFile file = entry.getKey();
-          final Document document = FileDocumentManager.getInstance().getDocument(file);
-          final String newContent = entry.getValue();
+        for (VirtualFile file : dartFiles) {
+          final String newContent = fileToNewContentMap.get(file);
+          if (newContent == null) continue;
 
-          if (document != null && newContent != null) {
+          // no need to reparse files that were formatted already
+          final Document document = FileDocumentManager.getInstance().getDocument(file);
+          if (document != null && !StringUtil.equals(document.getCharsSequence(), newContent)) {
             document.setText(newContent);
           }
         }
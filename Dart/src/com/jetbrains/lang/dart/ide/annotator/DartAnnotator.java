@@ -28,6 +28,7 @@ import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import com.jetbrains.lang.dart.analyzer.DartServerData;
 import com.jetbrains.lang.dart.fixes.DartQuickFixSet;
 import com.jetbrains.lang.dart.highlight.DartSyntaxHighlighterColors;
+import com.jetbrains.lang.dart.psi.DartFile;
 import com.jetbrains.lang.dart.psi.DartSymbolLiteralExpression;
 import com.jetbrains.lang.dart.psi.DartTernaryExpression;
 import com.jetbrains.lang.dart.sdk.DartSdk;
@@ -46,7 +47,8 @@ import java.util.Map;
 
 public class DartAnnotator implements Annotator {
 
-  private static final Key<Boolean> DART_SERVER_DATA_HANDLED = Key.create("DART_SERVER_DATA_HANDLED");
+  // null if not checked yet in the current session
+  private static final Key<Boolean> DART_SERVER_DATA_AVAILABLE = Key.create("DART_SERVER_DATA_AVAILABLE");
 
   private static final Map<String, String> HIGHLIGHTING_TYPE_MAP = new THashMap<>();
 
@@ -175,22 +177,36 @@ public class DartAnnotator implements Annotator {
     if (holder.isBatchMode()) return;
 
     final AnnotationSession session = holder.getCurrentAnnotationSession();
-    if (session.getUserData(DART_SERVER_DATA_HANDLED) != Boolean.TRUE) {
-      session.putUserData(DART_SERVER_DATA_HANDLED, Boolean.TRUE);
-
-      final VirtualFile vFile = element.getContainingFile().getVirtualFile();
+    final VirtualFile vFile = element.getContainingFile().getVirtualFile();
+    Boolean serverDataAvailable = session.getUserData(DART_SERVER_DATA_AVAILABLE);
+    if (serverDataAvailable == null) {
       final DartAnalysisServerService service = DartAnalysisServerService.getInstance(element.getProject());
-      if (canBeAnalyzedByServer(element.getProject(), vFile) && service.serverReadyForRequest(element.getProject())) {
+      serverDataAvailable = canBeAnalyzedByServer(element.getProject(), vFile) && service.serverReadyForRequest(element.getProject());
+      session.putUserData(DART_SERVER_DATA_AVAILABLE, serverDataAvailable);
+
+      if (serverDataAvailable) {
         service.updateFilesContent();
 
         if (ApplicationManager.getApplication().isUnitTestMode()) {
           service.waitForAnalysisToComplete_TESTS_ONLY(vFile);
         }
 
-        applyServerHighlighting(vFile, holder);
+        if (!(session.getFile() instanceof DartFile)) {
+          // Dart code embedded in other files is highlighted at once
+          applyServerHighlighting(vFile, holder, 0, Integer.MAX_VALUE);
+        }
       }
     }
 
+    if (serverDataAvailable && element.getParent() instanceof DartFile) {
+      // Server regions are applied by top-level elements of the file, each region when the element it starts in is visited,
+      // so that a pass doesn't walk all regions of a big file at once.
+      final TextRange range = element.getTextRange();
+      applyServerHighlighting(vFile, holder,
+                              element.getPrevSibling() == null ? 0 : range.getStartOffset(),
+                              element.getNextSibling() == null ? Integer.MAX_VALUE : range.getEndOffset());
+    }
+
     if (DartTokenTypes.COLON == element.getNode().getElementType() && element.getParent() instanceof DartTernaryExpression) {
       holder.createInfoAnnotation(element, null).setTextAttributes(DartSyntaxHighlighterColors.OPERATION_SIGN);
       return;
@@ -225,11 +241,17 @@ public class DartAnnotator implements Annotator {
     }
   }
 
-  private static void applyServerHighlighting(@NotNull final VirtualFile file, @NotNull final AnnotationHolder holder) {
+  /**
+   * Applies errors and highlight regions with offset in the range [{@code startOffset}, {@code endOffset})
+   */
+  private static void applyServerHighlighting(@NotNull final VirtualFile file,
+                                              @NotNull final AnnotationHolder holder,
+                                              final int startOffset,
+                                              final int endOffset) {
     final PsiFile psiFile = holder.getCurrentAnnotationSession().getFile();
 
     final DartAnalysisServerService das = DartAnalysisServerService.getInstance(psiFile.getProject());
-    for (DartServerData.DartError error : das.getErrors(file)) {
+    for (DartServerData.DartError error : das.getErrors(file, startOffset, endOffset)) {
       if (shouldIgnoreMessageFromDartAnalyzer(file.getPath(), error.getAnalysisErrorFileSD())) continue;
 
       final Annotation annotation = createAnnotation(holder, error, psiFile.getTextLength());
@@ -248,7 +270,7 @@ public class DartAnnotator implements Annotator {
       }
     }
 
-    for (DartServerData.DartHighlightRegion region : das.getHighlight(file)) {
+    for (DartServerData.DartHighlightRegion region : das.getHighlight(file, startOffset, endOffset)) {
       final String attributeKey = HIGHLIGHTING_TYPE_MAP.get(region.getType());
       if (attributeKey != null) {
         final TextRange textRange = new TextRange(region.getOffset(), region.getOffset() + region.getLength());
@@ -42,7 +42,8 @@ public class DartDocumentationProvider implements DocumentationProvider {
     // in case of code completion 'element' comes from completion list and has nothing to do with 'originalElement',
     // but for Quick Doc in editor we should prefer building docs for 'originalElement' because such doc has info about propagated type
     final PsiElement elementForDocs = resolvesTo(originalElement, element) ? originalElement : element;
-    final HoverInformation hover = getSingleHover(elementForDocs);
+    // Quick Doc may be requested while a hover tooltip for another element is being computed, neither must supersede the other
+    final HoverInformation hover = getSingleHover(elementForDocs, false);
     if (hover != null) {
       return generateDocServer(hover);
     }
@@ -80,7 +81,7 @@ public class DartDocumentationProvider implements DocumentationProvider {
   @Override
   public String getQuickNavigateInfo(final PsiElement element, final PsiElement originalElement) {
     final PsiElement elementForInfo = resolvesTo(originalElement, element) ? originalElement : element;
-    final HoverInformation hover = getSingleHover(elementForInfo);
+    final HoverInformation hover = getSingleHover(elementForInfo, true);
     if (hover != null) {
       return buildHoverTextServer(hover);
     }
@@ -124,8 +125,13 @@ public class DartDocumentationProvider implements DocumentationProvider {
 
   @Nullable
   public static HoverInformation getSingleHover(@NotNull final PsiFile psiFile, final int offset) {
+    return getSingleHover(psiFile, offset, true);
+  }
+
+  @Nullable
+  private static HoverInformation getSingleHover(@NotNull final PsiFile psiFile, final int offset, final boolean supersedable) {
     final List<HoverInformation> hoverList =
-      DartAnalysisServerService.getInstance(psiFile.getProject()).analysis_getHover(psiFile.getVirtualFile(), offset);
+      DartAnalysisServerService.getInstance(psiFile.getProject()).analysis_getHover(psiFile.getVirtualFile(), offset, supersedable);
     if (hoverList.isEmpty()) {
       return null;
     }
@@ -193,11 +199,11 @@ public class DartDocumentationProvider implements DocumentationProvider {
   }
 
   @Nullable
-  private static HoverInformation getSingleHover(final PsiElement element) {
+  private static HoverInformation getSingleHover(final PsiElement element, final boolean supersedable) {
     if (element != null) {
       final PsiFile psiFile = element.getContainingFile();
       final int offset = element.getTextOffset();
-      return getSingleHover(psiFile, offset);
+      return getSingleHover(psiFile, offset, supersedable);
     }
     return null;
   }
@@ -21,6 +21,7 @@ import com.intellij.notification.Notifications;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.project.DumbAwareAction;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
 import com.jetbrains.lang.dart.DartBundle;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import org.dartlang.analysis.server.protocol.RequestError;
@@ -47,6 +48,12 @@ public class AnalysisServerDiagnosticsAction extends DumbAwareAction {
     // Get the current analysis server.
     DartAnalysisServerService server = DartAnalysisServerService.getInstance(project);
 
+    // Show client-side statistics, the server has no knowledge about them.
+    Notifications.Bus.notify(new Notification(GROUP_DISPLAY_ID,
+                                              DartBundle.message("analysis.server.show.diagnostics.client.statistics"),
+                                              StringUtil.escapeXml(server.getClientStatistics()).replace("\n", "<br/>"),
+                                              NotificationType.INFORMATION), project);
+
     // Ask it for the diagnostics port.
     server.diagnostic_getServerPort(new GetServerPortConsumer() {
       @Override
@@ -10,6 +10,8 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ui.ColumnInfo;
 import com.intellij.util.ui.ListTableModel;
 import com.jetbrains.lang.dart.ide.annotator.DartAnnotator;
+import gnu.trove.THashMap;
+import gnu.trove.TIntArrayList;
 import icons.DartIcons;
 import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.dartlang.analysis.server.protocol.AnalysisErrorSeverity;
@@ -69,6 +71,10 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
   // Having it in hand we can do bulk rows removal with a single fireTableRowsDeleted() call afterwards
   private final List<DartProblem> myItems;
 
+  // Problems of each file are stored continuously in myItems, files go in the same order as in this map.
+  // So rows of a file are found by summing up counts of preceding files instead of scanning all rows.
+  private final Map<String, Integer> myFilePathToProblemCount = new LinkedHashMap<>();
+
   private RowSorter.SortKey mySortKey = new RowSorter.SortKey(1, SortOrder.ASCENDING);
 
   private int myErrorCount = 0;
@@ -178,6 +184,7 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
       myItems.clear();
       fireTableRowsDeleted(0, rowCount - 1);
     }
+    myFilePathToProblemCount.clear();
 
     myErrorCount = 0;
     myWarningCount = 0;
@@ -188,104 +195,114 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
   }
 
   /**
-   * If {@code selectedProblem} was removed and similar one added again then this method returns the added one,
-   * so that the caller could update selected row in the table
+   * Converts errors to problems: filters out files that are not in project content and problems that should be ignored,
+   * and calculates problem locations used for sorting and filtering. Doesn't touch the table, so it's expected to be called
+   * in a background thread within a read action.
+   *
+   * @return file path -> problems, all files from {@code filePathToErrors} are present, probably with empty lists
    */
-  @Nullable
-  public DartProblem setErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
-                                                               @Nullable final DartProblem selectedProblem) {
-    final boolean selectedProblemRemoved = removeRowsForFilesInSet(filePathToErrors.keySet(), selectedProblem);
-    return addErrorsAndReturnReplacementForSelection(filePathToErrors, selectedProblemRemoved ? selectedProblem : null);
-  }
-
-  private boolean removeRowsForFilesInSet(@NotNull final Set<String> filePaths, @Nullable final DartProblem selectedProblem) {
-    // Looks for regions in table items that should be removed and removes them.
-    // For performance reasons we try to call removeRows() as rare as possible, that means with regions as big as possible.
-    // Logic is based on the fact that all errors for each particular file are stored continuously in the myItems model
-
-    boolean selectedProblemRemoved = false;
-
-    int matchedFilesCount = 0;
+  @NotNull
+  static Map<String, List<DartProblem>> createProblems(@NotNull final Project project,
+                                                       @NotNull final Map<String, List<AnalysisError>> filePathToErrors) {
+    final Map<String, List<DartProblem>> result = new THashMap<>(filePathToErrors.size());
+    final ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
 
-    for (int i = getRowCount() - 1; i >= 0; i--) {
-      final DartProblem problem = getItem(i);
-      if (filePaths.contains(problem.getSystemIndependentPath())) {
-        matchedFilesCount++;
-        final int lastRowToDelete = i;
+    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
+      final String filePath = entry.getKey();
+      final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
+      final List<AnalysisError> errors = vFile != null && fileIndex.isInContent(vFile) ? entry.getValue() : AnalysisError.EMPTY_LIST;
 
-        if (problem == selectedProblem) {
-          selectedProblemRemoved = true;
+      final List<DartProblem> problems = new ArrayList<>(errors.size());
+      for (AnalysisError analysisError : errors) {
+        if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getLocation().getFile())) {
+          continue;
         }
 
-        DartProblem lastProblemForCurrentFile = problem;
+        final DartProblem problem = new DartProblem(project, analysisError);
+        problem.getPresentableLocationWithoutLineNumber(); // initialize lazily calculated data while not in EDT
+        problems.add(problem);
+      }
 
-        int j = i - 1;
-        while (j >= 0) {
-          final DartProblem previousProblem = getItem(j);
+      result.put(filePath, problems);
+    }
 
-          if (previousProblem.getSystemIndependentPath().equals(lastProblemForCurrentFile.getSystemIndependentPath())) {
-            // previousProblem should be removed from the table as well
-            j--;
+    return result;
+  }
 
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
+  /**
+   * Replaces problems for files present in {@code filePathToProblems}, other files are not touched.
+   * Removed and added rows are reported by fine-grained events, so that the row sorter merges them into the sorted view
+   * instead of sorting all rows again.
+   * <p/>
+   * If {@code selectedProblem} was removed and similar one added again then this method returns the added one,
+   * so that the caller could update selected row in the table
+   */
+  @Nullable
+  public DartProblem setProblemsAndReturnReplacementForSelection(@NotNull final Map<String, List<DartProblem>> filePathToProblems,
+                                                                 @Nullable final DartProblem selectedProblem) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
 
-            continue;
-          }
+    final boolean selectedProblemRemoved = removeRowsForFilesInSet(filePathToProblems.keySet(), selectedProblem);
+    return addProblemsAndReturnReplacementForSelection(filePathToProblems, selectedProblemRemoved ? selectedProblem : null);
+  }
 
-          if (filePaths.contains(previousProblem.getSystemIndependentPath())) {
-            matchedFilesCount++;
-            // continue iterating the table because we met a range of problems for another file that also should be removed
-            lastProblemForCurrentFile = previousProblem;
-            j--;
+  private boolean removeRowsForFilesInSet(@NotNull final Set<String> filePaths, @Nullable final DartProblem selectedProblem) {
+    // Collects row ranges of the files to remove, adjacent ranges are merged so that removeRows() is called as rare as possible.
+    final TIntArrayList rangeStartsAndEnds = new TIntArrayList();
+    int matchedFilesCount = 0;
+    int offset = 0;
 
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
+    final Iterator<Map.Entry<String, Integer>> iterator = myFilePathToProblemCount.entrySet().iterator();
+    while (iterator.hasNext() && matchedFilesCount < filePaths.size()) {
+      final Map.Entry<String, Integer> entry = iterator.next();
+      final int count = entry.getValue();
 
-            continue;
-          }
+      if (filePaths.contains(entry.getKey())) {
+        matchedFilesCount++;
+        iterator.remove();
 
-          break;
+        final int size = rangeStartsAndEnds.size();
+        if (size > 0 && rangeStartsAndEnds.get(size - 1) == offset) {
+          rangeStartsAndEnds.set(size - 1, offset + count);
         }
+        else {
+          rangeStartsAndEnds.add(offset);
+          rangeStartsAndEnds.add(offset + count);
+        }
+      }
 
-        final int firstRowToDelete = j + 1;
-        removeRows(firstRowToDelete, lastRowToDelete);
+      offset += count;
+    }
 
-        if (matchedFilesCount == filePaths.size()) {
-          break;
-        }
+    boolean selectedProblemRemoved = false;
 
-        //noinspection AssignmentToForLoopParameter
-        i = j + 1; // rewind according to the amount of removed rows
+    // remove from the end so that start offsets of the remaining ranges stay valid
+    for (int i = rangeStartsAndEnds.size() - 2; i >= 0; i -= 2) {
+      final int firstRow = rangeStartsAndEnds.get(i);
+      final int lastRow = rangeStartsAndEnds.get(i + 1) - 1;
+      if (selectedProblem != null && !selectedProblemRemoved && myItems.subList(firstRow, lastRow + 1).contains(selectedProblem)) {
+        selectedProblemRemoved = true;
       }
+      removeRows(firstRow, lastRow);
     }
 
     return selectedProblemRemoved;
   }
 
   @Nullable
-  private DartProblem addErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
-                                                                @Nullable final DartProblem oldSelectedProblem) {
+  private DartProblem addProblemsAndReturnReplacementForSelection(@NotNull final Map<String, List<DartProblem>> filePathToProblems,
+                                                                  @Nullable final DartProblem oldSelectedProblem) {
     DartProblem newSelectedProblem = null;
 
     final List<DartProblem> problemsToAdd = new ArrayList<>();
-    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
-      final String filePath = entry.getKey();
-      final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
-      final List<AnalysisError> errors = vFile != null && ProjectFileIndex.getInstance(myProject).isInContent(vFile)
-                                         ? entry.getValue()
-                                         : AnalysisError.EMPTY_LIST;
-
-      for (AnalysisError analysisError : errors) {
-        if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getLocation().getFile())) {
-          continue;
-        }
+    for (Map.Entry<String, List<DartProblem>> entry : filePathToProblems.entrySet()) {
+      final List<DartProblem> problems = entry.getValue();
+      if (problems.isEmpty()) continue;
 
-        final DartProblem problem = new DartProblem(myProject, analysisError);
-        problemsToAdd.add(problem);
+      myFilePathToProblemCount.put(entry.getKey(), problems.size());
+      problemsToAdd.addAll(problems);
 
+      for (DartProblem problem : problems) {
         if (oldSelectedProblem != null &&
             lookSimilar(problem, oldSelectedProblem) &&
             (newSelectedProblem == null ||
@@ -24,6 +24,7 @@ import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.*;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
@@ -68,9 +69,10 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   private final DartProblemsPresentationHelper myPresentationHelper;
   private DartProblemsViewPanel myPanel;
 
-  private final Object myLock = new Object(); // use this lock to access myScheduledFilePathToErrors and myAlarm
+  private final Object myLock = new Object(); // use this lock to access myScheduledFilePathToErrors, myAlarm and myClearCount
   private final Map<String, List<AnalysisError>> myScheduledFilePathToErrors = new THashMap<>();
   private final Alarm myAlarm;
+  private int myClearCount; // problems prepared in background before the last clearAll() call are dropped
 
   private ToolWindow myToolWindow;
   private Icon myCurrentIcon;
@@ -80,32 +82,45 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   private Notification myNotification;
   private boolean myDisabledForSession = false;
 
+  // Runs in a pooled thread: problems are prepared there and only the table update is done in EDT
   private final Runnable myUpdateRunnable = new Runnable() {
     @Override
     public void run() {
-      if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
-        final int hash = DartAnalysisServerService.getInstance(myProject).getFilePathsWithErrorsHash();
-        if (myFilesWithErrorsHash != hash) {
-          // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
-          myFilesWithErrorsHash = hash;
-          ProjectView.getInstance(myProject).refresh();
-        }
-      }
-
       final Map<String, List<AnalysisError>> filePathToErrors;
+      final int clearCount;
       synchronized (myLock) {
         filePathToErrors = new THashMap<>(myScheduledFilePathToErrors);
         myScheduledFilePathToErrors.clear();
+        clearCount = myClearCount;
       }
 
-      myPanel.setErrors(filePathToErrors);
+      final Map<String, List<DartProblem>> filePathToProblems =
+        ReadAction.compute(() -> myProject.isDisposed() ? null : DartProblemsTableModel.createProblems(myProject, filePathToErrors));
+      if (filePathToProblems == null) return;
+
+      ApplicationManager.getApplication().invokeLater(() -> {
+        synchronized (myLock) {
+          if (clearCount != myClearCount) return;
+        }
+
+        if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
+          final int hash = DartAnalysisServerService.getInstance(myProject).getFilePathsWithErrorsHash();
+          if (myFilesWithErrorsHash != hash) {
+            // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
+            myFilesWithErrorsHash = hash;
+            ProjectView.getInstance(myProject).refresh();
+          }
+        }
+
+        myPanel.setProblems(filePathToProblems);
+      }, ModalityState.NON_MODAL, myProject.getDisposed());
     }
   };
 
   public DartProblemsView(@NotNull final Project project, @NotNull final ToolWindowManager toolWindowManager) {
     myProject = project;
     myPresentationHelper = new DartProblemsPresentationHelper(project);
-    myAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
+    myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
     Disposer.register(project, myAlarm);
 
     UIUtil.invokeLaterIfNeeded(() -> {
@@ -280,7 +295,7 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   public void updateErrorsForFile(@NotNull final String filePath, @NotNull final List<AnalysisError> errors) {
     synchronized (myLock) {
       if (myScheduledFilePathToErrors.isEmpty()) {
-        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD, ModalityState.NON_MODAL);
+        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD);
       }
 
       myScheduledFilePathToErrors.put(filePath, errors);
@@ -295,6 +310,7 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
     synchronized (myLock) {
       myAlarm.cancelAllRequests();
       myScheduledFilePathToErrors.clear();
+      myClearCount++;
     }
 
     myPanel.clearAll();
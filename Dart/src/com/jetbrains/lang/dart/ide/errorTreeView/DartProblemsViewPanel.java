@@ -40,7 +40,6 @@ import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import com.jetbrains.lang.dart.assists.AssistUtils;
 import com.jetbrains.lang.dart.assists.DartSourceEditException;
 import icons.DartIcons;
-import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.dartlang.analysis.server.protocol.AnalysisErrorFixes;
 import org.dartlang.analysis.server.protocol.SourceChange;
 import org.jetbrains.annotations.NonNls;
@@ -114,6 +113,8 @@ public class DartProblemsViewPanel extends SimpleToolWindowPanel implements Data
 
     //noinspection unchecked
     ((DefaultRowSorter)table.getRowSorter()).setRowFilter(myPresentationHelper.getRowFilter());
+    // inserted and deleted rows are merged into the sorted view, otherwise each update of the model sorts all rows again
+    ((DefaultRowSorter)table.getRowSorter()).setSortsOnUpdates(true);
 
     table.getRowSorter().addRowSorterListener(e -> {
       final List<? extends RowSorter.SortKey> sortKeys = myTable.getRowSorter().getSortKeys();
@@ -355,11 +356,11 @@ public class DartProblemsViewPanel extends SimpleToolWindowPanel implements Data
     }
   }
 
-  public void setErrors(@NotNull final Map<String, List<AnalysisError>> filePathToErrors) {
+  public void setProblems(@NotNull final Map<String, List<DartProblem>> filePathToProblems) {
     final DartProblemsTableModel model = (DartProblemsTableModel)myTable.getModel();
     final DartProblem oldSelectedProblem = myTable.getSelectedObject();
 
-    final DartProblem updatedSelectedProblem = model.setErrorsAndReturnReplacementForSelection(filePathToErrors, oldSelectedProblem);
+    final DartProblem updatedSelectedProblem = model.setProblemsAndReturnReplacementForSelection(filePathToProblems, oldSelectedProblem);
 
     if (updatedSelectedProblem != null) {
       myTable.setSelection(Collections.singletonList(updatedSelectedProblem));
@@ -1,30 +1,28 @@
 package com.jetbrains.lang.dart.ide.index;
 
+import com.intellij.navigation.NavigationItem;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.EnumeratorStringDescriptor;
 import com.intellij.util.io.KeyDescriptor;
-import com.jetbrains.lang.dart.psi.DartClass;
 import com.jetbrains.lang.dart.psi.DartComponentName;
-import com.jetbrains.lang.dart.util.DartResolveUtil;
-import gnu.trove.THashMap;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
 
-public class DartClassIndex extends ScalarIndexExtension<String> {
-  public static final ID<String, Void> DART_CLASS_INDEX = ID.create("DartClassIndex");
-  private final DataIndexer<String, Void, FileContent> myDataIndexer = new MyDataIndexer();
+public class DartClassIndex extends FileBasedIndexExtension<String, List<DartSymbolInfo>> {
+  public static final ID<String, List<DartSymbolInfo>> DART_CLASS_INDEX = ID.create("DartClassIndex");
+  private final DataIndexer<String, List<DartSymbolInfo>, FileContent> myDataIndexer = new MyDataIndexer();
+  private final DataExternalizer<List<DartSymbolInfo>> myExternalizer = new DartSymbolInfoListExternalizer();
 
   @NotNull
   @Override
-  public ID<String, Void> getName() {
+  public ID<String, List<DartSymbolInfo>> getName() {
     return DART_CLASS_INDEX;
   }
 
@@ -35,7 +33,7 @@ public class DartClassIndex extends ScalarIndexExtension<String> {
 
   @NotNull
   @Override
-  public DataIndexer<String, Void, FileContent> getIndexer() {
+  public DataIndexer<String, List<DartSymbolInfo>, FileContent> getIndexer() {
     return myDataIndexer;
   }
 
@@ -45,6 +43,12 @@ public class DartClassIndex extends ScalarIndexExtension<String> {
     return EnumeratorStringDescriptor.INSTANCE;
   }
 
+  @NotNull
+  @Override
+  public DataExternalizer<List<DartSymbolInfo>> getValueExternalizer() {
+    return myExternalizer;
+  }
+
   @NotNull
   @Override
   public FileBasedIndex.InputFilter getInputFilter() {
@@ -60,33 +64,46 @@ public class DartClassIndex extends ScalarIndexExtension<String> {
     return FileBasedIndex.getInstance().getAllKeys(DART_CLASS_INDEX, project);
   }
 
+  /**
+   * Doesn't parse files, navigation items are created from the index data.
+   */
+  @NotNull
+  public static List<NavigationItem> getNavigationItemsByName(@NotNull final String name,
+                                                              @NotNull final Project project,
+                                                              @NotNull final GlobalSearchScope searchScope) {
+    final List<NavigationItem> result = new ArrayList<>();
+    FileBasedIndex.getInstance().processValues(DART_CLASS_INDEX, name, null, (file, infos) -> {
+      for (DartSymbolInfo info : infos) {
+        result.add(new DartSymbolNavigationItem(project, file, name, info));
+      }
+      return true;
+    }, searchScope);
+    return result;
+  }
+
   public static List<DartComponentName> getItemsByName(String name, Project project, GlobalSearchScope searchScope) {
-    final Collection<VirtualFile> files =
-      FileBasedIndex.getInstance().getContainingFiles(DART_CLASS_INDEX, name, searchScope);
     final Set<DartComponentName> result = new THashSet<>();
-    for (VirtualFile vFile : files) {
-      final PsiFile psiFile = PsiManager.getInstance(project).findFile(vFile);
-      for (PsiElement root : DartResolveUtil.findDartRoots(psiFile)) {
-        for (DartClass component : DartResolveUtil.getClassDeclarations(root)) {
-          if (name.equals(component.getName())) {
-            result.add(component.getComponentName());
-          }
+    final PsiManager psiManager = PsiManager.getInstance(project);
+    FileBasedIndex.getInstance().processValues(DART_CLASS_INDEX, name, null, (file, infos) -> {
+      final PsiFile psiFile = psiManager.findFile(file);
+      if (psiFile == null) return true;
+
+      for (DartSymbolInfo info : infos) {
+        final DartComponentName componentName = DartIndexUtil.findComponentName(psiFile, info.getNameOffset(), name);
+        if (componentName != null) {
+          result.add(componentName);
         }
       }
-    }
+      return true;
+    }, searchScope);
     return new ArrayList<>(result);
   }
 
-  private static class MyDataIndexer implements DataIndexer<String, Void, FileContent> {
+  private static class MyDataIndexer implements DataIndexer<String, List<DartSymbolInfo>, FileContent> {
     @Override
     @NotNull
-    public Map<String, Void> map(@NotNull final FileContent inputData) {
-      DartFileIndexData indexData = DartIndexUtil.indexFile(inputData);
-      final Map<String, Void> result = new THashMap<>();
-      for (String componentName : indexData.getClassNames()) {
-        result.put(componentName, null);
-      }
-      return result;
+    public Map<String, List<DartSymbolInfo>> map(@NotNull final FileContent inputData) {
+      return DartIndexUtil.indexFile(inputData).getClassInfos();
     }
   }
 }
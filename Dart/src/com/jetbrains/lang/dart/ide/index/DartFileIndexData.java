@@ -1,5 +1,6 @@
 package com.jetbrains.lang.dart.ide.index;
 
+import com.intellij.util.SmartList;
 import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -9,21 +10,21 @@ import java.util.List;
 import java.util.Map;
 
 public class DartFileIndexData {
-  private final List<String> myClassNames = new ArrayList<>();
+  private final Map<String, List<DartSymbolInfo>> myClassInfos = new THashMap<>();
   private final List<DartImportOrExportInfo> myImportAndExportInfos = new ArrayList<>();
   private final Map<String, DartComponentInfo> myComponentInfoMap = new THashMap<>();
   private String myLibraryName;
   private final List<String> myPartUris = new ArrayList<>();
-  private final List<String> mySymbols = new ArrayList<>();
+  private final Map<String, List<DartSymbolInfo>> mySymbolInfos = new THashMap<>();
   private boolean myIsPart;
 
-  public List<String> getClassNames() {
-    return myClassNames;
+  public Map<String, List<DartSymbolInfo>> getClassInfos() {
+    return myClassInfos;
   }
 
-  public void addClassName(@Nullable String name) {
+  public void addClassInfo(@Nullable String name, @NotNull DartSymbolInfo info) {
     if (name != null) {
-      myClassNames.add(name);
+      myClassInfos.computeIfAbsent(name, k -> new SmartList<>()).add(info);
     }
   }
 
@@ -62,13 +63,13 @@ public class DartFileIndexData {
     myPartUris.add(partUri);
   }
 
-  public List<String> getSymbols() {
-    return mySymbols;
+  public Map<String, List<DartSymbolInfo>> getSymbolInfos() {
+    return mySymbolInfos;
   }
 
-  public void addSymbol(@Nullable String name) {
+  public void addSymbolInfo(@Nullable String name, @NotNull DartSymbolInfo info) {
     if (name != null) {
-      mySymbols.add(name);
+      mySymbolInfos.computeIfAbsent(name, k -> new SmartList<>()).add(info);
     }
   }
 
@@ -11,6 +11,7 @@ import com.jetbrains.lang.dart.util.DartControlFlowUtil;
 import com.jetbrains.lang.dart.util.DartResolveUtil;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Set;
 
@@ -18,7 +19,7 @@ import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
 
 public class DartIndexUtil {
   // inc when change parser
-  public static final int INDEX_VERSION = 23;
+  public static final int INDEX_VERSION = 24;
 
   private static final Key<DartFileIndexData> ourDartCachesData = Key.create("dart.caches.index.data");
 
@@ -41,6 +42,9 @@ public class DartIndexUtil {
     result.setLibraryName(DartResolveUtil.getLibraryName(psiFile));
     result.setIsPart(PsiTreeUtil.getChildOfType(psiFile, DartPartOfStatement.class) != null);
 
+    // top-level declarations in parts are shown in Go to Symbol/Class with the library name as location
+    final String topLevelContainerName = result.isPart() ? result.getLibraryName() : null;
+
     for (PsiElement rootElement : DartResolveUtil.findDartRoots(psiFile)) {
       PsiElement[] children = rootElement.getChildren();
 
@@ -50,24 +54,25 @@ public class DartIndexUtil {
           continue;
         }
 
-        result.addSymbol(name);
-
         PsiElement parent = componentName.getParent();
         final DartComponentType type = DartComponentType.typeOf(parent);
+        final DartSymbolInfo symbolInfo = new DartSymbolInfo(componentName.getTextOffset(), type, topLevelContainerName);
+        result.addSymbolInfo(name, symbolInfo);
+
         if (type != null) {
           result.addComponentInfo(name, new DartComponentInfo(type, result.getLibraryName()));
         }
         if (parent instanceof DartClass) {
-          result.addClassName(name);
+          result.addClassInfo(name, symbolInfo);
 
           if (((DartClass)parent).isEnum()) {
             for (DartEnumConstantDeclaration enumConstantDeclaration : ((DartClass)parent).getEnumConstantDeclarationList()) {
-              result.addSymbol(enumConstantDeclaration.getName());
+              addMemberSymbolInfo(result, enumConstantDeclaration, name);
             }
           }
           else {
             for (DartComponent subComponent : DartResolveUtil.getNamedSubComponents((DartClass)parent)) {
-              result.addSymbol(subComponent.getName());
+              addMemberSymbolInfo(result, subComponent, name);
             }
           }
         }
@@ -85,6 +90,28 @@ public class DartIndexUtil {
     return result;
   }
 
+  /**
+   * Finds the declaration name at the offset stored in {@link DartSymbolInfo}.
+   */
+  @Nullable
+  static DartComponentName findComponentName(@NotNull final PsiFile psiFile, final int nameOffset, @NotNull final String name) {
+    final PsiElement element = psiFile.findElementAt(nameOffset);
+    final DartComponentName componentName = PsiTreeUtil.getParentOfType(element, DartComponentName.class, false);
+    return componentName != null && name.equals(componentName.getName()) ? componentName : null;
+  }
+
+  private static void addMemberSymbolInfo(@NotNull final DartFileIndexData result,
+                                          @NotNull final DartComponent member,
+                                          @NotNull final String className) {
+    final String name = member.getName();
+    if (name == null) return;
+
+    // unnamed constructor is found as the class itself
+    if (member.isConstructor() && name.equals(className)) return;
+
+    result.addSymbolInfo(name, new DartSymbolInfo(member.getTextOffset(), DartComponentType.typeOf(member), className));
+  }
+
   private static void processImportOrExportStatement(final @NotNull DartFileIndexData result,
                                                      final @NotNull DartImportOrExportStatement importOrExportStatement) {
     final String uri = importOrExportStatement.getUriString();
@@ -1,33 +1,34 @@
 package com.jetbrains.lang.dart.ide.index;
 
+import com.intellij.navigation.NavigationItem;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.search.PsiElementProcessor;
-import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.CommonProcessors;
 import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.EnumeratorStringDescriptor;
 import com.intellij.util.io.KeyDescriptor;
-import com.jetbrains.lang.dart.psi.*;
-import com.jetbrains.lang.dart.util.DartResolveUtil;
-import gnu.trove.THashMap;
+import com.jetbrains.lang.dart.psi.DartComponentName;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
 
-public class DartSymbolIndex extends ScalarIndexExtension<String> {
-  public static final ID<String, Void> DART_SYMBOL_INDEX = ID.create("DartSymbolIndex");
-  private final DataIndexer<String, Void, FileContent> myDataIndexer = new MyDataIndexer();
+/**
+ * Names of top-level declarations, class members and enum constants. Values keep name offsets, so that Go to Symbol
+ * doesn't need to parse files, see {@link #getNavigationItemsByName(String, Project, GlobalSearchScope)}.
+ */
+public class DartSymbolIndex extends FileBasedIndexExtension<String, List<DartSymbolInfo>> {
+  public static final ID<String, List<DartSymbolInfo>> DART_SYMBOL_INDEX = ID.create("DartSymbolIndex");
+  private final DataIndexer<String, List<DartSymbolInfo>, FileContent> myDataIndexer = new MyDataIndexer();
+  private final DataExternalizer<List<DartSymbolInfo>> myExternalizer = new DartSymbolInfoListExternalizer();
 
   @NotNull
   @Override
-  public ID<String, Void> getName() {
+  public ID<String, List<DartSymbolInfo>> getName() {
     return DART_SYMBOL_INDEX;
   }
 
@@ -38,7 +39,7 @@ public class DartSymbolIndex extends ScalarIndexExtension<String> {
 
   @NotNull
   @Override
-  public DataIndexer<String, Void, FileContent> getIndexer() {
+  public DataIndexer<String, List<DartSymbolInfo>, FileContent> getIndexer() {
     return myDataIndexer;
   }
 
@@ -48,6 +49,12 @@ public class DartSymbolIndex extends ScalarIndexExtension<String> {
     return EnumeratorStringDescriptor.INSTANCE;
   }
 
+  @NotNull
+  @Override
+  public DataExternalizer<List<DartSymbolInfo>> getValueExternalizer() {
+    return myExternalizer;
+  }
+
   @NotNull
   @Override
   public FileBasedIndex.InputFilter getInputFilter() {
@@ -65,83 +72,48 @@ public class DartSymbolIndex extends ScalarIndexExtension<String> {
     return ArrayUtil.toStringArray(processor.getResults());
   }
 
+  /**
+   * Doesn't parse files, navigation items are created from the index data.
+   */
+  @NotNull
+  public static List<NavigationItem> getNavigationItemsByName(@NotNull final String name,
+                                                              @NotNull final Project project,
+                                                              @NotNull final GlobalSearchScope searchScope) {
+    final List<NavigationItem> result = new ArrayList<>();
+    FileBasedIndex.getInstance().processValues(DART_SYMBOL_INDEX, name, null, (file, infos) -> {
+      for (DartSymbolInfo info : infos) {
+        result.add(new DartSymbolNavigationItem(project, file, name, info));
+      }
+      return true;
+    }, searchScope);
+    return result;
+  }
+
   public static List<DartComponentName> getItemsByName(@NotNull final String name,
                                                        @NotNull final Project project,
                                                        @NotNull final GlobalSearchScope searchScope) {
-    final Collection<VirtualFile> files =
-      FileBasedIndex.getInstance().getContainingFiles(DART_SYMBOL_INDEX, name, searchScope);
     final Set<DartComponentName> result = new THashSet<>();
-    for (VirtualFile vFile : files) {
-      final PsiFile psiFile = PsiManager.getInstance(project).findFile(vFile);
-      for (PsiElement root : DartResolveUtil.findDartRoots(psiFile)) {
-        processComponents(root, component -> {
-          if (name.equals(component.getName())) {
-            result.add(component.getComponentName());
-          }
-          return true;
-        });
+    final PsiManager psiManager = PsiManager.getInstance(project);
+    FileBasedIndex.getInstance().processValues(DART_SYMBOL_INDEX, name, null, (file, infos) -> {
+      final PsiFile psiFile = psiManager.findFile(file);
+      if (psiFile == null) return true;
+
+      for (DartSymbolInfo info : infos) {
+        final DartComponentName componentName = DartIndexUtil.findComponentName(psiFile, info.getNameOffset(), name);
+        if (componentName != null) {
+          result.add(componentName);
+        }
       }
-    }
+      return true;
+    }, searchScope);
     return new ArrayList<>(result);
   }
 
-  private static class MyDataIndexer implements DataIndexer<String, Void, FileContent> {
+  private static class MyDataIndexer implements DataIndexer<String, List<DartSymbolInfo>, FileContent> {
     @Override
     @NotNull
-    public Map<String, Void> map(@NotNull final FileContent inputData) {
-      List<String> symbols = DartIndexUtil.indexFile(inputData).getSymbols();
-      final Map<String, Void> result = new THashMap<>();
-      for (String symbol : symbols) {
-        result.put(symbol, null);
-      }
-      return result;
+    public Map<String, List<DartSymbolInfo>> map(@NotNull final FileContent inputData) {
+      return DartIndexUtil.indexFile(inputData).getSymbolInfos();
     }
   }
-
-  private static void processComponents(PsiElement context, PsiElementProcessor<DartComponent> processor) {
-    // top-level components
-    final DartComponent[] components = PsiTreeUtil.getChildrenOfType(context, DartComponent.class);
-    if (components != null) {
-      for (DartComponent component : components) {
-        if (!processComponent(processor, component)) {
-          return;
-        }
-      }
-    }
-    // top-level variables
-    final DartVarDeclarationList[] varLists = PsiTreeUtil.getChildrenOfType(context, DartVarDeclarationList.class);
-    if (varLists != null) {
-      for (DartVarDeclarationList varList : varLists) {
-        if (!processComponent(processor, varList.getVarAccessDeclaration())) {
-          return;
-        }
-        for (DartVarDeclarationListPart part : varList.getVarDeclarationListPartList()) {
-          if (!processComponent(processor, part)) {
-            return;
-          }
-        }
-      }
-    }
-  }
-
-  private static boolean processComponent(PsiElementProcessor<DartComponent> processor, DartComponent component) {
-    final String componentName = component.getName();
-    if (componentName == null) {
-      return true;
-    }
-    if (!processor.execute(component)) {
-      return false;
-    }
-    if (component instanceof DartClass) {
-      for (DartComponent subComponent : DartResolveUtil.getNamedSubComponents((DartClass)component)) {
-        if (subComponent.isConstructor() && componentName.equals(subComponent.getName())) {
-          continue;
-        }
-        if (!processor.execute(subComponent)) {
-          return false;
-        }
-      }
-    }
-    return true;
-  }
 }
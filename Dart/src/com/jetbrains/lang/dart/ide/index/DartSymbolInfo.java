@@ -0,0 +1,59 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.jetbrains.lang.dart.DartComponentType;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Value of {@link DartSymbolIndex} and {@link DartClassIndex}: enough information about a declaration to show it in Go to Symbol/Class
+ * and to navigate to it without parsing the file.
+ */
+public class DartSymbolInfo {
+  private final int myNameOffset;
+  @Nullable private final DartComponentType myComponentType;
+  @Nullable private final String myContainerName;
+
+  /**
+   * @param containerName name of the enclosing class for class members, name of the library for top-level declarations in parts
+   */
+  public DartSymbolInfo(final int nameOffset, @Nullable final DartComponentType componentType, @Nullable final String containerName) {
+    myNameOffset = nameOffset;
+    myComponentType = componentType;
+    myContainerName = containerName;
+  }
+
+  public int getNameOffset() {
+    return myNameOffset;
+  }
+
+  @Nullable
+  public DartComponentType getComponentType() {
+    return myComponentType;
+  }
+
+  @Nullable
+  public String getContainerName() {
+    return myContainerName;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    DartSymbolInfo info = (DartSymbolInfo)o;
+
+    if (myNameOffset != info.myNameOffset) return false;
+    if (myComponentType != info.myComponentType) return false;
+    if (myContainerName != null ? !myContainerName.equals(info.myContainerName) : info.myContainerName != null) return false;
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = myNameOffset;
+    result = 31 * result + (myComponentType != null ? myComponentType.hashCode() : 0);
+    result = 31 * result + (myContainerName != null ? myContainerName.hashCode() : 0);
+    return result;
+  }
+}
@@ -0,0 +1,50 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.IOUtil;
+import com.jetbrains.lang.dart.DartComponentType;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DartSymbolInfoListExternalizer implements DataExternalizer<List<DartSymbolInfo>> {
+
+  @Override
+  public void save(@NotNull final DataOutput out, @NotNull final List<DartSymbolInfo> infos) throws IOException {
+    DataInputOutputUtil.writeINT(out, infos.size());
+    for (DartSymbolInfo info : infos) {
+      DataInputOutputUtil.writeINT(out, info.getNameOffset());
+      final DartComponentType dartComponentType = info.getComponentType();
+      DataInputOutputUtil.writeINT(out, dartComponentType == null ? -1 : dartComponentType.getKey());
+      final String containerName = info.getContainerName();
+      out.writeBoolean(containerName != null);
+      if (containerName != null) {
+        IOUtil.writeUTF(out, containerName);
+      }
+    }
+  }
+
+  @Override
+  public List<DartSymbolInfo> read(@NotNull DataInput in) throws IOException {
+    int size = DataInputOutputUtil.readINT(in);
+    if (size == 0) return Collections.emptyList();
+
+    List<DartSymbolInfo> result = new ArrayList<>(size);
+
+    for (int i = 0; i < size; i++) {
+      final int nameOffset = DataInputOutputUtil.readINT(in);
+      final int componentTypeKey = DataInputOutputUtil.readINT(in);
+      final boolean hasContainerName = in.readBoolean();
+      final String containerName = hasContainerName ? IOUtil.readUTF(in) : null;
+      result.add(new DartSymbolInfo(nameOffset, DartComponentType.valueOf(componentTypeKey), containerName));
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,108 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.navigation.ItemPresentation;
+import com.intellij.navigation.NavigationItem;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.lang.dart.DartComponentType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+
+/**
+ * Go to Symbol/Class item created from {@link DartSymbolInfo} without parsing the file.
+ */
+public class DartSymbolNavigationItem implements NavigationItem, ItemPresentation {
+  @NotNull private final Project myProject;
+  @NotNull private final VirtualFile myFile;
+  @NotNull private final String myName;
+  @NotNull private final DartSymbolInfo myInfo;
+
+  public DartSymbolNavigationItem(@NotNull final Project project,
+                                  @NotNull final VirtualFile file,
+                                  @NotNull final String name,
+                                  @NotNull final DartSymbolInfo info) {
+    myProject = project;
+    myFile = file;
+    myName = name;
+    myInfo = info;
+  }
+
+  @NotNull
+  public VirtualFile getFile() {
+    return myFile;
+  }
+
+  public int getNameOffset() {
+    return myInfo.getNameOffset();
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return myName;
+  }
+
+  @NotNull
+  @Override
+  public ItemPresentation getPresentation() {
+    return this;
+  }
+
+  @Override
+  public void navigate(final boolean requestFocus) {
+    new OpenFileDescriptor(myProject, myFile, myInfo.getNameOffset()).navigate(requestFocus);
+  }
+
+  @Override
+  public boolean canNavigate() {
+    return myFile.isValid();
+  }
+
+  @Override
+  public boolean canNavigateToSource() {
+    return canNavigate();
+  }
+
+  @NotNull
+  @Override
+  public String getPresentableText() {
+    final String containerName = myInfo.getContainerName();
+    if (myInfo.getComponentType() == DartComponentType.CONSTRUCTOR && containerName != null && !myName.startsWith(containerName + ".")) {
+      return containerName + "." + myName;
+    }
+    return myName;
+  }
+
+  @Nullable
+  @Override
+  public String getLocationString() {
+    return myInfo.getContainerName();
+  }
+
+  @Nullable
+  @Override
+  public Icon getIcon(final boolean unused) {
+    final DartComponentType type = myInfo.getComponentType();
+    return type == null ? null : type.getIcon();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final DartSymbolNavigationItem item = (DartSymbolNavigationItem)o;
+    return myFile.equals(item.myFile) && myName.equals(item.myName) && myInfo.equals(item.myInfo);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = myFile.hashCode();
+    result = 31 * result + myName.hashCode();
+    result = 31 * result + myInfo.hashCode();
+    return result;
+  }
+}
@@ -0,0 +1,92 @@
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compact form of the script token position table: sorted token positions with lines and columns in parallel int arrays,
+ * lookup is a binary search. Lines and columns are 0-based.
+ */
+public class DartTokenPosTable {
+  private final int[] myTokenPositions;
+  private final int[] myLines;
+  private final int[] myColumns;
+
+  /**
+   * @param tokenPosTable each subarray consists of a line number followed by (tokenPos, columnNumber) pairs,
+   *                      see https://github.com/dart-lang/vm_service_drivers/blob/master/dart/tool/service.md#script
+   */
+  public DartTokenPosTable(@NotNull final List<List<Integer>> tokenPosTable) {
+    int count = 0;
+    for (List<Integer> lineAndPairs : tokenPosTable) {
+      count += Math.max(0, (lineAndPairs.size() - 1) / 2);
+    }
+
+    // tokenPos in high bits, sequence number in low bits: sorting keeps the original order for equal token positions
+    final long[] keys = new long[count];
+    final int[] lines = new int[count];
+    final int[] columns = new int[count];
+
+    int index = 0;
+    for (List<Integer> lineAndPairs : tokenPosTable) {
+      final Iterator<Integer> iterator = lineAndPairs.iterator();
+      if (!iterator.hasNext()) continue;
+
+      final int line = Math.max(0, iterator.next() - 1);
+      while (iterator.hasNext()) {
+        final int tokenPos = iterator.next();
+        if (!iterator.hasNext()) break;
+        final int column = Math.max(0, iterator.next() - 1);
+
+        keys[index] = ((long)tokenPos << 32) | index;
+        lines[index] = line;
+        columns[index] = column;
+        index++;
+      }
+    }
+
+    Arrays.sort(keys, 0, index);
+
+    // if the same token position is listed more than once then the last one wins
+    int size = 0;
+    for (int i = 0; i < index; i++) {
+      if (i + 1 < index && (int)(keys[i + 1] >> 32) == (int)(keys[i] >> 32)) continue;
+      size++;
+    }
+
+    myTokenPositions = new int[size];
+    myLines = new int[size];
+    myColumns = new int[size];
+
+    int resultIndex = 0;
+    for (int i = 0; i < index; i++) {
+      final int tokenPos = (int)(keys[i] >> 32);
+      if (i + 1 < index && (int)(keys[i + 1] >> 32) == tokenPos) continue;
+
+      final int originalIndex = (int)keys[i];
+      myTokenPositions[resultIndex] = tokenPos;
+      myLines[resultIndex] = lines[originalIndex];
+      myColumns[resultIndex] = columns[originalIndex];
+      resultIndex++;
+    }
+  }
+
+  /**
+   * @return index to be passed to {@link #getLine(int)} and {@link #getColumn(int)}, or -1 if token position is not in the table
+   */
+  public int indexOf(final int tokenPos) {
+    final int index = Arrays.binarySearch(myTokenPositions, tokenPos);
+    return index >= 0 ? index : -1;
+  }
+
+  public int getLine(final int index) {
+    return myLines[index];
+  }
+
+  public int getColumn(final int index) {
+    return myColumns[index];
+  }
+}
@@ -13,7 +13,6 @@ import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
-import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -24,6 +23,7 @@ import com.intellij.psi.search.GlobalSearchScopesCore;
 import com.intellij.testFramework.LightVirtualFile;
 import com.intellij.util.PathUtil;
 import com.intellij.util.TimeoutUtil;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.xdebugger.*;
 import com.intellij.xdebugger.breakpoints.XBreakpointHandler;
 import com.intellij.xdebugger.evaluation.XDebuggerEditorsProvider;
@@ -32,6 +32,7 @@ import com.intellij.xdebugger.frame.XSuspendContext;
 import com.jetbrains.lang.dart.DartBundle;
 import com.jetbrains.lang.dart.DartFileType;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import com.jetbrains.lang.dart.analyzer.DartExecutionUriMapper;
 import com.jetbrains.lang.dart.ide.runner.DartConsoleFilter;
 import com.jetbrains.lang.dart.ide.runner.actions.DartPopFrameAction;
 import com.jetbrains.lang.dart.ide.runner.base.DartDebuggerEditorsProvider;
@@ -40,9 +41,7 @@ import com.jetbrains.lang.dart.ide.runner.server.vmService.frame.DartVmServiceSt
 import com.jetbrains.lang.dart.ide.runner.server.vmService.frame.DartVmServiceSuspendContext;
 import com.jetbrains.lang.dart.util.DartResolveUtil;
 import com.jetbrains.lang.dart.util.DartUrlResolver;
-import gnu.trove.THashMap;
 import gnu.trove.THashSet;
-import gnu.trove.TIntObjectHashMap;
 import org.dartlang.vm.service.VmService;
 import org.dartlang.vm.service.element.*;
 import org.dartlang.vm.service.logging.Logging;
@@ -55,6 +54,7 @@ import java.util.*;
 
 public class DartVmServiceDebugProcess extends XDebugProcess {
   private static final Logger LOG = Logger.getInstance(DartVmServiceDebugProcess.class.getName());
+  private static final int MAX_CACHED_SCRIPT_CONTENT_LENGTH = 16 * 1024 * 1024;
 
   @Nullable private final ExecutionResult myExecutionResult;
   @NotNull private final DartUrlResolver myDartUrlResolver;
@@ -70,11 +70,28 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
   @NotNull private final Set<String> mySuspendedIsolateIds = Collections.synchronizedSet(new THashSet<String>());
   private String myLatestCurrentIsolateId;
 
-  private final Map<String, LightVirtualFile> myScriptIdToContentMap = new THashMap<>();
-  private final Map<String, TIntObjectHashMap<Pair<Integer, Integer>>> myScriptIdToLinesAndColumnsMap =
-    new THashMap<>();
+  // sources of the scripts that are not available locally (SDK patch files, etc.), least recently used are dropped when their total length exceeds the limit
+  private final Map<String, LightVirtualFile> myScriptIdToContentMap = new LinkedHashMap<String, LightVirtualFile>(16, 0.75f, true) {
+    private long myContentLength;
+
+    @Override
+    public LightVirtualFile put(final String scriptId, final LightVirtualFile file) {
+      final LightVirtualFile oldFile = super.put(scriptId, file);
+      if (oldFile != null) myContentLength -= oldFile.getContent().length();
+      myContentLength += file.getContent().length();
+
+      final Iterator<LightVirtualFile> iterator = values().iterator();
+      while (myContentLength > MAX_CACHED_SCRIPT_CONTENT_LENGTH && size() > 1) {
+        myContentLength -= iterator.next().getContent().length();
+        iterator.remove();
+      }
+      return oldFile;
+    }
+  };
+  private final Map<String, DartTokenPosTable> myScriptIdToTokenPosTableMap = ContainerUtil.newConcurrentMap();
 
   @Nullable private final String myDASExecutionContextId;
+  @Nullable private final DartExecutionUriMapper myDASUriMapper;
   private final boolean myRemoteDebug;
   private final int myTimeout;
   @Nullable private final VirtualFile myCurrentWorkingDirectory;
@@ -126,6 +143,7 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
     });
 
     myDASExecutionContextId = dasExecutionContextId;
+    myDASUriMapper = dasExecutionContextId == null ? null : new DartExecutionUriMapper(session.getProject(), dasExecutionContextId);
 
     if (remoteDebug) {
       // TODO won't work since Dart SDK 1.22 because auth token in URL is required
@@ -466,9 +484,8 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
     result.add(file.getPath());
 
     // package: (if applicable)
-    if (myDASExecutionContextId != null) {
-      final String uriByServer =
-        DartAnalysisServerService.getInstance(getSession().getProject()).execution_mapUri(myDASExecutionContextId, file.getPath(), null);
+    if (myDASUriMapper != null) {
+      final String uriByServer = myDASUriMapper.getUri(file.getPath());
       if (uriByServer != null) {
         result.add(uriByServer);
       }
@@ -502,9 +519,8 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
     VirtualFile file = ReadAction.compute(() -> {
       String uri = scriptRef.getUri();
 
-      if (myDASExecutionContextId != null && !isDartPatchUri(uri)) {
-        final String path =
-          DartAnalysisServerService.getInstance(getSession().getProject()).execution_mapUri(myDASExecutionContextId, null, uri);
+      if (myDASUriMapper != null && !isDartPatchUri(uri)) {
+        final String path = myDASUriMapper.getFilePath(uri);
         if (path != null) {
           return LocalFileSystem.getInstance().findFileByPath(path);
         }
@@ -522,58 +538,80 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
     });
 
     if (file == null) {
-      file = myScriptIdToContentMap.get(scriptRef.getId());
+      synchronized (myScriptIdToContentMap) {
+        file = myScriptIdToContentMap.get(scriptRef.getId());
+      }
     }
 
-    TIntObjectHashMap<Pair<Integer, Integer>> tokenPosToLineAndColumn = myScriptIdToLinesAndColumnsMap.get(scriptRef.getId());
+    DartTokenPosTable tokenPosTable = myScriptIdToTokenPosTableMap.get(scriptRef.getId());
 
-    if (file != null && tokenPosToLineAndColumn != null) {
-      final Pair<Integer, Integer> lineAndColumn = tokenPosToLineAndColumn.get(tokenPos);
-      if (lineAndColumn == null) return XDebuggerUtil.getInstance().createPositionByOffset(file, 0);
-      return XDebuggerUtil.getInstance().createPosition(file, lineAndColumn.first, lineAndColumn.second);
-    }
+    if (file == null || tokenPosTable == null) {
+      final Script script = myVmServiceWrapper.getScriptSync(isolateId, scriptRef.getId());
+      if (script == null) return null;
 
-    final Script script = myVmServiceWrapper.getScriptSync(isolateId, scriptRef.getId());
-    if (script == null) return null;
+      if (file == null) {
+        file = new LightVirtualFile(PathUtil.getFileName(script.getUri()), DartFileType.INSTANCE, script.getSource());
+        ((LightVirtualFile)file).setWritable(false);
+        synchronized (myScriptIdToContentMap) {
+          myScriptIdToContentMap.put(scriptRef.getId(), (LightVirtualFile)file);
+        }
+      }
 
-    if (file == null) {
-      file = new LightVirtualFile(PathUtil.getFileName(script.getUri()), DartFileType.INSTANCE, script.getSource());
-      ((LightVirtualFile)file).setWritable(false);
-      myScriptIdToContentMap.put(scriptRef.getId(), (LightVirtualFile)file);
+      tokenPosTable = scriptLoaded(script);
     }
 
-    if (tokenPosToLineAndColumn == null) {
-      tokenPosToLineAndColumn = createTokenPosToLineAndColumnMap(script.getTokenPosTable());
-      myScriptIdToLinesAndColumnsMap.put(scriptRef.getId(), tokenPosToLineAndColumn);
-    }
+    final int index = tokenPosTable.indexOf(tokenPos);
+    if (index == -1) return XDebuggerUtil.getInstance().createPositionByOffset(file, 0);
+    return XDebuggerUtil.getInstance().createPosition(file, tokenPosTable.getLine(index), tokenPosTable.getColumn(index));
+  }
 
-    final Pair<Integer, Integer> lineAndColumn = tokenPosToLineAndColumn.get(tokenPos);
-    if (lineAndColumn == null) return XDebuggerUtil.getInstance().createPositionByOffset(file, 0);
-    return XDebuggerUtil.getInstance().createPosition(file, lineAndColumn.first, lineAndColumn.second);
+  /**
+   * Keeps token position table of the script in compact form, script itself is not retained
+   */
+  @NotNull
+  public DartTokenPosTable scriptLoaded(@NotNull final Script script) {
+    return myScriptIdToTokenPosTableMap.computeIfAbsent(script.getId(), id -> new DartTokenPosTable(script.getTokenPosTable()));
   }
 
-  private static boolean isDartPatchUri(@NotNull final String uri) {
-    // dart:_builtin or dart:core-patch/core_patch.dart
-    return uri.startsWith("dart:_") || uri.startsWith("dart:") && uri.contains("-patch/");
+  public boolean isScriptInfoCached(@NotNull final String scriptId) {
+    return myScriptIdToTokenPosTableMap.containsKey(scriptId);
   }
 
-  @NotNull
-  private static TIntObjectHashMap<Pair<Integer, Integer>> createTokenPosToLineAndColumnMap(@NotNull final List<List<Integer>> tokenPosTable) {
-    // Each subarray consists of a line number followed by (tokenPos, columnNumber) pairs
-    // see https://github.com/dart-lang/vm_service_drivers/blob/master/dart/tool/service.md#script
-    final TIntObjectHashMap<Pair<Integer, Integer>> result = new TIntObjectHashMap<>();
-
-    for (List<Integer> lineAndPairs : tokenPosTable) {
-      final Iterator<Integer> iterator = lineAndPairs.iterator();
-      int line = Math.max(0, iterator.next() - 1);
-      while (iterator.hasNext()) {
-        final int tokenPos = iterator.next();
-        final int column = Math.max(0, iterator.next() - 1);
-        result.put(tokenPos, Pair.create(line, column));
+  /**
+   * Maps script uris of all frames in one batch, so that subsequent {@link #getSourcePosition} calls for these frames
+   * don't need a round trip to the Analysis Server each. Doesn't block: {@code onDone} is run on a pooled thread when the uris are mapped
+   * (or the Analysis Server hasn't answered in time), or right away on the caller thread if there's nothing to map.
+   */
+  public void prefetchSourcePositions(@NotNull final List<Frame> vmFrames, @NotNull final Runnable onDone) {
+    if (myDASUriMapper == null) {
+      onDone.run();
+      return;
+    }
+
+    final Set<String> uris = new THashSet<>();
+    for (Frame vmFrame : vmFrames) {
+      final SourceLocation location = vmFrame.getLocation();
+      final String uri = location == null ? null : location.getScript().getUri();
+      if (uri != null && !isDartPatchUri(uri)) {
+        uris.add(uri);
       }
     }
 
-    return result;
+    final Thread callerThread = Thread.currentThread();
+    myDASUriMapper.getFilePaths(uris, filePaths -> {
+      if (Thread.currentThread() == callerThread) {
+        onDone.run();
+      }
+      else {
+        // don't block the Analysis Server reader thread with building stack frames
+        ApplicationManager.getApplication().executeOnPooledThread(onDone);
+      }
+    });
+  }
+
+  private static boolean isDartPatchUri(@NotNull final String uri) {
+    // dart:_builtin or dart:core-patch/core_patch.dart
+    return uri.startsWith("dart:_") || uri.startsWith("dart:") && uri.contains("-patch/");
   }
 
   @NotNull
@@ -59,9 +59,11 @@ public class DartVmServiceListener implements VmServiceListener {
       case Inspect:
         break;
       case IsolateExit:
+        myDebugProcess.getVmServiceWrapper().clearCachedObjects(event.getIsolate().getId());
         myDebugProcess.isolateExit(event.getIsolate());
         break;
       case IsolateReload:
+        myDebugProcess.getVmServiceWrapper().clearCachedObjects(event.getIsolate().getId());
         break;
       case IsolateRunnable:
         break;
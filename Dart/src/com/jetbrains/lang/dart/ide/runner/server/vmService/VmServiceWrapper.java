@@ -7,7 +7,9 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Ref;
 import com.intellij.util.Alarm;
+import com.intellij.util.SmartList;
 import com.intellij.util.concurrency.Semaphore;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.xdebugger.XSourcePosition;
 import com.intellij.xdebugger.breakpoints.XBreakpointProperties;
 import com.intellij.xdebugger.breakpoints.XLineBreakpoint;
@@ -19,6 +21,7 @@ import com.jetbrains.lang.dart.ide.runner.server.vmService.frame.DartAsyncMarker
 import com.jetbrains.lang.dart.ide.runner.server.vmService.frame.DartVmServiceEvaluator;
 import com.jetbrains.lang.dart.ide.runner.server.vmService.frame.DartVmServiceStackFrame;
 import com.jetbrains.lang.dart.ide.runner.server.vmService.frame.DartVmServiceValue;
+import gnu.trove.THashMap;
 import org.dartlang.vm.service.VmService;
 import org.dartlang.vm.service.consumer.*;
 import org.dartlang.vm.service.element.*;
@@ -28,7 +31,10 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -36,6 +42,9 @@ public class VmServiceWrapper implements Disposable {
 
   public static final Logger LOG = Logger.getInstance(VmServiceWrapper.class.getName());
   private static final long RESPONSE_WAIT_TIMEOUT = 3000; // millis
+  // Scripts and classes of this many top frames are requested all at once when the stack is received
+  private static final int PREFETCH_FRAME_COUNT = 20;
+  private static final int MAX_CACHED_CLASSES_PER_ISOLATE = 500;
 
   private final DartVmServiceDebugProcess myDebugProcess;
   private final VmService myVmService;
@@ -48,6 +57,12 @@ public class VmServiceWrapper implements Disposable {
 
   @Nullable private StepOption myLatestStep;
 
+  // Class objects don't change until isolate reload, so they are cached per isolate, least recently used are dropped above the limit.
+  // Scripts are not kept here because of their sources, only their token position tables are cached by the debug process.
+  private final Map<String, Map<String, ClassObj>> myIsolateIdToCachedClasses = ContainerUtil.newConcurrentMap();
+  // isolateId + objectId -> consumers waiting for the response to the request that is already sent; guarded by itself
+  private final Map<String, List<GetObjectConsumer>> myPendingObjectRequests = new THashMap<>();
+
   public VmServiceWrapper(@NotNull final DartVmServiceDebugProcess debugProcess,
                           @NotNull final VmService vmService,
                           @NotNull final DartVmServiceListener vmServiceListener,
@@ -379,8 +394,6 @@ public class VmServiceWrapper implements Disposable {
       @Override
       public void received(final Stack vmStack) {
         ApplicationManager.getApplication().executeOnPooledThread(() -> {
-          InstanceRef exceptionToAddToFrame = exception;
-
           // Check for async causal frames; fall back to using regular sync frames.
           ElementList<Frame> elementList = vmStack.getAsyncCausalFrames();
           if (elementList == null) {
@@ -388,27 +401,9 @@ public class VmServiceWrapper implements Disposable {
           }
 
           final List<Frame> vmFrames = Lists.newArrayList(elementList);
-          final List<XStackFrame> xStackFrames = new ArrayList<>(vmFrames.size());
-
-          for (final Frame vmFrame : vmFrames) {
-            if (vmFrame.getKind() == FrameKind.AsyncSuspensionMarker) {
-              // Render an asynchronous gap.
-              final XStackFrame markerFrame = new DartAsyncMarkerFrame();
-              xStackFrames.add(markerFrame);
-            }
-            else {
-              final DartVmServiceStackFrame stackFrame =
-                new DartVmServiceStackFrame(myDebugProcess, isolateId, vmFrame, vmFrames, exceptionToAddToFrame);
-              stackFrame.setIsDroppableFrame(vmFrame.getKind() == FrameKind.Regular);
-              xStackFrames.add(stackFrame);
-
-              if (!stackFrame.isInDartSdkPatchFile()) {
-                // The exception (if any) is added to the frame where debugger stops and to the upper frames.
-                exceptionToAddToFrame = null;
-              }
-            }
-          }
-          container.addStackFrames(firstFrameIndex == 0 ? xStackFrames : xStackFrames.subList(firstFrameIndex, xStackFrames.size()), true);
+          prefetchFrameObjects(isolateId, vmFrames);
+          myDebugProcess.prefetchSourcePositions(vmFrames,
+                                                 () -> addStackFrames(isolateId, firstFrameIndex, container, exception, vmFrames));
         });
       }
 
@@ -419,6 +414,35 @@ public class VmServiceWrapper implements Disposable {
     }));
   }
 
+  private void addStackFrames(@NotNull final String isolateId,
+                              final int firstFrameIndex,
+                              @NotNull final XExecutionStack.XStackFrameContainer container,
+                              @Nullable final InstanceRef exception,
+                              @NotNull final List<Frame> vmFrames) {
+    InstanceRef exceptionToAddToFrame = exception;
+    final List<XStackFrame> xStackFrames = new ArrayList<>(vmFrames.size());
+
+    for (final Frame vmFrame : vmFrames) {
+      if (vmFrame.getKind() == FrameKind.AsyncSuspensionMarker) {
+        // Render an asynchronous gap.
+        final XStackFrame markerFrame = new DartAsyncMarkerFrame();
+        xStackFrames.add(markerFrame);
+      }
+      else {
+        final DartVmServiceStackFrame stackFrame =
+          new DartVmServiceStackFrame(myDebugProcess, isolateId, vmFrame, vmFrames, exceptionToAddToFrame);
+        stackFrame.setIsDroppableFrame(vmFrame.getKind() == FrameKind.Regular);
+        xStackFrames.add(stackFrame);
+
+        if (!stackFrame.isInDartSdkPatchFile()) {
+          // The exception (if any) is added to the frame where debugger stops and to the upper frames.
+          exceptionToAddToFrame = null;
+        }
+      }
+    }
+    container.addStackFrames(firstFrameIndex == 0 ? xStackFrames : xStackFrames.subList(firstFrameIndex, xStackFrames.size()), true);
+  }
+
   @Nullable
   public Script getScriptSync(@NotNull final String isolateId, @NotNull final String scriptId) {
     assertSyncRequestAllowed();
@@ -428,7 +452,7 @@ public class VmServiceWrapper implements Disposable {
 
     final Ref<Script> resultRef = Ref.create();
 
-    addRequest(() -> myVmService.getObject(isolateId, scriptId, new GetObjectConsumer() {
+    getCachedObject(isolateId, scriptId, new GetObjectConsumer() {
       @Override
       public void received(Obj script) {
         resultRef.set((Script)script);
@@ -444,12 +468,128 @@ public class VmServiceWrapper implements Disposable {
       public void onError(RPCError error) {
         semaphore.up();
       }
-    }));
+    });
 
     semaphore.waitFor(RESPONSE_WAIT_TIMEOUT);
     return resultRef.get();
   }
 
+  /**
+   * Sends requests for scripts of the top frames and for classes of their {@code this} objects without waiting for responses,
+   * so that following {@link DartVmServiceDebugProcess#getSourcePosition} and {@link #getCachedObject} calls for these frames
+   * are served from cache or wait for already sent requests instead of making round trips one by one.
+   */
+  private void prefetchFrameObjects(@NotNull final String isolateId, @NotNull final List<Frame> vmFrames) {
+    final GetObjectConsumer noOpConsumer = new GetObjectConsumer() {
+      @Override
+      public void received(Obj response) {
+      }
+
+      @Override
+      public void received(Sentinel response) {
+      }
+
+      @Override
+      public void onError(RPCError error) {
+      }
+    };
+
+    for (Frame vmFrame : vmFrames.subList(0, Math.min(PREFETCH_FRAME_COUNT, vmFrames.size()))) {
+      final SourceLocation location = vmFrame.getLocation();
+      if (location != null && !myDebugProcess.isScriptInfoCached(location.getScript().getId())) {
+        getCachedObject(isolateId, location.getScript().getId(), noOpConsumer);
+      }
+
+      final ElementList<BoundVariable> vars = vmFrame.getVars();
+      if (vars != null) {
+        for (BoundVariable var : vars) {
+          if ("this".equals(var.getName()) && var.getValue() != null && var.getValue().getClassRef() != null) {
+            getCachedObject(isolateId, var.getValue().getClassRef().getId(), noOpConsumer);
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Use only for objects that don't change within the isolate: {@link Script} and {@link ClassObj}. Class responses are cached,
+   * script token position tables are passed to {@link DartVmServiceDebugProcess#scriptLoaded(Script)};
+   * concurrent requests for the same object result in a single request to the VM.
+   */
+  public void getCachedObject(@NotNull final String isolateId, @NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
+    final Map<String, ClassObj> cachedClasses = myIsolateIdToCachedClasses.get(isolateId);
+    final ClassObj cached = cachedClasses == null ? null : cachedClasses.get(objectId);
+    if (cached != null) {
+      consumer.received(cached);
+      return;
+    }
+
+    final String requestKey = isolateId + "/" + objectId;
+    synchronized (myPendingObjectRequests) {
+      final List<GetObjectConsumer> waitingConsumers = myPendingObjectRequests.get(requestKey);
+      if (waitingConsumers != null) {
+        waitingConsumers.add(consumer);
+        return;
+      }
+      myPendingObjectRequests.put(requestKey, new SmartList<>(consumer));
+    }
+
+    addRequest(() -> myVmService.getObject(isolateId, objectId, new GetObjectConsumer() {
+      @Override
+      public void received(Obj response) {
+        if (response instanceof Script) {
+          myDebugProcess.scriptLoaded((Script)response);
+        }
+        else if (response instanceof ClassObj) {
+          myIsolateIdToCachedClasses.computeIfAbsent(isolateId, id -> createClassCache()).put(objectId, (ClassObj)response);
+        }
+        for (GetObjectConsumer waitingConsumer : takePendingConsumers(requestKey)) {
+          waitingConsumer.received(response);
+        }
+      }
+
+      @Override
+      public void received(Sentinel response) {
+        for (GetObjectConsumer waitingConsumer : takePendingConsumers(requestKey)) {
+          waitingConsumer.received(response);
+        }
+      }
+
+      @Override
+      public void onError(RPCError error) {
+        for (GetObjectConsumer waitingConsumer : takePendingConsumers(requestKey)) {
+          waitingConsumer.onError(error);
+        }
+      }
+    }));
+  }
+
+  @NotNull
+  private static Map<String, ClassObj> createClassCache() {
+    return Collections.synchronizedMap(new LinkedHashMap<String, ClassObj>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, ClassObj> eldest) {
+        return size() > MAX_CACHED_CLASSES_PER_ISOLATE;
+      }
+    });
+  }
+
+  @NotNull
+  private List<GetObjectConsumer> takePendingConsumers(@NotNull final String requestKey) {
+    synchronized (myPendingObjectRequests) {
+      final List<GetObjectConsumer> consumers = myPendingObjectRequests.remove(requestKey);
+      return consumers != null ? consumers : Collections.emptyList();
+    }
+  }
+
+  /**
+   * Must be called when isolate is reloaded or exited
+   */
+  public void clearCachedObjects(@NotNull final String isolateId) {
+    myIsolateIdToCachedClasses.remove(isolateId);
+  }
+
   public void getObject(@NotNull final String isolateId, @NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
     addRequest(() -> myVmService.getObject(isolateId, objectId, consumer));
   }
@@ -127,7 +127,7 @@ public class DartVmServiceStackFrame extends XStackFrame {
       return;
     }
 
-    myDebugProcess.getVmServiceWrapper().getObject(myIsolateId, thisVar.getValue().getClassRef().getId(), new GetObjectConsumer() {
+    myDebugProcess.getVmServiceWrapper().getCachedObject(myIsolateId, thisVar.getValue().getClassRef().getId(), new GetObjectConsumer() {
       @Override
       public void received(Obj classObj) {
         final SmartList<FieldRef> staticFields = new SmartList<>();
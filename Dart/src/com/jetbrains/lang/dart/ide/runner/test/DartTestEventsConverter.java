@@ -1,6 +1,8 @@
 package com.jetbrains.lang.dart.ide.runner.test;
 
-import com.google.gson.*;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.intellij.execution.testframework.TestConsoleProperties;
 import com.intellij.execution.testframework.sm.ServiceMessageBuilder;
 import com.intellij.execution.testframework.sm.runner.OutputToGeneralTestEventsConverter;
@@ -11,17 +13,18 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.PathUtil;
 import com.jetbrains.lang.dart.ide.runner.util.DartTestLocationProvider;
 import com.jetbrains.lang.dart.util.DartUrlResolver;
-import gnu.trove.TIntLongHashMap;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
 import jetbrains.buildServer.messages.serviceMessages.ServiceMessageVisitor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.StringReader;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,6 +34,10 @@ import java.util.regex.Pattern;
  * NOTE: The test runner runs tests asynchronously. It is possible to get a 'testDone'
  * event followed some time later by an 'error' event for that same test. That should
  * convert a successful test into a failure. That case is not being handled.
+ * <p/>
+ * Each line is read by a streaming {@link JsonReader} right into an {@link Event}, no JSON tree is built.
+ * When a test is done only a compact {@link DoneTest} is kept for it, so late 'error' and 'print' events are still reported
+ * under the finished test while the full data of the test is released.
  */
 public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter {
   private static final Logger LOG = Logger.getInstance(DartTestEventsConverter.class.getName());
@@ -90,10 +97,9 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private String myLocation;
   private Key myCurrentOutputType;
   private ServiceMessageVisitor myCurrentVisitor;
-  private final TIntLongHashMap myTestIdToTimestamp;
-  private final Map<Integer, Test> myTestData;
-  private final Map<Integer, Group> myGroupData;
-  private final Map<Integer, Suite> mySuiteData;
+  private final TIntObjectHashMap<Test> myTestData;
+  private final TIntObjectHashMap<Group> myGroupData;
+  private final TIntObjectHashMap<Suite> mySuiteData;
   private int mySuitCount;
 
   public DartTestEventsConverter(@NotNull final String testFrameworkName,
@@ -101,28 +107,28 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
                                  @NotNull final DartUrlResolver urlResolver) {
     super(testFrameworkName, consoleProperties);
     myUrlResolver = urlResolver;
-    myTestIdToTimestamp = new TIntLongHashMap();
-    myTestData = new HashMap<>();
-    myGroupData = new HashMap<>();
-    mySuiteData = new HashMap<>();
+    myTestData = new TIntObjectHashMap<>();
+    myGroupData = new TIntObjectHashMap<>();
+    mySuiteData = new TIntObjectHashMap<>();
   }
 
   protected boolean processServiceMessages(final String text, final Key outputType, final ServiceMessageVisitor visitor)
     throws ParseException {
-    LOG.debug("<<< " + text.trim());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("<<< " + text.trim());
+    }
     myCurrentOutputType = outputType;
     myCurrentVisitor = visitor;
     // service message parser expects line like "##teamcity[ .... ]" without whitespaces in the end.
     return processEventText(text);
   }
 
-  private boolean processEventText(final String text) throws JsonSyntaxException, ParseException {
-    JsonParser jp = new JsonParser();
-    JsonElement elem;
+  private boolean processEventText(final String text) throws ParseException {
+    final Event event;
     try {
-      elem = jp.parse(text);
+      event = Event.read(text);
     }
-    catch (JsonSyntaxException ex) {
+    catch (IOException | IllegalStateException | NumberFormatException ex) {
       if (text.contains("\"json\" is not an allowed value for option \"reporter\"")) {
         final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted("Failed to start");
         final ServiceMessageBuilder testFailed = ServiceMessageBuilder.testFailed("Failed to start");
@@ -133,55 +139,56 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
       return doProcessServiceMessages(text);
     }
-    if (elem == null || !elem.isJsonObject()) return false;
-    return process(elem.getAsJsonObject());
+    if (event == null) return false;
+    return process(event);
   }
 
   private boolean doProcessServiceMessages(@NotNull final String text) throws ParseException {
-    LOG.debug(">>> " + text);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(">>> " + text);
+    }
     return super.processServiceMessages(text, myCurrentOutputType, myCurrentVisitor);
   }
 
-  private boolean process(JsonObject obj) throws JsonSyntaxException, ParseException {
-    String type = obj.get(JSON_TYPE).getAsString();
+  private boolean process(@NotNull final Event event) throws ParseException {
+    final String type = event.myType;
     if (TYPE_TEST_START.equals(type)) {
-      return handleTestStart(obj);
+      return handleTestStart(event);
     }
     else if (TYPE_TEST_DONE.equals(type)) {
-      return handleTestDone(obj);
+      return handleTestDone(event);
     }
     else if (TYPE_ERROR.equals(type)) {
-      return handleError(obj);
+      return handleError(event);
     }
     else if (TYPE_PRINT.equals(type)) {
-      return handlePrint(obj);
+      return handlePrint(event);
     }
     else if (TYPE_GROUP.equals(type)) {
-      return handleGroup(obj);
+      return handleGroup(event);
     }
     else if (TYPE_SUITE.equals(type)) {
-      return handleSuite(obj);
+      return handleSuite(event);
     }
     else if (TYPE_ALL_SUITES.equals(type)) {
-      return handleAllSuites(obj);
+      return handleAllSuites(event);
     }
     else if (TYPE_START.equals(type)) {
-      return handleStart(obj);
+      return handleStart(event);
     }
     else if (TYPE_DONE.equals(type)) {
-      return handleDone(obj);
+      return handleDone(event);
     }
     else {
       return true;
     }
   }
 
-  private boolean handleTestStart(JsonObject obj) throws ParseException {
-    final JsonObject testObj = obj.getAsJsonObject(DEF_TEST);
+  private boolean handleTestStart(@NotNull final Event event) throws ParseException {
+    final Test test = getTest(event);
+    if (test == null) return true;
 
-    // Not reached if testObj == null.
-    final Test test = getTest(obj);
-    myTestIdToTimestamp.put(test.getId(), getTimestamp(obj));
+    test.myStartTimestamp = getTimestamp(event);
 
     if (shouldTestBeHiddenIfPassed(test)) {
       // Virtual test that represents loading or compiling a test suite. See lib/src/runner/loader.dart -> Loader.loadFile() in pkg/test source code
@@ -207,7 +214,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     addLocationHint(testStarted, test);
     boolean result = finishMessage(testStarted, test.getId(), test.getValidParentId());
 
-    final Metadata metadata = Metadata.from(testObj.getAsJsonObject(DEF_METADATA));
+    final Metadata metadata = test.getMetadata();
     if (metadata.skip) {
       final ServiceMessageBuilder message = ServiceMessageBuilder.testIgnored(test.getBaseName());
       if (metadata.skipReason != null) message.addAttribute("message", metadata.skipReason);
@@ -229,14 +236,18 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
            group != null && group.getDoneTestsCount() > 0 && test.getBaseName().equals(TEAR_DOWN_ALL_VIRTUAL_TEST_NAME);
   }
 
-  private boolean handleTestDone(JsonObject obj) throws ParseException {
-    final Test test = getTest(obj);
+  private boolean handleTestDone(@NotNull final Event event) throws ParseException {
+    final Test test = getTest(event);
+    if (test == null) return true;
+
+    // only 'error' and 'print' events may come for this test later, they need just its name and place in the tree
+    myTestData.put(test.getId(), new DoneTest(test));
 
     if (!test.myTestStartReported) return true;
 
-    String result = getResult(obj);
+    String result = getResult(event);
     if (!result.equals(RESULT_SUCCESS) && !result.equals(RESULT_FAILURE) && !result.equals(RESULT_ERROR)) {
-      throw new ParseException("Unknown result: " + obj, 0);
+      throw new ParseException("Unknown result: " + result, 0);
     }
 
     test.testDone();
@@ -244,7 +255,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     //if (test.getMetadata().skip) return true; // skipped tests are reported as ignored in handleTestStart(). testFinished signal must follow
 
     ServiceMessageBuilder testFinished = ServiceMessageBuilder.testFinished(test.getBaseName());
-    long duration = getTimestamp(obj) - myTestIdToTimestamp.get(test.getId());
+    long duration = getTimestamp(event) - test.myStartTimestamp;
     testFinished.addAttribute("duration", Long.toString(duration));
 
     return finishMessage(testFinished, test.getId(), test.getValidParentId()) && checkGroupDone(test.getParent());
@@ -257,8 +268,8 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return true;
   }
 
-  private boolean handleGroup(JsonObject obj) throws ParseException {
-    Group group = getGroup(obj.getAsJsonObject(DEF_GROUP));
+  private boolean handleGroup(@NotNull final Event event) throws ParseException {
+    Group group = getGroup(event);
 
     // From spec: The implicit group at the root of each test suite has null name and parentID attributes.
     if (group.getParent() == null && group.getTestCount() > 0) {
@@ -276,17 +287,19 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return finishMessage(groupMsg, group.getId(), group.getValidParentId());
   }
 
-  private boolean handleSuite(JsonObject obj) throws ParseException {
-    Suite suite = getSuite(obj.getAsJsonObject(DEF_SUITE));
+  private boolean handleSuite(@NotNull final Event event) throws ParseException {
+    Suite suite = getSuite(event);
     if (!suite.hasPath()) {
       mySuiteData.remove(suite.getId());
     }
     return true;
   }
 
-  private boolean handleError(JsonObject obj) throws ParseException {
-    final Test test = getTest(obj);
-    final String message = getErrorMessage(obj);
+  private boolean handleError(@NotNull final Event event) throws ParseException {
+    final Test test = getTest(event);
+    if (test == null) return true;
+
+    final String message = getErrorMessage(event);
     boolean result = true;
 
     if (!test.myTestStartReported) {
@@ -322,13 +335,13 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
         }
       }
 
-      if (!getBoolean(obj, JSON_IS_FAILURE)) testError.addAttribute("error", "true");
+      if (!getIsFailure(event)) testError.addAttribute("error", "true");
       testError.addAttribute("message", appendLineBreakIfNeeded(failureMessage));
 
       result &= finishMessage(testError, test.getId(), test.getValidParentId());
     }
 
-    final String stackTrace = getStackTrace(obj);
+    final String stackTrace = getStackTrace(event);
     if (!StringUtil.isEmptyOrSpaces(stackTrace)) {
       final ServiceMessageBuilder stackTraceMessage = ServiceMessageBuilder.testStdErr(test.getBaseName());
       stackTraceMessage.addAttribute("out", appendLineBreakIfNeeded(stackTrace));
@@ -343,15 +356,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return message.endsWith("\n") ? message : message + "\n";
   }
 
-  private boolean handleAllSuites(JsonObject obj) {
-    JsonElement elem = obj.get(JSON_COUNT);
-    if (elem == null || !elem.isJsonPrimitive()) return true;
-    mySuitCount = elem.getAsInt();
+  private boolean handleAllSuites(@NotNull final Event event) {
+    if (event.myCount < 0) return true;
+    mySuitCount = event.myCount;
     return true;
   }
 
-  private boolean handlePrint(JsonObject obj) throws ParseException {
-    final Test test = getTest(obj);
+  private boolean handlePrint(@NotNull final Event event) throws ParseException {
+    final Test test = getTest(event);
+    if (test == null) return true;
+
     boolean result = true;
 
     if (!test.myTestStartReported) {
@@ -365,13 +379,12 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     }
 
     ServiceMessageBuilder message = ServiceMessageBuilder.testStdOut(test.getBaseName());
-    message.addAttribute("out", appendLineBreakIfNeeded(getMessage(obj)));
+    message.addAttribute("out", appendLineBreakIfNeeded(getMessage(event)));
 
     return result & finishMessage(message, test.getId(), test.getValidParentId());
   }
 
-  private boolean handleStart(JsonObject obj) throws ParseException {
-    myTestIdToTimestamp.clear();
+  private boolean handleStart(@NotNull final Event event) throws ParseException {
     myTestData.clear();
     myGroupData.clear();
     mySuiteData.clear();
@@ -380,7 +393,7 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return doProcessServiceMessages(new ServiceMessageBuilder("enteredTheMatrix").toString());
   }
 
-  private boolean handleDone(JsonObject obj) throws ParseException {
+  private boolean handleDone(@NotNull final Event event) throws ParseException {
     // The test runner has reached the end of the tests.
     processAllTestsDone();
     return true;
@@ -388,7 +401,10 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
   private void processAllTestsDone() {
     // All tests are done.
-    for (Group group : myGroupData.values()) {
+    final int[] groupIds = myGroupData.keys();
+    Arrays.sort(groupIds);
+    for (int groupId : groupIds) {
+      final Group group = myGroupData.get(groupId);
       // For package: test prior to v. 0.12.9 there were no Group.testCount field, so need to finish them all at the end.
       // AFAIK the order does not matter. A depth-first post-order traversal of the tree would work
       // if order does matter. Note: Currently, there is no tree representation, just parent links.
@@ -402,7 +418,6 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
         }
       }
     }
-    myTestIdToTimestamp.clear();
     myTestData.clear();
     myGroupData.clear();
     mySuiteData.clear();
@@ -445,101 +460,76 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     messageBuilder.addAttribute("locationHint", location);
   }
 
-  private static long getTimestamp(JsonObject obj) throws ParseException {
-    return getLong(obj, JSON_MILLIS);
+  private static long getTimestamp(@NotNull final Event event) throws ParseException {
+    if (event.myTime == null) throw new ParseException("Value is not type long: " + JSON_MILLIS, 0);
+    return event.myTime;
   }
 
-  private static long getLong(JsonObject obj, String name) throws ParseException {
-    JsonElement val = obj == null ? null : obj.get(name);
-    if (val == null || !val.isJsonPrimitive()) throw new ParseException("Value is not type long: " + val, 0);
-    return val.getAsLong();
+  private static boolean getIsFailure(@NotNull final Event event) throws ParseException {
+    if (event.myIsFailure == null) throw new ParseException("Value is not type boolean: " + JSON_IS_FAILURE, 0);
+    return event.myIsFailure;
   }
 
-  private static boolean getBoolean(JsonObject obj, String name) throws ParseException {
-    JsonElement val = obj == null ? null : obj.get(name);
-    if (val == null || !val.isJsonPrimitive()) throw new ParseException("Value is not type boolean: " + val, 0);
-    return val.getAsBoolean();
-  }
+  /**
+   * @return {@code null} if the event refers to an unknown test
+   */
+  @Nullable
+  private Test getTest(@NotNull final Event event) throws ParseException {
+    if (event.myTestId != null) {
+      final Test test = myTestData.get(event.myTestId);
+      if (test == null) {
+        LOG.debug("Event for unknown test: " + event.myTestId);
+      }
+      return test;
+    }
 
-  @NotNull
-  private Test getTest(JsonObject obj) throws ParseException {
-    return getItem(obj, myTestData);
+    final ItemData data = getItemData(event.myTest);
+    final Test test = Test.from(data, myGroupData, mySuiteData);
+    myTestData.put(data.myId, test);
+    return test;
   }
 
   @NotNull
-  private Group getGroup(JsonObject obj) throws ParseException {
-    return getItem(obj, myGroupData);
+  private Group getGroup(@NotNull final Event event) throws ParseException {
+    final ItemData data = getItemData(event.myGroup);
+    final Group group = Group.from(data, myGroupData, mySuiteData);
+    myGroupData.put(data.myId, group);
+    return group;
   }
 
   @NotNull
-  private Suite getSuite(JsonObject obj) throws ParseException {
-    return getItem(obj, mySuiteData);
+  private Suite getSuite(@NotNull final Event event) throws ParseException {
+    final ItemData data = getItemData(event.mySuite);
+    final Suite suite = Suite.from(data);
+    mySuiteData.put(data.myId, suite);
+    return suite;
   }
 
   @NotNull
-  private <T extends Item> T getItem(JsonObject obj, Map<Integer, T> items) throws ParseException {
-    if (obj == null) throw new ParseException("Unexpected null json object", 0);
-    T item;
-    JsonElement id = obj.get(JSON_ID);
-    if (id != null) {
-      if (items == myTestData) {
-        @SuppressWarnings("unchecked") T type = (T)Test.from(obj, myGroupData, mySuiteData);
-        item = type;
-      }
-      else if (items == myGroupData) {
-        @SuppressWarnings("unchecked") T group = (T)Group.from(obj, myGroupData, mySuiteData);
-        item = group;
-      }
-      else {
-        @SuppressWarnings("unchecked") T suite = (T)Suite.from(obj);
-        item = suite;
-      }
-      items.put(id.getAsInt(), item);
-    }
-    else {
-      JsonElement testId = obj.get(JSON_TEST_ID);
-      if (testId != null) {
-        int baseId = testId.getAsInt();
-        item = items.get(baseId);
-      }
-      else {
-        JsonElement testObj = obj.get(DEF_TEST);
-        if (testObj != null) {
-          return getItem(testObj.getAsJsonObject(), items);
-        }
-        else {
-          throw new ParseException("No testId in json object", 0);
-        }
-      }
-    }
-    return item;
+  private static ItemData getItemData(@Nullable final ItemData data) throws ParseException {
+    if (data == null) throw new ParseException("Unexpected null json object", 0);
+    if (data.myId == null) throw new ParseException("No id in json object", 0);
+    return data;
   }
 
   @NotNull
-  private static String getErrorMessage(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_ERROR_MESSAGE, "<no error message>");
+  private static String getErrorMessage(@NotNull final Event event) {
+    return event.myError != null ? event.myError : "<no error message>";
   }
 
   @NotNull
-  private static String getMessage(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_MESSAGE, "<no message>");
+  private static String getMessage(@NotNull final Event event) {
+    return event.myMessage != null ? event.myMessage : "<no message>";
   }
 
   @NotNull
-  private static String getStackTrace(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_STACK_TRACE, "<no stack trace>");
+  private static String getStackTrace(@NotNull final Event event) {
+    return event.myStackTrace != null ? event.myStackTrace : "<no stack trace>";
   }
 
   @NotNull
-  private static String getResult(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_RESULT, "<no result>");
-  }
-
-  @NotNull
-  private static String nonNullJsonValue(JsonObject obj, @NotNull String id, @NotNull String def) {
-    JsonElement val = obj == null ? null : obj.get(id);
-    if (val == null || !val.isJsonPrimitive()) return def;
-    return val.getAsString();
+  private static String getResult(@NotNull final Event event) {
+    return event.myResult != null ? event.myResult : "<no result>";
   }
 
   private static class Item {
@@ -553,30 +543,8 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     private final int myColumn;
     private final String myUrl;
 
-    static int extractInt(JsonObject obj, String memberName) {
-      JsonElement elem = obj.get(memberName);
-      if (elem == null || !elem.isJsonPrimitive()) return -1;
-      return elem.getAsInt();
-    }
-
-    static String extractString(JsonObject obj, String memberName, String defaultResult) {
-      JsonElement elem = obj.get(memberName);
-      if (elem == null || elem.isJsonNull()) return defaultResult;
-      return elem.getAsString();
-    }
-
-    static Metadata extractMetadata(JsonObject obj) {
-      return Metadata.from(obj.get(DEF_METADATA));
-    }
-
-    static Suite lookupSuite(JsonObject obj, Map<Integer, Suite> suites) {
-      JsonElement suiteObj = obj.get(JSON_SUITE_ID);
-      Suite suite = null;
-      if (suiteObj != null && suiteObj.isJsonPrimitive()) {
-        int parentId = suiteObj.getAsInt();
-        suite = suites.get(parentId);
-      }
-      return suite;
+    static int toZeroBased(int oneBased) {
+      return oneBased < 0 ? -1 : oneBased - 1;
     }
 
     Item(int id, String name, Group parent, Suite suite, Metadata metadata, int line, int column, String url) {
@@ -701,24 +669,28 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private static class Test extends Item {
     private boolean myTestStartReported = false;
     private boolean myTestErrorReported = false;
+    private long myStartTimestamp;
 
-    static Test from(JsonObject obj, Map<Integer, Group> groups, Map<Integer, Suite> suites) {
-      int[] groupIds = GSON.fromJson(obj.get(JSON_GROUP_IDS), (Type)int[].class);
+    static Test from(ItemData data, TIntObjectHashMap<Group> groups, TIntObjectHashMap<Suite> suites) {
+      final int[] groupIds = data.myGroupIds;
       Group parent = null;
       if (groupIds != null && groupIds.length > 0) {
         parent = groups.get(groupIds[groupIds.length - 1]);
       }
-      Suite suite = lookupSuite(obj, suites);
-      final int line = extractInt(obj, JSON_LINE);
-      final int column = extractInt(obj, JSON_COLUMN);
-      return new Test(extractInt(obj, JSON_ID), extractString(obj, JSON_NAME, NO_NAME), parent, suite, extractMetadata(obj),
-                      line < 0 ? -1 : line - 1, column < 0 ? -1 : column - 1, extractString(obj, JSON_URL, null));
+      final Suite suite = data.mySuiteId < 0 ? null : suites.get(data.mySuiteId);
+      return new Test(data.myId, data.getName(), parent, suite, data.getMetadata(), toZeroBased(data.myLine), toZeroBased(data.myColumn),
+                      data.myUrl);
     }
 
     Test(int id, String name, Group parent, Suite suite, Metadata metadata, int line, int column, String url) {
       super(id, name, parent, suite, metadata, line, column, url);
     }
 
+    void setReported(@NotNull final Test test) {
+      myTestStartReported = test.myTestStartReported;
+      myTestErrorReported = test.myTestErrorReported;
+    }
+
     public void testDone() {
       if (getParent() != null) {
         getParent().incDoneTestsCount();
@@ -726,23 +698,38 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     }
   }
 
+  /**
+   * What is left of a test after 'testDone': enough to report its late errors and output
+   */
+  private static class DoneTest extends Test {
+    private final int myValidParentId;
+
+    DoneTest(@NotNull final Test test) {
+      super(test.getId(), test.getBaseName(), null, null, Suite.NoMetadata, -1, -1, null);
+      myValidParentId = test.getValidParentId();
+      setReported(test);
+    }
+
+    @Override
+    String getBaseName() {
+      return getName();
+    }
+
+    @Override
+    int getValidParentId() {
+      return myValidParentId;
+    }
+  }
+
   private static class Group extends Item {
     private int myTestCount = 0;
     private int myDoneTestsCount = 0;
 
-    static Group from(JsonObject obj, Map<Integer, Group> groups, Map<Integer, Suite> suites) {
-      JsonElement parentObj = obj.get(JSON_PARENT_ID);
-      Group parent = null;
-      if (parentObj != null && parentObj.isJsonPrimitive()) {
-        int parentId = parentObj.getAsInt();
-        parent = groups.get(parentId);
-      }
-      Suite suite = lookupSuite(obj, suites);
-      final int line = extractInt(obj, JSON_LINE);
-      final int column = extractInt(obj, JSON_COLUMN);
-      return new Group(extractInt(obj, JSON_ID), extractString(obj, JSON_NAME, NO_NAME), parent, suite, extractMetadata(obj),
-                       extractInt(obj, JSON_TEST_COUNT), line < 0 ? -1 : line - 1, column < 0 ? -1 : column - 1,
-                       extractString(obj, JSON_URL, null));
+    static Group from(ItemData data, TIntObjectHashMap<Group> groups, TIntObjectHashMap<Suite> suites) {
+      final Group parent = data.myParentId < 0 ? null : groups.get(data.myParentId);
+      final Suite suite = data.mySuiteId < 0 ? null : suites.get(data.mySuiteId);
+      return new Group(data.myId, data.getName(), parent, suite, data.getMetadata(), data.myTestCount, toZeroBased(data.myLine),
+                       toZeroBased(data.myColumn), data.myUrl);
     }
 
     Group(int id, String name, Group parent, Suite suite, Metadata metadata, int count, int line, int column, String url) {
@@ -771,8 +758,8 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     static Metadata NoMetadata = new Metadata();
     static String NONE = "<none>";
 
-    static Suite from(JsonObject obj) {
-      return new Suite(extractInt(obj, JSON_ID), extractString(obj, JSON_PATH, NONE), extractString(obj, JSON_PLATFORM, NONE));
+    static Suite from(ItemData data) {
+      return new Suite(data.myId, data.myPath != null ? data.myPath : NONE, data.myPlatform != null ? data.myPlatform : NONE);
     }
 
     private final String myPlatform;
@@ -796,12 +783,256 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   }
 
   private static class Metadata {
-    @SuppressWarnings("unused") private boolean skip; // assigned by GSON via reflection
-    @SuppressWarnings("unused") private String skipReason; // assigned by GSON via reflection
+    private boolean skip;
+    private String skipReason;
+  }
+
+  /**
+   * One line of the JSON reporter output. Only the fields used by the converter are read, everything else is skipped.
+   */
+  private static class Event {
+    private String myType;
+    private Long myTime;
+    private Integer myTestId;
+    private String myResult;
+    private String myMessage;
+    private String myError;
+    private String myStackTrace;
+    private Boolean myIsFailure;
+    private int myCount = -1;
+    private ItemData myTest;
+    private ItemData myGroup;
+    private ItemData mySuite;
+
+    /**
+     * @return {@code null} if the text is blank
+     * @throws IOException           if the text is not a single JSON object
+     * @throws IllegalStateException if the JSON has unexpected structure
+     */
+    @Nullable
+    static Event read(@NotNull final String text) throws IOException {
+      final int start = StringUtil.skipWhitespaceForward(text, 0);
+      if (start == text.length()) return null;
+      if (text.charAt(start) != '{') throw new IOException("Not a JSON object");
+
+      final JsonReader reader = new JsonReader(new StringReader(text));
+      reader.setLenient(true);
+
+      final Event event = new Event();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if (JSON_TYPE.equals(name)) {
+          event.myType = readString(reader);
+        }
+        else if (JSON_MILLIS.equals(name)) {
+          event.myTime = readLong(reader);
+        }
+        else if (JSON_TEST_ID.equals(name)) {
+          event.myTestId = readInteger(reader);
+        }
+        else if (JSON_RESULT.equals(name)) {
+          event.myResult = readString(reader);
+        }
+        else if (JSON_MESSAGE.equals(name)) {
+          event.myMessage = readString(reader);
+        }
+        else if (JSON_ERROR_MESSAGE.equals(name)) {
+          event.myError = readString(reader);
+        }
+        else if (JSON_STACK_TRACE.equals(name)) {
+          event.myStackTrace = readString(reader);
+        }
+        else if (JSON_IS_FAILURE.equals(name)) {
+          event.myIsFailure = readBoolean(reader);
+        }
+        else if (JSON_COUNT.equals(name)) {
+          event.myCount = readInt(reader);
+        }
+        else if (DEF_TEST.equals(name)) {
+          event.myTest = ItemData.read(reader);
+        }
+        else if (DEF_GROUP.equals(name)) {
+          event.myGroup = ItemData.read(reader);
+        }
+        else if (DEF_SUITE.equals(name)) {
+          event.mySuite = ItemData.read(reader);
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
 
-    static Metadata from(JsonElement elem) {
-      if (elem == null) return new Metadata();
-      return GSON.fromJson(elem, (Type)Metadata.class);
+      if (reader.peek() != JsonToken.END_DOCUMENT) throw new IOException("Did not consume the entire document");
+      return event;
     }
   }
+
+  /**
+   * Test, group or suite description
+   */
+  private static class ItemData {
+    private Integer myId;
+    private String myName;
+    private int myParentId = -1;
+    private int mySuiteId = -1;
+    private int[] myGroupIds;
+    private int myTestCount = -1;
+    private int myLine = -1;
+    private int myColumn = -1;
+    private String myUrl;
+    private String myPath;
+    private String myPlatform;
+    private Metadata myMetadata;
+
+    @NotNull
+    String getName() {
+      return myName != null ? myName : Item.NO_NAME;
+    }
+
+    @NotNull
+    Metadata getMetadata() {
+      return myMetadata != null ? myMetadata : new Metadata();
+    }
+
+    @Nullable
+    static ItemData read(@NotNull final JsonReader reader) throws IOException {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        reader.skipValue();
+        return null;
+      }
+
+      final ItemData data = new ItemData();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if (JSON_ID.equals(name)) {
+          data.myId = readInteger(reader);
+        }
+        else if (JSON_NAME.equals(name)) {
+          data.myName = readString(reader);
+        }
+        else if (JSON_PARENT_ID.equals(name)) {
+          data.myParentId = readInt(reader);
+        }
+        else if (JSON_SUITE_ID.equals(name)) {
+          data.mySuiteId = readInt(reader);
+        }
+        else if (JSON_GROUP_IDS.equals(name)) {
+          data.myGroupIds = readIntArray(reader);
+        }
+        else if (JSON_TEST_COUNT.equals(name)) {
+          data.myTestCount = readInt(reader);
+        }
+        else if (JSON_LINE.equals(name)) {
+          data.myLine = readInt(reader);
+        }
+        else if (JSON_COLUMN.equals(name)) {
+          data.myColumn = readInt(reader);
+        }
+        else if (JSON_URL.equals(name)) {
+          data.myUrl = readString(reader);
+        }
+        else if (JSON_PATH.equals(name)) {
+          data.myPath = readString(reader);
+        }
+        else if (JSON_PLATFORM.equals(name)) {
+          data.myPlatform = readString(reader);
+        }
+        else if (DEF_METADATA.equals(name)) {
+          data.myMetadata = readMetadata(reader);
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return data;
+    }
+
+    @Nullable
+    private static Metadata readMetadata(@NotNull final JsonReader reader) throws IOException {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        reader.skipValue();
+        return null;
+      }
+
+      final Metadata metadata = new Metadata();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if ("skip".equals(name)) {
+          metadata.skip = readBoolean(reader) == Boolean.TRUE;
+        }
+        else if ("skipReason".equals(name)) {
+          metadata.skipReason = readString(reader);
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return metadata;
+    }
+
+    @Nullable
+    private static int[] readIntArray(@NotNull final JsonReader reader) throws IOException {
+      if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+        reader.skipValue();
+        return null;
+      }
+
+      final TIntArrayList result = new TIntArrayList();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        result.add(reader.nextInt());
+      }
+      reader.endArray();
+      return result.toNativeArray();
+    }
+  }
+
+  /**
+   * @return string value of a primitive, {@code null} for JSON null, objects and arrays
+   */
+  @Nullable
+  private static String readString(@NotNull final JsonReader reader) throws IOException {
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.STRING || token == JsonToken.NUMBER) return reader.nextString();
+    if (token == JsonToken.BOOLEAN) return String.valueOf(reader.nextBoolean());
+    reader.skipValue();
+    return null;
+  }
+
+  /**
+   * @return -1 if value is not a number
+   */
+  private static int readInt(@NotNull final JsonReader reader) throws IOException {
+    final Integer value = readInteger(reader);
+    return value != null ? value : -1;
+  }
+
+  @Nullable
+  private static Integer readInteger(@NotNull final JsonReader reader) throws IOException {
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.NUMBER || token == JsonToken.STRING) return reader.nextInt();
+    reader.skipValue();
+    return null;
+  }
+
+  @Nullable
+  private static Long readLong(@NotNull final JsonReader reader) throws IOException {
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.NUMBER || token == JsonToken.STRING) return reader.nextLong();
+    reader.skipValue();
+    return null;
+  }
+
+  @Nullable
+  private static Boolean readBoolean(@NotNull final JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.BOOLEAN) return reader.nextBoolean();
+    reader.skipValue();
+    return null;
+  }
 }
@@ -7,7 +7,6 @@ import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiFile;
 import com.intellij.ui.LayeredIcon;
-import com.intellij.util.containers.ContainerUtil;
 import com.jetbrains.lang.dart.DartComponentType;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import com.jetbrains.lang.dart.util.DartPresentableUtil;
@@ -19,6 +18,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static com.intellij.icons.AllIcons.Nodes.*;
 import static com.intellij.icons.AllIcons.Nodes.Class;
@@ -38,17 +41,34 @@ public class DartStructureViewElement implements StructureViewTreeElement, ItemP
 
   private static final LayeredIcon TOP_LEVEL_CONST_ICON = new LayeredIcon(Variable, StaticMark, FinalMark);
 
+  private static final DartStructureViewElement[] EMPTY_CHILDREN = new DartStructureViewElement[0];
+
   @NotNull private final PsiFile myPsiFile;
-  @NotNull private final Outline myOutline;
+  @NotNull private Outline myOutline;
 
   @NotNull private final String myValue;
   @NotNull private final String myPresentableText;
 
+  // created lazily, then kept in sync with myOutline by update()
+  @Nullable private DartStructureViewElement[] myChildren;
+
   public DartStructureViewElement(@NotNull final PsiFile psiFile, @NotNull final Outline outline) {
+    this(psiFile, outline, getValue(outline), getPresentableText(outline));
+  }
+
+  private DartStructureViewElement(@NotNull final PsiFile psiFile,
+                                   @NotNull final Outline outline,
+                                   @NotNull final String value,
+                                   @NotNull final String presentableText) {
     myPsiFile = psiFile;
     myOutline = outline;
-    myValue = getValue(outline);
-    myPresentableText = getPresentableText(outline);
+    myValue = value;
+    myPresentableText = presentableText;
+  }
+
+  @NotNull
+  synchronized Outline getOutline() {
+    return myOutline;
   }
 
   @NotNull
@@ -59,16 +79,64 @@ public class DartStructureViewElement implements StructureViewTreeElement, ItemP
 
   @NotNull
   @Override
-  public StructureViewTreeElement[] getChildren() {
-    if (myOutline.getChildren().isEmpty()) return EMPTY_ARRAY;
-    return ContainerUtil.map2Array(myOutline.getChildren(), DartStructureViewElement.class,
-                                   outline -> new DartStructureViewElement(myPsiFile, outline));
+  public synchronized StructureViewTreeElement[] getChildren() {
+    if (myChildren == null) {
+      myChildren = EMPTY_CHILDREN;
+      update(myOutline);
+    }
+    return myChildren.length == 0 ? EMPTY_ARRAY : myChildren.clone();
+  }
+
+  /**
+   * Switches this element to the {@code outline} received in a newer notification. Children that have the same value and icon
+   * as before are kept and updated recursively, so that the structure view tree doesn't need to rebuild unchanged subtrees.
+   * Children that have never been requested are not computed.
+   *
+   * @return {@code true} if the structure view needs to be refreshed, {@code false} if only offsets have changed
+   */
+  synchronized boolean update(@NotNull final Outline outline) {
+    myOutline = outline;
+    if (myChildren == null) return false;
+
+    final List<Outline> outlines = outline.getChildren() != null ? outline.getChildren() : Collections.emptyList();
+    final DartStructureViewElement[] oldChildren = myChildren;
+    final Map<String, DartStructureViewElement> oldChildrenByValue = new HashMap<>(oldChildren.length * 2);
+    for (DartStructureViewElement child : oldChildren) {
+      oldChildrenByValue.put(child.myValue, child);
+    }
+
+    boolean changed = outlines.size() != oldChildren.length;
+    final Map<String, Integer> occurrences = new HashMap<>();
+    final DartStructureViewElement[] children = new DartStructureViewElement[outlines.size()];
+    for (int i = 0; i < children.length; i++) {
+      final Outline childOutline = outlines.get(i);
+      final String presentableText = getPresentableText(childOutline);
+      final int occurrence = occurrences.merge(presentableText, 1, Integer::sum) - 1;
+      final String value = myValue + occurrence + presentableText;
+
+      DartStructureViewElement child = oldChildrenByValue.get(value);
+      if (child != null && isSameIcon(child.getOutline().getElement(), childOutline.getElement())) {
+        changed |= child.update(childOutline);
+      }
+      else {
+        child = new DartStructureViewElement(myPsiFile, childOutline, value, presentableText);
+      }
+      changed |= i >= oldChildren.length || child != oldChildren[i];
+      children[i] = child;
+    }
+
+    myChildren = children;
+    return changed;
+  }
+
+  private static boolean isSameIcon(@NotNull final Element oldElement, @NotNull final Element newElement) {
+    return oldElement.getKind().equals(newElement.getKind()) && oldElement.getFlags() == newElement.getFlags();
   }
 
   @Override
   public void navigate(boolean requestFocus) {
     final DartAnalysisServerService service = DartAnalysisServerService.getInstance(myPsiFile.getProject());
-    final int offset = service.getConvertedOffset(myPsiFile.getVirtualFile(), myOutline.getElement().getLocation().getOffset());
+    final int offset = service.getConvertedOffset(myPsiFile.getVirtualFile(), getOutline().getElement().getLocation().getOffset());
     new OpenFileDescriptor(myPsiFile.getProject(), myPsiFile.getVirtualFile(), offset).navigate(requestFocus);
   }
 
@@ -113,7 +181,7 @@ public class DartStructureViewElement implements StructureViewTreeElement, ItemP
   @Nullable
   @Override
   public Icon getIcon(boolean unused) {
-    final Element element = myOutline.getElement();
+    final Element element = getOutline().getElement();
     final boolean finalOrConst = element.isConst() || element.isFinal();
 
     switch (element.getKind()) {
@@ -173,10 +241,23 @@ public class DartStructureViewElement implements StructureViewTreeElement, ItemP
     return myValue;
   }
 
+  /**
+   * The value is built from the presentable texts of the element and its parents. Elements with equal presentable text
+   * are distinguished by the number of preceding siblings with the same text, so that adding or removing an element
+   * doesn't change the values of its other siblings.
+   */
   @NotNull
   public static String getValue(@NotNull final Outline outline) {
+    final String presentableText = getPresentableText(outline);
     final Outline parent = outline.getParent();
-    return (parent != null ? getValue(parent) + parent.getChildren().indexOf(outline) : "") + getPresentableText(outline);
+    if (parent == null) return presentableText;
+
+    int occurrence = 0;
+    for (Outline sibling : parent.getChildren()) {
+      if (sibling == outline) break;
+      if (presentableText.equals(getPresentableText(sibling))) occurrence++;
+    }
+    return getValue(parent) + occurrence + presentableText;
   }
 
   @NotNull
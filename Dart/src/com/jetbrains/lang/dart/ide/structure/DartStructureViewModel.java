@@ -34,15 +34,14 @@ import java.util.List;
 
 class DartStructureViewModel extends TextEditorBasedStructureViewModel implements StructureViewModel.ElementInfoProvider {
 
-  @NotNull private final StructureViewTreeElement myRootElement;
+  @NotNull private final DartStructureViewRootElement myRootElement;
 
   private final DartServerData.OutlineListener myListener = filePath -> {
-    if (filePath.equals(getPsiFile().getVirtualFile().getPath())) {
+    if (filePath.equals(getPsiFile().getVirtualFile().getPath()) && myRootElement.updateOutline()) {
       fireModelUpdate();
     }
   };
 
-
   public DartStructureViewModel(@Nullable final Editor editor, @NotNull final PsiFile psiFile) {
     super(editor, psiFile);
     myRootElement = new DartStructureViewRootElement(psiFile);
@@ -121,8 +120,33 @@ class DartStructureViewModel extends TextEditorBasedStructureViewModel implement
 
   private static class DartStructureViewRootElement extends PsiTreeElementBase<PsiFile> {
 
+    // element for the whole file outline; new outlines are applied to it incrementally
+    @Nullable private DartStructureViewElement myOutlineElement;
+
     public DartStructureViewRootElement(PsiFile file) {super(file);}
 
+    /**
+     * @return {@code true} if the structure view needs to be refreshed
+     */
+    synchronized boolean updateOutline() {
+      final PsiFile psiFile = getValue();
+      if (psiFile == null) return false;
+
+      final DartAnalysisServerService service = DartAnalysisServerService.getInstance(psiFile.getProject());
+      final Outline outline = service.getOutline(psiFile.getVirtualFile());
+      if (outline == null || myOutlineElement != null && myOutlineElement.getOutline() == outline) return false;
+
+      if (myOutlineElement == null) {
+        myOutlineElement = new DartStructureViewElement(psiFile, outline);
+        return true;
+      }
+
+      final long start = System.nanoTime();
+      final boolean changed = myOutlineElement.update(outline);
+      service.outlineViewUpdated(System.nanoTime() - start, changed);
+      return changed;
+    }
+
     @Nullable
     @Override
     public String getPresentableText() {
@@ -131,11 +155,9 @@ class DartStructureViewModel extends TextEditorBasedStructureViewModel implement
 
     @NotNull
     @Override
-    public Collection<StructureViewTreeElement> getChildrenBase() {
-      final DartAnalysisServerService service = DartAnalysisServerService.getInstance(getValue().getProject());
-      final Outline outline = service.getOutline(getValue().getVirtualFile());
-      return outline != null ? Arrays.asList(new DartStructureViewElement(getValue(), outline).getChildren())
-                             : Collections.emptyList();
+    public synchronized Collection<StructureViewTreeElement> getChildrenBase() {
+      updateOutline();
+      return myOutlineElement != null ? Arrays.asList(myOutlineElement.getChildren()) : Collections.emptyList();
     }
   }
 }
@@ -1,15 +1,21 @@
 package com.jetbrains.lang.dart.util;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.util.PairConsumer;
+import com.intellij.util.containers.ContainerUtil;
 import com.jetbrains.lang.dart.ide.index.DartLibraryIndex;
 import com.jetbrains.lang.dart.sdk.DartSdk;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
+import java.util.Map;
 
 public abstract class DartUrlResolver {
 
@@ -34,7 +40,26 @@ public abstract class DartUrlResolver {
    */
   @NotNull
   public static DartUrlResolver getInstance(final @NotNull Project project, final @NotNull VirtualFile contextFile) {
-    return new DartUrlResolverImpl(project, contextFile);
+    final VirtualFile pubspecYamlFile = PubspecYamlUtil.findPubspecYamlFile(project, contextFile);
+    if (pubspecYamlFile == null) {
+      // packages map depends on the module of the contextFile, not worth caching
+      return new DartUrlResolverImpl(project, contextFile, null);
+    }
+
+    // Resolvers are shared for all files under the same pubspec.yaml. The whole cache is dropped on roots change (SDK, Dart Packages
+    // library) and on VFS structure change (pubspec.yaml or .packages file added or deleted); content change of pubspec.yaml
+    // or .packages file is checked by DartUrlResolverImpl.isUpToDate().
+    final Map<VirtualFile, DartUrlResolverImpl> cache = CachedValuesManager.getManager(project).getCachedValue(project, () ->
+      new CachedValueProvider.Result<>(ContainerUtil.newConcurrentMap(),
+                                       ProjectRootManager.getInstance(project),
+                                       VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS));
+
+    DartUrlResolverImpl resolver = cache.get(pubspecYamlFile);
+    if (resolver == null || !resolver.isUpToDate()) {
+      resolver = new DartUrlResolverImpl(project, contextFile, pubspecYamlFile);
+      cache.put(pubspecYamlFile, resolver);
+    }
+    return resolver;
   }
 
   @Nullable
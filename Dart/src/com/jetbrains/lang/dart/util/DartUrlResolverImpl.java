@@ -43,16 +43,62 @@ public class DartUrlResolverImpl extends DartUrlResolver {
   // myPackagesMapFromLib is not empty only if pubspec.yaml file is null
   @NotNull private final Map<String, List<String>> myPackagesMapFromLib = new THashMap<>();
 
+  // reverse maps for getDartUrlForFile(): file parents are looked up one by one, so that lookup is O(path depth), not O(packages)
+  @NotNull private final Map<VirtualFile, String> myLivePackageDirToNameMap = new THashMap<>();
+  @NotNull private final Map<String, String> myPackageDirPathFromLibToNameMap = new THashMap<>();
+
+  private final long myPubspecYamlModificationCount;
+  private final long myDotPackagesModificationCount;
+
   public DartUrlResolverImpl(final @NotNull Project project, final @NotNull VirtualFile contextFile) {
+    this(project, contextFile, PubspecYamlUtil.findPubspecYamlFile(project, contextFile));
+  }
+
+  DartUrlResolverImpl(final @NotNull Project project,
+                      final @NotNull VirtualFile contextFile,
+                      final @Nullable VirtualFile pubspecYamlFile) {
     myProject = project;
     myDartSdk = DartSdk.getDartSdk(project);
-    myPubspecYamlFile = PubspecYamlUtil.findPubspecYamlFile(myProject, contextFile);
+    myPubspecYamlFile = pubspecYamlFile;
+    myPubspecYamlModificationCount = pubspecYamlFile == null ? -1 : pubspecYamlFile.getModificationCount();
+    myDotPackagesModificationCount = getDotPackagesModificationCount(pubspecYamlFile);
 
     initLivePackageNameToDirMap();
 
     if (myPubspecYamlFile == null) {
       initPackagesMapFromLib(contextFile);
     }
+
+    for (Map.Entry<String, VirtualFile> entry : myLivePackageNameToDirMap.entrySet()) {
+      // if several packages share the same dir then the first one wins, same as it was with the linear search
+      if (!myLivePackageDirToNameMap.containsKey(entry.getValue())) {
+        myLivePackageDirToNameMap.put(entry.getValue(), entry.getKey());
+      }
+    }
+
+    for (Map.Entry<String, List<String>> entry : myPackagesMapFromLib.entrySet()) {
+      for (String dirPath : entry.getValue()) {
+        if (!myPackageDirPathFromLibToNameMap.containsKey(dirPath)) {
+          myPackageDirPathFromLibToNameMap.put(dirPath, entry.getKey());
+        }
+      }
+    }
+  }
+
+  private static long getDotPackagesModificationCount(@Nullable final VirtualFile pubspecYamlFile) {
+    final VirtualFile baseDir = pubspecYamlFile == null ? null : pubspecYamlFile.getParent();
+    final VirtualFile dotPackagesFile = baseDir == null ? null : baseDir.findChild(DotPackagesFileUtil.DOT_PACKAGES);
+    return dotPackagesFile == null || dotPackagesFile.isDirectory() ? -1 : dotPackagesFile.getModificationCount();
+  }
+
+  /**
+   * @return {@code false} if pubspec.yaml or .packages file has been changed since this instance was created
+   */
+  boolean isUpToDate() {
+    if (myPubspecYamlFile == null) return false;
+    return myPubspecYamlFile.isValid() &&
+           myPubspecYamlFile.getModificationCount() == myPubspecYamlModificationCount &&
+           getDotPackagesModificationCount(myPubspecYamlFile) == myDotPackagesModificationCount;
   }
 
   @Nullable
@@ -148,10 +194,10 @@ public class DartUrlResolverImpl extends DartUrlResolver {
     if (myDartSdk != null) result = getUrlIfFileFromSdkLib(myProject, file, myDartSdk);
     if (result != null) return result;
 
-    result = getUrlIfFileFromLivePackage(file, myLivePackageNameToDirMap);
+    result = getUrlIfFileFromLivePackage(file, myLivePackageDirToNameMap);
     if (result != null) return result;
 
-    result = getUrlIfFileFromDartPackagesLib(file, myPackagesMapFromLib);
+    result = getUrlIfFileFromDartPackagesLib(file, myPackageDirPathFromLibToNameMap);
     if (result != null) return result;
 
     // see com.google.dart.tools.debug.core.server.ServerBreakpointManager#getAbsoluteUrlForResource()
@@ -176,13 +222,13 @@ public class DartUrlResolverImpl extends DartUrlResolver {
 
   @Nullable
   private static String getUrlIfFileFromLivePackage(final @NotNull VirtualFile file,
-                                                    final @NotNull Map<String, VirtualFile> livePackageNameToDirMap) {
-    for (Map.Entry<String, VirtualFile> entry : livePackageNameToDirMap.entrySet()) {
-      final String packageName = entry.getKey();
-      final VirtualFile packageDir = entry.getValue();
-      final String relPath = VfsUtilCore.getRelativePath(file, packageDir, '/');
-      if (relPath != null) {
-        return PACKAGE_PREFIX + packageName + "/" + relPath;
+                                                    final @NotNull Map<VirtualFile, String> livePackageDirToNameMap) {
+    if (livePackageDirToNameMap.isEmpty()) return null;
+
+    for (VirtualFile dir = file; dir != null; dir = dir.getParent()) {
+      final String packageName = livePackageDirToNameMap.get(dir);
+      if (packageName != null) {
+        return PACKAGE_PREFIX + packageName + "/" + VfsUtilCore.getRelativePath(file, dir, '/');
       }
     }
     return null;
@@ -190,13 +236,15 @@ public class DartUrlResolverImpl extends DartUrlResolver {
 
   @Nullable
   private static String getUrlIfFileFromDartPackagesLib(final @NotNull VirtualFile file,
-                                                        final @NotNull Map<String, List<String>> pubListPackageDirsMap) {
-    for (Map.Entry<String, List<String>> mapEntry : pubListPackageDirsMap.entrySet()) {
-      for (String dirPath : mapEntry.getValue()) {
-        if (file.getPath().startsWith(dirPath + "/")) {
-          final String packageName = mapEntry.getKey();
-          return PACKAGE_PREFIX + packageName + file.getPath().substring(dirPath.length());
-        }
+                                                        final @NotNull Map<String, String> packageDirPathToNameMap) {
+    if (packageDirPathToNameMap.isEmpty()) return null;
+
+    final String filePath = file.getPath();
+    for (int slashIndex = filePath.lastIndexOf('/'); slashIndex > 0; slashIndex = filePath.lastIndexOf('/', slashIndex - 1)) {
+      final String dirPath = filePath.substring(0, slashIndex);
+      final String packageName = packageDirPathToNameMap.get(dirPath);
+      if (packageName != null) {
+        return PACKAGE_PREFIX + packageName + filePath.substring(dirPath.length());
       }
     }
     return null;
@@ -0,0 +1,82 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartRegion;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DartRegionStoreTest extends TestCase {
+
+  @NotNull
+  private static List<DartRegion> regions(final int... offsetsAndLengths) {
+    final List<DartRegion> result = new ArrayList<>();
+    for (int i = 0; i < offsetsAndLengths.length; i += 2) {
+      result.add(new DartRegion(offsetsAndLengths[i], offsetsAndLengths[i + 1]));
+    }
+    return result;
+  }
+
+  private static void assertRegions(@NotNull final List<DartRegion> actual, final int... offsetsAndLengths) {
+    final List<Integer> actualOffsetsAndLengths = new ArrayList<>();
+    for (DartRegion region : actual) {
+      actualOffsetsAndLengths.add(region.getOffset());
+      actualOffsetsAndLengths.add(region.getLength());
+    }
+    final List<Integer> expected = new ArrayList<>();
+    for (int value : offsetsAndLengths) {
+      expected.add(value);
+    }
+    assertEquals(expected.toString(), actualOffsetsAndLengths.toString());
+  }
+
+  public void testRegionsAreSorted() {
+    final DartRegionStore<DartRegion> store = new DartRegionStore<>("/a.dart", regions(30, 2, 10, 5, 20, 1), true);
+    assertRegions(store.getRegions(), 10, 5, 20, 1, 30, 2);
+  }
+
+  public void testInsertionShiftsAndUpdatesTouched() {
+    final DartRegionStore<DartRegion> store = new DartRegionStore<>("/a.dart", regions(0, 100, 10, 5, 20, 1), false);
+    assertFalse(store.documentChanged(12, 0, 3));
+    assertRegions(store.getRegions(), 0, 103, 10, 8, 23, 1);
+  }
+
+  public void testInsertionDeletesTouched() {
+    final DartRegionStore<DartRegion> store = new DartRegionStore<>("/a.dart", regions(0, 100, 10, 5, 20, 1), true);
+    assertTrue(store.documentChanged(12, 0, 3));
+    assertRegions(store.getRegions(), 23, 1);
+  }
+
+  public void testLongRegionFarBeforeChangeIsTouched() {
+    final List<DartRegion> list = regions(0, 1000);
+    for (int i = 1; i < 500; i++) {
+      list.add(new DartRegion(i * 2, 1));
+    }
+    final DartRegionStore<DartRegion> store = new DartRegionStore<>("/a.dart", list, false);
+    store.documentChanged(995, 3, 0);
+    assertEquals(997, store.getRegions().get(0).getLength());
+  }
+
+  public void testRegionsDeletedInsideLaterDeletionKeepOrder() {
+    final DartRegionStore<DartRegion> store = new DartRegionStore<>("/a.dart", regions(10, 0, 35, 2, 50, 0), true);
+    // the region at 35 is deleted, then the text around its old place is deleted as well
+    assertTrue(store.documentChanged(30, 10, 0));
+    assertFalse(store.documentChanged(20, 14, 0));
+    // the region at 26 is before the insertion and must not be shifted
+    assertFalse(store.documentChanged(28, 0, 3));
+    assertRegions(store.getRegions(), 10, 0, 26, 0);
+    assertRegions(store.getRegionsStartingIn(11, 100), 26, 0);
+  }
+
+  public void testRegionsStartingIn() {
+    final DartRegionStore<DartRegion> store = new DartRegionStore<>("/a.dart", regions(10, 5, 20, 1, 20, 3, 30, 2), true);
+    store.documentChanged(0, 0, 5);
+    assertRegions(store.getRegionsStartingIn(0, 16), 15, 5);
+    assertRegions(store.getRegionsStartingIn(16, 26), 25, 1, 25, 3);
+    assertRegions(store.getRegionsStartingIn(25, Integer.MAX_VALUE), 25, 1, 25, 3, 35, 2);
+    assertRegions(store.getRegionsStartingIn(40, 50));
+    assertEquals(Arrays.asList(store.getRegions().get(1), store.getRegions().get(2)), store.getRegionsStartingIn(25, 26));
+  }
+}
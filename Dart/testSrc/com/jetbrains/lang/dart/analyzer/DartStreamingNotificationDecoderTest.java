@@ -0,0 +1,155 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.google.dart.server.AnalysisServerListenerAdapter;
+import com.google.dart.server.internal.remote.processor.NotificationAnalysisHighlightsProcessor;
+import com.google.dart.server.internal.remote.processor.NotificationAnalysisNavigationProcessor;
+import com.google.dart.server.internal.remote.processor.StreamingNotificationDecoder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.diagnostic.Logger;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+import org.dartlang.analysis.server.protocol.NavigationRegion;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+public class DartStreamingNotificationDecoderTest extends TestCase {
+  private static final Logger LOG = Logger.getInstance(DartStreamingNotificationDecoderTest.class.getName());
+
+  private static class RecordingListener extends AnalysisServerListenerAdapter {
+    private String myFile;
+    private List<HighlightRegion> myHighlights;
+    private List<NavigationRegion> myNavigation;
+
+    @Override
+    public void computedHighlights(String file, List<HighlightRegion> highlights) {
+      myFile = file;
+      myHighlights = highlights;
+    }
+
+    @Override
+    public void computedNavigation(String file, List<NavigationRegion> regions) {
+      myFile = file;
+      myNavigation = regions;
+    }
+  }
+
+  @NotNull
+  private static String createHighlightsNotification(final int regionCount) {
+    final StringBuilder builder = new StringBuilder("{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"/project/lib/main.dart\",\"regions\":[");
+    for (int i = 0; i < regionCount; i++) {
+      if (i > 0) builder.append(',');
+      builder.append("{\"type\":\"").append(i % 2 == 0 ? "KEYWORD" : "IDENTIFIER_DEFAULT").append("\",\"offset\":").append(i * 10)
+        .append(",\"length\":").append(i % 7 + 1).append('}');
+    }
+    return builder.append("]}}").toString();
+  }
+
+  @NotNull
+  private static String createNavigationNotification(final int regionCount) {
+    final StringBuilder builder = new StringBuilder("{\"event\":\"analysis.navigation\",\"params\":{\"file\":\"/project/lib/main.dart\",\"regions\":[");
+    for (int i = 0; i < regionCount; i++) {
+      if (i > 0) builder.append(',');
+      builder.append("{\"offset\":").append(i * 10).append(",\"length\":5,\"targets\":[").append(i % 3).append("]}");
+    }
+    builder.append("],\"targets\":[");
+    for (int i = 0; i < 3; i++) {
+      if (i > 0) builder.append(',');
+      builder.append("{\"kind\":\"CLASS\",\"fileIndex\":").append(i % 2).append(",\"offset\":").append(i * 100)
+        .append(",\"length\":4,\"startLine\":").append(i + 1).append(",\"startColumn\":3,\"codeOffset\":0}");
+    }
+    return builder.append("],\"files\":[\"/project/lib/a.dart\",\"/project/lib/b.dart\"]}}").toString();
+  }
+
+  public void testHighlightsSameAsTreeProcessor() throws Exception {
+    final String line = createHighlightsNotification(1000);
+    assertTrue(StreamingNotificationDecoder.canDecode(line));
+
+    final RecordingListener streaming = new RecordingListener();
+    new StreamingNotificationDecoder(streaming).decode(line);
+
+    final RecordingListener tree = new RecordingListener();
+    new NotificationAnalysisHighlightsProcessor(tree).process((JsonObject)new JsonParser().parse(line));
+
+    assertEquals(tree.myFile, streaming.myFile);
+    assertEquals(1000, streaming.myHighlights.size());
+    assertEquals(tree.myHighlights, streaming.myHighlights);
+  }
+
+  public void testNavigationSameAsTreeProcessor() throws Exception {
+    final String line = createNavigationNotification(1000);
+    assertTrue(StreamingNotificationDecoder.canDecode(line));
+
+    final RecordingListener streaming = new RecordingListener();
+    new StreamingNotificationDecoder(streaming).decode(line);
+
+    final RecordingListener tree = new RecordingListener();
+    new NotificationAnalysisNavigationProcessor(tree).process((JsonObject)new JsonParser().parse(line));
+
+    assertEquals(tree.myFile, streaming.myFile);
+    assertEquals(tree.myNavigation, streaming.myNavigation);
+    for (int i = 0; i < tree.myNavigation.size(); i++) {
+      assertEquals(tree.myNavigation.get(i).getTargetObjects(), streaming.myNavigation.get(i).getTargetObjects());
+      assertEquals(tree.myNavigation.get(i).getTargetObjects().get(0).getFile(),
+                   streaming.myNavigation.get(i).getTargetObjects().get(0).getFile());
+    }
+  }
+
+  public void testOtherNotificationsNotDecoded() {
+    assertFalse(StreamingNotificationDecoder.canDecode("{\"event\":\"analysis.errors\",\"params\":{}}"));
+    assertFalse(StreamingNotificationDecoder.canDecode("{\"event\":\"analysis.highlightsX\",\"params\":{}}"));
+    assertFalse(StreamingNotificationDecoder.canDecode("{\"id\":\"1\",\"result\":{}}"));
+  }
+
+  public void testUnknownPropertiesSkipped() throws Exception {
+    final String line = "{\"event\":\"analysis.highlights\",\"params\":{\"extra\":{\"a\":[1,{\"b\":null}]}," +
+                        "\"file\":\"/project/lib/main.dart\"," +
+                        "\"regions\":[{\"type\":\"CLASS\",\"future\":[true,\"x\"],\"offset\":3,\"length\":4}]},\"time\":123}";
+    assertTrue(StreamingNotificationDecoder.canDecode(line));
+
+    final RecordingListener streaming = new RecordingListener();
+    new StreamingNotificationDecoder(streaming).decode(line);
+
+    final RecordingListener tree = new RecordingListener();
+    new NotificationAnalysisHighlightsProcessor(tree).process((JsonObject)new JsonParser().parse(line));
+
+    assertEquals("/project/lib/main.dart", streaming.myFile);
+    assertEquals(1, streaming.myHighlights.size());
+    assertEquals(tree.myHighlights, streaming.myHighlights);
+  }
+
+  /**
+   * Logs bytes allocated by both decoders for a big notification. Not asserted, allocation counts depend on the JIT and GC.
+   */
+  public void testStreamingDecodingAllocations() throws Exception {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+    final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+    if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) return;
+
+    final String line = createHighlightsNotification(50000);
+    final long threadId = Thread.currentThread().getId();
+
+    // warm up both code paths
+    new StreamingNotificationDecoder(new RecordingListener()).decode(line);
+    new NotificationAnalysisHighlightsProcessor(new RecordingListener()).process((JsonObject)new JsonParser().parse(line));
+
+    final RecordingListener streaming = new RecordingListener();
+    long before = sunBean.getThreadAllocatedBytes(threadId);
+    new StreamingNotificationDecoder(streaming).decode(line);
+    final long streamingBytes = sunBean.getThreadAllocatedBytes(threadId) - before;
+
+    final RecordingListener tree = new RecordingListener();
+    before = sunBean.getThreadAllocatedBytes(threadId);
+    new NotificationAnalysisHighlightsProcessor(tree).process((JsonObject)new JsonParser().parse(line));
+    final long treeBytes = sunBean.getThreadAllocatedBytes(threadId) - before;
+
+    assertEquals(50000, streaming.myHighlights.size());
+    assertEquals(tree.myHighlights, streaming.myHighlights);
+    LOG.info("analysis.highlights with 50000 regions, " + line.length() + " chars: streaming decoding allocated " + streamingBytes / 1024 +
+             " KB, JSON tree decoding allocated " + treeBytes / 1024 + " KB");
+  }
+}
@@ -0,0 +1,140 @@
+package com.jetbrains.lang.dart.dart_style;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.LocalTimeCounter;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.DartFileType;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how long the IntelliJ formatter ({@link com.jetbrains.lang.dart.ide.formatter.DartSpacingProcessor} and friends)
+ * takes to format the inputs of the dart_style test suite, see {@link DartStyleTest}.
+ * Per-file time and allocation are logged, so that slow formatting rules are easy to spot.
+ */
+public class DartStyleBenchmarkTest extends DartCodeInsightFixtureTestCase {
+
+  private static final Logger LOG = Logger.getInstance(DartStyleBenchmarkTest.class.getName());
+
+  private static class CorpusFile {
+    @NotNull private final String myName;
+    @NotNull private final List<String> myInputs;
+    private long myNanos;
+    private long myAllocatedBytes;
+
+    private CorpusFile(@NotNull final String name, @NotNull final List<String> inputs) {
+      myName = name;
+      myInputs = inputs;
+    }
+  }
+
+  @NotNull
+  private static List<CorpusFile> loadCorpus() throws IOException {
+    final File root = new File(DartTestUtils.BASE_TEST_DATA_PATH, "dart_style");
+    final List<CorpusFile> result = new ArrayList<>();
+    for (File file : FileUtil.findFilesByMask(Pattern.compile(".*\\.(unit|stmt)"), root)) {
+      final String name = FileUtil.toSystemIndependentName(FileUtil.getRelativePath(root, file));
+      result.add(new CorpusFile(name, extractInputs(FileUtil.loadLines(file, "UTF-8"), name.endsWith(".unit"))));
+    }
+    Collections.sort(result, (f1, f2) -> f1.myName.compareTo(f2.myName));
+    return result;
+  }
+
+  /**
+   * Returns the unformatted sources of all tests in a dart_style test file, in the same shape as {@link DartStyleTest} formats them.
+   */
+  @NotNull
+  private static List<String> extractInputs(@NotNull final List<String> lines, final boolean isCompilationUnit) {
+    final List<String> inputs = new ArrayList<>();
+    StringBuilder input = null;
+    for (String line : lines) {
+      if (line.startsWith(">>>")) {
+        input = new StringBuilder(isCompilationUnit ? "" : "m() {\n");
+      }
+      else if (line.startsWith("<<<")) {
+        if (input != null) {
+          if (!isCompilationUnit) input.append("}\n");
+          inputs.add(input.toString().replace("‹", "").replace("›", ""));
+        }
+        input = null;
+      }
+      else if (input != null) {
+        input.append(!isCompilationUnit && !line.isEmpty() ? "  " : "").append(line).append('\n');
+      }
+    }
+    return inputs;
+  }
+
+  private void format(@NotNull final String text) {
+    final PsiFile psiFile = PsiFileFactory.getInstance(getProject())
+      .createFileFromText("benchmark.dart", DartFileType.INSTANCE, text, LocalTimeCounter.currentTime(), true);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> CodeStyleManager.getInstance(getProject()).reformat(psiFile));
+  }
+
+  public void testFormatDartStyleCorpus() throws Exception {
+    final List<CorpusFile> corpus = loadCorpus();
+    assertFalse(corpus.isEmpty());
+
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    final com.sun.management.ThreadMXBean sunBean = bean instanceof com.sun.management.ThreadMXBean &&
+                                                    ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported() &&
+                                                    ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemoryEnabled()
+                                                    ? (com.sun.management.ThreadMXBean)bean : null;
+    final long threadId = Thread.currentThread().getId();
+
+    // warm up
+    for (CorpusFile file : corpus) {
+      for (String input : file.myInputs) {
+        format(input);
+      }
+    }
+
+    for (CorpusFile file : corpus) {
+      final long allocatedBefore = sunBean != null ? sunBean.getThreadAllocatedBytes(threadId) : 0;
+      final long start = System.nanoTime();
+      for (String input : file.myInputs) {
+        format(input);
+      }
+      file.myNanos = System.nanoTime() - start;
+      file.myAllocatedBytes = sunBean != null ? sunBean.getThreadAllocatedBytes(threadId) - allocatedBefore : -1;
+    }
+
+    final List<CorpusFile> slowest = new ArrayList<>(corpus);
+    Collections.sort(slowest, (f1, f2) -> Long.compare(f2.myNanos, f1.myNanos));
+    long totalNanos = 0;
+    int totalInputs = 0;
+    for (CorpusFile file : corpus) {
+      totalNanos += file.myNanos;
+      totalInputs += file.myInputs.size();
+    }
+
+    LOG.info("Formatted " + totalInputs + " inputs from " + corpus.size() + " files in " + totalNanos / 1000000 + " ms");
+    for (CorpusFile file : slowest.subList(0, Math.min(20, slowest.size()))) {
+      LOG.info(file.myName + ": " + file.myInputs.size() + " inputs, " + file.myNanos / 1000 + " µs" +
+               (file.myAllocatedBytes >= 0 ? ", " + file.myAllocatedBytes / 1024 + " KB allocated" : ""));
+    }
+
+    PlatformTestUtil.startPerformanceTest("Format dart_style test corpus", 20000, () -> {
+      for (CorpusFile file : corpus) {
+        for (String input : file.myInputs) {
+          format(input);
+        }
+      }
+    }).assertTiming();
+  }
+}
@@ -0,0 +1,102 @@
+package com.jetbrains.lang.dart.ide;
+
+import com.intellij.navigation.ItemPresentation;
+import com.intellij.navigation.NavigationItem;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.ide.index.DartSymbolNavigationItem;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DartGotoSymbolTest extends DartCodeInsightFixtureTestCase {
+  @NotNull
+  private static List<String> getPresentations(@NotNull final NavigationItem[] items) {
+    final List<String> result = new ArrayList<>();
+    for (NavigationItem item : items) {
+      final ItemPresentation presentation = item.getPresentation();
+      assertNotNull(presentation);
+      final String location = presentation.getLocationString();
+      result.add(presentation.getPresentableText() + (location == null ? "" : " in " + location));
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  private static void checkOffsets(@NotNull final PsiFile psiFile, @NotNull final NavigationItem[] items) {
+    for (NavigationItem item : items) {
+      assertInstanceOf(item, DartSymbolNavigationItem.class);
+      final DartSymbolNavigationItem symbolItem = (DartSymbolNavigationItem)item;
+      if (!symbolItem.getFile().equals(psiFile.getVirtualFile())) continue;
+      final int offset = symbolItem.getNameOffset();
+      assertEquals(item.getName(), psiFile.getText().substring(offset, offset + item.getName().length()));
+    }
+  }
+
+  public void testSymbols() {
+    final PsiFile psiFile = myFixture.addFileToProject("web/main.dart",
+                                                       "class State {\n" +
+                                                       "  State();\n" +
+                                                       "  State.named();\n" +
+                                                       "  void build() {}\n" +
+                                                       "  int get value => 0;\n" +
+                                                       "}\n" +
+                                                       "enum Color { red, build }\n" +
+                                                       "void build() {}\n" +
+                                                       "var value;\n");
+    myFixture.addFileToProject("web/part.dart", "part of lib;\n" +
+                                                "void build() {}\n");
+
+    final DartSymbolContributor contributor = new DartSymbolContributor();
+    assertTrue(Arrays.asList(contributor.getNames(getProject(), false)).containsAll(Arrays.asList("State", "build", "value", "red")));
+
+    final NavigationItem[] buildItems = contributor.getItemsByName("build", "build", getProject(), false);
+    assertEquals(Arrays.asList("build", "build in Color", "build in State", "build in lib"), getPresentations(buildItems));
+    checkOffsets(psiFile, buildItems);
+
+    final NavigationItem[] stateItems = contributor.getItemsByName("State", "State", getProject(), false);
+    assertEquals(Collections.singletonList("State"), getPresentations(stateItems));
+    checkOffsets(psiFile, stateItems);
+
+    final NavigationItem[] valueItems = contributor.getItemsByName("value", "value", getProject(), false);
+    assertEquals(Arrays.asList("value", "value in State"), getPresentations(valueItems));
+    checkOffsets(psiFile, valueItems);
+  }
+
+  public void testClasses() {
+    final PsiFile psiFile = myFixture.addFileToProject("web/main.dart", "class State {}\n" +
+                                                                        "class Other { State s; }\n" +
+                                                                        "class State2 {}\n");
+
+    final DartClassContributor contributor = new DartClassContributor();
+    final NavigationItem[] items = contributor.getItemsByName("State", "State", getProject(), false);
+    assertEquals(Collections.singletonList("State"), getPresentations(items));
+    checkOffsets(psiFile, items);
+  }
+
+  public void testGotoSymbolInLargeCorpus() {
+    // resembles pub cache with Flutter packages: a lot of files with the same common member names
+    for (int i = 0; i < 500; i++) {
+      myFixture.addFileToProject("lib/widget" + i + ".dart",
+                                 "class Widget" + i + " extends StatelessWidget {\n" +
+                                 "  Widget build(BuildContext context) => null;\n" +
+                                 "}\n" +
+                                 "class State" + i + " extends State<Widget" + i + "> {\n" +
+                                 "  Widget build(BuildContext context) => null;\n" +
+                                 "}\n");
+    }
+
+    final DartSymbolContributor contributor = new DartSymbolContributor();
+    assertEquals(1000, contributor.getItemsByName("build", "build", getProject(), false).length);
+
+    PlatformTestUtil.startPerformanceTest("Go to Symbol 'build' in 500 files", 1000, () -> {
+      for (int i = 0; i < 10; i++) {
+        contributor.getItemsByName("build", "build", getProject(), false);
+      }
+    }).assertTiming();
+  }
+}
@@ -338,6 +338,55 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
     runTest(events, signals, new int[]{});
   }
 
+  public void testReplayLargeEventLog() {
+    final int groupCount = 10;
+    final int testsInGroup = 100;
+
+    final List<String> events = new ArrayList<>();
+    final List<String> signals = new ArrayList<>();
+    events.add("{'protocolVersion':'0.1.0','runnerVersion':'0.12.24','type':'start','time':0}\n");
+    events.add("{'count':1,'type':'allSuites','time':0}\n");
+    events.add("{'suite':{'id':0,'platform':'vm','path':'test/big_test.dart'},'type':'suite','time':0}\n");
+    events.add("{'test':{'id':1,'name':'loading test/big_test.dart','suiteID':0,'groupIDs':[],'metadata':{'skip':false,'skipReason':null}},'type':'testStart','time':0}\n");
+    events.add("{'testID':1,'result':'success','hidden':true,'type':'testDone','time':10}\n");
+    events.add("{'group':{'id':2,'suiteID':0,'parentID':null,'name':null,'metadata':{'skip':false,'skipReason':null},'testCount':" +
+               groupCount * testsInGroup + "},'type':'group','time':10}\n");
+    signals.add("suite started big_test.dart");
+
+    int id = 3;
+    for (int i = 0; i < groupCount; i++) {
+      final int groupId = id++;
+      events.add("{'group':{'id':" + groupId + ",'suiteID':0,'parentID':2,'name':'group " + i + "','metadata':{'skip':false,'skipReason':null},'testCount':" +
+                 testsInGroup + ",'line':" + (i + 1) + ",'column':3,'url':'file:///big_test.dart'},'type':'group','time':10}\n");
+      signals.add("suite started group " + i);
+
+      for (int j = 0; j < testsInGroup; j++) {
+        final int testId = id++;
+        events.add("{'test':{'id':" + testId + ",'name':'group " + i + " test " + j + "','suiteID':0,'groupIDs':[2," + groupId +
+                   "],'metadata':{'skip':false,'skipReason':null},'line':" + (j + 1) + ",'column':5},'type':'testStart','time':" + testId + "}\n");
+        events.add("{'testID':" + testId + ",'message':'output " + j + "','type':'print','time':" + testId + "}\n");
+        events.add("{'testID':" + testId + ",'result':'success','hidden':false,'type':'testDone','time':" + (testId + 1) + "}\n");
+        signals.add("start test " + j);
+        signals.add("print test " + j + " output " + j + "\n");
+        signals.add("finish test " + j);
+      }
+
+      signals.add("suite finished group " + i);
+    }
+
+    signals.add("suite finished big_test.dart");
+
+    // late output and errors are still reported under the finished test
+    events.add("{'testID':4,'message':'too late','type':'print','time':100000}\n");
+    events.add("{'testID':4,'error':'late failure','stackTrace':'late stack trace','isFailure':true,'type':'error','time':100000}\n");
+    events.add("{'success':true,'type':'done','time':100001}\n");
+    signals.add("print test 0 too late\n");
+    signals.add("fail test 0 false");
+    signals.add("print test 0 late stack trace\n");
+
+    runTest(events.toArray(new String[0]), signals.toArray(new String[0]), new int[]{});
+  }
+
   private void runTest(String[] jsonEvents, String[] signals, int[] parents) {
     DartTestEventsConverter parser = myEventsConverter;
     Key key = new Key("stdout");
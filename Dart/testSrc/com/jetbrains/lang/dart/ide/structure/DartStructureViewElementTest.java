@@ -0,0 +1,122 @@
+package com.jetbrains.lang.dart.ide.structure;
+
+import com.intellij.ide.structureView.StructureViewTreeElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import org.dartlang.analysis.server.protocol.Element;
+import org.dartlang.analysis.server.protocol.ElementKind;
+import org.dartlang.analysis.server.protocol.Location;
+import org.dartlang.analysis.server.protocol.Outline;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DartStructureViewElementTest extends DartCodeInsightFixtureTestCase {
+  private static final int ABSTRACT = 0x01;
+
+  /**
+   * Creates an outline of a file with a class {@code Foo} that has the given methods; {@code shift} is added to all offsets.
+   */
+  @NotNull
+  private static Outline createOutline(final int shift, final int flags, @NotNull final String... methodNames) {
+    final Outline unit = new Outline(null, createElement(ElementKind.COMPILATION_UNIT, "<unit>", 0, 0), 0, 1000000);
+    final Outline clazz = new Outline(unit, createElement(ElementKind.CLASS, "Foo", 6 + shift, flags), shift, 1000000);
+    final List<Outline> methods = new ArrayList<>();
+    for (int i = 0; i < methodNames.length; i++) {
+      final Outline method = new Outline(clazz, createElement(ElementKind.METHOD, methodNames[i], 20 + shift + i * 20, 0),
+                                         15 + shift + i * 20, 15);
+      method.setChildren(new ArrayList<>());
+      methods.add(method);
+    }
+    clazz.setChildren(methods);
+    final List<Outline> unitChildren = new ArrayList<>();
+    unitChildren.add(clazz);
+    unit.setChildren(unitChildren);
+    return unit;
+  }
+
+  @NotNull
+  private static Element createElement(@NotNull final String kind, @NotNull final String name, final int offset, final int flags) {
+    return new Element(kind, name, new Location("/project/web/foo.dart", offset, name.length(), 1, 1), flags, "()", null, null);
+  }
+
+  @NotNull
+  private static DartStructureViewElement getOnlyChild(@NotNull final DartStructureViewElement element) {
+    final StructureViewTreeElement[] children = element.getChildren();
+    assertEquals(1, children.length);
+    return (DartStructureViewElement)children[0];
+  }
+
+  @NotNull
+  private PsiFile getPsiFile() {
+    return myFixture.addFileToProject("web/foo.dart", "");
+  }
+
+  public void testOffsetChangesReuseElements() {
+    final DartStructureViewElement root = new DartStructureViewElement(getPsiFile(), createOutline(0, 0, "a", "b"));
+    final DartStructureViewElement clazz = getOnlyChild(root);
+    final StructureViewTreeElement[] methods = clazz.getChildren();
+
+    final Outline shifted = createOutline(10, 0, "a", "b");
+    assertFalse(root.update(shifted));
+    assertSame(clazz, getOnlyChild(root));
+    assertSame(shifted.getChildren().get(0), clazz.getOutline());
+    final StructureViewTreeElement[] newMethods = clazz.getChildren();
+    assertSame(methods[0], newMethods[0]);
+    assertSame(methods[1], newMethods[1]);
+    assertEquals(40, ((DartStructureViewElement)newMethods[1]).getOutline().getElement().getLocation().getOffset());
+  }
+
+  public void testInsertedElementDoesNotChangeOthers() {
+    final DartStructureViewElement root = new DartStructureViewElement(getPsiFile(), createOutline(0, 0, "a", "b", "a"));
+    final DartStructureViewElement clazz = getOnlyChild(root);
+    final StructureViewTreeElement[] methods = clazz.getChildren();
+
+    assertTrue(root.update(createOutline(0, 0, "c", "a", "b", "a")));
+    assertSame(clazz, getOnlyChild(root));
+    final StructureViewTreeElement[] newMethods = clazz.getChildren();
+    assertEquals(4, newMethods.length);
+    assertEquals("c()", newMethods[0].getPresentation().getPresentableText());
+    assertSame(methods[0], newMethods[1]);
+    assertSame(methods[1], newMethods[2]);
+    assertSame(methods[2], newMethods[3]);
+    assertFalse(methods[0].equals(methods[2]));
+  }
+
+  public void testChangedFlagsRecreateElement() {
+    final DartStructureViewElement root = new DartStructureViewElement(getPsiFile(), createOutline(0, 0, "a"));
+    final DartStructureViewElement clazz = getOnlyChild(root);
+
+    assertTrue(root.update(createOutline(0, ABSTRACT, "a")));
+    assertNotSame(clazz, getOnlyChild(root));
+    assertEquals(clazz, getOnlyChild(root));
+  }
+
+  public void testValueSameAsForOutline() {
+    final Outline outline = createOutline(0, 0, "a", "b", "a");
+    final DartStructureViewElement root = new DartStructureViewElement(getPsiFile(), outline);
+    final StructureViewTreeElement[] methods = getOnlyChild(root).getChildren();
+    final List<Outline> methodOutlines = outline.getChildren().get(0).getChildren();
+    for (int i = 0; i < methods.length; i++) {
+      assertEquals(DartStructureViewElement.getValue(methodOutlines.get(i)), methods[i].getValue());
+    }
+  }
+
+  public void testUpdateLargeOutline() {
+    final String[] names = new String[5000];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = "method" + i;
+    }
+
+    final DartStructureViewElement root = new DartStructureViewElement(getPsiFile(), createOutline(0, 0, names));
+    getOnlyChild(root).getChildren();
+
+    PlatformTestUtil.startPerformanceTest("Structure view update with 5000 members", 500, () -> {
+      for (int i = 1; i <= 10; i++) {
+        assertFalse(root.update(createOutline(i, 0, names)));
+      }
+    }).assertTiming();
+  }
+}
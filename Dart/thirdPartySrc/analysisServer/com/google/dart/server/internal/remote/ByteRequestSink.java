@@ -43,6 +43,10 @@ public class ByteRequestSink implements RequestSink {
    * The queue of lines.
    */
   private final BlockingQueue<String> lineQueue = new LinkedBlockingQueue<String>();
+  /**
+   * The length of the last added line, used to record request payload sizes.
+   */
+  private volatile int lastLineLength = -1;
 
   /**
    * Initializes a newly created request sink.
@@ -64,9 +68,17 @@ public class ByteRequestSink implements RequestSink {
         debugStream.println(System.currentTimeMillis() + " => " + text);
       }
     }
+    lastLineLength = text.length();
     lineQueue.add(text);
   }
 
+  /**
+   * Returns the length of the JSON string of the last added request, {@code -1} if none.
+   */
+  public int getLastLineLength() {
+    return lastLineLength;
+  }
+
   @Override
   public void close() {
     writer.close();
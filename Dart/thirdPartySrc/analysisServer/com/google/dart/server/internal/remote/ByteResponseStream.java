@@ -21,6 +21,7 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
 
 /**
  * An {@link InputStream} based implementation of {@link ResponseStream}. Each line must contain
@@ -70,6 +71,8 @@ public class ByteResponseStream implements ResponseStream {
 
   public static final String EOF_LINE = "EOF line";
 
+  private static final String ID_PREFIX = "{\"id\":\"";
+
   /**
    * The {@link BufferedReader} to read JSON strings from.
    */
@@ -86,6 +89,12 @@ public class ByteResponseStream implements ResponseStream {
    */
   private final BlockingQueue<String> lineQueue = new LinkedBlockingQueue<String>();
 
+  /**
+   * Tells whether the response with the given id should be dropped without decoding, may be
+   * {@code null}.
+   */
+  private volatile Predicate<String> skipResponseFilter;
+
   /**
    * Initializes a newly created response stream.
    *
@@ -103,13 +112,45 @@ public class ByteResponseStream implements ResponseStream {
   public void lastRequestProcessed() {
   }
 
+  /**
+   * Sets the filter which is given the ids of the responses before they are decoded. Responses for
+   * which the filter returns {@code true} are dropped.
+   */
+  public void setSkipResponseFilter(Predicate<String> skipResponseFilter) {
+    this.skipResponseFilter = skipResponseFilter;
+  }
+
   @Override
   public JsonObject take() throws Exception {
-    String line = lineQueue.take();
-    if (line == EOF_LINE) {
-      lineQueue.add(line);
-      return null;
+    String line = takeLine();
+    return line != null ? parse(line) : null;
+  }
+
+  /**
+   * Returns the next JSON line without decoding it, or {@code null} if the end of the stream is
+   * reached. Lines rejected by the skip response filter are dropped.
+   */
+  public String takeLine() throws InterruptedException {
+    String line;
+    while (true) {
+      line = lineQueue.take();
+      if (line == EOF_LINE) {
+        lineQueue.add(line);
+        return null;
+      }
+      Predicate<String> filter = skipResponseFilter;
+      String id = filter != null ? getResponseId(line) : null;
+      if (id == null || !filter.test(id)) {
+        break;
+      }
     }
+    return line;
+  }
+
+  /**
+   * Decodes a line returned by {@link #takeLine()}.
+   */
+  public static JsonObject parse(String line) {
     try {
       return (JsonObject) new JsonParser().parse(line);
     } catch (JsonSyntaxException e) {
@@ -117,4 +158,17 @@ public class ByteResponseStream implements ResponseStream {
       throw new JsonSyntaxException("Parse server message failed: " + line, e);
     }
   }
+
+  /**
+   * Returns the id of the response without parsing the whole line, or {@code null} if the line is
+   * not a response or the id is not its first property. The server writes responses as
+   * <code>{"id":"42",...}</code>.
+   */
+  static String getResponseId(String line) {
+    if (!line.startsWith(ID_PREFIX)) {
+      return null;
+    }
+    int end = line.indexOf('"', ID_PREFIX.length());
+    return end > 0 ? line.substring(ID_PREFIX.length(), end) : null;
+  }
 }
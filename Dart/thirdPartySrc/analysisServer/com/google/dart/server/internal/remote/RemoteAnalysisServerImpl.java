@@ -15,6 +15,7 @@ package com.google.dart.server.internal.remote;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.dart.server.*;
 import com.google.dart.server.generated.AnalysisServer;
@@ -39,8 +40,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * This {@link AnalysisServer} calls out to the analysis server written in Dart and communicates
@@ -51,6 +57,25 @@ import java.util.concurrent.atomic.AtomicLong;
 public class RemoteAnalysisServerImpl implements AnalysisServer {
   public static final String SERVER_NOTIFICATION_ERROR = "server.error";
 
+  /**
+   * The code of the {@link RequestError} passed to the consumer of a request which was superseded
+   * by a newer request, see {@link #SUPERSEDABLE_METHODS}. It is generated by this client, not by the
+   * server.
+   */
+  public static final String REQUEST_SUPERSEDED = "REQUEST_SUPERSEDED";
+
+  /**
+   * The requests which are only interesting until a newer request of the same method for the same
+   * file is sent: after typing or a caret move the result for the old offset is not needed. The
+   * protocol has no way to cancel a request, so the server still computes superseded requests, but
+   * their responses are dropped before decoding. A request which must not be superseded, e.g. a
+   * quick documentation hover requested together with a tooltip hover, is sent with
+   * {@link #analysis_getHover(String, int, GetHoverConsumer, boolean)}.
+   */
+  private static final Set<String> SUPERSEDABLE_METHODS = ImmutableSet.of(RequestUtilities.METHOD_ANALYSIS_GET_HOVER,
+      RequestUtilities.METHOD_COMPLETION_GET_SUGGESTIONS, RequestUtilities.METHOD_EDIT_GET_ASSISTS,
+      RequestUtilities.METHOD_EDIT_GET_FIXES);
+
   /**
    * Minimal analysis server version, inclusive.
    */
@@ -100,18 +125,32 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
 
   private final List<ResponseListener> responseListenerList = new ArrayList<>();
 
+  private final StreamingNotificationDecoder streamingNotificationDecoder = new StreamingNotificationDecoder(listener);
+
   private final List<AnalysisServerStatusListener> statusListenerList = new ArrayList<AnalysisServerStatusListener>();
 
   /**
-   * A mapping between {@link String} ids' and the associated {@link Consumer} that was passed when
-   * the request was made.
+   * A mapping between {@link String} ids' and the {@link PendingRequest}s holding the associated
+   * {@link Consumer} that was passed when the request was made. Responses are dispatched without a
+   * global lock.
+   */
+  private final ConcurrentMap<String, PendingRequest> consumerMap = new ConcurrentHashMap<String, PendingRequest>();
+
+  /**
+   * A mapping between supersession keys, see {@link #getSupersessionKey(String, JsonObject)}, and
+   * the id of the latest request sent with this key.
    */
-  private final Map<String, Consumer> consumerMap = Maps.newHashMap();
+  private final ConcurrentMap<String, String> supersedableRequestIds = new ConcurrentHashMap<String, String>();
 
   /**
-   * The object used to synchronize access to {@link #consumerMap}.
+   * The ids of the superseded requests whose responses have not been received yet.
    */
-  private final Object consumerMapLock = new Object();
+  private final Set<String> supersededIds = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Per-method request counts, latencies, timeouts and payload sizes.
+   */
+  private final RequestStatistics requestStatistics = new RequestStatistics();
 
   /**
    * The unique ID for the next request.
@@ -180,8 +219,17 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
 
   @Override
   public void analysis_getHover(String file, int offset, GetHoverConsumer consumer) {
+    analysis_getHover(file, offset, consumer, true);
+  }
+
+  /**
+   * Same as {@link #analysis_getHover(String, int, GetHoverConsumer)}, but the request is neither
+   * superseded by newer hover requests nor supersedes pending ones if {@code supersedable} is
+   * {@code false}.
+   */
+  public void analysis_getHover(String file, int offset, GetHoverConsumer consumer, boolean supersedable) {
     String id = generateUniqueId();
-    sendRequestToServer(id, RequestUtilities.generateAnalysisGetHover(id, file, offset), consumer);
+    sendRequestToServer(id, RequestUtilities.generateAnalysisGetHover(id, file, offset), consumer, supersedable);
   }
 
   @Override
@@ -577,7 +625,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     return true;
   }
 
-  private void processResponse(JsonObject response) throws Exception {
+  private void processResponse(JsonObject response, int responseSize) throws Exception {
     notifyResponseListeners(response);
     // handle notification
     if (processNotification(response)) {
@@ -589,12 +637,20 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
       return;
     }
     String idString = idJsonPrimitive.getAsString();
-    // prepare consumer
-    Consumer consumer;
-    synchronized (consumerMapLock) {
-      consumer = consumerMap.get(idString);
+    // prepare consumer, it is removed from the map first so that it can't be superseded meanwhile
+    PendingRequest pendingRequest = consumerMap.remove(idString);
+    if (pendingRequest == null && supersededIds.remove(idString)) {
+      return;
     }
+    Consumer consumer = pendingRequest != null ? pendingRequest.consumer : null;
     JsonObject errorObject = (JsonObject)response.get("error");
+    if (pendingRequest != null) {
+      if (pendingRequest.supersessionKey != null) {
+        supersedableRequestIds.remove(pendingRequest.supersessionKey, idString);
+      }
+      long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - pendingRequest.sentNanos);
+      requestStatistics.responseReceived(pendingRequest.method, latencyMicros, responseSize, errorObject != null);
+    }
     RequestError requestError = null;
     if (errorObject != null) {
       requestError = processErrorResponse(errorObject);
@@ -716,9 +772,29 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     else if (consumer instanceof JsonConsumer) {
       ((JsonConsumer)consumer).onResponse(resultObject, requestError);
     }
+  }
+
+  /**
+   * Decodes the given line if it is one of the potentially large notifications handled by
+   * {@link StreamingNotificationDecoder}, without creating a {@link JsonObject}. Response listeners
+   * expect a {@link JsonObject} for every response, so nothing is done if there are any.
+   *
+   * @return {@code true} if the line has been processed
+   */
+  private boolean decodeStreamingNotification(String line) throws Exception {
+    if (!StreamingNotificationDecoder.canDecode(line)) {
+      return false;
+    }
+    if (hasResponseListeners()) {
+      return false;
+    }
+    streamingNotificationDecoder.decode(line);
+    return true;
+  }
 
-    synchronized (consumerMapLock) {
-      consumerMap.remove(idString);
+  private boolean hasResponseListeners() {
+    synchronized (responseListenerList) {
+      return !responseListenerList.isEmpty();
     }
   }
 
@@ -752,20 +828,115 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    */
   @Override
   public void sendRequestToServer(String id, JsonObject request, Consumer consumer) {
-    synchronized (consumerMapLock) {
-      consumerMap.put(id, consumer);
-    }
+    sendRequestToServer(id, request, consumer, true);
+  }
+
+  private void sendRequestToServer(String id, JsonObject request, Consumer consumer, boolean supersedable) {
+    JsonElement methodElement = request.get("method");
+    String method = methodElement != null ? methodElement.getAsString() : "unknown";
+    String supersessionKey = supersedable ? getSupersessionKey(method, request) : null;
+    consumerMap.put(id, new PendingRequest(consumer, method, supersessionKey, System.nanoTime()));
     lastRequestTime.set(System.currentTimeMillis());
+    int requestSize;
     synchronized (requestSinkLock) {
       requestSink.add(request);
+      requestSize = requestSink instanceof ByteRequestSink ? ((ByteRequestSink)requestSink).getLastLineLength() : -1;
+    }
+    requestStatistics.requestSent(method, requestSize);
+
+    if (supersessionKey != null) {
+      String previousId = supersedableRequestIds.put(supersessionKey, id);
+      if (previousId != null) {
+        supersedeRequest(previousId);
+      }
     }
   }
 
+  /**
+   * Returns the key identifying the requests which supersede each other, or {@code null} if the
+   * given request can't be superseded.
+   */
+  private static String getSupersessionKey(String method, JsonObject request) {
+    if (!SUPERSEDABLE_METHODS.contains(method)) {
+      return null;
+    }
+    JsonObject params = request.getAsJsonObject("params");
+    JsonElement file = params != null ? params.get("file") : null;
+    if (file == null) {
+      return null;
+    }
+    return method + ":" + file.getAsString();
+  }
+
+  /**
+   * Forgets the consumer of the request with the given id, if its response has not been received
+   * yet, and notifies it with a {@link #REQUEST_SUPERSEDED} error. The response is dropped when it
+   * arrives.
+   */
+  private void supersedeRequest(String id) {
+    // added first so that the response can't slip through between these two steps
+    supersededIds.add(id);
+    PendingRequest pendingRequest = consumerMap.remove(id);
+    if (pendingRequest == null) {
+      // the response is already being processed
+      supersededIds.remove(id);
+      return;
+    }
+    requestStatistics.requestSuperseded(pendingRequest.method);
+
+    RequestError error = new RequestError(REQUEST_SUPERSEDED, "Superseded by a newer request", null);
+    Consumer consumer = pendingRequest.consumer;
+    if (consumer instanceof GetHoverConsumer) {
+      ((GetHoverConsumer)consumer).onError(error);
+    }
+    else if (consumer instanceof GetSuggestionsConsumer) {
+      ((GetSuggestionsConsumer)consumer).onError(error);
+    }
+    else if (consumer instanceof GetAssistsConsumer) {
+      ((GetAssistsConsumer)consumer).onError(error);
+    }
+    else if (consumer instanceof GetFixesConsumer) {
+      ((GetFixesConsumer)consumer).onError(error);
+    }
+  }
+
+  /**
+   * Records that the client stopped waiting for the response to a request of the given method.
+   *
+   * @param method the request method, e.g. {@code analysis.getHover}
+   */
+  public void requestTimedOut(String method) {
+    requestStatistics.requestTimedOut(method);
+  }
+
+  /**
+   * Returns a human readable report of per-method request counts, p50/p95/p99 latencies, timeouts,
+   * payload sizes and the number of requests waiting for a response.
+   */
+  public String getRequestStatistics() {
+    return requestStatistics.getStatistics();
+  }
+
   private void startServer() throws Exception {
     socket.start();
     consumerMap.clear();
+    supersedableRequestIds.clear();
+    supersededIds.clear();
+    requestStatistics.clearInFlight();
     requestSink = socket.getRequestSink();
     responseStream = socket.getResponseStream();
+    if (responseStream instanceof ByteResponseStream) {
+      ((ByteResponseStream)responseStream).setSkipResponseFilter(new Predicate<String>() {
+        @Override
+        public boolean test(String id) {
+          // a dropped response still shows that the server is responsive
+          lastResponseTime.set(System.currentTimeMillis());
+          // response listeners get all responses, superseded ones are then decoded and dropped in
+          // processResponse() after the listeners are notified
+          return !hasResponseListeners() && supersededIds.remove(id);
+        }
+      });
+    }
     errorStream = socket.getErrorStream();
     new ServerResponseReaderThread(responseStream).start();
     if (errorStream != null) {
@@ -825,7 +996,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
             requestSink = blockRequestSink.toErrorSink(new ResponseSink() {
               @Override
               public void add(JsonObject response) throws Exception {
-                processResponse(response);
+                processResponse(response, -1);
               }
             }, ResponseUtilities.INCOMPATIBLE_SERVER_VERSION, message);
           }
@@ -962,6 +1133,24 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     }
   }
 
+  /**
+   * A request waiting for a response: the {@link Consumer} to notify and what is needed to record
+   * the request latency.
+   */
+  private static class PendingRequest {
+    final Consumer consumer;
+    final String method;
+    final String supersessionKey;
+    final long sentNanos;
+
+    PendingRequest(Consumer consumer, String method, String supersessionKey, long sentNanos) {
+      this.consumer = consumer;
+      this.method = method;
+      this.supersessionKey = supersessionKey;
+      this.sentNanos = sentNanos;
+    }
+  }
+
   /**
    * A thread which reads responses from the {@link ResponseStream} and calls the associated
    * {@link Consumer}s from {@link RemoteAnalysisServerImpl#consumerMap}.
@@ -980,13 +1169,29 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     public void run() {
       while (true) {
         try {
-          JsonObject response = stream.take();
-          if (response == null) {
-            return;
+          JsonObject response;
+          int responseSize = -1;
+          if (stream instanceof ByteResponseStream) {
+            String line = ((ByteResponseStream)stream).takeLine();
+            if (line == null) {
+              return;
+            }
+            lastResponseTime.set(System.currentTimeMillis());
+            if (decodeStreamingNotification(line)) {
+              continue;
+            }
+            response = ByteResponseStream.parse(line);
+            responseSize = line.length();
+          }
+          else {
+            response = stream.take();
+            if (response == null) {
+              return;
+            }
+            lastResponseTime.set(System.currentTimeMillis());
           }
-          lastResponseTime.set(System.currentTimeMillis());
           try {
-            processResponse(response);
+            processResponse(response, responseSize);
           }
           finally {
             stream.lastRequestProcessed();
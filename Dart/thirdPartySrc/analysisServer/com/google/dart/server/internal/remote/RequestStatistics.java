@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-method statistics of the requests sent to the analysis server: request counts, errors,
+ * timeouts, payload sizes and a latency histogram from which p50/p95/p99 are reported. Also tracks
+ * the number of requests waiting for a response.
+ *
+ * @coverage dart.server.remote
+ */
+public class RequestStatistics {
+  /**
+   * Statistics of a single request method.
+   */
+  static class MethodStatistics {
+    /**
+     * Latencies are recorded in microseconds. Values below 4 have their own buckets, above that
+     * every power of two is split into 4 buckets, so the reported percentiles are within 25% of the
+     * actual value.
+     */
+    private static final int BUCKET_COUNT = 4 * 40;
+
+    private final String method;
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long requestCount;
+    private long responseCount;
+    private long errorCount;
+    private long timeoutCount;
+    private long supersededCount;
+    private long requestBytes;
+    private long responseBytes;
+    private long maxLatencyMicros;
+
+    MethodStatistics(String method) {
+      this.method = method;
+    }
+
+    synchronized void requestSent(int size) {
+      requestCount++;
+      if (size > 0) {
+        requestBytes += size;
+      }
+    }
+
+    synchronized void responseReceived(long latencyMicros, int size, boolean error) {
+      responseCount++;
+      if (error) {
+        errorCount++;
+      }
+      if (size > 0) {
+        responseBytes += size;
+      }
+      buckets[getBucketIndex(latencyMicros)]++;
+      maxLatencyMicros = Math.max(maxLatencyMicros, latencyMicros);
+    }
+
+    synchronized void requestTimedOut() {
+      timeoutCount++;
+    }
+
+    synchronized void requestSuperseded() {
+      supersededCount++;
+    }
+
+    synchronized long getRequestCount() {
+      return requestCount;
+    }
+
+    /**
+     * Returns the upper bound of the histogram bucket which contains the given percentile of the
+     * recorded latencies, in microseconds, or {@code 0} if there were no responses.
+     */
+    synchronized long getPercentileMicros(double percentile) {
+      if (responseCount == 0) {
+        return 0;
+      }
+      long rank = (long)Math.ceil(responseCount * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += buckets[i];
+        if (seen >= Math.max(rank, 1)) {
+          return Math.min(getBucketUpperBound(i), maxLatencyMicros);
+        }
+      }
+      return maxLatencyMicros;
+    }
+
+    synchronized String getStatistics() {
+      return method + ": " + requestCount + " sent, " + responseCount + " answered, " + errorCount
+          + " errors, " + timeoutCount + " timed out, " + supersededCount + " superseded, latency p50/p95/p99/max = "
+          + formatMillis(getPercentileMicros(50)) + "/" + formatMillis(getPercentileMicros(95))
+          + "/" + formatMillis(getPercentileMicros(99)) + "/" + formatMillis(maxLatencyMicros)
+          + " ms, sent " + requestBytes + " bytes, received " + responseBytes + " bytes";
+    }
+
+    static int getBucketIndex(long value) {
+      if (value < 4) {
+        return (int)Math.max(value, 0);
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int mantissa = (int)(value >> (exponent - 2)) & 3;
+      return Math.min((exponent - 1) * 4 + mantissa, BUCKET_COUNT - 1);
+    }
+
+    static long getBucketUpperBound(int index) {
+      if (index < 4) {
+        return index;
+      }
+      int exponent = index / 4 + 1;
+      int mantissa = index % 4;
+      return ((4L + mantissa + 1) << (exponent - 2)) - 1;
+    }
+
+    private static String formatMillis(long micros) {
+      return String.format("%.1f", micros / 1000.0);
+    }
+  }
+
+  private final ConcurrentMap<String, MethodStatistics> methodStatistics = new ConcurrentHashMap<String, MethodStatistics>();
+
+  /**
+   * The number of requests waiting for a response.
+   */
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  /**
+   * The largest value of {@link #inFlight} seen so far.
+   */
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  /**
+   * Records that a request was sent.
+   *
+   * @param method the request method, e.g. {@code analysis.getHover}
+   * @param size   the size of the serialized request in characters, {@code -1} if unknown
+   */
+  public void requestSent(String method, int size) {
+    getMethodStatistics(method).requestSent(size);
+    int current = inFlight.incrementAndGet();
+    while (true) {
+      int max = maxInFlight.get();
+      if (current <= max || maxInFlight.compareAndSet(max, current)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Records that a response to a previously sent request was received.
+   *
+   * @param method        the request method
+   * @param latencyMicros the time between sending the request and receiving the response
+   * @param size          the size of the serialized response in characters, {@code -1} if unknown
+   * @param error         {@code true} if the response contains an error
+   */
+  public void responseReceived(String method, long latencyMicros, int size, boolean error) {
+    inFlight.decrementAndGet();
+    getMethodStatistics(method).responseReceived(latencyMicros, size, error);
+  }
+
+  /**
+   * Records that the client stopped waiting for the response to a request of the given method.
+   */
+  public void requestTimedOut(String method) {
+    getMethodStatistics(method).requestTimedOut();
+  }
+
+  /**
+   * Records that the response to a request is not needed any more because a newer request
+   * superseded it.
+   */
+  public void requestSuperseded(String method) {
+    inFlight.decrementAndGet();
+    getMethodStatistics(method).requestSuperseded();
+  }
+
+  /**
+   * Forgets about the requests waiting for a response, e.g. when the server is restarted.
+   */
+  public void clearInFlight() {
+    inFlight.set(0);
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Returns a human readable report, one line per request method, most requested methods first.
+   */
+  public String getStatistics() {
+    List<MethodStatistics> list = new ArrayList<MethodStatistics>(methodStatistics.values());
+    Collections.sort(list, new Comparator<MethodStatistics>() {
+      @Override
+      public int compare(MethodStatistics s1, MethodStatistics s2) {
+        return Long.compare(s2.getRequestCount(), s1.getRequestCount());
+      }
+    });
+
+    StringBuilder builder = new StringBuilder();
+    builder.append("Requests in flight: ").append(inFlight.get()).append(", max ").append(maxInFlight.get());
+    for (MethodStatistics statistics : list) {
+      builder.append('\n').append(statistics.getStatistics());
+    }
+    return builder.toString();
+  }
+
+  MethodStatistics getMethodStatistics(String method) {
+    MethodStatistics statistics = methodStatistics.get(method);
+    if (statistics == null) {
+      statistics = new MethodStatistics(method);
+      MethodStatistics existing = methodStatistics.putIfAbsent(method, statistics);
+      if (existing != null) {
+        statistics = existing;
+      }
+    }
+    return statistics;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2018, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote.processor;
+
+import com.google.common.collect.Lists;
+import com.google.dart.server.AnalysisServerListener;
+import com.google.gson.stream.JsonReader;
+
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+import org.dartlang.analysis.server.protocol.NavigationRegion;
+import org.dartlang.analysis.server.protocol.NavigationTarget;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Decodes the "analysis.highlights" and "analysis.navigation" notifications, which may be several
+ * megabytes for large files, directly from the JSON text into the protocol model objects, without
+ * building an intermediate {@link com.google.gson.JsonObject} tree. The result is the same as with
+ * {@link NotificationAnalysisHighlightsProcessor} and {@link NotificationAnalysisNavigationProcessor}.
+ *
+ * @coverage dart.server.remote
+ */
+public class StreamingNotificationDecoder {
+  private static final String EVENT_PREFIX = "{\"event\":\"";
+  private static final String ANALYSIS_HIGHLIGHTS = "analysis.highlights";
+  private static final String ANALYSIS_NAVIGATION = "analysis.navigation";
+
+  private final AnalysisServerListener listener;
+
+  public StreamingNotificationDecoder(AnalysisServerListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Returns {@code true} if the given line is a notification which this decoder handles. Only the
+   * beginning of the line is looked at: the server writes notifications as
+   * <code>{"event":"analysis.highlights","params":...}</code>.
+   */
+  public static boolean canDecode(String line) {
+    return line.startsWith(EVENT_PREFIX + ANALYSIS_HIGHLIGHTS + "\"")
+        || line.startsWith(EVENT_PREFIX + ANALYSIS_NAVIGATION + "\"");
+  }
+
+  /**
+   * Decodes the given notification line, which must be accepted by {@link #canDecode(String)}, and
+   * notifies the listener.
+   */
+  public void decode(String line) throws IOException {
+    boolean highlights = line.startsWith(EVENT_PREFIX + ANALYSIS_HIGHLIGHTS);
+    JsonReader reader = new JsonReader(new StringReader(line));
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.nextName().equals("params")) {
+          if (highlights) {
+            readHighlightsParams(reader);
+          } else {
+            readNavigationParams(reader);
+          }
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void readHighlightsParams(JsonReader reader) throws IOException {
+    String file = null;
+    List<HighlightRegion> regions = HighlightRegion.EMPTY_LIST;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("file")) {
+        file = reader.nextString();
+      } else if (name.equals("regions")) {
+        regions = Lists.newArrayList();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          regions.add(readHighlightRegion(reader));
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    listener.computedHighlights(file, regions);
+  }
+
+  private void readNavigationParams(JsonReader reader) throws IOException {
+    String file = null;
+    List<NavigationRegion> regions = NavigationRegion.EMPTY_LIST;
+    List<NavigationTarget> targets = NavigationTarget.EMPTY_LIST;
+    List<String> files = Lists.newArrayList();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("file")) {
+        file = reader.nextString();
+      } else if (name.equals("regions")) {
+        regions = Lists.newArrayList();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          regions.add(readNavigationRegion(reader));
+        }
+        reader.endArray();
+      } else if (name.equals("targets")) {
+        targets = Lists.newArrayList();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          targets.add(readNavigationTarget(reader));
+        }
+        reader.endArray();
+      } else if (name.equals("files")) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          files.add(reader.nextString());
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    String[] targetFiles = files.toArray(new String[files.size()]);
+    for (NavigationTarget target : targets) {
+      target.lookupFile(targetFiles);
+    }
+    for (NavigationRegion region : regions) {
+      region.lookupTargets(targets);
+    }
+    listener.computedNavigation(file, regions);
+  }
+
+  private static HighlightRegion readHighlightRegion(JsonReader reader) throws IOException {
+    String type = null;
+    int offset = 0;
+    int length = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("type")) {
+        type = reader.nextString();
+      } else if (name.equals("offset")) {
+        offset = reader.nextInt();
+      } else if (name.equals("length")) {
+        length = reader.nextInt();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new HighlightRegion(type, offset, length);
+  }
+
+  private static NavigationRegion readNavigationRegion(JsonReader reader) throws IOException {
+    int offset = 0;
+    int length = 0;
+    int[] targets = new int[0];
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("offset")) {
+        offset = reader.nextInt();
+      } else if (name.equals("length")) {
+        length = reader.nextInt();
+      } else if (name.equals("targets")) {
+        targets = readIntArray(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new NavigationRegion(offset, length, targets);
+  }
+
+  private static NavigationTarget readNavigationTarget(JsonReader reader) throws IOException {
+    String kind = null;
+    int fileIndex = 0;
+    int offset = 0;
+    int length = 0;
+    int startLine = 0;
+    int startColumn = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("kind")) {
+        kind = reader.nextString();
+      } else if (name.equals("fileIndex")) {
+        fileIndex = reader.nextInt();
+      } else if (name.equals("offset")) {
+        offset = reader.nextInt();
+      } else if (name.equals("length")) {
+        length = reader.nextInt();
+      } else if (name.equals("startLine")) {
+        startLine = reader.nextInt();
+      } else if (name.equals("startColumn")) {
+        startColumn = reader.nextInt();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new NavigationTarget(kind, fileIndex, offset, length, startLine, startColumn);
+  }
+
+  private static int[] readIntArray(JsonReader reader) throws IOException {
+    int[] result = new int[4];
+    int size = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (size == result.length) {
+        int[] newResult = new int[size * 2];
+        System.arraycopy(result, 0, newResult, 0, size);
+        result = newResult;
+      }
+      result[size++] = reader.nextInt();
+    }
+    reader.endArray();
+    if (size == result.length) {
+      return result;
+    }
+    int[] trimmed = new int[size];
+    System.arraycopy(result, 0, trimmed, 0, size);
+    return trimmed;
+  }
+}
@@ -48,56 +48,56 @@ public class RequestUtilities {
   private static final String ELEMENTS = "elements";
 
   // Server domain
-  private static final String METHOD_SERVER_GET_VERSION = "server.getVersion";
-  private static final String METHOD_SERVER_SHUTDOWN = "server.shutdown";
-  private static final String METHOD_SERVER_SET_SUBSCRIPTIONS = "server.setSubscriptions";
+  public static final String METHOD_SERVER_GET_VERSION = "server.getVersion";
+  public static final String METHOD_SERVER_SHUTDOWN = "server.shutdown";
+  public static final String METHOD_SERVER_SET_SUBSCRIPTIONS = "server.setSubscriptions";
 
   // Analysis domain
-  private static final String METHOD_ANALYSIS_GET_ERRORS = "analysis.getErrors";
-  private static final String METHOD_ANALYSIS_GET_HOVER = "analysis.getHover";
-  private static final String METHOD_ANALYSIS_GET_IMPORTED_ELEMENTS = "analysis.getImportedElements";
-  private static final String METHOD_ANALYSIS_GET_LIBRARY_DEPENDENCIES = "analysis.getLibraryDependencies";
-  private static final String METHOD_ANALYSIS_GET_NAVIGATION = "analysis.getNavigation";
-  private static final String METHOD_ANALYSIS_REANALYZE = "analysis.reanalyze";
-  private static final String METHOD_ANALYSIS_SET_GENERAL_SUBSCRIPTIONS = "analysis.setGeneralSubscriptions";
-  private static final String METHOD_ANALYSIS_SET_ROOTS = "analysis.setAnalysisRoots";
-  private static final String METHOD_ANALYSIS_SET_PRIORITY_FILES = "analysis.setPriorityFiles";
-  private static final String METHOD_ANALYSIS_SET_SUBSCRIPTIONS = "analysis.setSubscriptions";
-  private static final String METHOD_ANALYSIS_UPDATE_CONTENT = "analysis.updateContent";
-  private static final String METHOD_ANALYSIS_UPDATE_OPTIONS = "analysis.updateOptions";
+  public static final String METHOD_ANALYSIS_GET_ERRORS = "analysis.getErrors";
+  public static final String METHOD_ANALYSIS_GET_HOVER = "analysis.getHover";
+  public static final String METHOD_ANALYSIS_GET_IMPORTED_ELEMENTS = "analysis.getImportedElements";
+  public static final String METHOD_ANALYSIS_GET_LIBRARY_DEPENDENCIES = "analysis.getLibraryDependencies";
+  public static final String METHOD_ANALYSIS_GET_NAVIGATION = "analysis.getNavigation";
+  public static final String METHOD_ANALYSIS_REANALYZE = "analysis.reanalyze";
+  public static final String METHOD_ANALYSIS_SET_GENERAL_SUBSCRIPTIONS = "analysis.setGeneralSubscriptions";
+  public static final String METHOD_ANALYSIS_SET_ROOTS = "analysis.setAnalysisRoots";
+  public static final String METHOD_ANALYSIS_SET_PRIORITY_FILES = "analysis.setPriorityFiles";
+  public static final String METHOD_ANALYSIS_SET_SUBSCRIPTIONS = "analysis.setSubscriptions";
+  public static final String METHOD_ANALYSIS_UPDATE_CONTENT = "analysis.updateContent";
+  public static final String METHOD_ANALYSIS_UPDATE_OPTIONS = "analysis.updateOptions";
 
   // Edit domain
-  private static final String METHOD_EDIT_FORMAT = "edit.format";
-  private static final String METHOD_EDIT_GET_ASSISTS = "edit.getAssists";
-  private static final String METHOD_EDIT_GET_AVAILABLE_REFACTORING = "edit.getAvailableRefactorings";
-  private static final String METHOD_EDIT_GET_FIXES = "edit.getFixes";
-  private static final String METHOD_EDIT_GET_POSTFIX_COMPLETION = "edit.getPostfixCompletion";
-  private static final String METHOD_EDIT_GET_REFACTORING = "edit.getRefactoring";
-  private static final String METHOD_EDIT_GET_STATEMENT_COMPLETION = "edit.getStatementCompletion";
-  private static final String METHOD_EDIT_IMPORT_ELEMENTS = "edit.importElements";
-  private static final String METHOD_EDIT_ORGANIZE_DIRECTIVES = "edit.organizeDirectives";
-  private static final String METHOD_EDIT_SORT_MEMBERS = "edit.sortMembers";
-  private static final String METHOD_IS_POSTFIX_COMPLETION_APPLICABLE = "edit.isPostfixCompletionApplicable";
-  private static final String METHOD_LIST_POSTFIX_COMPLETION_TEMPLATES = "edit.listPostfixCompletionTemplates";
+  public static final String METHOD_EDIT_FORMAT = "edit.format";
+  public static final String METHOD_EDIT_GET_ASSISTS = "edit.getAssists";
+  public static final String METHOD_EDIT_GET_AVAILABLE_REFACTORING = "edit.getAvailableRefactorings";
+  public static final String METHOD_EDIT_GET_FIXES = "edit.getFixes";
+  public static final String METHOD_EDIT_GET_POSTFIX_COMPLETION = "edit.getPostfixCompletion";
+  public static final String METHOD_EDIT_GET_REFACTORING = "edit.getRefactoring";
+  public static final String METHOD_EDIT_GET_STATEMENT_COMPLETION = "edit.getStatementCompletion";
+  public static final String METHOD_EDIT_IMPORT_ELEMENTS = "edit.importElements";
+  public static final String METHOD_EDIT_ORGANIZE_DIRECTIVES = "edit.organizeDirectives";
+  public static final String METHOD_EDIT_SORT_MEMBERS = "edit.sortMembers";
+  public static final String METHOD_IS_POSTFIX_COMPLETION_APPLICABLE = "edit.isPostfixCompletionApplicable";
+  public static final String METHOD_LIST_POSTFIX_COMPLETION_TEMPLATES = "edit.listPostfixCompletionTemplates";
 
   // Code Completion domain
-  private static final String METHOD_COMPLETION_GET_SUGGESTIONS = "completion.getSuggestions";
+  public static final String METHOD_COMPLETION_GET_SUGGESTIONS = "completion.getSuggestions";
 
   // Search domain
-  private static final String METHOD_SEARCH_FIND_ELEMENT_REFERENCES = "search.findElementReferences";
-  private static final String METHOD_SEARCH_FIND_MEMBER_DECLARATIONS = "search.findMemberDeclarations";
-  private static final String METHOD_SEARCH_FIND_MEMBER_REFERENCES = "search.findMemberReferences";
-  private static final String METHOD_SEARCH_FIND_TOP_LEVEL_DECLARATIONS = "search.findTopLevelDeclarations";
-  private static final String METHOD_SEARCH_GET_TYPE_HIERARCHY = "search.getTypeHierarchy";
+  public static final String METHOD_SEARCH_FIND_ELEMENT_REFERENCES = "search.findElementReferences";
+  public static final String METHOD_SEARCH_FIND_MEMBER_DECLARATIONS = "search.findMemberDeclarations";
+  public static final String METHOD_SEARCH_FIND_MEMBER_REFERENCES = "search.findMemberReferences";
+  public static final String METHOD_SEARCH_FIND_TOP_LEVEL_DECLARATIONS = "search.findTopLevelDeclarations";
+  public static final String METHOD_SEARCH_GET_TYPE_HIERARCHY = "search.getTypeHierarchy";
 
   // Execution domain
-  private static final String METHOD_EXECUTION_CREATE_CONTEXT = "execution.createContext";
-  private static final String METHOD_EXECUTION_DELETE_CONTEXT = "execution.deleteContext";
-  private static final String METHOD_EXECUTION_MAP_URI = "execution.mapUri";
-  private static final String METHOD_EXECUTION_SET_SUBSCRIPTIONS = "execution.setSubscriptions";
+  public static final String METHOD_EXECUTION_CREATE_CONTEXT = "execution.createContext";
+  public static final String METHOD_EXECUTION_DELETE_CONTEXT = "execution.deleteContext";
+  public static final String METHOD_EXECUTION_MAP_URI = "execution.mapUri";
+  public static final String METHOD_EXECUTION_SET_SUBSCRIPTIONS = "execution.setSubscriptions";
 
   // Diagnostic domain
-  private static final String METHOD_DIAGNOSTIC_GET_SERVER_PORT = "diagnostic.getServerPort";
+  public static final String METHOD_DIAGNOSTIC_GET_SERVER_PORT = "diagnostic.getServerPort";
 
   /**
    * Flag indicating whether requests should include the time at which the request is made.
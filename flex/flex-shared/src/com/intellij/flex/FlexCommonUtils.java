@@ -763,6 +763,15 @@ public class FlexCommonUtils {
                                                       final @NotNull JpsSdk<?> sdk,
                                                       final @Nullable String additionalClasspath,
                                                       final @NotNull String mainClass) {
+    return getCommandLineForSdkTool(project, sdk, additionalClasspath, mainClass,
+                                    JpsFlexCompilerProjectExtension.getInstance(project).HEAP_SIZE_MB);
+  }
+
+  public static List<String> getCommandLineForSdkTool(final @NotNull JpsProject project,
+                                                      final @NotNull JpsSdk<?> sdk,
+                                                      final @Nullable String additionalClasspath,
+                                                      final @NotNull String mainClass,
+                                                      final int heapSizeMb) {
     String javaHome = SystemProperties.getJavaHome();
     boolean customJavaHomeSet = false;
     String additionalJavaArgs = null;
@@ -845,7 +854,6 @@ public class FlexCommonUtils {
     result.add("-Duser.language=en");
     result.add("-Duser.region=en");
 
-    final int heapSizeMb = JpsFlexCompilerProjectExtension.getInstance(project).HEAP_SIZE_MB;
     if (heapSizeMb > heapSizeMbFromJvmConfig) {
       result.add("-Xmx" + heapSizeMb + "m");
     }
@@ -1,6 +1,8 @@
 package com.intellij.flex;
 
+import com.intellij.flex.bc.FlexCompilationManagerTest;
 import com.intellij.flex.bc.FlexCompilerConfigTest;
+import com.intellij.flex.bc.FlexCompilerDependenciesCacheTest;
 import com.intellij.flex.bc.FlexProjectConfigTest;
 import com.intellij.flex.codeInsight.*;
 import com.intellij.flex.completion.*;
@@ -27,6 +29,8 @@ import com.intellij.flex.refactoring.*;
 import com.intellij.flex.resolver.ActionScriptResolveTest;
 import com.intellij.flex.resolver.FlexCssNavigationTest;
 import com.intellij.flex.uml.FlashUmlTest;
+import com.intellij.javascript.flex.compiled.SwfContentCacheTest;
+import com.intellij.jps.flex.build.BuiltInCompilerProcessPoolTest;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -38,7 +42,9 @@ public class FlexTestSuite extends TestCase {
     final TestSuite testSuite = new TestSuite(FlexTestSuite.class.getSimpleName());
 
     // com.intellij.flex.bc.*
+    testSuite.addTestSuite(FlexCompilationManagerTest.class);
     testSuite.addTestSuite(FlexCompilerConfigTest.class);
+    testSuite.addTestSuite(FlexCompilerDependenciesCacheTest.class);
     testSuite.addTestSuite(FlexProjectConfigTest.class);
 
     // com.intellij.flex.codeInsight.*
@@ -136,6 +142,12 @@ public class FlexTestSuite extends TestCase {
     //com.intellij.flex.uml.*
     testSuite.addTestSuite(FlashUmlTest.class);
 
+    //com.intellij.javascript.flex.compiled.*
+    testSuite.addTestSuite(SwfContentCacheTest.class);
+
+    //com.intellij.jps.flex.build.*
+    testSuite.addTestSuite(BuiltInCompilerProcessPoolTest.class);
+
     return testSuite;
   }
 }
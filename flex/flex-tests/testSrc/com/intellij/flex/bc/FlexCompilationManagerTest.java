@@ -0,0 +1,246 @@
+package com.intellij.flex.bc;
+
+import com.intellij.flex.model.bc.BuildConfigurationNature;
+import com.intellij.flex.model.bc.OutputType;
+import com.intellij.flex.model.bc.TargetPlatform;
+import com.intellij.flex.util.FlexTestUtils;
+import com.intellij.javascript.flex.css.FlexStylesIndexableSetContributor;
+import com.intellij.lang.javascript.flex.FlexBundle;
+import com.intellij.lang.javascript.flex.FlexModuleType;
+import com.intellij.lang.javascript.flex.build.FlexCompilationManager;
+import com.intellij.lang.javascript.flex.build.FlexCompilationTask;
+import com.intellij.lang.javascript.flex.build.FlexCompilerHandler;
+import com.intellij.lang.javascript.flex.build.FlexCompilerProjectConfiguration;
+import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfiguration;
+import com.intellij.lang.javascript.flex.projectStructure.model.ModifiableFlexBuildConfiguration;
+import com.intellij.lang.javascript.flex.projectStructure.model.impl.Factory;
+import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.compiler.CompilerMessage;
+import com.intellij.openapi.module.ModuleType;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.impl.VfsRootAccess;
+import com.intellij.testFramework.PlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static com.intellij.openapi.vfs.VfsUtilCore.convertFromUrl;
+import static com.intellij.openapi.vfs.VfsUtilCore.urlToPath;
+
+/**
+ * Scheduling of {@link FlexCompilationManager} with tasks that don't run a compiler.
+ */
+public class FlexCompilationManagerTest extends PlatformTestCase {
+
+  private Sdk mySdk;
+  private File myOutputDir;
+  private int myMaxParallelCompilationsBefore;
+  private ProgressIndicatorBase myIndicator;
+  private final List<String> myStartedTasks = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> myCancelledTasks = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> myMessages = Collections.synchronizedList(new ArrayList<>());
+
+  @Override
+  protected void setUp() throws Exception {
+    VfsRootAccess.allowRootAccess(getTestRootDisposable(),
+                                  urlToPath(convertFromUrl(FlexStylesIndexableSetContributor.class.getResource("FlexStyles.as"))));
+    super.setUp();
+
+    mySdk = FlexTestUtils.createSdk(FlexTestUtils.getTestDataPath("MockFlexSdk3"), "3.4.0", getTestRootDisposable());
+    myOutputDir = createTempDirectory();
+    myIndicator = new ProgressIndicatorBase();
+    myMaxParallelCompilationsBefore = FlexCompilerProjectConfiguration.getInstance(myProject).MAX_PARALLEL_COMPILATIONS;
+    FlexCompilerHandler.getInstance(myProject).getCompilerDependenciesCache().clear();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FlexCompilerProjectConfiguration.getInstance(myProject).MAX_PARALLEL_COMPILATIONS = myMaxParallelCompilationsBefore;
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  @Override
+  protected ModuleType getModuleType() {
+    return FlexModuleType.getInstance();
+  }
+
+  private class FakeTask extends FlexCompilationTask {
+    private boolean myFinishOnStart = true;
+    private Runnable myOnStart;
+
+    private FakeTask(final String name, final FakeTask... dependencies) {
+      super(myModule, createBC(name), getBCs(dependencies));
+    }
+
+    private FakeTask notFinishing(final Runnable onStart) {
+      myFinishOnStart = false;
+      myOnStart = onStart;
+      return this;
+    }
+
+    @Override
+    protected List<VirtualFile> createConfigFiles() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    protected void doStart(final FlexCompilationManager compilationManager) {
+      myStartedTasks.add(getBC().getName());
+      if (myOnStart != null) myOnStart.run();
+      if (myFinishOnStart) markFinished();
+    }
+
+    @Override
+    protected void doCancel() {
+      myCancelledTasks.add(getBC().getName());
+    }
+  }
+
+  @NotNull
+  private FlexBuildConfiguration createBC(final String name) {
+    final ModifiableFlexBuildConfiguration bc = Factory.createBuildConfiguration();
+    bc.setName(name);
+    bc.setNature(new BuildConfigurationNature(TargetPlatform.Web, false, OutputType.Library));
+    bc.getDependencies().setSdkEntry(Factory.createSdkEntry(mySdk.getName()));
+    bc.setOutputFolder(FileUtil.toSystemIndependentName(myOutputDir.getPath()));
+    bc.setOutputFileName(name + ".swc");
+    return bc;
+  }
+
+  @NotNull
+  private static Collection<FlexBuildConfiguration> getBCs(final FakeTask... tasks) {
+    final Collection<FlexBuildConfiguration> result = new ArrayList<>();
+    for (FakeTask task : tasks) {
+      result.add(task.getBC());
+    }
+    return result;
+  }
+
+  @NotNull
+  private CompileContext createCompileContext() {
+    return (CompileContext)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{CompileContext.class}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getProject":
+          return myProject;
+        case "getProgressIndicator":
+          return myIndicator;
+        case "isMake":
+          return true;
+        case "addMessage":
+          if (args.length == 5 && args[1] instanceof String) myMessages.add((String)args[1]);
+          return null;
+        case "getMessages":
+          return new CompilerMessage[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        case "toString":
+          return "FakeCompileContext";
+        default:
+          final Class<?> returnType = method.getReturnType();
+          return returnType == boolean.class ? Boolean.FALSE : returnType == int.class ? Integer.valueOf(0) : null;
+      }
+    });
+  }
+
+  private void compile(final int maxParallelCompilations, final FakeTask... tasks) {
+    FlexCompilerProjectConfiguration.getInstance(myProject).MAX_PARALLEL_COMPILATIONS = maxParallelCompilations;
+    new FlexCompilationManager(createCompileContext(), Arrays.asList(tasks)).compile();
+  }
+
+  private static void runLater(final Runnable runnable) {
+    final Thread thread = new Thread(() -> {
+      try {
+        Thread.sleep(100);
+      }
+      catch (InterruptedException ignored) {
+      }
+      runnable.run();
+    }, "FlexCompilationManagerTest");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void testDependenciesFirst() {
+    final FakeTask lib2 = new FakeTask("lib2");
+    final FakeTask lib1 = new FakeTask("lib1", lib2);
+    final FakeTask app = new FakeTask("app", lib1);
+
+    compile(4, app, lib1, lib2);
+    assertEquals(Arrays.asList("lib2", "lib1", "app"), myStartedTasks);
+    assertEmpty(myCancelledTasks);
+  }
+
+  public void testLongestChainStartsFirst() {
+    final FakeTask single = new FakeTask("single");
+    final FakeTask a = new FakeTask("a");
+    final FakeTask b = new FakeTask("b", a);
+    final FakeTask c = new FakeTask("c", b);
+
+    // among ready tasks the one with the longer chain of dependent tasks goes first, tasks with equal chains go in the given order
+    compile(1, single, c, b, a);
+    assertEquals(Arrays.asList("a", "b", "single", "c"), myStartedTasks);
+  }
+
+  public void testCycleIsBroken() {
+    final List<FlexBuildConfiguration> aDependencies = new ArrayList<>();
+    final FakeTask a = new FakeTask("a") {
+      @Override
+      public Collection<FlexBuildConfiguration> getDependencies() {
+        return aDependencies;
+      }
+    };
+    final FakeTask b = new FakeTask("b", a);
+    aDependencies.add(b.getBC());
+    final FakeTask app = new FakeTask("app", a, b);
+
+    compile(4, app, a, b);
+
+    assertEquals(3, myStartedTasks.size());
+    assertEquals("app", myStartedTasks.get(2));
+
+    // the dependency that closes the cycle depends on the order of graph traversal, the task that loses it is compiled first
+    final String aFirstMessage =
+      "[" + a.getPresentableName() + "] " + FlexBundle.message("compilation.cyclic.dependency.ignored", b.getPresentableName());
+    final String bFirstMessage =
+      "[" + b.getPresentableName() + "] " + FlexBundle.message("compilation.cyclic.dependency.ignored", a.getPresentableName());
+    if (myMessages.contains(aFirstMessage)) {
+      assertFalse(myMessages.contains(bFirstMessage));
+      assertEquals(Arrays.asList("a", "b", "app"), myStartedTasks);
+    }
+    else {
+      assertTrue(myMessages.toString(), myMessages.contains(bFirstMessage));
+      assertEquals(Arrays.asList("b", "a", "app"), myStartedTasks);
+    }
+  }
+
+  public void testCancelWhileWaitingForTasks() {
+    final FakeTask lib = new FakeTask("lib").notFinishing(() -> runLater(() -> myIndicator.cancel()));
+    final FakeTask app = new FakeTask("app", lib);
+
+    compile(4, app, lib);
+    assertEquals(Collections.singletonList("lib"), myStartedTasks);
+    assertEquals(Collections.singletonList("lib"), myCancelledTasks);
+  }
+
+  public void testInterruptWhileWaitingForTasks() {
+    final Thread compileThread = Thread.currentThread();
+    final FakeTask lib = new FakeTask("lib").notFinishing(() -> runLater(() -> compileThread.interrupt()));
+    final FakeTask app = new FakeTask("app", lib);
+
+    compile(4, app, lib);
+    assertTrue("interrupted status is kept", Thread.interrupted());
+    assertEquals(Collections.singletonList("lib"), myStartedTasks);
+    assertEquals(Collections.singletonList("lib"), myCancelledTasks);
+  }
+}
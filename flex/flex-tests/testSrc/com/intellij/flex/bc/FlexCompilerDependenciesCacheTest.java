@@ -0,0 +1,187 @@
+package com.intellij.flex.bc;
+
+import com.intellij.flex.model.bc.BuildConfigurationNature;
+import com.intellij.flex.model.bc.OutputType;
+import com.intellij.flex.model.bc.TargetPlatform;
+import com.intellij.flex.util.FlexTestUtils;
+import com.intellij.javascript.flex.css.FlexStylesIndexableSetContributor;
+import com.intellij.lang.javascript.flex.FlexModuleType;
+import com.intellij.lang.javascript.flex.build.FlexCompilerDependenciesCache;
+import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfiguration;
+import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfigurationManager;
+import com.intellij.lang.javascript.flex.projectStructure.model.ModifiableFlexBuildConfiguration;
+import com.intellij.lang.javascript.flex.projectStructure.model.impl.Factory;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.module.ModifiableModuleModel;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.module.ModuleType;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.impl.VfsRootAccess;
+import com.intellij.testFramework.PlatformTestCase;
+import com.intellij.testFramework.PsiTestUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static com.intellij.openapi.vfs.VfsUtilCore.convertFromUrl;
+import static com.intellij.openapi.vfs.VfsUtilCore.urlToPath;
+
+public class FlexCompilerDependenciesCacheTest extends PlatformTestCase {
+
+  private VirtualFile mySrcDir;
+  private VirtualFile myMainFile;
+  private File myOutputDir;
+  private Sdk mySdk;
+  private FlexCompilerDependenciesCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    VfsRootAccess.allowRootAccess(getTestRootDisposable(),
+                                  urlToPath(convertFromUrl(FlexStylesIndexableSetContributor.class.getResource("FlexStyles.as"))));
+    super.setUp();
+
+    mySdk = FlexTestUtils.createSdk(FlexTestUtils.getTestDataPath("MockFlexSdk3"), "3.4.0", getTestRootDisposable());
+    myOutputDir = createTempDirectory();
+    setUpBC(myModule, "Main.swf");
+
+    myMainFile = WriteAction.compute(() -> {
+      final VirtualFile file = mySrcDir.createChildData(this, "Main.as");
+      VfsUtil.saveText(file, "package {\npublic class Main {}\n}");
+      return file;
+    });
+
+    myCache = new FlexCompilerDependenciesCache(myProject);
+    myCache.clear();
+  }
+
+  @Override
+  protected ModuleType getModuleType() {
+    return FlexModuleType.getInstance();
+  }
+
+  @NotNull
+  @Override
+  protected Module createMainModule() throws IOException {
+    final Module module = super.createMainModule();
+    WriteCommandAction.writeCommandAction(myProject).run(() -> {
+      VirtualFile moduleDir = module.getModuleFile().getParent();
+      mySrcDir = moduleDir.createChildDirectory(this, "src");
+      PsiTestUtil.addContentRoot(module, moduleDir);
+      PsiTestUtil.addSourceRoot(module, mySrcDir);
+    });
+    return module;
+  }
+
+  private void setUpBC(final Module module, final String outputFileName) throws IOException {
+    FlexTestUtils.modifyConfigs(myProject, editor -> {
+      final ModifiableFlexBuildConfiguration bc = editor.getConfigurations(module)[0];
+      bc.setNature(new BuildConfigurationNature(TargetPlatform.Web, true, OutputType.Application));
+      bc.setMainClass("Main");
+      bc.getDependencies().setSdkEntry(Factory.createSdkEntry(mySdk.getName()));
+      bc.getDependencies().setTargetPlayer("10.0");
+      bc.setOutputFolder(FileUtil.toSystemIndependentName(myOutputDir.getPath()));
+      bc.setOutputFileName(outputFileName);
+    });
+    FileUtil.writeToFile(new File(myOutputDir, outputFileName), "swf");
+  }
+
+  @NotNull
+  private static FlexBuildConfiguration getBC(final Module module) {
+    return FlexBuildConfigurationManager.getInstance(module).getActiveConfiguration();
+  }
+
+  private void cacheBC(final Module module) {
+    myCache.cacheBC(module, getBC(module), Collections.emptyList());
+  }
+
+  private boolean isUpToDate(final Module module) {
+    return myCache.isNothingChangedSincePreviousCompilation(module, getBC(module));
+  }
+
+  public void testNotCompiledBC() {
+    assertFalse(isUpToDate(myModule));
+  }
+
+  public void testNothingChanged() {
+    cacheBC(myModule);
+    assertTrue(isUpToDate(myModule));
+    assertTrue(isUpToDate(myModule));
+  }
+
+  public void testNothingChangedAfterReload() {
+    cacheBC(myModule);
+    myCache.save();
+
+    myCache = new FlexCompilerDependenciesCache(myProject);
+    assertTrue(isUpToDate(myModule));
+  }
+
+  public void testTouchedSourceFile() {
+    cacheBC(myModule);
+
+    final File file = new File(myMainFile.getPath());
+    assertTrue(file.setLastModified(file.lastModified() + 10000));
+    assertTrue(isUpToDate(myModule));
+  }
+
+  public void testChangedSourceFile() throws IOException {
+    cacheBC(myModule);
+
+    WriteAction.run(() -> VfsUtil.saveText(myMainFile, "package {\npublic class Main { var a; }\n}"));
+    assertFalse(isUpToDate(myModule));
+  }
+
+  public void testAddedSourceFile() throws IOException {
+    cacheBC(myModule);
+
+    WriteAction.run(() -> mySrcDir.createChildData(this, "Foo.as"));
+    assertFalse(isUpToDate(myModule));
+  }
+
+  public void testChangedSettings() {
+    cacheBC(myModule);
+
+    FlexTestUtils.modifyBuildConfiguration(myModule, bc -> bc.setMainClass("Main2"));
+    assertFalse(isUpToDate(myModule));
+  }
+
+  public void testMarkBCDirty() {
+    cacheBC(myModule);
+
+    myCache.markBCDirty(myModule, getBC(myModule));
+    assertFalse(isUpToDate(myModule));
+  }
+
+  public void testMarkModuleDirty() {
+    cacheBC(myModule);
+
+    myCache.markModuleDirty(myModule);
+    assertFalse(isUpToDate(myModule));
+  }
+
+  public void testModuleRemoved() throws IOException {
+    final Module other = FlexTestUtils.createModule(myProject, "other", null);
+    setUpBC(other, "Other.swf");
+    final FlexBuildConfiguration otherBC = getBC(other);
+
+    cacheBC(myModule);
+    cacheBC(other);
+    assertTrue(myCache.isNothingChangedSincePreviousCompilation(other, otherBC));
+
+    WriteAction.run(() -> {
+      final ModifiableModuleModel model = ModuleManager.getInstance(myProject).getModifiableModel();
+      model.disposeModule(other);
+      model.commit();
+    });
+
+    assertFalse(myCache.isNothingChangedSincePreviousCompilation(other, otherBC));
+    assertTrue(isUpToDate(myModule));
+  }
+}
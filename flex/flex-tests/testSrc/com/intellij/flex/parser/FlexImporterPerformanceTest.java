@@ -0,0 +1,56 @@
+package com.intellij.flex.parser;
+
+import com.intellij.flex.util.FlexTestUtils;
+import com.intellij.lang.javascript.JavaScriptSupportLoader;
+import com.intellij.lang.javascript.flex.importer.FlexImporter;
+import com.intellij.lang.javascript.psi.stubs.impl.JSFileCachedData;
+import com.intellij.lang.javascript.psi.stubs.impl.JSFileStubImpl;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Builds stubs of all swc libraries of the complete Flex SDK, i.e. does what indexing of a Flex SDK does.
+ */
+public class FlexImporterPerformanceTest extends LightCodeInsightFixtureTestCase {
+  private static void loadLibraries(final File dir, final List<byte[]> result) throws IOException {
+    final File[] files = dir.listFiles();
+    if (files == null) return;
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        loadLibraries(file, result);
+      }
+      else if (file.getName().endsWith(".swc")) {
+        try (ZipFile zipFile = new ZipFile(file)) {
+          final ZipEntry zipEntry = zipFile.getEntry("library.swf");
+          if (zipEntry == null) continue;
+          try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+            result.add(FileUtil.loadBytes(inputStream, (int)zipEntry.getSize()));
+          }
+        }
+      }
+    }
+  }
+
+  public void testBuildStubsOfFlexSdk() throws Exception {
+    final List<byte[]> libraries = new ArrayList<>();
+    loadLibraries(new File(FlexTestUtils.getPathToCompleteFlexSdk("4.6"), "frameworks/libs"), libraries);
+    assertFalse(libraries.isEmpty());
+
+    PlatformTestUtil.startPerformanceTest("Building stubs of Flex SDK libraries", 5000, () -> {
+      for (byte[] library : libraries) {
+        FlexImporter.buildStubsInterfaceFromBytes(library,
+                                                  new JSFileStubImpl(JavaScriptSupportLoader.ECMA_SCRIPT_L4, new JSFileCachedData()));
+      }
+    }).assertTiming();
+  }
+}
@@ -0,0 +1,147 @@
+package com.intellij.javascript.flex.compiled;
+
+import com.intellij.flex.util.FlexTestUtils;
+import com.intellij.lang.javascript.JavaScriptSupportLoader;
+import com.intellij.lang.javascript.flex.importer.FlexImporter;
+import com.intellij.lang.javascript.psi.stubs.impl.JSFileCachedData;
+import com.intellij.lang.javascript.psi.stubs.impl.JSFileStubImpl;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.stubs.PsiFileStub;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+public class SwfContentCacheTest extends LightCodeInsightFixtureTestCase {
+  private static final int STUB_VERSION = 1;
+  private static final int TEXT_VERSION = 1;
+
+  private File myCacheDir;
+  private SwfContentCache myCache;
+  private byte[] myContent;
+  private String myHash;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCacheDir = FileUtil.createTempDirectory("swf.content", null);
+    myContent = FileUtil.loadFileBytes(new File(FlexTestUtils.getTestDataPath("flex_importer"), "employeedirectory.swf"));
+    myHash = SwfContentCache.getContentHash(myContent);
+    myCache = new SwfContentCache(myCacheDir, STUB_VERSION, TEXT_VERSION, Long.MAX_VALUE);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      if (myCache != null) myCache.dispose();
+      FileUtil.delete(myCacheDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private void reopen(final int stubVersion, final int textVersion) {
+    myCache.dispose();
+    myCache = new SwfContentCache(myCacheDir, stubVersion, textVersion, Long.MAX_VALUE);
+  }
+
+  @NotNull
+  private PsiFileStub buildStub() throws Exception {
+    final JSFileStubImpl stub = new JSFileStubImpl(JavaScriptSupportLoader.ECMA_SCRIPT_L4, new JSFileCachedData());
+    FlexImporter.buildStubsInterfaceFromBytes(myContent, stub);
+    return stub;
+  }
+
+  public void testContentHash() {
+    assertEquals(myHash, SwfContentCache.getContentHash(myContent));
+    assertFalse(myHash.equals(SwfContentCache.getContentHash(new byte[]{1, 2, 3})));
+  }
+
+  public void testTextHitAndMiss() {
+    assertNull(myCache.getText(myHash));
+
+    myCache.putText(myHash, "package {}");
+    assertEquals("package {}", myCache.getText(myHash));
+    assertNull(myCache.getText(SwfContentCache.getContentHash(new byte[]{1, 2, 3})));
+
+    reopen(STUB_VERSION, TEXT_VERSION);
+    assertEquals("package {}", myCache.getText(myHash));
+  }
+
+  public void testStubHitAndMiss() throws Exception {
+    assertNull(myCache.getStub(myHash));
+
+    final PsiFileStub stub = buildStub();
+    myCache.putStub(myHash, stub);
+    reopen(STUB_VERSION, TEXT_VERSION);
+
+    final PsiFileStub cached = myCache.getStub(myHash);
+    assertNotNull(cached);
+    assertEquals(DebugUtil.stubTreeToString(stub), DebugUtil.stubTreeToString(cached));
+  }
+
+  public void testCorruptedStorage() throws IOException {
+    myCache.putText(myHash, "package {}");
+    myCache.dispose();
+
+    final File[] files = new File(myCacheDir, "texts").listFiles();
+    assertNotNull(files);
+    for (File file : files) {
+      if (file.isFile() && !file.getName().equals("version")) {
+        FileUtil.writeToFile(file, "garbage");
+      }
+    }
+
+    myCache = new SwfContentCache(myCacheDir, STUB_VERSION, TEXT_VERSION, Long.MAX_VALUE);
+    assertNull(myCache.getText(myHash));
+
+    myCache.putText(myHash, "package {}");
+    assertEquals("package {}", myCache.getText(myHash));
+  }
+
+  public void testTextVersionBump() throws Exception {
+    myCache.putText(myHash, "package {}");
+    myCache.putStub(myHash, buildStub());
+
+    reopen(STUB_VERSION, TEXT_VERSION + 1);
+    assertNull(myCache.getText(myHash));
+    assertNotNull(myCache.getStub(myHash));
+  }
+
+  public void testStubVersionBump() throws Exception {
+    myCache.putText(myHash, "package {}");
+    myCache.putStub(myHash, buildStub());
+
+    reopen(STUB_VERSION + 1, TEXT_VERSION);
+    assertNull(myCache.getStub(myHash));
+    assertEquals("package {}", myCache.getText(myHash));
+  }
+
+  private static long getDirSize(@NotNull final File dir) {
+    long size = 0;
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        size += file.isDirectory() ? getDirSize(file) : file.length();
+      }
+    }
+    return size;
+  }
+
+  public void testSizeLimit() {
+    myCache.dispose();
+    // empty storages take some space already
+    final long emptySize = Math.max(getDirSize(new File(myCacheDir, "stubs")), getDirSize(new File(myCacheDir, "texts")));
+    myCache = new SwfContentCache(myCacheDir, STUB_VERSION, TEXT_VERSION, emptySize + 1024);
+
+    final String otherHash = SwfContentCache.getContentHash(new byte[]{1, 2, 3});
+    myCache.putText(myHash, "package {}");
+    myCache.putText(otherHash, StringUtil.repeat("x", 2048));
+    assertEquals("package {}", myCache.getText(myHash));
+    assertNull(myCache.getText(otherHash));
+  }
+}
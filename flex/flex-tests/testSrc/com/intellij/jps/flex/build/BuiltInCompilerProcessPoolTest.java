@@ -0,0 +1,113 @@
+package com.intellij.jps.flex.build;
+
+import com.intellij.jps.flex.build.BuiltInCompilerProcessPool.CompilerProcess;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+public class BuiltInCompilerProcessPoolTest extends TestCase {
+
+  private static final JpsBuiltInFlexCompilerHandler.Listener LISTENER = new JpsBuiltInFlexCompilerHandler.Listener() {
+    public void textAvailable(final String text) {
+    }
+
+    public void compilationFinished() {
+    }
+  };
+
+  private static void connect(final CompilerProcess process) {
+    process.myDataOutputStream = new DataOutputStream(new ByteArrayOutputStream());
+    process.myStarting = false;
+  }
+
+  public void testIdleProcessIsReservedOnlyOnce() {
+    final BuiltInCompilerProcessPool pool = new BuiltInCompilerProcessPool(0);
+    final CompilerProcess first = pool.reserve(4);
+    assertNotNull(first);
+    connect(first);
+    assertSame(first, pool.takeForCommand());
+    first.addListener("1:", LISTENER, 0);
+    first.removeListener("1:", 10);
+
+    // two build threads find the same idle process, the second one must get a new process
+    assertNull(pool.reserve(4));
+    final CompilerProcess second = pool.reserve(4);
+    assertNotNull(second);
+    assertNotSame(first, second);
+    assertEquals(2, pool.getProcesses().size());
+  }
+
+  public void testCommandGoesToReservedProcess() {
+    final BuiltInCompilerProcessPool pool = new BuiltInCompilerProcessPool(0);
+    final CompilerProcess first = pool.reserve(4);
+    connect(first);
+    assertSame(first, pool.takeForCommand());
+    first.addListener("1:", LISTENER, 0);
+
+    final CompilerProcess second = pool.reserve(4);
+    assertNotNull(second);
+    // the reserved process is still starting, the command must wait for it rather than queue on the busy one
+    assertNull(pool.takeForCommand());
+    assertTrue(pool.hasStartingProcesses());
+
+    connect(second);
+    assertSame(second, pool.takeForCommand());
+  }
+
+  public void testFullPoolSharesLeastLoadedProcess() {
+    final BuiltInCompilerProcessPool pool = new BuiltInCompilerProcessPool(0);
+    final CompilerProcess first = pool.reserve(2);
+    final CompilerProcess second = pool.reserve(2);
+    connect(first);
+    connect(second);
+    assertNull(pool.reserve(2));
+    assertEquals(2, pool.getProcesses().size());
+
+    assertNotNull(pool.takeForCommand());
+    assertNotNull(pool.takeForCommand());
+    final CompilerProcess third = pool.takeForCommand();
+    assertTrue(third == first || third == second);
+  }
+
+  public void testPoolSharesHeap() {
+    assertEquals(2, BuiltInCompilerProcessPool.getMaxProcesses(4, 512));
+    assertEquals(256, BuiltInCompilerProcessPool.getProcessHeapSizeMb(4, 512));
+
+    assertEquals(4, BuiltInCompilerProcessPool.getMaxProcesses(4, 2048));
+    assertEquals(512, BuiltInCompilerProcessPool.getProcessHeapSizeMb(4, 2048));
+
+    // small heap or no parallel compilations: one process with the whole heap
+    assertEquals(1, BuiltInCompilerProcessPool.getMaxProcesses(4, 400));
+    assertEquals(400, BuiltInCompilerProcessPool.getProcessHeapSizeMb(4, 400));
+    assertEquals(1, BuiltInCompilerProcessPool.getMaxProcesses(0, 2048));
+    assertEquals(2048, BuiltInCompilerProcessPool.getProcessHeapSizeMb(0, 2048));
+  }
+
+  public void testBusyTime() {
+    final BuiltInCompilerProcessPool pool = new BuiltInCompilerProcessPool(0);
+    final CompilerProcess process = pool.reserve(1);
+    connect(process);
+    pool.takeForCommand();
+
+    // overlapping compilations are counted once
+    process.addListener("1:", LISTENER, 100);
+    process.addListener("2:", LISTENER, 200);
+    process.removeListener("1:", 300);
+    process.removeListener("2:", 400);
+    assertEquals(300, process.getBusyTimeInPeriod(1000));
+
+    process.addListener("3:", LISTENER, 900);
+    assertEquals(400, process.getBusyTimeInPeriod(1000));
+    final String report = pool.getUtilizationReport(1000);
+    assertTrue(report, report.startsWith("Flex compiler #1: 3 compilation(s), busy ") && report.endsWith(" (40%)"));
+
+    // the compilation that spans the report is counted in the new period from its start only
+    process.removeListener("3:", 1500);
+    assertEquals(500, process.getBusyTimeInPeriod(2000));
+    final String nextReport = pool.getUtilizationReport(2000);
+    assertTrue(nextReport, nextReport.startsWith("Flex compiler #1: 0 compilation(s), busy ") && nextReport.endsWith(" (50%)"));
+
+    assertNull(pool.getUtilizationReport(3000));
+  }
+}
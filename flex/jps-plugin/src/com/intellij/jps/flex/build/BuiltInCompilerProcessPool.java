@@ -0,0 +1,232 @@
+package com.intellij.jps.flex.build;
+
+import com.intellij.openapi.util.text.StringUtil;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bookkeeping of the compiler processes of {@link JpsBuiltInFlexCompilerHandler}: how many processes may run, which process gets
+ * the next compilation and how busy the processes are. Sockets and streams are owned by the handler,
+ * the pool itself does no IO and isn't thread-safe, the handler calls it under its lock.
+ */
+class BuiltInCompilerProcessPool {
+
+  static final int MIN_PROCESS_HEAP_SIZE_MB = 256;
+
+  private final List<CompilerProcess> myProcesses = new ArrayList<>();
+  private int myProcessNumber = 1;
+  private long myPeriodStart;
+
+  BuiltInCompilerProcessPool(final long now) {
+    myPeriodStart = now;
+  }
+
+  static class CompilerProcess {
+    final int myNumber;
+
+    Process myProcess;
+    ServerSocket myServerSocket;
+    DataInputStream myDataInputStream;
+    DataOutputStream myDataOutputStream;
+    boolean myStarting = true;
+
+    /**
+     * Compilations that have been promised to this process by {@link #reserve(int)} but not sent yet
+     */
+    private int myReservations;
+    private final Map<String, JpsBuiltInFlexCompilerHandler.Listener> myActiveListeners = new THashMap<>();
+    private int myCompilationsCountInPeriod;
+    private long myBusyTimeInPeriod;
+    private long myBusySince;
+
+    CompilerProcess(final int number) {
+      myNumber = number;
+    }
+
+    boolean isConnected() {
+      return myDataOutputStream != null;
+    }
+
+    private int getLoad() {
+      return myReservations + myActiveListeners.size();
+    }
+
+    @Nullable
+    JpsBuiltInFlexCompilerHandler.Listener getListener(final String prefix) {
+      return myActiveListeners.get(prefix);
+    }
+
+    void addListener(final String prefix, final JpsBuiltInFlexCompilerHandler.Listener listener, final long now) {
+      if (myActiveListeners.isEmpty()) {
+        myBusySince = now;
+      }
+      myActiveListeners.put(prefix, listener);
+      myCompilationsCountInPeriod++;
+    }
+
+    void removeListener(final String prefix, final long now) {
+      if (myActiveListeners.remove(prefix) != null && myActiveListeners.isEmpty()) {
+        myBusyTimeInPeriod += now - myBusySince;
+      }
+    }
+
+    /**
+     * @return listeners of the compilations that were running, they will get no more output from this process
+     */
+    @NotNull
+    List<JpsBuiltInFlexCompilerHandler.Listener> clearListeners() {
+      final List<JpsBuiltInFlexCompilerHandler.Listener> listeners = new ArrayList<>(myActiveListeners.values());
+      myActiveListeners.clear();
+      myReservations = 0;
+      return listeners;
+    }
+
+    long getBusyTimeInPeriod(final long now) {
+      return myBusyTimeInPeriod + (myActiveListeners.isEmpty() ? 0 : now - myBusySince);
+    }
+  }
+
+  /**
+   * The configured heap size is shared by the processes of the pool, as it was shared by parallel compilations when they all ran
+   * in one compiler process, so the pool gets only as many processes as the heap allows with at least
+   * {@link #MIN_PROCESS_HEAP_SIZE_MB} each.
+   */
+  static int getMaxProcesses(final int maxParallelCompilations, final int heapSizeMb) {
+    return Math.max(1, Math.min(maxParallelCompilations, heapSizeMb / MIN_PROCESS_HEAP_SIZE_MB));
+  }
+
+  static int getProcessHeapSizeMb(final int maxParallelCompilations, final int heapSizeMb) {
+    return heapSizeMb / getMaxProcesses(maxParallelCompilations, heapSizeMb);
+  }
+
+  @NotNull
+  List<CompilerProcess> getProcesses() {
+    return myProcesses;
+  }
+
+  /**
+   * Reserves a process for one compilation, the reservation is used by the next {@link #takeForCommand()}.
+   * An idle process is preferred, then a new one if the pool is smaller than <code>maxProcesses</code>, then the least loaded one.
+   *
+   * @return new process that the caller must start, <code>null</code> if an existing process has been reserved
+   */
+  @Nullable
+  CompilerProcess reserve(final int maxProcesses) {
+    CompilerProcess leastLoaded = null;
+    for (CompilerProcess process : myProcesses) {
+      if (leastLoaded == null || process.getLoad() < leastLoaded.getLoad()) {
+        leastLoaded = process;
+      }
+    }
+
+    if (leastLoaded == null || leastLoaded.getLoad() > 0 && myProcesses.size() < maxProcesses) {
+      final CompilerProcess process = new CompilerProcess(myProcessNumber++);
+      process.myReservations = 1;
+      myProcesses.add(process);
+      return process;
+    }
+
+    leastLoaded.myReservations++;
+    return null;
+  }
+
+  /**
+   * @return connected process that a compilation command should be sent to: the least loaded of the reserved ones,
+   *         or the least loaded of all if nothing is reserved; <code>null</code> if no process is connected
+   *         or if the reserved processes are still starting, in the latter case the caller should wait for them
+   */
+  @Nullable
+  CompilerProcess takeForCommand() {
+    CompilerProcess reserved = null;
+    CompilerProcess any = null;
+    boolean reservedStarting = false;
+
+    for (CompilerProcess process : myProcesses) {
+      if (!process.isConnected()) {
+        reservedStarting |= process.myReservations > 0;
+        continue;
+      }
+
+      if (process.myReservations > 0 && (reserved == null || process.myActiveListeners.size() < reserved.myActiveListeners.size())) {
+        reserved = process;
+      }
+      if (any == null || process.myActiveListeners.size() < any.myActiveListeners.size()) {
+        any = process;
+      }
+    }
+
+    if (reserved != null) {
+      reserved.myReservations--;
+      return reserved;
+    }
+    return reservedStarting ? null : any;
+  }
+
+  boolean hasStartingProcesses() {
+    for (CompilerProcess process : myProcesses) {
+      if (process.myStarting) return true;
+    }
+    return false;
+  }
+
+  void remove(final CompilerProcess process) {
+    myProcesses.remove(process);
+  }
+
+  boolean removeListener(final JpsBuiltInFlexCompilerHandler.Listener listener, final long now) {
+    for (CompilerProcess process : myProcesses) {
+      for (final Map.Entry<String, JpsBuiltInFlexCompilerHandler.Listener> entry : process.myActiveListeners.entrySet()) {
+        if (entry.getValue() == listener) {
+          process.removeListener(entry.getKey(), now);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  int getActiveCompilationsNumber() {
+    int result = 0;
+    for (CompilerProcess process : myProcesses) {
+      result += process.myActiveListeners.size();
+    }
+    return result;
+  }
+
+  /**
+   * Reports compilations count and busy time of each process since the previous report and starts a new period.
+   *
+   * @return <code>null</code> if no process was busy in the period
+   */
+  @Nullable
+  String getUtilizationReport(final long now) {
+    final long period = Math.max(1, now - myPeriodStart);
+    final StringBuilder report = new StringBuilder();
+    for (CompilerProcess process : myProcesses) {
+      final long busyTime = process.getBusyTimeInPeriod(now);
+      if (process.myCompilationsCountInPeriod > 0 || busyTime > 0) {
+        if (report.length() > 0) report.append('\n');
+        report.append("Flex compiler #").append(process.myNumber).append(": ").append(process.myCompilationsCountInPeriod)
+          .append(" compilation(s), busy ").append(StringUtil.formatDuration(busyTime))
+          .append(" (").append(busyTime * 100 / period).append("%)");
+      }
+
+      process.myCompilationsCountInPeriod = 0;
+      process.myBusyTimeInPeriod = 0;
+      if (!process.myActiveListeners.isEmpty()) {
+        process.myBusySince = now;
+      }
+    }
+
+    myPeriodStart = now;
+    return report.length() == 0 ? null : report.toString();
+  }
+}
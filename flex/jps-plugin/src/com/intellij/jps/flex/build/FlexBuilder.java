@@ -69,6 +69,10 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
   public void buildFinished(final CompileContext context) {
     LOG.assertTrue(myBuiltInCompilerHandler.getActiveCompilationsNumber() == 0,
                    myBuiltInCompilerHandler.getActiveCompilationsNumber() + " Flex compilation(s) are not finished!");
+    final String utilizationReport = myBuiltInCompilerHandler.getUtilizationReport();
+    if (utilizationReport != null) {
+      context.processMessage(new CompilerMessage(getPresentableName(), BuildMessage.Kind.INFO, utilizationReport));
+    }
     myBuiltInCompilerHandler.stopCompilerProcess();
     myBuiltInCompilerHandler = null;
 
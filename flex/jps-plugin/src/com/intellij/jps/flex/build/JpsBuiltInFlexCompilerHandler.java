@@ -1,12 +1,14 @@
 package com.intellij.jps.flex.build;
 
 import com.intellij.flex.FlexCommonUtils;
+import com.intellij.flex.model.JpsFlexCompilerProjectExtension;
 import com.intellij.flex.model.sdk.JpsFlexSdkType;
+import com.intellij.jps.flex.build.BuiltInCompilerProcessPool.CompilerProcess;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
-import gnu.trove.THashMap;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
@@ -17,9 +19,16 @@ import org.jetbrains.jps.service.SharedThreadPool;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Runs compilations of one build on up to {@link JpsFlexCompilerProjectExtension#MAX_PARALLEL_COMPILATIONS} built-in compiler
+ * processes for one Flex SDK, so that compilations of parallel build threads don't share a JVM heap.
+ * The processes share {@link JpsFlexCompilerProjectExtension#HEAP_SIZE_MB}, which limits their number as well.
+ * They live until the end of the build and are reused by its compilations; which process gets a compilation
+ * is decided by {@link BuiltInCompilerProcessPool}.
+ */
 public class JpsBuiltInFlexCompilerHandler {
 
   private static final Logger LOG = Logger.getInstance(JpsBuiltInFlexCompilerHandler.class.getName());
@@ -29,13 +38,9 @@ public class JpsBuiltInFlexCompilerHandler {
   private final JpsProject myProject;
 
   private String mySdkHome;
-
-  private ServerSocket myServerSocket;
-  private DataInputStream myDataInputStream;
-  private DataOutputStream myDataOutputStream;
+  private final BuiltInCompilerProcessPool myPool = new BuiltInCompilerProcessPool(System.currentTimeMillis());
 
   private int commandNumber = 1;
-  private final Map<String, Listener> myActiveListeners = new THashMap<>();
 
   public interface Listener {
     void textAvailable(String text);
@@ -51,36 +56,57 @@ public class JpsBuiltInFlexCompilerHandler {
     return mySdkHome == null || mySdkHome.equals(sdkHome);
   }
 
-  public synchronized void startCompilerIfNeeded(final JpsSdk<?> sdk,
-                                                 final CompileContext context,
-                                                 final String compilerName) throws IOException {
-    if (!Comparing.equal(sdk.getHomePath(), mySdkHome)) {
-      stopCompilerProcess();
-    }
+  /**
+   * Reserves a compiler process for the next {@link #sendCompilationCommand(String, Listener)}, starts a new process if needed.
+   */
+  public void startCompilerIfNeeded(final JpsSdk<?> sdk,
+                                    final CompileContext context,
+                                    final String compilerName) throws IOException {
+    final CompilerProcess process;
 
-    if (myServerSocket == null) {
-      try {
-        //context.processMessage(new ProgressMessage("Starting Flex compiler"));
-        myServerSocket = new ServerSocket(0);
-        myServerSocket.setSoTimeout(10000);
-        final int port = myServerSocket.getLocalPort();
+    synchronized (this) {
+      if (!Comparing.equal(sdk.getHomePath(), mySdkHome)) {
+        stopCompilerProcess();
+        mySdkHome = sdk.getHomePath();
+      }
 
-        startCompilerProcess(sdk, port, context, compilerName);
+      stopDeadProcesses();
 
-        final Socket socket = myServerSocket.accept();
-        myDataInputStream = new DataInputStream(socket.getInputStream());
-        myDataOutputStream = new DataOutputStream(socket.getOutputStream());
-        mySdkHome = sdk.getHomePath();
-        scheduleInputReading();
+      final JpsFlexCompilerProjectExtension settings = JpsFlexCompilerProjectExtension.getInstance(myProject);
+      process = myPool.reserve(BuiltInCompilerProcessPool.getMaxProcesses(settings.MAX_PARALLEL_COMPILATIONS, settings.HEAP_SIZE_MB));
+      if (process == null) return;
+    }
+
+    // the process is started outside of the lock so that output of running compilations is handled meanwhile
+    try {
+      //context.processMessage(new ProgressMessage("Starting Flex compiler"));
+      final ServerSocket serverSocket = new ServerSocket(0);
+      synchronized (this) {
+        process.myServerSocket = serverSocket;
       }
-      catch (IOException e) {
-        stopCompilerProcess();
-        throw e;
+      serverSocket.setSoTimeout(10000);
+      final int port = serverSocket.getLocalPort();
+
+      startCompilerProcess(process, sdk, port, context, compilerName);
+
+      final Socket socket = serverSocket.accept();
+      synchronized (this) {
+        if (!myPool.getProcesses().contains(process)) throw new IOException("Flex compiler has been stopped");
+        process.myDataInputStream = new DataInputStream(socket.getInputStream());
+        process.myDataOutputStream = new DataOutputStream(socket.getOutputStream());
+        process.myStarting = false;
+        notifyAll();
       }
+      scheduleInputReading(process);
+    }
+    catch (IOException e) {
+      stopProcess(process, true);
+      throw e;
     }
   }
 
-  private void startCompilerProcess(final JpsSdk<?> sdk,
+  private void startCompilerProcess(final CompilerProcess compilerProcess,
+                                    final JpsSdk<?> sdk,
                                     final int port,
                                     final CompileContext context,
                                     final String compilerName) throws IOException {
@@ -94,8 +120,10 @@ public class JpsBuiltInFlexCompilerHandler {
       classpath.append(File.pathSeparator).append(FileUtil.toSystemDependentName(sdk.getHomePath() + "/lib/flex-compiler-oem.jar"));
     }
 
+    final JpsFlexCompilerProjectExtension settings = JpsFlexCompilerProjectExtension.getInstance(myProject);
+    final int heapSizeMb = BuiltInCompilerProcessPool.getProcessHeapSizeMb(settings.MAX_PARALLEL_COMPILATIONS, settings.HEAP_SIZE_MB);
     final List<String> commandLine =
-      FlexCommonUtils.getCommandLineForSdkTool(myProject, sdk, classpath.toString(), "com.intellij.flex.compiler.FlexCompiler");
+      FlexCommonUtils.getCommandLineForSdkTool(myProject, sdk, classpath.toString(), "com.intellij.flex.compiler.FlexCompiler", heapSizeMb);
     commandLine.add(String.valueOf(port));
 
     final ProcessBuilder processBuilder = new ProcessBuilder(commandLine);
@@ -103,13 +131,20 @@ public class JpsBuiltInFlexCompilerHandler {
     processBuilder.directory(new File(FlexCommonUtils.getFlexCompilerWorkDirPath(myProject)));
 
     final String plainCommand = StringUtil.join(processBuilder.command(), s -> s.contains(" ") ? "\"" + s + "\"" : s, " ");
-    context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.INFO, "Starting Flex compiler:\n" + plainCommand));
+    context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.INFO,
+                                               "Starting Flex compiler #" + compilerProcess.myNumber + ":\n" + plainCommand));
 
     final Process process = processBuilder.start();
-    readInputStreamUntilConnected(process, context, compilerName);
+    synchronized (this) {
+      compilerProcess.myProcess = process;
+    }
+    readInputStreamUntilConnected(compilerProcess, process, context, compilerName);
   }
 
-  private void readInputStreamUntilConnected(final Process process, final CompileContext context, final String compilerName) {
+  private void readInputStreamUntilConnected(final CompilerProcess compilerProcess,
+                                             final Process process,
+                                             final CompileContext context,
+                                             final String compilerName) {
     SharedThreadPool.getInstance().executeOnPooledThread(() -> {
       final InputStreamReader reader = FlexCommonUtils.createInputStreamReader(process.getInputStream());
 
@@ -122,13 +157,13 @@ public class JpsBuiltInFlexCompilerHandler {
             break;
           }
           else {
-            closeSocket();
+            closeSocket(compilerProcess);
             context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, output));
           }
         }
       }
       catch (IOException e) {
-        closeSocket();
+        closeSocket(compilerProcess);
         context.processMessage(
           new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, "Failed to start Flex compiler: " + e.toString()));
       }
@@ -141,11 +176,11 @@ public class JpsBuiltInFlexCompilerHandler {
     });
   }
 
-  private void scheduleInputReading() {
+  private void scheduleInputReading(final CompilerProcess process) {
     SharedThreadPool.getInstance().executeOnPooledThread(() -> {
       final StringBuilder buffer = new StringBuilder();
       while (true) {
-        final DataInputStream dataInputStream = myDataInputStream;
+        final DataInputStream dataInputStream = process.myDataInputStream;
         if (dataInputStream != null) {
           try {
             buffer.append(dataInputStream.readUTF());
@@ -154,12 +189,13 @@ public class JpsBuiltInFlexCompilerHandler {
             while ((index = buffer.indexOf("\n")) > -1) {
               final String line = buffer.substring(0, index);
               buffer.delete(0, index + 1);
-              handleInputLine(line);
+              handleInputLine(process, line);
             }
           }
           catch (IOException e) {
-            if (dataInputStream == myDataInputStream) {
-              stopCompilerProcess();
+            if (dataInputStream == process.myDataInputStream) {
+              // the process has died or has been stopped
+              stopProcess(process, true);
             }
             break;
           }
@@ -171,7 +207,7 @@ public class JpsBuiltInFlexCompilerHandler {
     });
   }
 
-  private synchronized void handleInputLine(final String line) {
+  private synchronized void handleInputLine(final CompilerProcess process, final String line) {
     LOG.debug("RECEIVED: [" + line + "]");
 
     final int colonPos = line.indexOf(":");
@@ -181,7 +217,7 @@ public class JpsBuiltInFlexCompilerHandler {
     }
 
     final String prefix = line.substring(0, colonPos + 1);
-    final Listener listener = myActiveListeners.get(prefix);
+    final Listener listener = process.getListener(prefix);
     if (listener == null) {
       LOG.warn("No active listener for input line: [" + line + "]");  // could be message from cancelled compilation
     }
@@ -189,7 +225,7 @@ public class JpsBuiltInFlexCompilerHandler {
       final String text = line.substring(colonPos + 1);
       if (text.startsWith(COMPILATION_FINISHED)) {
         listener.compilationFinished();
-        myActiveListeners.remove(prefix);
+        process.removeListener(prefix, System.currentTimeMillis());
       }
       else {
         listener.textAvailable(text);
@@ -198,7 +234,21 @@ public class JpsBuiltInFlexCompilerHandler {
   }
 
   public synchronized void sendCompilationCommand(final String command, final Listener listener) {
-    if (myDataOutputStream == null) {
+    stopDeadProcesses();
+
+    CompilerProcess process = myPool.takeForCommand();
+    while (process == null && myPool.hasStartingProcesses()) {
+      try {
+        wait();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      process = myPool.takeForCommand();
+    }
+
+    if (process == null) {
       listener.textAvailable("Error: Compiler process is not started.");
       listener.compilationFinished();
       return;
@@ -207,9 +257,9 @@ public class JpsBuiltInFlexCompilerHandler {
     try {
       final String prefix = String.valueOf(commandNumber++) + ":";
       final String commandToSend = prefix + command + "\n";
-      LOG.debug("SENDING: [" + commandToSend + "]");
-      myDataOutputStream.writeUTF(commandToSend);
-      myActiveListeners.put(prefix, listener);
+      LOG.debug("SENDING to #" + process.myNumber + ": [" + commandToSend + "]");
+      process.myDataOutputStream.writeUTF(commandToSend);
+      process.addListener(prefix, listener, System.currentTimeMillis());
     }
     catch (IOException e) {
       listener.textAvailable("Error: Can't start compilation: " + e.toString());
@@ -217,66 +267,80 @@ public class JpsBuiltInFlexCompilerHandler {
     }
   }
 
-  private synchronized void cancelAllCompilations(final boolean reportError) {
-    for (final Listener listener : myActiveListeners.values()) {
+  /**
+   * A crashed compiler may leave its socket open for a while, so the process itself is checked before it gets a compilation.
+   */
+  private synchronized void stopDeadProcesses() {
+    for (CompilerProcess process : new ArrayList<>(myPool.getProcesses())) {
+      if (process.myProcess != null && !process.myProcess.isAlive()) {
+        LOG.warn("Flex compiler #" + process.myNumber + " has exited with code " + process.myProcess.exitValue());
+        stopProcess(process, true);
+      }
+    }
+  }
+
+  private synchronized void stopProcess(final CompilerProcess process, final boolean reportError) {
+    for (final Listener listener : process.clearListeners()) {
       if (reportError) {
         listener.textAvailable("Error: Compilation terminated");
       }
       listener.compilationFinished();
     }
-    myActiveListeners.clear();
+    closeSocket(process);
+    myPool.remove(process);
+    notifyAll();
   }
 
   public synchronized void stopCompilerProcess() {
-    cancelAllCompilations(true);
-    closeSocket();
+    for (CompilerProcess process : new ArrayList<>(myPool.getProcesses())) {
+      stopProcess(process, true);
+    }
+    mySdkHome = null;
   }
 
-  private synchronized void closeSocket() {
+  private synchronized void closeSocket(final CompilerProcess process) {
     // compiler process exits when socket closes, so it's enough just to close streams
 
-    if (myDataInputStream != null) {
+    if (process.myDataInputStream != null) {
       try {
-        myDataInputStream.close();
+        process.myDataInputStream.close();
       }
       catch (IOException ignored) {/**/}
     }
 
-    if (myDataOutputStream != null) {
+    if (process.myDataOutputStream != null) {
       try {
-        myDataOutputStream.close();
+        process.myDataOutputStream.close();
       }
       catch (IOException ignored) {/**/}
     }
 
-    if (myServerSocket != null) {
+    if (process.myServerSocket != null) {
       try {
-        myServerSocket.close();
+        process.myServerSocket.close();
       }
       catch (IOException ignored) {/**/}
     }
 
-    myServerSocket = null;
-    myDataInputStream = null;
-    myDataOutputStream = null;
+    process.myServerSocket = null;
+    process.myDataInputStream = null;
+    process.myDataOutputStream = null;
+    process.myStarting = false;
   }
 
   public synchronized void removeListener(final Listener listener) {
-    String toRemove = null;
-    for (final Map.Entry<String, Listener> entry : myActiveListeners.entrySet()) {
-      if (entry.getValue() == listener) {
-        toRemove = entry.getKey();
-        break;
-      }
-    }
-
-    if (toRemove != null) {
-      myActiveListeners.remove(toRemove);
-    }
+    myPool.removeListener(listener, System.currentTimeMillis());
   }
 
   public synchronized int getActiveCompilationsNumber() {
-    return myActiveListeners.size();
+    return myPool.getActiveCompilationsNumber();
   }
-}
 
+  /**
+   * @return compilations count and busy time of each compiler process since the previous call, <code>null</code> if there were no compilations
+   */
+  @Nullable
+  public synchronized String getUtilizationReport() {
+    return myPool.getUtilizationReport(System.currentTimeMillis());
+  }
+}
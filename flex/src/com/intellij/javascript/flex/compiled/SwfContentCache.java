@@ -0,0 +1,278 @@
+package com.intellij.javascript.flex.compiled;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.stubs.PsiFileStub;
+import com.intellij.psi.stubs.SerializationManagerEx;
+import com.intellij.psi.stubs.Stub;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import com.intellij.util.io.UnsyncByteArrayInputStream;
+import com.intellij.util.io.UnsyncByteArrayOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stub trees and decompiled text of <code>library.swf</code> files keyed by the hash of the swf content.
+ * <p/>
+ * SDK and third-party libraries hardly ever change and the same library is usually attached to many modules and projects,
+ * so after an index rebuild their stubs are taken from here instead of decoding the ABC again.
+ * The cache lives in the index root: stubs are serialized with the ids of the stub serializers, and those are kept there too.
+ * <p/>
+ * Stubs and texts are kept in separate storages, each dropped when its own version changes
+ * ({@link SwfFileStubBuilder#getStubVersion()} and {@link SwfFileDecompiler#VERSION}) or when it has grown bigger than the size limit.
+ * The storages are not locked here: {@link PersistentHashMap} synchronizes its operations itself, so (de)serialization of
+ * different libraries runs in parallel.
+ */
+public class SwfContentCache implements Disposable {
+  private static final Logger LOG = Logger.getInstance(SwfContentCache.class.getName());
+
+  private static final String DIR_NAME = "flex.swf.content";
+  private static final long MAX_STORAGE_SIZE = 256 * 1024 * 1024;
+
+  private static final Key<Pair<Long, String>> CONTENT_HASH_KEY = Key.create("flex.swf.content.hash");
+
+  private final Storage myStubs;
+  private final Storage myTexts;
+
+  public static SwfContentCache getInstance() {
+    return ServiceManager.getService(SwfContentCache.class);
+  }
+
+  public SwfContentCache() {
+    this(new File(PathManager.getIndexRoot(), DIR_NAME), new SwfFileStubBuilder().getStubVersion(), SwfFileDecompiler.VERSION,
+         MAX_STORAGE_SIZE);
+  }
+
+  SwfContentCache(@NotNull File cacheDir, int stubVersion, int textVersion, long maxStorageSize) {
+    if (new File(cacheDir, "version").isFile()) {
+      // stubs and texts were kept in one directory with a common version before
+      FileUtil.delete(cacheDir);
+    }
+    myStubs = new Storage(new File(cacheDir, "stubs"), stubVersion, maxStorageSize);
+    myTexts = new Storage(new File(cacheDir, "texts"), textVersion, maxStorageSize);
+  }
+
+  /**
+   * The hash is kept in the file user data until the file changes: both the stub builder and the decompiler need it when a library is
+   * indexed, and hashing a big library twice is noticeable.
+   */
+  @NotNull
+  public static String getContentHash(@NotNull VirtualFile file, @NotNull byte[] content) {
+    final long stamp = file.getModificationStamp();
+    final Pair<Long, String> cached = file.getUserData(CONTENT_HASH_KEY);
+    if (cached != null && cached.first == stamp) return cached.second;
+
+    final String hash = getContentHash(content);
+    file.putUserData(CONTENT_HASH_KEY, Pair.create(stamp, hash));
+    return hash;
+  }
+
+  @NotNull
+  static String getContentHash(@NotNull byte[] content) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+
+    final StringBuilder result = new StringBuilder(40 + 9);
+    for (byte b : digest.digest(content)) {
+      result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    // length makes collisions of different libraries even less likely
+    return result.append('.').append(content.length).toString();
+  }
+
+  @Nullable
+  public PsiFileStub getStub(@NotNull String contentHash) {
+    final byte[] bytes = myStubs.get(contentHash);
+    if (bytes == null) return null;
+
+    try {
+      final Stub stub = SerializationManagerEx.getInstanceEx().deserialize(new UnsyncByteArrayInputStream(bytes));
+      if (stub instanceof PsiFileStub) return (PsiFileStub)stub;
+    }
+    catch (Exception e) {
+      LOG.info("Cached stub of " + contentHash + " can't be read", e);
+    }
+    myStubs.remove(contentHash);
+    return null;
+  }
+
+  public void putStub(@NotNull String contentHash, @NotNull PsiFileStub stub) {
+    if (myStubs.isFull()) return;
+
+    final UnsyncByteArrayOutputStream out = new UnsyncByteArrayOutputStream();
+    try {
+      SerializationManagerEx.getInstanceEx().serialize(stub, out);
+    }
+    catch (Exception e) {
+      LOG.info("Stub of " + contentHash + " can't be cached", e);
+      return;
+    }
+    myStubs.put(contentHash, out.toByteArray());
+  }
+
+  @Nullable
+  public String getText(@NotNull String contentHash) {
+    final byte[] bytes = myTexts.get(contentHash);
+    return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public void putText(@NotNull String contentHash, @NotNull String text) {
+    if (myTexts.isFull()) return;
+    myTexts.put(contentHash, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public void dispose() {
+    myStubs.close();
+    myTexts.close();
+  }
+
+  /**
+   * A persistent map in its own directory together with its version. Its size is not tracked exactly: what has been put during this
+   * session is added to the size of the files at start, and nothing is put after the limit is reached. A storage that has reached
+   * the limit is dropped at next start.
+   */
+  private static class Storage {
+    private static final String VERSION_FILE_NAME = "version";
+
+    @NotNull private final File myDir;
+    private final long myMaxSize;
+    private final AtomicLong mySize = new AtomicLong();
+    @Nullable private volatile PersistentHashMap<String, byte[]> myMap;
+
+    private Storage(@NotNull File dir, int version, long maxSize) {
+      myDir = dir;
+      myMaxSize = maxSize;
+
+      try {
+        open(String.valueOf(version));
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        FileUtil.delete(myDir);
+        try {
+          open(String.valueOf(version));
+        }
+        catch (IOException e1) {
+          LOG.warn("Cache of swf content in " + myDir.getPath() + " is disabled", e1);
+          close();
+        }
+      }
+    }
+
+    private void open(@NotNull String version) throws IOException {
+      final File versionFile = new File(myDir, VERSION_FILE_NAME);
+      if (!versionFile.isFile() || !version.equals(FileUtil.loadFile(versionFile)) || getDirSize(myDir) >= myMaxSize) {
+        FileUtil.delete(myDir);
+        FileUtil.writeToFile(versionFile, version);
+      }
+
+      mySize.set(getDirSize(myDir));
+      myMap = new PersistentHashMap<>(new File(myDir, "data"), EnumeratorStringDescriptor.INSTANCE, ByteArrayExternalizer.INSTANCE);
+    }
+
+    private static long getDirSize(@NotNull File dir) {
+      long size = 0;
+      final File[] files = dir.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          size += file.isDirectory() ? getDirSize(file) : file.length();
+        }
+      }
+      return size;
+    }
+
+    private boolean isFull() {
+      return mySize.get() >= myMaxSize;
+    }
+
+    @Nullable
+    private byte[] get(@NotNull String key) {
+      final PersistentHashMap<String, byte[]> map = myMap;
+      if (map == null) return null;
+      try {
+        return map.get(key);
+      }
+      catch (Exception e) {
+        LOG.info("Cached swf content " + key + " can't be read", e);
+        remove(key);
+        return null;
+      }
+    }
+
+    private void put(@NotNull String key, @NotNull byte[] value) {
+      final PersistentHashMap<String, byte[]> map = myMap;
+      if (map == null || mySize.addAndGet(key.length() + value.length) > myMaxSize) return;
+      try {
+        map.put(key, value);
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+    }
+
+    private void remove(@NotNull String key) {
+      final PersistentHashMap<String, byte[]> map = myMap;
+      if (map == null) return;
+      try {
+        map.remove(key);
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+    }
+
+    private void close() {
+      final PersistentHashMap<String, byte[]> map = myMap;
+      myMap = null;
+      if (map == null) return;
+      try {
+        map.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+    }
+  }
+
+  private static class ByteArrayExternalizer implements DataExternalizer<byte[]> {
+    private static final ByteArrayExternalizer INSTANCE = new ByteArrayExternalizer();
+
+    @Override
+    public void save(@NotNull DataOutput out, byte[] value) throws IOException {
+      out.writeInt(value.length);
+      out.write(value);
+    }
+
+    @Override
+    public byte[] read(@NotNull DataInput in) throws IOException {
+      final int length = in.readInt();
+      if (length < 0) throw new IOException("Corrupted value length: " + length);
+      final byte[] result = new byte[length];
+      in.readFully(result);
+      return result;
+    }
+  }
+}
@@ -8,18 +8,30 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ArrayUtil;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 /**
  * @author Maxim.Mossienko
  */
 public class SwfFileDecompiler implements BinaryFileDecompiler {
+  // inc when the text built by FlexImporter changes, so that texts cached in SwfContentCache are dropped
+  static final int VERSION = 1;
+
   @NotNull
   public CharSequence decompile(final VirtualFile file) {
     final Project project = findProject();
     if (project == null) return "";
     try {
-      return FlexImporter.buildInterfaceFromStream(file.getInputStream());
+      final byte[] content = file.contentsToByteArray();
+      final SwfContentCache cache = SwfContentCache.getInstance();
+      final String contentHash = SwfContentCache.getContentHash(file, content);
+      String text = cache.getText(contentHash);
+      if (text == null) {
+        text = FlexImporter.buildInterfaceFromStream(new ByteArrayInputStream(content));
+        cache.putText(contentHash, text);
+      }
+      return text;
     }
     catch (IOException ex) {
       return ArrayUtil.EMPTY_CHAR_SEQUENCE;
@@ -16,8 +16,6 @@ import com.intellij.psi.stubs.StubElement;
 import com.intellij.util.indexing.FileContent;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayInputStream;
-
 /**
  * @author Maxim.Mossienko
  */
@@ -34,18 +32,22 @@ public class SwfFileStubBuilder implements BinaryFileStubBuilder {
   }
 
   static PsiFileStub buildFileStub(VirtualFile file, byte[] content) {
+    final SwfContentCache cache = SwfContentCache.getInstance();
+    final String contentHash = SwfContentCache.getContentHash(file, content);
+    final PsiFileStub cachedStub = cache.getStub(contentHash);
+    if (cachedStub != null) return cachedStub;
+
     PsiFileStubImpl stub = new JSFileStubImpl(JavaScriptSupportLoader.ECMA_SCRIPT_L4, new JSFileCachedData());
     try {
 
-      FlexImporter.buildStubsInterfaceFromStream(
-        new ByteArrayInputStream(content),
-        stub
-      );
+      FlexImporter.buildStubsInterfaceFromBytes(content, stub);
 
     } catch (Exception ex) {
       Logger.getInstance(SwfFileStubBuilder.class.getName()).warn(file.getPath(), ex);
+      return stub;
     }
 
+    cache.putStub(contentHash, stub);
     return stub;
   }
 
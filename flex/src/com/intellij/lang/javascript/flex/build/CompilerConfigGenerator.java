@@ -86,6 +86,16 @@ public class CompilerConfigGenerator {
   }
 
   public static VirtualFile getOrCreateConfigFile(final Module module, final FlexBuildConfiguration bc) throws IOException {
+    final String text = getConfigFileText(module, bc);
+    final String name =
+      getConfigFileName(module, bc.getName(), PlatformUtils.getPlatformPrefix().toLowerCase(), BCUtils.getBCSpecifier(bc));
+    return getOrCreateConfigFile(name, text);
+  }
+
+  /**
+   * @return text of the config file that {@link #getOrCreateConfigFile(Module, FlexBuildConfiguration)} would create
+   */
+  static String getConfigFileText(final Module module, final FlexBuildConfiguration bc) throws IOException {
     final CompilerConfigGenerator generator =
       new CompilerConfigGenerator(module, bc,
                                   FlexBuildConfigurationManager.getInstance(module).getModuleLevelCompilerOptions(),
@@ -101,9 +111,7 @@ public class CompilerConfigGenerator {
                                                                       makeExternalLibsMerged, makeIncludedLibsMerged);
     }
 
-    final String name =
-      getConfigFileName(module, bc.getName(), PlatformUtils.getPlatformPrefix().toLowerCase(), BCUtils.getBCSpecifier(bc));
-    return getOrCreateConfigFile(name, text);
+    return text;
   }
 
   private String generateConfigFileText() throws IOException {
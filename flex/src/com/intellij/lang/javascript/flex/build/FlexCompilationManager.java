@@ -15,22 +15,36 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.util.NullableComputable;
 import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Runs compilation tasks in the order of dependencies between their build configurations.
+ * <p/>
+ * The dependency graph is built up front, cycles are broken there. A task becomes ready when all its dependencies are finished;
+ * ready tasks are started in the order of the length of the longest chain of tasks that depend on them, so that long chains start first.
+ * Tasks notify the manager when they finish, the compile thread handles that immediately instead of polling.
+ */
 public class FlexCompilationManager {
 
   private final CompileContext myCompileContext;
   private final int myMaxParallelCompilations;
   private final int myTasksAmount;
+  private final Map<FlexCompilationTask, TaskNode> myNodes;
   private final Collection<FlexCompilationTask> myNotStartedTasks;
   private final Collection<FlexCompilationTask> myInProgressTasks;
   private final Collection<FlexCompilationTask> myFinishedTasks;
+  private final PriorityQueue<TaskNode> myReadyTasks;
+  private final BlockingQueue<FlexCompilationTask> myJustFinishedTasks = new LinkedBlockingQueue<>();
 
   private boolean myCompilationFinished;
   private final FlexCompilerDependenciesCache myCompilerDependenciesCache;
@@ -38,39 +52,64 @@ public class FlexCompilationManager {
   static final Pattern OUTPUT_FILE_CREATED_PATTERN = Pattern.compile("(\\[.*\\] )?(.+) \\(([0-9]+) bytes\\)");
   private static final String BYTES_WRITTEN_TO = " bytes written to ";
 
+  private static class TaskNode {
+    private final FlexCompilationTask task;
+    private final int index;
+    private final List<TaskNode> dependencies = new ArrayList<>();
+    private final List<TaskNode> dependents = new ArrayList<>();
+    private int notFinishedDependencies;
+    // length of the longest chain of dependent tasks starting from this one, 0 if not calculated yet
+    private int criticalPathLength;
+
+    private TaskNode(final FlexCompilationTask task, final int index) {
+      this.task = task;
+      this.index = index;
+    }
+  }
+
   public FlexCompilationManager(final CompileContext context, final Collection<FlexCompilationTask> compilationTasks) {
     myCompileContext = context;
     myMaxParallelCompilations = FlexCompilerProjectConfiguration.getInstance(context.getProject()).MAX_PARALLEL_COMPILATIONS;
     myTasksAmount = compilationTasks.size();
-    myNotStartedTasks = new LinkedList<>(compilationTasks);
-    myInProgressTasks = new LinkedList<>();
-    myFinishedTasks = new LinkedList<>();
+    myNodes = new IdentityHashMap<>(compilationTasks.size());
+    myNotStartedTasks = new LinkedHashSet<>(compilationTasks);
+    myInProgressTasks = new LinkedHashSet<>();
+    myFinishedTasks = new ArrayList<>();
+    myReadyTasks = new PriorityQueue<>(Math.max(1, compilationTasks.size()), (node1, node2) ->
+      node1.criticalPathLength != node2.criticalPathLength ? node2.criticalPathLength - node1.criticalPathLength
+                                                           : node1.index - node2.index);
     myCompilationFinished = false;
     myCompilerDependenciesCache = FlexCompilerHandler.getInstance(context.getProject()).getCompilerDependenciesCache();
   }
 
   public void compile() {
     try {
-      while (!myNotStartedTasks.isEmpty() || !myInProgressTasks.isEmpty()) {
+      buildDependencyGraph();
+      startReadyTasks();
 
-        if (myCompileContext.getProgressIndicator().isCanceled()) {
-          for (FlexCompilationTask task : myInProgressTasks) {
-            task.cancel();
-          }
-          break;
-        }
-
-        checkFinishedTasks();
-        startNewTaskIfPossible();
+      while (!myNotStartedTasks.isEmpty() || !myInProgressTasks.isEmpty()) {
         updateProgressIndicator();
 
+        final FlexCompilationTask finishedTask;
         try {
-          //noinspection BusyWait
-          Thread.sleep(200);
+          // timeout is needed only to notice cancellation
+          finishedTask = myJustFinishedTasks.poll(200, TimeUnit.MILLISECONDS);
         }
         catch (InterruptedException e) {
-          assert false;
+          Thread.currentThread().interrupt();
+          cancelInProgressTasks();
+          break;
         }
+
+        if (myCompileContext.getProgressIndicator().isCanceled()) {
+          cancelInProgressTasks();
+          break;
+        }
+
+        if (finishedTask != null && myInProgressTasks.remove(finishedTask)) {
+          handleFinishedTask(finishedTask);
+        }
+        startReadyTasks();
       }
     }
     finally {
@@ -78,6 +117,20 @@ public class FlexCompilationManager {
       synchronized (this) {
         myCompilationFinished = true;
       }
+      myCompilerDependenciesCache.save();
+    }
+  }
+
+  /**
+   * Called by a started task when it has finished, may be called from any thread.
+   */
+  void taskFinished(final FlexCompilationTask task) {
+    myJustFinishedTasks.add(task);
+  }
+
+  private void cancelInProgressTasks() {
+    for (FlexCompilationTask task : myInProgressTasks) {
+      task.cancel();
     }
   }
 
@@ -136,56 +189,53 @@ public class FlexCompilationManager {
     return !myCompileContext.isMake();
   }
 
-  private void checkFinishedTasks() {
-    final Iterator<FlexCompilationTask> iterator = myInProgressTasks.iterator();
-    while (iterator.hasNext()) {
-      FlexCompilationTask task = iterator.next();
-      if (task.isFinished()) {
-        iterator.remove();
-        myFinishedTasks.add(task);
+  private void handleFinishedTask(final FlexCompilationTask task) {
+    myFinishedTasks.add(task);
 
-        if (task.isCompilationFailed()) {
-          final Collection<FlexCompilationTask> cancelledTasks = cancelNotStartedDependentTasks(task);
-          if (cancelledTasks.isEmpty()) {
-            addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed"), null, -1, -1);
-          }
-          else {
-            addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed.dependent.will.be.skipped"),
-                       null, -1, -1);
-            for (final FlexCompilationTask cancelledTask : cancelledTasks) {
-              addMessage(cancelledTask, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped"), null, -1, -1);
-            }
-          }
+    if (task.isCompilationFailed()) {
+      final Collection<FlexCompilationTask> cancelledTasks = cancelNotStartedDependentTasks(task);
+      if (cancelledTasks.isEmpty()) {
+        addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed"), null, -1, -1);
+      }
+      else {
+        addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed.dependent.will.be.skipped"),
+                   null, -1, -1);
+        for (final FlexCompilationTask cancelledTask : cancelledTasks) {
+          addMessage(cancelledTask, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped"), null, -1, -1);
         }
-        else {
-          addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.successful"), null, -1, -1);
-
-          final String prefix = getMessagePrefix(task);
-          final List<String> taskMessages = new ArrayList<>();
-          for (CompilerMessage message : myCompileContext.getMessages(CompilerMessageCategory.INFORMATION)) {
-            if (message.getMessage().startsWith(prefix)) {
-              taskMessages.add(message.getMessage().substring(prefix.length()));
-            }
-          }
+      }
+    }
+    else {
+      addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.successful"), null, -1, -1);
 
-          try {
-            FlexCompilationUtils.performPostCompileActions(task.getModule(), task.getBC(), taskMessages);
-          }
-          catch (FlexCompilerException e) {
-            addMessage(task, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
-          }
+      final String prefix = getMessagePrefix(task);
+      final List<String> taskMessages = new ArrayList<>();
+      for (CompilerMessage message : myCompileContext.getMessages(CompilerMessageCategory.INFORMATION)) {
+        if (message.getMessage().startsWith(prefix)) {
+          taskMessages.add(message.getMessage().substring(prefix.length()));
         }
+      }
 
-        if (task.isCompilationFailed()) {
-          myCompilerDependenciesCache.markBCDirty(task.getModule(), task.getBC());
-        }
-        else {
-          //noinspection SynchronizeOnThis
-          synchronized (this) {
-            myCompilerDependenciesCache.cacheBC(task.getModule(), task.getBC(), task.getConfigFiles());
-          }
-        }
+      try {
+        FlexCompilationUtils.performPostCompileActions(task.getModule(), task.getBC(), taskMessages);
       }
+      catch (FlexCompilerException e) {
+        addMessage(task, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
+      }
+    }
+
+    addMessage(task, CompilerMessageCategory.STATISTICS, FlexBundle.message("compilation.time", StringUtil.formatDuration(task.getDuration())),
+               null, -1, -1);
+
+    if (task.isCompilationFailed()) {
+      myCompilerDependenciesCache.markBCDirty(task.getModule(), task.getBC());
+    }
+    else {
+      //noinspection SynchronizeOnThis
+      synchronized (this) {
+        myCompilerDependenciesCache.cacheBC(task.getModule(), task.getBC(), task.getConfigFiles());
+      }
+      dependenciesFinished(task);
     }
   }
 
@@ -208,16 +258,16 @@ public class FlexCompilationManager {
                                                        final FlexCompilationTask task) {
     final Collection<FlexCompilationTask> tasksToCancel = new ArrayList<>();
 
-    for (FlexCompilationTask notStartedTask : myNotStartedTasks) {
-      //noinspection ConstantConditions
-      if (notStartedTask.getDependencies().contains(task.getBC())) {
-        tasksToCancel.add(notStartedTask);
+    for (TaskNode dependent : myNodes.get(task).dependents) {
+      if (myNotStartedTasks.contains(dependent.task)) {
+        tasksToCancel.add(dependent.task);
       }
     }
 
     for (FlexCompilationTask taskToCancel : tasksToCancel) {
       taskToCancel.cancel();
       if (myNotStartedTasks.remove(taskToCancel)) {
+        myReadyTasks.remove(myNodes.get(taskToCancel));
         myFinishedTasks.add(taskToCancel);
         cancelledTasks.add(taskToCancel);
         appendAndCancelNotStartedDependentTasks(cancelledTasks, taskToCancel);
@@ -233,91 +283,134 @@ public class FlexCompilationManager {
       final FlexCompilationTask task = iterator.next();
       if (module == task.getModule() && bc.getName().equals(task.getBC().getName()) && BCUtils.isRLMTemporaryBC(task.getBC())) {
         iterator.remove();
+        myReadyTasks.remove(myNodes.get(task));
         myFinishedTasks.add(task);
         tasks.add(task);
       }
     }
   }
 
-  private void startNewTaskIfPossible() {
-    FlexCompilationTask taskToStart = null;
-
-    if (!myNotStartedTasks.isEmpty() && myInProgressTasks.size() < myMaxParallelCompilations) {
-      boolean allTasksHaveDependenciesOnlyInNotStarted = true; // to handle cyclic dependencies
-
-      for (FlexCompilationTask task : myNotStartedTasks) {
+  private void buildDependencyGraph() {
+    int index = 0;
+    for (FlexCompilationTask task : myNotStartedTasks) {
+      myNodes.put(task, new TaskNode(task, index++));
+    }
 
-        if (BCUtils.isRLMTemporaryBC(task.getBC()) && !isMainAppCompiledForRLM(task.getModule(), task.getBC())) {
-          allTasksHaveDependenciesOnlyInNotStarted = false;
-          continue;
+    for (TaskNode node : myNodes.values()) {
+      for (TaskNode other : myNodes.values()) {
+        if (other != node && (node.task.getDependencies().contains(other.task.getBC()) || isMainAppForRLM(other.task, node.task))) {
+          node.dependencies.add(other);
+          other.dependents.add(node);
         }
+      }
+    }
 
-        if (hasDependenciesIn(task, myInProgressTasks)) {
-          allTasksHaveDependenciesOnlyInNotStarted = false;
-          continue;
-        }
-        if (hasDependenciesIn(task, myNotStartedTasks)) {
-          continue;
-        }
+    breakCycles();
 
-        taskToStart = task;
-        break;
+    for (TaskNode node : myNodes.values()) {
+      calcCriticalPathLength(node);
+      node.notFinishedDependencies = node.dependencies.size();
+      if (node.notFinishedDependencies == 0) {
+        myReadyTasks.add(node);
       }
+    }
+  }
 
-      if (taskToStart == null && allTasksHaveDependenciesOnlyInNotStarted) {
-        taskToStart = myNotStartedTasks.iterator().next(); // just take any from cycle dependencies
-      }
+  /**
+   * Removes dependencies that close cycles, the dependent task of such a dependency is compiled first
+   */
+  private void breakCycles() {
+    final Set<TaskNode> visited = new HashSet<>();
+    final Set<TaskNode> onStack = new HashSet<>();
+    for (TaskNode node : myNodes.values()) {
+      breakCycles(node, visited, onStack);
+    }
+  }
 
-      if (taskToStart != null) {
-        myNotStartedTasks.remove(taskToStart);
+  private void breakCycles(final TaskNode node, final Set<TaskNode> visited, final Set<TaskNode> onStack) {
+    if (!visited.add(node)) return;
+    onStack.add(node);
 
-        if (myCompilerDependenciesCache.isNothingChangedSincePreviousCompilation(taskToStart.getModule(), taskToStart.getBC())) {
-          addMessage(taskToStart, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped.because.nothing.changed"),
-                     null, -1, -1);
-          taskToStart.cancel();
-          myFinishedTasks.add(taskToStart);
+    final Iterator<TaskNode> iterator = node.dependencies.iterator();
+    while (iterator.hasNext()) {
+      final TaskNode dependency = iterator.next();
+      if (onStack.contains(dependency)) {
+        iterator.remove();
+        dependency.dependents.remove(node);
+        addMessage(node.task, CompilerMessageCategory.INFORMATION,
+                   FlexBundle.message("compilation.cyclic.dependency.ignored", dependency.task.getPresentableName()), null, -1, -1);
+      }
+      else {
+        breakCycles(dependency, visited, onStack);
+      }
+    }
 
-          try {
-            FlexCompilationUtils.performPostCompileActions(taskToStart.getModule(), taskToStart.getBC(), Collections.emptyList());
-          }
-          catch (FlexCompilerException e) {
-            addMessage(taskToStart, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
-          }
-        }
-        else {
-          taskToStart.start(this);
-          myInProgressTasks.add(taskToStart);
-        }
+    onStack.remove(node);
+  }
 
-        startNewTaskIfPossible();
+  private static int calcCriticalPathLength(final TaskNode node) {
+    if (node.criticalPathLength == 0) {
+      int length = 0;
+      for (TaskNode dependent : node.dependents) {
+        length = Math.max(length, calcCriticalPathLength(dependent));
       }
+      node.criticalPathLength = length + 1;
     }
+    return node.criticalPathLength;
   }
 
-  private boolean isMainAppCompiledForRLM(final Module module, final FlexBuildConfiguration rlmBC) {
-    for (FlexCompilationTask task : myFinishedTasks) {
-      final FlexBuildConfiguration bc = task.getBC();
-      if (task.getModule() == module &&
-          bc.getName().equals(rlmBC.getName()) &&
-          !BCUtils.isRLMTemporaryBC(bc) &&
-          !BCUtils.isRuntimeStyleSheetBC(bc) &&
-          BCUtils.canHaveRLMsAndRuntimeStylesheets(bc) &&
-          bc.getRLMs().size() > 0) {
-        return true;
+  private void dependenciesFinished(final FlexCompilationTask task) {
+    for (TaskNode dependent : myNodes.get(task).dependents) {
+      if (--dependent.notFinishedDependencies == 0 && myNotStartedTasks.contains(dependent.task)) {
+        myReadyTasks.add(dependent);
       }
     }
-    return false;
   }
 
-  private static boolean hasDependenciesIn(final FlexCompilationTask task,
-                                           final Collection<FlexCompilationTask> tasksToSearchDependencies) {
-    for (final FlexCompilationTask otherTask : tasksToSearchDependencies) {
-      //noinspection ConstantConditions
-      if (task.getDependencies().contains(otherTask.getBC())) {
-        return true;
+  private void startReadyTasks() {
+    while (myInProgressTasks.size() < myMaxParallelCompilations) {
+      TaskNode node = myReadyTasks.poll();
+      if (node == null) {
+        if (!myInProgressTasks.isEmpty() || myNotStartedTasks.isEmpty()) return;
+        // dependencies of the remaining tasks can't be satisfied anymore, just start them
+        node = myNodes.get(myNotStartedTasks.iterator().next());
+      }
+
+      final FlexCompilationTask taskToStart = node.task;
+      myNotStartedTasks.remove(taskToStart);
+
+      if (myCompilerDependenciesCache.isNothingChangedSincePreviousCompilation(taskToStart.getModule(), taskToStart.getBC())) {
+        addMessage(taskToStart, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped.because.nothing.changed"),
+                   null, -1, -1);
+        taskToStart.cancel();
+        myFinishedTasks.add(taskToStart);
+
+        try {
+          FlexCompilationUtils.performPostCompileActions(taskToStart.getModule(), taskToStart.getBC(), Collections.emptyList());
+        }
+        catch (FlexCompilerException e) {
+          addMessage(taskToStart, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
+        }
+
+        dependenciesFinished(taskToStart);
+      }
+      else {
+        myInProgressTasks.add(taskToStart);
+        taskToStart.start(this);
       }
     }
-    return false;
+  }
+
+  private static boolean isMainAppForRLM(final FlexCompilationTask mainTask, final FlexCompilationTask rlmTask) {
+    final FlexBuildConfiguration bc = mainTask.getBC();
+    final FlexBuildConfiguration rlmBC = rlmTask.getBC();
+    return BCUtils.isRLMTemporaryBC(rlmBC) &&
+           mainTask.getModule() == rlmTask.getModule() &&
+           bc.getName().equals(rlmBC.getName()) &&
+           !BCUtils.isRLMTemporaryBC(bc) &&
+           !BCUtils.isRuntimeStyleSheetBC(bc) &&
+           BCUtils.canHaveRLMsAndRuntimeStylesheets(bc) &&
+           bc.getRLMs().size() > 0;
   }
 
   private void updateProgressIndicator() {
@@ -22,8 +22,11 @@ public abstract class FlexCompilationTask {
 
   private List<VirtualFile> myConfigFiles;
 
-  protected boolean myFinished;
-  protected boolean myCompilationFailed;
+  private FlexCompilationManager myCompilationManager;
+  private volatile boolean myFinished;
+  protected volatile boolean myCompilationFailed;
+  private long myStartTime;
+  private long myFinishTime;
 
   protected FlexCompilationTask(final Module module,
                                 final FlexBuildConfiguration bc,
@@ -42,6 +45,10 @@ public abstract class FlexCompilationTask {
   }
 
   public void start(final FlexCompilationManager compilationManager) {
+    synchronized (this) {
+      myCompilationManager = compilationManager;
+      myStartTime = System.currentTimeMillis();
+    }
     try {
       myConfigFiles = createConfigFiles();
       final String outputFilePath = myBC.getActualOutputFilePath();
@@ -82,7 +89,24 @@ public abstract class FlexCompilationTask {
 
   public void cancel() {
     doCancel();
-    myFinished = true;
+    markFinished();
+  }
+
+  /**
+   * Notifies the compilation manager that started this task, only the first call matters.
+   */
+  protected void markFinished() {
+    final FlexCompilationManager compilationManager;
+    synchronized (this) {
+      if (myFinished) return;
+      myFinished = true;
+      myFinishTime = System.currentTimeMillis();
+      compilationManager = myCompilationManager;
+    }
+
+    if (compilationManager != null) {
+      compilationManager.taskFinished(this);
+    }
   }
 
   protected abstract void doCancel();
@@ -95,6 +119,13 @@ public abstract class FlexCompilationTask {
     return myCompilationFailed;
   }
 
+  /**
+   * @return time between start and finish of the task or 0 if it hasn't been started
+   */
+  public synchronized long getDuration() {
+    return myStartTime == 0 ? 0 : myFinishTime - myStartTime;
+  }
+
   public String getPresentableName() {
     return myPresentableName;
   }
@@ -1,32 +1,65 @@
 package com.intellij.lang.javascript.flex.build;
 
 import com.intellij.ProjectTopics;
+import com.intellij.flex.FlexCommonUtils;
 import com.intellij.flex.model.bc.BuildConfigurationNature;
 import com.intellij.lang.javascript.flex.FlexUtils;
 import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfiguration;
 import com.intellij.lang.javascript.flex.projectStructure.model.impl.Factory;
+import com.intellij.lang.javascript.flex.projectStructure.options.BCUtils;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.ModuleListener;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleFileIndex;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.roots.ProjectRootManager;
-import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.util.containers.ContainerUtil;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.util.messages.MessageBusConnection;
 import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
+/**
+ * Remembers what each successfully compiled build configuration depended on, so that unchanged configurations are not compiled again.
+ * <p/>
+ * A build configuration is up to date if its settings, the text of its generated compiler config file, the files referenced from the config
+ * files and the files in the module source roots are the same as at the previous compilation. Files are compared by timestamp and length
+ * first and by content hash if those differ, so touching files (e.g. by switching VCS branches back and forth) doesn't cause recompilation.
+ * Files added to the module source roots are noticed via VFS events, so the up-to-date check doesn't need to walk the module content.
+ * The cache is saved in the system directory and survives IDE restarts.
+ * <p/>
+ * Only the map access is synchronized: hashing, file system access, read and write actions are done outside the lock, because
+ * {@link #markModuleDirty(Module)} is called from within write actions.
+ */
 public class FlexCompilerDependenciesCache {
 
+  private static final Logger LOG = Logger.getInstance(FlexCompilerDependenciesCache.class.getName());
+  private static final int VERSION = 2;
+
   private final Project myProject;
-  private final Map<Module, Collection<BCInfo>> myCache = new THashMap<>();
+  private final Map<String, BCInfo> myCache = new THashMap<>();
+  private boolean myLoaded;
+  private boolean myModified;
+  // incremented on each invalidation, so that cacheBC() doesn't store info that might have been invalidated while it was collected
+  private int myInvalidationCount;
 
   private static final String[] TAGS_FOR_FILE_PATHS_IN_CONFIG_FILE =
     {"<flex-config><compiler><external-library-path><path-element>", "<flex-config><compiler><local-font-paths><path-element>",
@@ -44,79 +77,144 @@ public class FlexCompilerDependenciesCache {
   public FlexCompilerDependenciesCache(final Project project) {
     myProject = project;
 
-    project.getMessageBus().connect(project).subscribe(ProjectTopics.MODULES, new ModuleListener() {
+    final MessageBusConnection connection = project.getMessageBus().connect(project);
+    connection.subscribe(ProjectTopics.MODULES, new ModuleListener() {
       public void moduleRemoved(@NotNull final Project project, @NotNull final Module module) {
-        myCache.remove(module);
+        markModuleDirty(module);
       }
     });
-  }
 
-  public void clear() {
-    myCache.clear();
+    connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+      @Override
+      public void after(@NotNull final List<? extends VFileEvent> events) {
+        for (VFileEvent event : events) {
+          if (event instanceof VFileCreateEvent) {
+            markModuleDirtyIfInSourceRoot(((VFileCreateEvent)event).getParent());
+          }
+          else if (event instanceof VFileCopyEvent) {
+            markModuleDirtyIfInSourceRoot(((VFileCopyEvent)event).getNewParent());
+          }
+          else if (event instanceof VFileMoveEvent) {
+            markModuleDirtyIfInSourceRoot(((VFileMoveEvent)event).getNewParent());
+          }
+        }
+      }
+    });
   }
 
-  public void markModuleDirty(final Module module) {
-    myCache.remove(module);
+  public synchronized void clear() {
+    ensureLoaded();
+    myInvalidationCount++;
+    myModified |= !myCache.isEmpty();
+    myCache.clear();
   }
 
-  public void markBCDirty(final Module module, final FlexBuildConfiguration bc) {
-    final Collection<BCInfo> infosForModule = myCache.get(module);
-    final BCInfo existingInfo = infosForModule == null ? null : findCacheForBC(infosForModule, bc);
-    if (existingInfo != null) {
-      infosForModule.remove(existingInfo);
-      if (infosForModule.isEmpty()) {
-        myCache.remove(module);
+  public synchronized void markModuleDirty(final Module module) {
+    ensureLoaded();
+    myInvalidationCount++;
+    final String prefix = module.getName() + "\n";
+    final Iterator<String> iterator = myCache.keySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().startsWith(prefix)) {
+        iterator.remove();
+        myModified = true;
       }
     }
   }
 
-  public void markModuleDirtyIfInSourceRoot(final VirtualFile file) {
-    if (myCache.isEmpty()) return;
+  /**
+   * Changes of existing files are found by fingerprints, but new files in the module source roots can't be, so the module is invalidated.
+   */
+  private void markModuleDirtyIfInSourceRoot(final VirtualFile dir) {
+    if (myProject.isDisposed()) return;
 
     final ProjectFileIndex fileIndex = ProjectRootManager.getInstance(myProject).getFileIndex();
-    final Module module = fileIndex.getModuleForFile(file);
-    if (module != null && fileIndex.getSourceRootForFile(file) != null && !fileIndex.isInTestSourceContent(file)) {
+    final Module module = fileIndex.getModuleForFile(dir);
+    if (module != null && fileIndex.isInSourceContent(dir) && !fileIndex.isInTestSourceContent(dir)) {
       markModuleDirty(module);
     }
   }
 
+  public synchronized void markBCDirty(final Module module, final FlexBuildConfiguration bc) {
+    ensureLoaded();
+    myInvalidationCount++;
+    myModified |= myCache.remove(getKey(module, bc)) != null;
+  }
+
+  /**
+   * Checks are done from the cheapest to the most expensive one: source roots, build configuration settings, fingerprints of the
+   * dependencies and source files (usually just timestamps), and only then the text of the generated compiler config file.
+   */
   public boolean isNothingChangedSincePreviousCompilation(final Module module, final FlexBuildConfiguration bc) {
-    final Collection<BCInfo> infosForModule = myCache.get(module);
-    final BCInfo existingInfo = infosForModule == null ? null : findCacheForBC(infosForModule, bc);
+    final String key = getKey(module, bc);
+    final BCInfo existingInfo;
+    synchronized (this) {
+      ensureLoaded();
+      existingInfo = myCache.get(key);
+    }
+
     if (existingInfo == null) {
       return false;
     }
 
-    final String[] currentSourceRoots = ModuleRootManager.getInstance(module).getSourceRootUrls();
-    if (!Arrays.equals(existingInfo.mySourceRootUrls, currentSourceRoots) || existingInfo.timestampsChanged()) {
-      infosForModule.remove(existingInfo);
-      if (infosForModule.isEmpty()) {
-        myCache.remove(module);
+    if (!Arrays.equals(existingInfo.mySourceRootUrls, ModuleRootManager.getInstance(module).getSourceRootUrls()) ||
+        !Arrays.equals(existingInfo.myStateHash, getStateHash(bc)) ||
+        existingInfo.filesChanged() ||
+        !Arrays.equals(existingInfo.myConfigTextHash, getConfigTextHash(module, bc))) {
+      synchronized (this) {
+        if (myCache.get(key) == existingInfo) {
+          myCache.remove(key);
+          myModified = true;
+        }
       }
       return false;
     }
 
+    if (existingInfo.myTimestampsUpdated) {
+      // timestamps of files with the same content have been updated, worth saving
+      synchronized (this) {
+        existingInfo.myTimestampsUpdated = false;
+        myModified = true;
+      }
+    }
     return true;
   }
 
   public void cacheBC(final Module module, final FlexBuildConfiguration bc, final List<VirtualFile> configFiles) {
-    Collection<BCInfo> infosForModule = myCache.get(module);
-    if (infosForModule == null) {
-      infosForModule = new ArrayList<>();
-      myCache.put(module, infosForModule);
+    final String key = getKey(module, bc);
+    final BCInfo previousInfo;
+    final int invalidationCount;
+    synchronized (this) {
+      ensureLoaded();
+      previousInfo = myCache.remove(key);
+      myModified |= previousInfo != null;
+      invalidationCount = myInvalidationCount;
     }
-    else {
-      final BCInfo existingInfo = findCacheForBC(infosForModule, bc);
-      if (existingInfo != null) {
-        infosForModule.remove(existingInfo);
+
+    final BCInfo bcInfo = createBCInfo(module, bc, configFiles, previousInfo);
+    if (bcInfo == null) return;
+
+    synchronized (this) {
+      if (myInvalidationCount == invalidationCount) {
+        myCache.put(key, bcInfo);
+        myModified = true;
       }
     }
+  }
 
+  @Nullable
+  private static BCInfo createBCInfo(final Module module,
+                                     final FlexBuildConfiguration bc,
+                                     final List<VirtualFile> configFiles,
+                                     @Nullable final BCInfo previousInfo) {
     final VirtualFile outputFile = FlexCompilationManager.refreshAndFindFileInWriteAction(bc.getActualOutputFilePath());
-    if (outputFile == null) return;
+    if (outputFile == null) return null;
 
-    final BCInfo bcInfo = new BCInfo(Factory.getCopy(bc), ModuleRootManager.getInstance(module).getSourceRootUrls());
-    infosForModule.add(bcInfo);
+    final byte[] configTextHash = getConfigTextHash(module, bc);
+    if (configTextHash == null) return null;
+
+    final BCInfo bcInfo =
+      new BCInfo(getStateHash(bc), configTextHash, ModuleRootManager.getInstance(module).getSourceRootUrls(), previousInfo);
 
     bcInfo.addFileDependency(outputFile.getPath());
 
@@ -145,15 +243,54 @@ public class FlexCompilerDependenciesCache {
         }
       }
     }
+
+    for (String sourceFilePath : collectSourceFiles(module)) {
+      bcInfo.addSourceFile(sourceFilePath);
+    }
+
+    bcInfo.myPreviousInfo = null;
+    return bcInfo;
+  }
+
+  private static String getKey(final Module module, final FlexBuildConfiguration bc) {
+    return module.getName() + "\n" + bc.getName() + "\n" + StringUtil.notNullize(BCUtils.getBCSpecifier(bc));
   }
 
+  private static byte[] getStateHash(final FlexBuildConfiguration bc) {
+    return createDigest().digest(Factory.getStateText(bc).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return hash of the generated compiler config file that depends on module and project level compiler options and on the SDK as well,
+   * <code>null</code> if the config file can't be generated
+   */
   @Nullable
-  private static BCInfo findCacheForBC(final @NotNull Collection<BCInfo> bcInfos, @NotNull final FlexBuildConfiguration bc) {
-    return ContainerUtil.find(bcInfos, info -> info.myBC.isEqual(bc));
+  private static byte[] getConfigTextHash(final Module module, final FlexBuildConfiguration bc) {
+    try {
+      return createDigest().digest(CompilerConfigGenerator.getConfigFileText(module, bc).getBytes(StandardCharsets.UTF_8));
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static Collection<String> collectSourceFiles(final Module module) {
+    final Collection<String> result = new TreeSet<>();
+    final ModuleFileIndex fileIndex = ModuleRootManager.getInstance(module).getFileIndex();
+    ApplicationManager.getApplication().runReadAction(() -> fileIndex.iterateContent(file -> {
+      if (!file.isDirectory() && fileIndex.isInSourceContent(file) && !fileIndex.isInTestSourceContent(file)) {
+        result.add(file.getPath());
+      }
+      return true;
+    }));
+    return result;
   }
 
   private static void addFileDependencies(final BCInfo bcInfo, final VirtualFile configFile, final String workDirPath) {
-    bcInfo.addFileDependency(configFile.getPath());
+    // generated config files are temporary, their content is covered by the configuration hash
+    if (!FileUtil.isAncestor(FileUtil.toSystemIndependentName(FlexCommonUtils.getTempFlexConfigsDirPath()), configFile.getPath(), false)) {
+      bcInfo.addFileDependency(configFile.getPath());
+    }
 
     try {
       final Map<String, List<String>> elementsMap =
@@ -167,39 +304,251 @@ public class FlexCompilerDependenciesCache {
     catch (IOException e) {/*ignore*/}
   }
 
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private File getCacheFile() {
+    return new File(PathManager.getSystemPath(), "flex/compilerDependencies/" + myProject.getLocationHash());
+  }
+
+  private void ensureLoaded() {
+    if (myLoaded) return;
+    myLoaded = true;
+
+    final File file = getCacheFile();
+    if (!file.isFile()) return;
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != VERSION) return;
+      for (int i = in.readInt(); i > 0; i--) {
+        final String key = in.readUTF();
+        myCache.put(key, BCInfo.read(in));
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to load " + file.getPath(), e);
+      myCache.clear();
+    }
+  }
+
+  /**
+   * Saves the cache if it has changed since it was loaded or saved last time.
+   */
+  public synchronized void save() {
+    if (!myModified) return;
+    myModified = false;
+
+    final File file = getCacheFile();
+    try {
+      FileUtil.createParentDirs(file);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+        out.writeInt(VERSION);
+        out.writeInt(myCache.size());
+        for (Map.Entry<String, BCInfo> entry : myCache.entrySet()) {
+          out.writeUTF(entry.getKey());
+          entry.getValue().write(out);
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to save " + file.getPath(), e);
+      FileUtil.delete(file);
+    }
+  }
+
+  private static class FileFingerprint {
+    private final String myPath;
+    // updated when the file is touched without changing its content; checks of different build configurations may run in parallel
+    private volatile long myTimestamp;
+    private final long myLength;
+    private final byte[] myHash;
+
+    private FileFingerprint(final String path, final long timestamp, final long length, final byte[] hash) {
+      myPath = path;
+      myTimestamp = timestamp;
+      myLength = length;
+      myHash = hash;
+    }
+
+    /**
+     * @param previous fingerprint of the same file taken before, its hash is reused if the file hasn't been touched since then
+     */
+    @Nullable
+    private static FileFingerprint create(final String path, @Nullable final FileFingerprint previous) {
+      final File file = new File(FileUtil.toSystemDependentName(path));
+      final long timestamp = file.lastModified();
+      final long length = file.length();
+      if (previous != null && previous.myTimestamp == timestamp && previous.myLength == length) {
+        return previous;
+      }
+
+      final byte[] hash = hash(file);
+      return hash == null ? null : new FileFingerprint(path, timestamp, length, hash);
+    }
+
+    @Nullable
+    private static byte[] hash(final File file) {
+      try {
+        return createDigest().digest(FileUtil.loadFileBytes(file));
+      }
+      catch (IOException e) {
+        return null;
+      }
+    }
+
+    private boolean isChanged() {
+      final File file = new File(FileUtil.toSystemDependentName(myPath));
+      final long timestamp = file.lastModified();
+      if (timestamp == 0) return true; // deleted
+      final long length = file.length();
+      if (timestamp == myTimestamp && length == myLength) return false;
+      if (length != myLength || !Arrays.equals(myHash, hash(file))) return true;
+
+      // touched but not changed
+      myTimestamp = timestamp;
+      return false;
+    }
+
+    private void write(final DataOutput out) throws IOException {
+      out.writeUTF(myPath);
+      out.writeLong(myTimestamp);
+      out.writeLong(myLength);
+      writeBytes(out, myHash);
+    }
+
+    private static FileFingerprint read(final DataInput in) throws IOException {
+      return new FileFingerprint(in.readUTF(), in.readLong(), in.readLong(), readBytes(in));
+    }
+  }
+
   private static class BCInfo {
-    private final FlexBuildConfiguration myBC;
+    private final byte[] myStateHash;
+    private final byte[] myConfigTextHash;
     private final String[] mySourceRootUrls;
-    private final Collection<Pair<File, Long>> myFileToTimestamp = new ArrayList<>();
+    private final Collection<FileFingerprint> myFileDependencies = new ArrayList<>();
+    // file path -> fingerprint
+    private final Map<String, FileFingerprint> mySourceFiles = new THashMap<>();
+    // info of the previous compilation, used only while this info is being filled
+    @Nullable private BCInfo myPreviousInfo;
+    // set if a file has been touched without changing its content since the cache was saved
+    private volatile boolean myTimestampsUpdated;
 
-    private BCInfo(final FlexBuildConfiguration bc, final String[] sourceRootUrls) {
-      myBC = bc;
+    private BCInfo(final byte[] stateHash,
+                   final byte[] configTextHash,
+                   final String[] sourceRootUrls,
+                   @Nullable final BCInfo previousInfo) {
+      myStateHash = stateHash;
+      myConfigTextHash = configTextHash;
       mySourceRootUrls = sourceRootUrls;
+      myPreviousInfo = previousInfo;
     }
 
     private void addFileDependency(final String filePath, final String... potentialBaseDirs) {
       final File file = new File(FileUtil.toSystemDependentName(filePath));
       if (file.exists()) {
-        myFileToTimestamp.add(Pair.create(file, file.lastModified()));
+        addFingerprint(myFileDependencies, file);
       }
       else if (potentialBaseDirs != null) {
         for (String baseDir : potentialBaseDirs) {
           final File file1 = new File(FileUtil.toSystemDependentName(baseDir + '/' + filePath));
           if (file1.exists()) {
-            myFileToTimestamp.add(Pair.create(file1, file1.lastModified()));
+            addFingerprint(myFileDependencies, file1);
+            break;
+          }
+        }
+      }
+    }
+
+    private void addFingerprint(final Collection<FileFingerprint> fingerprints, final File file) {
+      FileFingerprint previous = null;
+      if (myPreviousInfo != null) {
+        for (FileFingerprint fingerprint : myPreviousInfo.myFileDependencies) {
+          if (fingerprint.myPath.equals(file.getPath())) {
+            previous = fingerprint;
             break;
           }
         }
       }
+      final FileFingerprint fingerprint = FileFingerprint.create(file.getPath(), previous);
+      if (fingerprint != null) {
+        fingerprints.add(fingerprint);
+      }
     }
 
-    public boolean timestampsChanged() {
-      for (Pair<File, Long> fileAndTimestamp : myFileToTimestamp) {
-        if (fileAndTimestamp.first.lastModified() != fileAndTimestamp.second) {
-          return true;
+    private void addSourceFile(final String path) {
+      final FileFingerprint fingerprint =
+        FileFingerprint.create(path, myPreviousInfo == null ? null : myPreviousInfo.mySourceFiles.get(path));
+      if (fingerprint != null) {
+        mySourceFiles.put(path, fingerprint);
+      }
+    }
+
+    private boolean filesChanged() {
+      return filesChanged(myFileDependencies) || filesChanged(mySourceFiles.values());
+    }
+
+    private boolean filesChanged(final Collection<FileFingerprint> fingerprints) {
+      for (FileFingerprint fingerprint : fingerprints) {
+        final long timestamp = fingerprint.myTimestamp;
+        if (fingerprint.isChanged()) return true;
+        if (fingerprint.myTimestamp != timestamp) {
+          myTimestampsUpdated = true;
         }
       }
       return false;
     }
+
+    private void write(final DataOutput out) throws IOException {
+      writeBytes(out, myStateHash);
+      writeBytes(out, myConfigTextHash);
+      out.writeInt(mySourceRootUrls.length);
+      for (String url : mySourceRootUrls) {
+        out.writeUTF(url);
+      }
+      out.writeInt(myFileDependencies.size());
+      for (FileFingerprint fingerprint : myFileDependencies) {
+        fingerprint.write(out);
+      }
+      out.writeInt(mySourceFiles.size());
+      for (FileFingerprint fingerprint : mySourceFiles.values()) {
+        fingerprint.write(out);
+      }
+    }
+
+    private static BCInfo read(final DataInput in) throws IOException {
+      final byte[] stateHash = readBytes(in);
+      final byte[] configTextHash = readBytes(in);
+      final String[] sourceRootUrls = new String[in.readInt()];
+      for (int i = 0; i < sourceRootUrls.length; i++) {
+        sourceRootUrls[i] = in.readUTF();
+      }
+
+      final BCInfo info = new BCInfo(stateHash, configTextHash, sourceRootUrls, null);
+      for (int i = in.readInt(); i > 0; i--) {
+        info.myFileDependencies.add(FileFingerprint.read(in));
+      }
+      for (int i = in.readInt(); i > 0; i--) {
+        final FileFingerprint fingerprint = FileFingerprint.read(in);
+        info.mySourceFiles.put(fingerprint.myPath, fingerprint);
+      }
+      return info;
+    }
+  }
+
+  private static void writeBytes(final DataOutput out, final byte[] bytes) throws IOException {
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(final DataInput in) throws IOException {
+    final byte[] bytes = new byte[in.readUnsignedShort()];
+    in.readFully(bytes);
+    return bytes;
   }
 }
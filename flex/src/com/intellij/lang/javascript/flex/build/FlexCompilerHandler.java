@@ -18,7 +18,6 @@ import com.intellij.lang.javascript.flex.projectStructure.ui.ActiveBuildConfigur
 import com.intellij.lang.javascript.flex.run.FlashRunConfiguration;
 import com.intellij.lang.javascript.flex.sdk.FlexSdkUtils;
 import com.intellij.lang.javascript.flex.sdk.FlexmojosSdkType;
-import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.compiler.CompileContext;
 import com.intellij.openapi.compiler.CompilerManager;
@@ -32,7 +31,6 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.roots.ModuleRootEvent;
 import com.intellij.openapi.roots.ModuleRootListener;
-import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
@@ -134,13 +132,6 @@ public class FlexCompilerHandler extends AbstractProjectComponent {
 
     myCompilerDependenciesCache = new FlexCompilerDependenciesCache(project);
 
-    final MyVirtualFileListener myFileListener = new MyVirtualFileListener();
-    LocalFileSystem.getInstance().addVirtualFileListener(myFileListener);
-    Disposer.register(project, new Disposable() {
-      public void dispose() {
-        LocalFileSystem.getInstance().removeVirtualFileListener(myFileListener);
-      }
-    });
     myReadErrStreamAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD,project);
   }
 
@@ -191,7 +182,7 @@ public class FlexCompilerHandler extends AbstractProjectComponent {
       myBuiltInFlexCompilerHandler.stopCompilerProcess();
     }
     quitCompilerShell();
-    myCompilerDependenciesCache.clear();
+    myCompilerDependenciesCache.save();
     FlexCommonUtils.deleteTempFlexConfigFiles(myProject.getName());
     FlexCompilationUtils.deleteUnzippedANEFiles();
     myWidget.destroy();
@@ -709,46 +700,4 @@ public class FlexCompilerHandler extends AbstractProjectComponent {
   private static void trace(TraceType type, String message) {
     System.out.println(type.toString() + ":" + message);
   }
-
-  private class MyVirtualFileListener implements VirtualFileListener {
-    @Override
-      public void propertyChanged(@NotNull final VirtualFilePropertyEvent event) {
-      handleVirtualFileEvent(event.getFile());
-    }
-
-    @Override
-      public void contentsChanged(@NotNull final VirtualFileEvent event) {
-      handleVirtualFileEvent(event.getFile(), true);
-    }
-
-    @Override
-      public void fileCreated(@NotNull final VirtualFileEvent event) {
-      handleVirtualFileEvent(event.getFile());
-    }
-
-    @Override
-      public void fileDeleted(@NotNull final VirtualFileEvent event) {
-      handleVirtualFileEvent(event.getFile());
-    }
-
-    @Override
-      public void fileMoved(@NotNull final VirtualFileMoveEvent event) {
-      handleVirtualFileEvent(event.getFile());
-    }
-
-    @Override
-      public void fileCopied(@NotNull final VirtualFileCopyEvent event) {
-      handleVirtualFileEvent(event.getFile());
-    }
-
-    private void handleVirtualFileEvent(final VirtualFile file) {
-      handleVirtualFileEvent(file, false);
-    }
-
-    private void handleVirtualFileEvent(final VirtualFile file, boolean contentsChanged) {
-      if (file == null) return;
-      myCompilerDependenciesCache.markModuleDirtyIfInSourceRoot(file);
-      //clearAutoGeneratedConfigsIfNeeded(file, contentsChanged);
-    }
-  }
 }
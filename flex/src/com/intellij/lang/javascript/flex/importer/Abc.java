@@ -365,7 +365,12 @@ class Abc {
   Integer[] ints;
   Integer[] uints;
   Double[] doubles;
+  /**
+   * Constant pool strings are decoded on first access, see {@link #getString(int)}
+   */
   @NonNls String[] strings;
+  private int[] stringOffsets;
+  private int[] stringLengths;
   @NonNls String[] namespaces;
   @NonNls String[][] nssets;
   Multiname[] names;
@@ -384,6 +389,18 @@ class Abc {
     return data.readU32();
   }
 
+  String getString(int index) {
+    String result = strings[index];
+    if (result == null) {
+      result = strings[index] = data.getUTFBytes(stringOffsets[index], stringLengths[index]);
+    }
+    return result;
+  }
+
+  Object getDefault(int kind, int index) {
+    return kind == CONSTANT_Utf8 ? getString(index) : defaults[kind][index];
+  }
+
   void parseCpool() {
     int i, j;
     int n;
@@ -419,9 +436,14 @@ class Abc {
     // strings
     n = readU32();
     strings = new String[n];
+    stringOffsets = new int[n];
+    stringLengths = new int[n];
     strings[0] = "";
     for (i = 1; i < n; i++) {
-      strings[i] = data.readUTFBytes(readU32());
+      final int length = readU32();
+      stringOffsets[i] = data.getPosition();
+      stringLengths[i] = length;
+      data.incPosition(length);
     }
 
     reportAboutPercentage("Cpool strings count " + n + " size ", data, start, processor);
@@ -439,7 +461,7 @@ class Abc {
         case CONSTANT_ProtectedNs:
         case CONSTANT_StaticProtectedNs:
         case CONSTANT_StaticProtectedNs2: {
-          namespaces[i] = strings[readU32()];
+          namespaces[i] = getString(readU32());
           // todo mark kind of namespace.
           break;
         }
@@ -485,12 +507,12 @@ class Abc {
       switch (data.readByte()) {
         case CONSTANT_Qname:
         case CONSTANT_QnameA:
-          names[i] = new Multiname(new String[]{namespaces[readU32()]}, strings[readU32()]);
+          names[i] = new Multiname(new String[]{namespaces[readU32()]}, getString(readU32()));
           break;
 
         case CONSTANT_RTQname:
         case CONSTANT_RTQnameA:
-          names[i] = new Multiname(new String[]{strings[readU32()]}, null);
+          names[i] = new Multiname(new String[]{getString(readU32())}, null);
           break;
 
         case CONSTANT_RTQnameL:
@@ -505,7 +527,7 @@ class Abc {
 
         case CONSTANT_Multiname:
         case CONSTANT_MultinameA:
-          String name = strings[readU32()];
+          String name = getString(readU32());
           names[i] = new Multiname(nssets[readU32()], name);
           break;
 
@@ -609,7 +631,7 @@ class Abc {
         m.paramTypes[j] = names[readU32()];
         if (m.paramTypes[j] == null) m.paramTypes[j] = OpaqueAssetsType;
       }
-      m.debugName = strings[readU32()];
+      m.debugName = getString(readU32());
       m.flags = data.readByte();
 
       if ((m.flags & HAS_OPTIONAL) != 0) {
@@ -644,7 +666,7 @@ class Abc {
               processor.hasError("ERROR kind=" + kind + " method_id " + i + "\n");
             }
             else {
-              m.optionalValues[k] = new Multiname(null, defaults[kind][index].toString());
+              m.optionalValues[k] = new Multiname(null, getDefault(kind, index).toString());
             }
           }
         }
@@ -655,7 +677,7 @@ class Abc {
           Set<String> usedNames = new THashSet<>(m.paramNames.length);
           for (int k = 0; k < param_count; ++k) {
             final int index = readU32();
-            final String name = strings[index];
+            final String name = getString(index);
             m.paramNames[k] = StringUtil.isJavaIdentifier(name) && usedNames.add(name) ? name : "_" + k;
           }
         } else {
@@ -689,15 +711,15 @@ class Abc {
     for (int i = 0; i < count; i++) {
       // MetadataInfo
       MetaData m = metadata[i] = new MetaData();
-      m.name = strings[readU32()];
+      m.name = getString(readU32());
       int values_count = readU32();
       String names[] = new String[values_count];
 
       for (int q = 0; q < values_count; ++q) {
-        names[q] = strings[readU32()]; // name
+        names[q] = getString(readU32()); // name
       }
       for (int q = 0; q < values_count; ++q) {
-        m.put(names[q], strings[readU32()]); // value
+        m.put(names[q], getString(readU32())); // value
       }
     }
   }
@@ -765,7 +787,7 @@ class Abc {
               slot.type = OpaqueAssetsType;
             }
             int index = readU32();
-            if (index > 0) slot.value = defaults[data.readByte()][index];
+            if (index > 0) slot.value = getDefault(data.readByte(), index);
           }
           else // (kind == Class)
           {
@@ -2,41 +2,72 @@ package com.intellij.lang.javascript.flex.importer;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.io.InputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
-import java.io.ByteArrayInputStream;
-import java.io.UnsupportedEncodingException;
-import java.util.zip.InflaterInputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
+ * Reader over a {@link java.nio.ByteBuffer}: a wrapped byte array, a memory-mapped file or a pooled array with an inflated swf.
+ * Nested buffers ({@link #readBytes(ByteBuffer, int)}) share the content instead of copying it.
+ *
  * @author Maxim.Mossienko
 */
 class ByteBuffer {
-  private byte[] bytes;
+  private static final java.nio.ByteBuffer EMPTY = java.nio.ByteBuffer.allocate(0);
+  /**
+   * Inflated swfs bigger than that aren't pooled
+   */
+  private static final int MAX_POOLED_SIZE = 16 * 1024 * 1024;
+  private static final int MAX_EXPECTED_SIZE = 256 * 1024 * 1024;
+  private static final ThreadLocal<SoftReference<byte[]>> ourInflateBuffers = new ThreadLocal<>();
+
+  private java.nio.ByteBuffer buffer = EMPTY;
   private int position;
   private boolean littleEndian;
+  private byte[] pooledArray;
+  private byte[] stringBytes;
 
   void read(@NotNull InputStream inputStream) throws IOException {
     try {
-      bytes = readStream(inputStream);
+      setBuffer(java.nio.ByteBuffer.wrap(readStream(inputStream)));
     }
     finally {
-      if (inputStream != null) inputStream.close();
+      inputStream.close();
     }
   }
 
+  void wrap(@NotNull byte[] bytes) {
+    setBuffer(java.nio.ByteBuffer.wrap(bytes));
+  }
+
+  void map(@NotNull File file) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      final FileChannel channel = randomAccessFile.getChannel();
+      setBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  private void setBuffer(@NotNull java.nio.ByteBuffer buffer) {
+    this.buffer = buffer.order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    position = 0;
+  }
+
   void setLittleEndian() {
     littleEndian = true;
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
   }
 
   int readInt() {
-    int result;
-    if (littleEndian) {
-      result = (((bytes[position + 3] & 0xFF) << 8 | (bytes[position + 2] & 0xFF)) << 16) + ((bytes[position + 1] & 0xFF) << 8) | (bytes[position] & 0xFF);
-    }
-    else {
-      result = (((bytes[position] & 0xFF) << 8 | (bytes[position + 1] & 0xFF)) << 16) + ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
-    }
+    final int result = buffer.getInt(position);
     position += 4;
     return result;
   }
@@ -50,15 +81,74 @@ class ByteBuffer {
   }
 
   public int bytesSize() {
-    return bytes.length;
+    return buffer.limit();
   }
 
-  public void uncompress() throws IOException {
-    final InflaterInputStream zipInputStream = new InflaterInputStream(new ByteArrayInputStream(bytes));
+  /**
+   * Inflates the rest of this buffer into <code>target</code>.
+   * The array of the result is taken from a per-thread pool, it is returned there by {@link #release()}.
+   *
+   * @param expectedSize size of the uncompressed data, the target grows if the data turns out to be bigger
+   */
+  public void uncompress(@NotNull ByteBuffer target, int expectedSize) throws IOException {
+    final Inflater inflater = new Inflater();
+    try {
+      if (buffer.hasArray()) {
+        inflater.setInput(buffer.array(), buffer.arrayOffset() + position, bytesSize() - position);
+      }
+      else {
+        final byte[] input = new byte[bytesSize() - position];
+        final java.nio.ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position);
+        duplicate.get(input);
+        inflater.setInput(input);
+      }
+
+      // the size comes from the file header, so don't trust it too much
+      byte[] result = acquireArray(expectedSize > 0 && expectedSize <= MAX_EXPECTED_SIZE ? expectedSize : 8192);
+      int total = 0;
+      while (!inflater.finished()) {
+        if (total == result.length) {
+          final byte[] newResult = new byte[result.length * 2];
+          System.arraycopy(result, 0, newResult, 0, total);
+          result = newResult;
+        }
+        final int inflated = inflater.inflate(result, total, result.length - total);
+        if (inflated == 0 && inflater.needsInput()) throw new EOFException("Unexpected end of ZLIB input stream");
+        if (inflated == 0 && inflater.needsDictionary()) throw new ZipException("ZLIB dictionary missing");
+        total += inflated;
+      }
+
+      target.pooledArray = result;
+      target.setBuffer(java.nio.ByteBuffer.wrap(result, 0, total).slice());
+    }
+    catch (DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    }
+    finally {
+      inflater.end();
+    }
+  }
 
-    bytes = readStream(zipInputStream);
+  private static byte[] acquireArray(int size) {
+    final SoftReference<byte[]> reference = ourInflateBuffers.get();
+    final byte[] array = reference != null ? reference.get() : null;
+    if (array != null && array.length >= size) {
+      ourInflateBuffers.remove();
+      return array;
+    }
+    return new byte[size];
+  }
 
-    zipInputStream.close();
+  /**
+   * Returns the array of an inflated buffer to the pool, the buffer must not be used after that
+   */
+  void release() {
+    if (pooledArray != null && pooledArray.length <= MAX_POOLED_SIZE) {
+      ourInflateBuffers.set(new SoftReference<>(pooledArray));
+    }
+    pooledArray = null;
+    buffer = EMPTY;
   }
 
   private static byte[] readStream(final InputStream zipInputStream) throws IOException {
@@ -85,47 +175,57 @@ class ByteBuffer {
   }
 
   public int readUnsignedByte() {
-    return bytes[position++] & 0xFF;
+    return buffer.get(position++) & 0xFF;
   }
 
   public int readByte() {
-    return bytes[position++];
+    return buffer.get(position++);
   }
 
   public int readUnsignedShort() {
-    int result;
-    if (littleEndian) {
-      result = (bytes[position + 1] & 0xFF) << 8 | (bytes[position] & 0xFF);
-    }
-    else {
-      result = (bytes[position] & 0xFF) << 8 | (bytes[position + 1] & 0xFF);
-    }
+    final int result = buffer.getShort(position) & 0xFFFF;
     position += 2;
     return result;
   }
 
+  /**
+   * Makes <code>data2</code> a view of the next <code>length</code> bytes of this buffer
+   */
   public void readBytes(ByteBuffer data2, int length) {
-    data2.bytes = new byte[length];
-    System.arraycopy(bytes, position, data2.bytes, 0, length);
+    if (length < 0 || position + length > bytesSize()) {
+      throw new IndexOutOfBoundsException("Can't read " + length + " bytes at " + position + " of " + bytesSize());
+    }
+    final java.nio.ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(position);
+    duplicate.limit(position + length);
+    data2.setBuffer(duplicate.slice());
     position += length;
   }
 
   public boolean eof() {
-    return position >= bytes.length;
+    return position >= bytesSize();
   }
 
   public String readUTFBytes(int i) {
-    try {
-      final byte[] buf = new byte[i];
-      while (i > 0) {
-        buf[buf.length - i] = (byte)readByte();
-        --i;
-      }
-      return new String(buf, "utf-8");
+    final String result = getUTFBytes(position, i);
+    position += i;
+    return result;
+  }
+
+  public String getUTFBytes(int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > bytesSize()) {
+      throw new IndexOutOfBoundsException("Can't read " + length + " bytes at " + offset + " of " + bytesSize());
+    }
+    if (buffer.hasArray()) {
+      return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+    }
+    if (stringBytes == null || stringBytes.length < length) {
+      stringBytes = new byte[Math.max(length, 256)];
     }
-    catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
+    for (int i = 0; i < length; i++) {
+      stringBytes[i] = buffer.get(offset + i);
     }
+    return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
   }
 
   public double readDouble() {
@@ -147,7 +247,7 @@ class ByteBuffer {
   }
 
   public byte getByte(int i) {
-    return bytes[i];
+    return buffer.get(i);
   }
 
   public int getPosition() {
@@ -26,7 +26,11 @@ public class FlexImporter {
 
       for (String file : args) {
         try {
-          String result = dumpContentsFromStream(new BufferedInputStream(new FileInputStream(file)), true);
+          final AbstractDumpProcessor abcDumper = new AbcDumper(true);
+          final ByteBuffer data = new ByteBuffer();
+          data.map(new File(file));
+          processFlexByteCode(data, abcDumper);
+          String result = abcDumper.getResult();
 
           saveStringAsFile(result, file + ".il");
         }
@@ -60,7 +64,7 @@ public class FlexImporter {
     catch (IOException ex) {
       return "/* " + ex.getLocalizedMessage() + " */";
     }
-    catch (ArrayIndexOutOfBoundsException ex) {
+    catch (IndexOutOfBoundsException ex) {
       return "/* Invalid format */";
     }
   }
@@ -70,9 +74,23 @@ public class FlexImporter {
     processFlexByteCode(in, new AS3InterfaceStubDumper(parent));
   }
 
+  /**
+   * Same as {@link #buildStubsInterfaceFromStream(InputStream, StubElement)} but reads the content in place
+   */
+  public static void buildStubsInterfaceFromBytes(@NotNull final byte[] content, final StubElement parent) throws Exception {
+    final ByteBuffer data = new ByteBuffer();
+    data.wrap(content);
+    processFlexByteCode(data, new AS3InterfaceStubDumper(parent));
+  }
+
   private static void processFlexByteCode(@NotNull final InputStream in, @NotNull FlexByteCodeInformationProcessor processor) throws IOException {
     ByteBuffer data = new ByteBuffer();
     data.read(in);
+    processFlexByteCode(data, processor);
+  }
+
+  private static void processFlexByteCode(@NotNull final ByteBuffer data, @NotNull FlexByteCodeInformationProcessor processor)
+    throws IOException {
     data.setLittleEndian();
     if (data.bytesSize() == 0) return;
     int version = data.readUnsignedInt();
@@ -83,15 +101,21 @@ public class FlexImporter {
     }
     else if ((version & SWF_MAGIC) == SWF_MAGIC) {
       final int delta = 8;
+      // swf header contains the length of the uncompressed file
+      final int uncompressedSize = data.readInt() - delta;
       data.setPosition(delta);
       ByteBuffer udata = new ByteBuffer();
       udata.setLittleEndian();
-      data.readBytes(udata, data.bytesSize() - delta);
-      int csize = udata.bytesSize();
-      udata.uncompress();
-      processor.dumpStat("decompressed swf " + csize + " -> " + udata.bytesSize() + "\n");
-      udata.setPosition(0);
-      new Swf(udata, processor);
+      int csize = data.bytesSize() - delta;
+      data.uncompress(udata, uncompressedSize);
+      try {
+        processor.dumpStat("decompressed swf " + csize + " -> " + udata.bytesSize() + "\n");
+        udata.setPosition(0);
+        new Swf(udata, processor);
+      }
+      finally {
+        udata.release();
+      }
     }
     else if ((version & SWF_MAGIC2) == SWF_MAGIC2) {
       data.setPosition(8); // skip header and length
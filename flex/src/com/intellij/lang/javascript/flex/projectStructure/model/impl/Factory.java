@@ -1,6 +1,8 @@
 package com.intellij.lang.javascript.flex.projectStructure.model.impl;
 
 import com.intellij.lang.javascript.flex.projectStructure.model.*;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.util.xmlb.XmlSerializer;
 import org.jetbrains.annotations.NotNull;
 
 public class Factory {
@@ -25,6 +27,13 @@ public class Factory {
     return ((FlexBuildConfigurationImpl)bc).getCopy();
   }
 
+  /**
+   * @return serialized settings of the build configuration, it is the same for equal configurations in different IDE sessions
+   */
+  public static String getStateText(@NotNull FlexBuildConfiguration bc) {
+    return JDOMUtil.writeElement(XmlSerializer.serialize(((FlexBuildConfigurationImpl)bc).getState(null)));
+  }
+
   public static ModifiableFlexBuildConfiguration getTemporaryCopyForCompilation(@NotNull FlexBuildConfiguration bc) {
     final FlexBuildConfigurationImpl copy = ((FlexBuildConfigurationImpl)bc).getCopy();
     copy.setTempBCForCompilation(true);
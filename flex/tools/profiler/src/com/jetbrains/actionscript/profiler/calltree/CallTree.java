@@ -1,68 +1,173 @@
 package com.jetbrains.actionscript.profiler.calltree;
 
 import com.intellij.openapi.util.Pair;
-import com.intellij.util.ArrayUtil;
 import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
-import gnu.trove.THashSet;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongIntHashMap;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.Map;
 
+/**
+ * Call tree is kept in parallel arrays indexed by node: interned frame id, cumulative timing, first child and next sibling.
+ * Children are looked up by a single map from (parent node, frame id) to the child node, so adding a sample doesn't create any objects
+ * unless it adds new nodes.
+ */
 public class CallTree {
-  private final CallTreeNode root;
+  static final int ROOT = 0;
+  static final int NO_NODE = -1;
+
+  private final FrameTable frameTable;
+  // root is never a child, so 0 returned by TLongIntHashMap.get() for absent keys can't be confused with a child
+  private final TLongIntHashMap childByFrame = new TLongIntHashMap();
+  private int[] frameIds;
+  private long[] durations;
+  private int[] firstChildren;
+  private int[] nextSiblings;
+  private int nodeCount;
 
   public CallTree() {
-    root = new CallTreeNode();
+    this(new FrameTable());
   }
 
-  CallTree(CallTreeNode root) {
-    this.root = root;
+  CallTree(FrameTable frameTable) {
+    this.frameTable = frameTable;
+    frameIds = new int[1024];
+    durations = new long[1024];
+    firstChildren = new int[1024];
+    nextSiblings = new int[1024];
+    createNode(-1);
   }
 
-  CallTreeNode getRoot() {
-    return root;
+  FrameTable getFrameTable() {
+    return frameTable;
   }
 
   public void addFrames(FrameInfo[] frames, long duration) {
-    root.addChildren(Arrays.asList(ArrayUtil.reverseArray(frames)), duration);
+    int node = ROOT;
+    for (int i = frames.length - 1; i >= 0; i--) {
+      node = addChild(node, frameTable.getOrAddId(frames[i]), duration);
+    }
+  }
+
+  /**
+   * Adds <code>duration</code> to the child of <code>parent</code> with the given frame, the child is created if needed.
+   *
+   * @return the child node
+   */
+  int addChild(int parent, int frameId, long duration) {
+    final long key = childKey(parent, frameId);
+    int child = childByFrame.get(key);
+    if (child == ROOT) {
+      child = createNode(frameId);
+      nextSiblings[child] = firstChildren[parent];
+      firstChildren[parent] = child;
+      childByFrame.put(key, child);
+    }
+    durations[child] += duration;
+    return child;
+  }
+
+  private int createNode(int frameId) {
+    if (nodeCount == frameIds.length) {
+      final int newLength = frameIds.length * 2;
+      frameIds = Arrays.copyOf(frameIds, newLength);
+      durations = Arrays.copyOf(durations, newLength);
+      firstChildren = Arrays.copyOf(firstChildren, newLength);
+      nextSiblings = Arrays.copyOf(nextSiblings, newLength);
+    }
+    final int node = nodeCount++;
+    frameIds[node] = frameId;
+    firstChildren[node] = NO_NODE;
+    nextSiblings[node] = NO_NODE;
+    return node;
+  }
+
+  private static long childKey(int parent, int frameId) {
+    return ((long)parent << 32) | (frameId & 0xFFFFFFFFL);
+  }
+
+  int getNodeCount() {
+    return nodeCount;
+  }
+
+  int getFrameId(int node) {
+    return frameIds[node];
+  }
+
+  FrameInfo getFrameInfo(int node) {
+    return frameTable.getFrame(frameIds[node]);
+  }
+
+  long getCumulativeTiming(int node) {
+    return durations[node];
+  }
+
+  /**
+   * @return sum of cumulative timings of the children, i.e. the part of the node timing that isn't self time
+   */
+  long getChildrenTiming(int node) {
+    long result = 0;
+    for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+      result += durations[child];
+    }
+    return result;
+  }
+
+  int getFirstChild(int node) {
+    return firstChildren[node];
+  }
+
+  int getNextSibling(int node) {
+    return nextSiblings[node];
+  }
+
+  int findChild(int parent, int frameId) {
+    final int child = childByFrame.get(childKey(parent, frameId));
+    return child == ROOT ? NO_NODE : child;
+  }
+
+  /**
+   * @return the node reached from <code>node</code> by the path of frame ids or {@link #NO_NODE}
+   */
+  int findChildDeep(int node, int[] path) {
+    for (int frameId : path) {
+      node = findChild(node, frameId);
+      if (node == NO_NODE) {
+        return NO_NODE;
+      }
+    }
+    return node;
   }
 
   /*
    * @return pair <cumulative time map, self time map>
    */
   public Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getTimeMaps() {
-    return TimeMapBuilder.buildTimeMaps(root, root.getChildren());
+    final TIntArrayList calls = new TIntArrayList();
+    for (int child = firstChildren[ROOT]; child != NO_NODE; child = nextSiblings[child]) {
+      calls.add(child);
+    }
+    return new TimeMapBuilder(this, calls).buildTimeMaps(null);
   }
 
   /*
    * @return pair <cumulative time map, self time map>
    */
   public Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getCallersTimeMaps(FrameInfo[] frames) {
-    List<CallTreeNode> calls = CallerFinder.findCallsByFrames(root, frames);
-    Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> timeMaps = TimeMapBuilder.buildTimeMaps(root, calls);
-    Set<FrameInfo> callerNames = getNamesOfNodes(calls);
-    Map<FrameInfo, Long> filteredCountMap = filterMap(timeMaps.getFirst(), callerNames);
-    Map<FrameInfo, Long> filteredSelfTimeMap = filterMap(timeMaps.getSecond(), callerNames);
-    return Pair.create(filteredCountMap, filteredSelfTimeMap);
+    final TIntArrayList calls = CallerFinder.findCallsByFrames(this, frames);
+    final boolean[] callerFrames = new boolean[frameTable.size()];
+    for (int i = 0; i < calls.size(); i++) {
+      callerFrames[frameIds[calls.get(i)]] = true;
+    }
+    return new TimeMapBuilder(this, calls).buildTimeMaps(callerFrames);
   }
 
   /*
    * @return pair <cumulative time map, self time map>
    */
   public Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getCalleesTimeMaps(FrameInfo[] frames) {
-    List<CallTreeNode> calls = CalleeFinder.findCallsByFrameName(root, frames);
-    return TimeMapBuilder.buildTimeMaps(root, calls);
-  }
-
-  private static Map<FrameInfo, Long> filterMap(Map<FrameInfo, Long> first, Set<FrameInfo> callerNames) {
-    first.keySet().retainAll(callerNames);
-    return first;
-  }
-
-  private static Set<FrameInfo> getNamesOfNodes(Collection<CallTreeNode> nodes) {
-    THashSet<FrameInfo> names = new THashSet<>();
-    for (CallTreeNode node : nodes) {
-      names.add(node.getFrameInfo());
-    }
-    return names;
+    final TIntArrayList calls = CalleeFinder.findCallsByFrameName(this, frames);
+    return new TimeMapBuilder(this, calls).buildTimeMaps(null);
   }
 }
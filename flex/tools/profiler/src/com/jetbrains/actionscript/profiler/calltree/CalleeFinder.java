@@ -2,9 +2,7 @@ package com.jetbrains.actionscript.profiler.calltree;
 
 import com.intellij.util.ArrayUtil;
 import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
-
-import java.util.ArrayList;
-import java.util.List;
+import gnu.trove.TIntArrayList;
 
 class CalleeFinder {
   private CalleeFinder() {
@@ -13,21 +11,27 @@ class CalleeFinder {
   /*
   * Find nodes with <code>frameName == frames[0]</code>. Node's call stack contains all <code>frames</code> in order.
   */
-  static List<CallTreeNode> findCallsByFrameName(CallTreeNode root, FrameInfo[] frames) {
-    ArrayList<CallTreeNode> result = new ArrayList<>();
-    fillCallsByFrameName(root, ArrayUtil.reverseArray(frames), result);
+  static TIntArrayList findCallsByFrameName(CallTree tree, FrameInfo[] frames) {
+    TIntArrayList result = new TIntArrayList();
+    int[] path = tree.getFrameTable().findIds(ArrayUtil.reverseArray(frames));
+    if (path != null) {
+      fillCallsByFrameName(tree, CallTree.ROOT, path, result);
+    }
     return result;
   }
 
-  private static void fillCallsByFrameName(CallTreeNode node,
-                                           FrameInfo[] frames,
-                                           List<CallTreeNode> result) {
-    final CallTreeNode deepChild = node.getChildDeep(frames);
-    if (deepChild != null) {
-      result.addAll(deepChild.getChildren());
+  private static void fillCallsByFrameName(CallTree tree,
+                                           int node,
+                                           int[] path,
+                                           TIntArrayList result) {
+    final int deepChild = tree.findChildDeep(node, path);
+    if (deepChild != CallTree.NO_NODE) {
+      for (int child = tree.getFirstChild(deepChild); child != CallTree.NO_NODE; child = tree.getNextSibling(child)) {
+        result.add(child);
+      }
     }
-    for (CallTreeNode child : node.getChildren()) {
-      fillCallsByFrameName(child, frames, result);
+    for (int child = tree.getFirstChild(node); child != CallTree.NO_NODE; child = tree.getNextSibling(child)) {
+      fillCallsByFrameName(tree, child, path, result);
     }
   }
 }
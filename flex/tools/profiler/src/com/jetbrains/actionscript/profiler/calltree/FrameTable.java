@@ -0,0 +1,63 @@
+package com.jetbrains.actionscript.profiler.calltree;
+
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Interns frames of a call tree as dense int ids, so that tree nodes store an int instead of a {@link FrameInfo}
+ * and per-frame timings can be accumulated in plain {@code long[]} arrays.
+ */
+class FrameTable {
+  private static final int NO_ID = -1;
+
+  // ids are stored incremented by one, because TObjectIntHashMap.get() returns 0 for absent keys
+  private final TObjectIntHashMap<FrameInfo> ids = new TObjectIntHashMap<>();
+  private FrameInfo[] frames = new FrameInfo[256];
+  private int size;
+
+  int getOrAddId(FrameInfo frame) {
+    int id = findId(frame);
+    if (id == NO_ID) {
+      id = size++;
+      if (id == frames.length) {
+        frames = Arrays.copyOf(frames, frames.length * 2);
+      }
+      frames[id] = frame;
+      ids.put(frame, id + 1);
+    }
+    return id;
+  }
+
+  /**
+   * @return id of the frame or -1 if the frame has never been added
+   */
+  int findId(FrameInfo frame) {
+    return ids.get(frame) - 1;
+  }
+
+  /**
+   * @return ids of the frames or {@code null} if some of them have never been added, so no node of the tree can match all of them
+   */
+  @Nullable
+  int[] findIds(FrameInfo[] frames) {
+    final int[] result = new int[frames.length];
+    for (int i = 0; i < frames.length; i++) {
+      result[i] = findId(frames[i]);
+      if (result[i] == NO_ID) {
+        return null;
+      }
+    }
+    return result;
+  }
+
+  FrameInfo getFrame(int id) {
+    return frames[id];
+  }
+
+  int size() {
+    return size;
+  }
+}
@@ -3,59 +3,71 @@ package com.jetbrains.actionscript.profiler.calltree;
 import com.intellij.openapi.util.Pair;
 import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
 import gnu.trove.THashMap;
-import gnu.trove.THashSet;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
+import java.util.BitSet;
 import java.util.Map;
 
+/**
+ * Timings are accumulated per frame id in <code>long[]</code> arrays, only the resulting maps contain boxed values.
+ */
 class TimeMapBuilder {
-  private TimeMapBuilder() {
+  private final CallTree tree;
+  private final BitSet trackedCalls;
+  private final long[] counts;
+  private final long[] selfCounts;
+  private final boolean[] hasTiming;
+
+  TimeMapBuilder(CallTree tree, TIntArrayList calls) {
+    this.tree = tree;
+    trackedCalls = new BitSet(tree.getNodeCount());
+    for (int i = 0; i < calls.size(); i++) {
+      trackedCalls.set(calls.get(i));
+    }
+    final int frameCount = tree.getFrameTable().size();
+    counts = new long[frameCount];
+    selfCounts = new long[frameCount];
+    hasTiming = new boolean[frameCount];
   }
 
   /*
+  * @param frameFilter if not null only frames with ids marked in it get to the result
   * @return pair <cumulative time map, self time map>
   */
-  static Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> buildTimeMaps(CallTreeNode root, List<CallTreeNode> calls) {
+  Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> buildTimeMaps(@Nullable boolean[] frameFilter) {
+    for (int node = tree.getFirstChild(CallTree.ROOT); node != CallTree.NO_NODE; node = tree.getNextSibling(node)) {
+      fillTimeMaps(node, trackedCalls.get(node));
+    }
+
     Map<FrameInfo, Long> countMap = new THashMap<>();
     Map<FrameInfo, Long> selfCountMap = new THashMap<>();
-    THashSet<CallTreeNode> trackedCalls = new THashSet<>(calls);
-
-    for (CallTreeNode node : root.getChildren()) {
-      fillTimeMaps(node, countMap, selfCountMap, trackedCalls.contains(node), trackedCalls);
+    for (int frameId = 0; frameId < hasTiming.length; frameId++) {
+      if (hasTiming[frameId] && (frameFilter == null || frameFilter[frameId])) {
+        final FrameInfo frameInfo = tree.getFrameTable().getFrame(frameId);
+        countMap.put(frameInfo, counts[frameId]);
+        selfCountMap.put(frameInfo, selfCounts[frameId]);
+      }
     }
     return Pair.create(countMap, selfCountMap);
   }
 
-  private static void fillTimeMaps(CallTreeNode node,
-                                   Map<FrameInfo, Long> countMap,
-                                   Map<FrameInfo, Long> selfCountMap,
-                                   boolean tracking,
-                                   THashSet<CallTreeNode> trackedCalls) {
+  private void fillTimeMaps(int node, boolean tracking) {
+    final int frameId = tree.getFrameId(node);
     if (tracking) {
-      updateSelfTime(node, selfCountMap);
+      selfCounts[frameId] += tree.getCumulativeTiming(node) - tree.getChildrenTiming(node);
+      hasTiming[frameId] = true;
     }
 
     //save value before subcalls
-    Long countBefore = countMap.get(node.getFrameInfo());
-    if (countBefore == null) {
-      countBefore = 0L;
-    }
-    for (CallTreeNode child : node.getChildren()) {
-      fillTimeMaps(child, countMap, selfCountMap, tracking || trackedCalls.contains(child), trackedCalls);
+    final long countBefore = counts[frameId];
+    for (int child = tree.getFirstChild(node); child != CallTree.NO_NODE; child = tree.getNextSibling(child)) {
+      fillTimeMaps(child, tracking || trackedCalls.get(child));
     }
     if (tracking) {
       //rewrite values that were added in subcalls.
       //cause of that we get value only of the nearest node to the root
-      countMap.put(node.getFrameInfo(), countBefore + node.getCumulativeTiming());
-    }
-  }
-
-  private static void updateSelfTime(CallTreeNode node, Map<FrameInfo, Long> selfCountMap) {
-    long currentSelfTime = node.getCumulativeTiming() - node.calcSelfTiming();
-    Long selfTime = selfCountMap.get(node.getFrameInfo());
-    if (selfTime == null) {
-      selfTime = 0L;
+      counts[frameId] = countBefore + tree.getCumulativeTiming(node);
     }
-    selfCountMap.put(node.getFrameInfo(), selfTime + currentSelfTime);
   }
 }
@@ -2,57 +2,54 @@ package com.jetbrains.actionscript.profiler.livetable;
 
 import com.intellij.psi.search.GlobalSearchScope;
 import com.jetbrains.actionscript.profiler.base.SortableListTreeTableModel;
-import com.jetbrains.actionscript.profiler.sampler.*;
+import com.jetbrains.actionscript.profiler.model.LiveObjectTable;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
 import com.jetbrains.actionscript.profiler.util.ResolveUtil;
 import org.jetbrains.annotations.Nullable;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.MutableTreeNode;
-import javax.swing.tree.TreeNode;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * @author: Fedor.Korotkov
  */
-public class LiveModelController implements ObjectSampleHandler {
+public class LiveModelController {
   private static final int BYTES_IN_KB = 1000;
 
-  private final List<Sample> cache = new LinkedList<>();
-  private final ConcurrentLinkedQueue<Sample> queue = new ConcurrentLinkedQueue<>();
+  private final LiveObjectTable liveObjects;
+  // tree nodes by the node index in the live object table
+  private SizeInfoNode[] nodes = new SizeInfoNode[256];
 
-  private final List<SizeInfoNode> filteredClasses = new ArrayList<>();
+  private final Set<SizeInfoNode> filteredClasses = new LinkedHashSet<>();
   private GlobalSearchScope scope;
-  
-  private volatile int allocatedMemorySize = 0;
+  private MutableTreeNode root;
+
+  public LiveModelController(LiveObjectTable liveObjects) {
+    this.liveObjects = liveObjects;
+  }
 
   public void updateScope(GlobalSearchScope scope) {
     this.scope = scope;
   }
 
   public int getAllocatedMemorySize() {
-    return allocatedMemorySize / BYTES_IN_KB;
+    return (int)(liveObjects.getTotalSize() / BYTES_IN_KB);
   }
 
   public void apply(SortableListTreeTableModel model) {
-    while (!queue.isEmpty()) {
-      cache.add(queue.poll());
-    }
-    final Iterator<Sample> iterator = cache.iterator();
-    while (iterator.hasNext()) {
-      final Sample sample = iterator.next();
-      if (sample instanceof CreateObjectSample) {
-        applyCreate(model, (CreateObjectSample)sample);
-        iterator.remove();
-      }
-      else if (sample instanceof DeleteObjectSample && applyDelete(model, (DeleteObjectSample)sample)) {
-        iterator.remove();
+    final MutableTreeNode modelRoot = (MutableTreeNode)model.getRoot();
+    if (modelRoot != root) {
+      // the view has been reopened with a new model, classes get to it through filterByScope()
+      while (root != null && root.getChildCount() > 0) {
+        filteredClasses.add((SizeInfoNode)root.getChildAt(0));
+        root.remove(0);
       }
+      root = modelRoot;
     }
-    removeUselessNodes((MutableTreeNode)model.getRoot());
+    liveObjects.processChangedNodes(this::applyChange);
 
     filterByScope(model);
   }
@@ -81,110 +78,35 @@ public class LiveModelController implements ObjectSampleHandler {
     }
   }
 
-  private static void removeUselessNodes(MutableTreeNode root) {
-    for (int i = 0; i < root.getChildCount(); ++i) {
-      MutableTreeNode child = (MutableTreeNode)root.getChildAt(i);
-      if (child instanceof SizeInfoNode) {
-        if (((SizeInfoNode)child).getCount() <= 0) {
-          root.remove(child);
-          continue;
-        }
-      }
-      removeUselessNodes(child);
+  private void applyChange(int index, int parentIndex, @Nullable String className, @Nullable FrameInfo frameInfo, long size, int count) {
+    if (index >= nodes.length) {
+      nodes = Arrays.copyOf(nodes, Math.max(index + 1, nodes.length * 2));
     }
-  }
-
-  private void applyCreate(SortableListTreeTableModel model,
-                           CreateObjectSample sample) {
-    final String className = sample.className;
-    final DefaultMutableTreeNode root = (DefaultMutableTreeNode)model.getRoot();
-    SizeInfoNode classNode = findChildByValue(root, className);
-    if (classNode == null) {
-      classNode = new SizeInfoNode(className, null, 0, 0);
-      root.insert(classNode, root.getChildCount());
+    SizeInfoNode node = nodes[index];
+    if (node == null) {
+      node = frameInfo != null ? new SizeInfoNode(frameInfo.toSimpleString(), frameInfo, 0, 0) : new SizeInfoNode(className, null, 0, 0);
+      nodes[index] = node;
     }
-    classNode.incSize(sample.size);
+    node.setSize(size, count);
 
-    SizeInfoNode node = classNode;
-    for (FrameInfo frameInfo : sample.frames) {
-      SizeInfoNode frameNode = findChildByValue(node, frameInfo.getQName());
-      if (frameNode == null) {
-        frameNode = new SizeInfoNode(frameInfo.toSimpleString(), frameInfo, 0, 0);
-        node.insert(frameNode, node.getChildCount());
+    final boolean classNode = parentIndex == LiveObjectTable.ROOT;
+    if (count <= 0) {
+      if (node.getParent() != null) {
+        node.removeFromParent();
       }
-      node = frameNode;
-      node.incSize(sample.size);
-    }
-  }
-
-  private boolean applyDelete(SortableListTreeTableModel model,
-                              DeleteObjectSample sample) {
-    final List<SizeInfoNode> nodesForUpdate = new ArrayList<>();
-    final String className = sample.className;
-    final DefaultMutableTreeNode root = (DefaultMutableTreeNode)model.getRoot();
-    SizeInfoNode classNode = findChildByValue(root, className);
-    if (classNode == null) {
-      return false;
-    }
-    nodesForUpdate.add(classNode);
-
-    SizeInfoNode node = classNode;
-    for (FrameInfo frameInfo : sample.frames) {
-      final SizeInfoNode frameNode = findChildByValue(node, frameInfo.getQName());
-      if (frameNode == null) {
-        return false;
+      if (classNode) {
+        filteredClasses.remove(node);
       }
-      nodesForUpdate.add(frameNode);
-      node = frameNode;
-    }
-    for (SizeInfoNode sizeInfoNode : nodesForUpdate) {
-      sizeInfoNode.decSize(sample.size);
     }
-    return true;
-  }
-
-  @Nullable
-  private SizeInfoNode findChildByValue(TreeNode root, String name) {
-    for (int i = 0; i < root.getChildCount(); ++i) {
-      final TreeNode child = root.getChildAt(i);
-      if (!(child instanceof SizeInfoNode)) {
-        continue;
+    else if (node.getParent() == null) {
+      if (classNode) {
+        // inserted into the tree by filterByScope() if it matches the scope
+        filteredClasses.add(node);
       }
-      final SizeInfoNode sizeInfoNode = (SizeInfoNode)child;
-      if (matchByName(name, sizeInfoNode)) {
-        return (SizeInfoNode)child;
-      }
-    }
-
-
-    for (SizeInfoNode filteredNode : filteredClasses) {
-      if (matchByName(name, filteredNode)) {
-        return filteredNode;
+      else {
+        final SizeInfoNode parent = nodes[parentIndex];
+        parent.insert(node, parent.getChildCount());
       }
     }
-    return null;
-  }
-
-  private static boolean matchByName(String name, SizeInfoNode sizeInfoNode) {
-    if (sizeInfoNode.isMethod()) {
-      return name.equals(sizeInfoNode.getQName());
-    }
-    return name.equals(sizeInfoNode.getUserObject());
-  }
-
-  @Override
-  public void processCreateSample(CreateObjectSample createObjectSample) {
-    if (createObjectSample.className != null) {
-      queue.add(createObjectSample);
-      allocatedMemorySize += createObjectSample.size;
-    }
-  }
-
-  @Override
-  public void processDeleteSample(DeleteObjectSample deleteObjectSample) {
-    if (deleteObjectSample.className != null) {
-      queue.add(deleteObjectSample);
-      allocatedMemorySize -= deleteObjectSample.size;
-    }
   }
 }
@@ -0,0 +1,142 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import gnu.trove.TIntLongHashMap;
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Live objects reported by the profiler agent, aggregated by class and allocation trace.
+ * <p/>
+ * Nodes of the aggregation tree are kept in parallel arrays: children of the root are classes, their descendants are allocation frames.
+ * Every object remembers only the node of its allocation trace and its size, so a create or delete sample updates the counters along
+ * the trace and marks those nodes changed; the live objects view then applies only the changed nodes instead of re-aggregating all objects.
+ * <p/>
+ * Samples are added by the connection reader thread and changes are read by the UI, so all methods are synchronized.
+ */
+public class LiveObjectTable {
+  public static final int ROOT = 0;
+
+  public interface NodeProcessor {
+    /**
+     * @param className  class name for class nodes, <code>null</code> for frame nodes
+     * @param frameInfo  allocation frame for frame nodes, <code>null</code> for class nodes
+     */
+    void process(int node, int parent, @Nullable String className, @Nullable FrameInfo frameInfo, long size, int count);
+  }
+
+  // object id -> (trace node << 32 | object size); 0 means absent, because the root is never a trace node
+  private final TIntLongHashMap myObjects = new TIntLongHashMap();
+  // class names and frame qualified names, ids are stored incremented by one because get() returns 0 for absent keys
+  private final TObjectIntHashMap<String> myNameIds = new TObjectIntHashMap<>();
+  // (parent node, name id) -> node
+  private final TLongIntHashMap myChildByName = new TLongIntHashMap();
+
+  private int[] myParents = new int[256];
+  private String[] myClassNames = new String[256];
+  private FrameInfo[] myFrameInfos = new FrameInfo[256];
+  private long[] mySizes = new long[256];
+  private int[] myCounts = new int[256];
+  private int myNodeCount = 1;
+  private final BitSet myChangedNodes = new BitSet();
+
+  private long myTotalSize;
+
+  public synchronized void create(int id, @Nullable String className, @NotNull FrameInfo[] frames, int size) {
+    if (className == null) return;
+    if (myObjects.containsKey(id)) {
+      // delete sample hasn't been received for the previous object with the same id
+      delete(id);
+    }
+
+    int node = getOrCreateChild(ROOT, className, className, null);
+    for (FrameInfo frame : frames) {
+      node = getOrCreateChild(node, frame.getQName(), null, frame);
+    }
+    myObjects.put(id, ((long)node << 32) | (size & 0xFFFFFFFFL));
+    update(node, size, 1);
+  }
+
+  /**
+   * @return <code>false</code> if the object is unknown, e.g. it has been created before live objects collecting was started
+   */
+  public synchronized boolean delete(int id) {
+    final long object = myObjects.remove(id);
+    if (object == 0) return false;
+
+    update((int)(object >>> 32), -(int)object, -1);
+    return true;
+  }
+
+  public synchronized void clear() {
+    myObjects.clear();
+    Arrays.fill(mySizes, 0, myNodeCount, 0);
+    Arrays.fill(myCounts, 0, myNodeCount, 0);
+    myChangedNodes.set(1, myNodeCount);
+    myTotalSize = 0;
+  }
+
+  public synchronized long getTotalSize() {
+    return myTotalSize;
+  }
+
+  public synchronized int getObjectCount() {
+    return myObjects.size();
+  }
+
+  /**
+   * Passes nodes changed since the previous call to the processor, parents always go before their children.
+   */
+  public synchronized void processChangedNodes(@NotNull NodeProcessor processor) {
+    for (int node = myChangedNodes.nextSetBit(0); node >= 0; node = myChangedNodes.nextSetBit(node + 1)) {
+      processor.process(node, myParents[node], myClassNames[node], myFrameInfos[node], mySizes[node], myCounts[node]);
+    }
+    myChangedNodes.clear();
+  }
+
+  private void update(int node, int size, int count) {
+    myTotalSize += size;
+    for (; node != ROOT; node = myParents[node]) {
+      mySizes[node] += size;
+      myCounts[node] += count;
+      myChangedNodes.set(node);
+    }
+  }
+
+  private int getOrCreateChild(int parent, @NotNull String name, @Nullable String className, @Nullable FrameInfo frameInfo) {
+    int nameId = myNameIds.get(name) - 1;
+    if (nameId < 0) {
+      nameId = myNameIds.size();
+      myNameIds.put(name, nameId + 1);
+    }
+
+    final long key = ((long)parent << 32) | nameId;
+    int node = myChildByName.get(key);
+    if (node == ROOT) {
+      node = createNode(parent, className, frameInfo);
+      myChildByName.put(key, node);
+    }
+    return node;
+  }
+
+  private int createNode(int parent, @Nullable String className, @Nullable FrameInfo frameInfo) {
+    if (myNodeCount == myParents.length) {
+      final int newLength = myParents.length * 2;
+      myParents = Arrays.copyOf(myParents, newLength);
+      myClassNames = Arrays.copyOf(myClassNames, newLength);
+      myFrameInfos = Arrays.copyOf(myFrameInfos, newLength);
+      mySizes = Arrays.copyOf(mySizes, newLength);
+      myCounts = Arrays.copyOf(myCounts, newLength);
+    }
+    final int node = myNodeCount++;
+    myParents[node] = parent;
+    myClassNames[node] = className;
+    myFrameInfos[node] = frameInfo;
+    return node;
+  }
+}
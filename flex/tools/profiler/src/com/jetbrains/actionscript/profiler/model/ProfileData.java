@@ -3,13 +3,9 @@ package com.jetbrains.actionscript.profiler.model;
 import com.intellij.openapi.util.Key;
 import com.jetbrains.actionscript.profiler.calltree.CallTree;
 import com.jetbrains.actionscript.profiler.livetable.LiveModelController;
-import com.jetbrains.actionscript.profiler.sampler.CreateObjectSample;
 import com.jetbrains.actionscript.profiler.sampler.Sample;
-
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntObjectHashMap;
 
 /**
  * @author: Fedor.Korotkov
@@ -20,23 +16,24 @@ public class ProfileData {
   public static final Key<ProfilingManager> PROFILING_MANAGER = Key.create("ASProfilingManager");
 
   private CallTree callTree = new CallTree();
-  private final Map<Integer, CreateObjectSample> objects = new HashMap<>();
-  private final Map<Integer, Set<Integer>> references = new LinkedHashMap<>(50);
+  private final LiveObjectTable liveObjects = new LiveObjectTable();
+  private final TIntObjectHashMap<TIntHashSet> references = new TIntObjectHashMap<>(50);
 
   public CallTree getCallTree() {
     return callTree;
   }
 
-  public Map<Integer, Set<Integer>> getReferences() {
-    return references;
-  }
-
-  public void putNewObject(int id, CreateObjectSample sample) {
-    objects.put(id, sample);
+  public LiveObjectTable getLiveObjects() {
+    return liveObjects;
   }
 
-  public CreateObjectSample removeObject(int id) {
-    return objects.remove(id);
+  public void addReference(int pid, int id) {
+    TIntHashSet ids = references.get(pid);
+    if (ids == null) {
+      ids = new TIntHashSet(3);
+      references.put(pid, ids);
+    }
+    ids.add(id);
   }
 
   public void addPerformanceSample(Sample sample) {
@@ -44,7 +41,7 @@ public class ProfileData {
   }
 
   public void clearMemory() {
-    objects.clear();
+    liveObjects.clear();
     references.clear();
   }
 
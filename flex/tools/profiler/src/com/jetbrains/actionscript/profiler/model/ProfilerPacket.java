@@ -0,0 +1,164 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+
+/**
+ * Packet received from the profiler agent. The agent writes every packet with {@code Socket.writeUTF()}: two bytes of length followed
+ * by the UTF-8 bytes. Packets are decoded into the same reusable buffers one after another, so that sample packets can be parsed
+ * without creating a {@code String} per packet. Text is copied out of the buffer only for names seen for the first time.
+ */
+class ProfilerPacket {
+  private final DataInputStream myInput;
+  private byte[] myBytes = new byte[1024];
+  private char[] myChars = new char[1024];
+  private int myByteLength;
+  private int myLength;
+
+  ProfilerPacket(@NotNull DataInputStream input) {
+    myInput = input;
+  }
+
+  /**
+   * Reads the next packet replacing the current one.
+   *
+   * @throws java.io.EOFException if the agent has closed the connection
+   */
+  void read() throws IOException {
+    myByteLength = myInput.readUnsignedShort();
+    if (myBytes.length < myByteLength) {
+      myBytes = new byte[Math.max(myByteLength, myBytes.length * 2)];
+      myChars = new char[myBytes.length];
+    }
+    myInput.readFully(myBytes, 0, myByteLength);
+    myLength = decode(myBytes, myByteLength, myChars);
+  }
+
+  /**
+   * Same decoding as {@link DataInputStream#readUTF()}
+   */
+  private static int decode(byte[] bytes, int byteLength, char[] chars) throws UTFDataFormatException {
+    int count = 0;
+    int length = 0;
+    while (count < byteLength) {
+      final int c = bytes[count] & 0xff;
+      switch (c >> 4) {
+        case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+          count++;
+          chars[length++] = (char)c;
+          break;
+        case 12: case 13: {
+          if (count + 2 > byteLength) throw new UTFDataFormatException("malformed input: partial character at end");
+          final int c2 = bytes[count + 1];
+          if ((c2 & 0xC0) != 0x80) throw new UTFDataFormatException("malformed input around byte " + count);
+          chars[length++] = (char)(((c & 0x1F) << 6) | (c2 & 0x3F));
+          count += 2;
+          break;
+        }
+        case 14: {
+          if (count + 3 > byteLength) throw new UTFDataFormatException("malformed input: partial character at end");
+          final int c2 = bytes[count + 1];
+          final int c3 = bytes[count + 2];
+          if ((c2 & 0xC0) != 0x80 || (c3 & 0xC0) != 0x80) {
+            throw new UTFDataFormatException("malformed input around byte " + count);
+          }
+          chars[length++] = (char)(((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+          count += 3;
+          break;
+        }
+        default:
+          throw new UTFDataFormatException("malformed input around byte " + count);
+      }
+    }
+    return length;
+  }
+
+  /**
+   * @return size of the packet on the wire
+   */
+  int getByteCount() {
+    return myByteLength + 2;
+  }
+
+  int length() {
+    return myLength;
+  }
+
+  char charAt(int index) {
+    return myChars[index];
+  }
+
+  boolean startsWith(@NotNull String prefix) {
+    return startsWith(prefix, 0);
+  }
+
+  boolean startsWith(@NotNull String prefix, int offset) {
+    if (offset + prefix.length() > myLength) return false;
+    for (int i = 0; i < prefix.length(); i++) {
+      if (myChars[offset + i] != prefix.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  int indexOf(char c, int fromIndex) {
+    for (int i = fromIndex; i < myLength; i++) {
+      if (myChars[i] == c) return i;
+    }
+    return -1;
+  }
+
+  int lastIndexOf(char c) {
+    for (int i = myLength - 1; i >= 0; i--) {
+      if (myChars[i] == c) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Same as {@code Integer.parseInt(toString().substring(start, end))} without creating strings
+   */
+  int parseInt(int start, int end) {
+    final long result = parseLong(start, end);
+    if (result != (int)result) throw new NumberFormatException("Out of int range: " + substring(start, end));
+    return (int)result;
+  }
+
+  /**
+   * Same as {@code Long.parseLong(toString().substring(start, end))} without creating strings
+   */
+  long parseLong(int start, int end) {
+    if (start < 0 || end > myLength || start >= end) throw new NumberFormatException("Empty number at " + start + " in " + this);
+
+    final boolean negative = myChars[start] == '-';
+    int i = negative || myChars[start] == '+' ? start + 1 : start;
+    if (i == end) throw new NumberFormatException("For input string: " + substring(start, end));
+
+    long result = 0;
+    for (; i < end; i++) {
+      final int digit = myChars[i] - '0';
+      if (digit < 0 || digit > 9 || result > (Long.MAX_VALUE - digit) / 10) {
+        throw new NumberFormatException("For input string: " + substring(start, end));
+      }
+      result = result * 10 + digit;
+    }
+    return negative ? -result : result;
+  }
+
+  @NotNull
+  String substring(int start, int end) {
+    return new String(myChars, start, end - start);
+  }
+
+  @NotNull
+  String substring(int start) {
+    return substring(start, myLength);
+  }
+
+  @Override
+  public String toString() {
+    return substring(0, myLength);
+  }
+}
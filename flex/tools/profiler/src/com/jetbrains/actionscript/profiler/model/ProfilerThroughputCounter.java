@@ -0,0 +1,55 @@
+package com.jetbrains.actionscript.profiler.model;
+
+/**
+ * Counts samples and bytes received from the profiler agent. Rates are measured over the last completed one-second window.
+ */
+public class ProfilerThroughputCounter {
+  private static final long WINDOW_NANOS = 1000 * 1000 * 1000;
+
+  private long myWindowStart = System.nanoTime();
+  private long myWindowSamples;
+  private long myWindowBytes;
+  private long mySamplesPerSecond;
+  private long myBytesPerSecond;
+  private long myTotalSamples;
+  private long myTotalBytes;
+
+  synchronized void add(int samples, int bytes) {
+    rollWindow();
+    myWindowSamples += samples;
+    myWindowBytes += bytes;
+    myTotalSamples += samples;
+    myTotalBytes += bytes;
+  }
+
+  public synchronized long getSamplesPerSecond() {
+    rollWindow();
+    return mySamplesPerSecond;
+  }
+
+  public synchronized long getBytesPerSecond() {
+    rollWindow();
+    return myBytesPerSecond;
+  }
+
+  public synchronized long getTotalSamples() {
+    return myTotalSamples;
+  }
+
+  public synchronized long getTotalBytes() {
+    return myTotalBytes;
+  }
+
+  private void rollWindow() {
+    final long elapsed = System.nanoTime() - myWindowStart;
+    if (elapsed < WINDOW_NANOS) return;
+
+    // nothing has been received during the last window if more than one window has passed
+    final boolean lastWindowCompleted = elapsed < 2 * WINDOW_NANOS;
+    mySamplesPerSecond = lastWindowCompleted ? myWindowSamples : 0;
+    myBytesPerSecond = lastWindowCompleted ? myWindowBytes : 0;
+    myWindowSamples = 0;
+    myWindowBytes = 0;
+    myWindowStart += elapsed - elapsed % WINDOW_NANOS;
+  }
+}
@@ -4,16 +4,16 @@ import com.intellij.javascript.flex.mxml.schema.CodeContext;
 import com.intellij.lang.javascript.psi.JSCommonTypeNames;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.ArrayUtil;
 import com.jetbrains.actionscript.profiler.sampler.*;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.*;
 
 public class ProfilingConnection {
   private static final Logger LOG = Logger.getInstance(ProfilingConnection.class.getName());
@@ -23,20 +23,29 @@ public class ProfilingConnection {
   private DataInputStream myInputStream;
   private PacketProcessor myCurrentPacketProcessor;
   private final Map<String, PacketProcessor> myInitialString2ProcessorsMap = new HashMap<>();
+  private final String[] myMarkers;
+  private final PacketProcessor[] myMarkerProcessors;
+  private final BatchSamplesProcessor mySamplesProcessor;
+  private final ProfilerThroughputCounter myThroughputCounter;
   private final Callback myIoHandler;
   private final int myPort;
   private static final int ourAgentVersion = 4;
   private boolean myAbortingSocketConnection;
   private boolean myDisposed;
 
-  public ProfilingConnection(int port, ProfilerDataConsumer sampleProcessor, Callback ioHandler) {
+  public ProfilingConnection(int port,
+                             ProfilerDataConsumer sampleProcessor,
+                             Callback ioHandler,
+                             @NotNull ProfilerThroughputCounter throughputCounter) {
     myPort = port;
+    myThroughputCounter = throughputCounter;
     myInitialString2ProcessorsMap.put(
       PolicyFileRequestProcessor.POLICY_FILE_REQUEST,
       new PolicyFileRequestProcessor(port)
     );
 
     BatchSamplesProcessor samplesProcessor = new BatchSamplesProcessor(sampleProcessor);
+    mySamplesProcessor = samplesProcessor;
     myInitialString2ProcessorsMap.put(
       BatchSamplesProcessor.BATCH_MARKER,
       samplesProcessor
@@ -72,6 +81,12 @@ public class ProfilingConnection {
       new SampleInfoProcessor(sampleProcessor)
     );
 
+    myMarkers = ArrayUtil.toStringArray(myInitialString2ProcessorsMap.keySet());
+    myMarkerProcessors = new PacketProcessor[myMarkers.length];
+    for (int i = 0; i < myMarkers.length; i++) {
+      myMarkerProcessors[i] = myInitialString2ProcessorsMap.get(myMarkers[i]);
+    }
+
     myIoHandler = ioHandler;
   }
 
@@ -82,7 +97,7 @@ public class ProfilingConnection {
     try {
       myServerSocket = new ServerSocket(myPort);
       Socket socket = myServerSocket.accept();
-      myInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      myInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
       myOutputStream = socket.getOutputStream();
       myServerSocket.close();
       myServerSocket = null;
@@ -100,46 +115,74 @@ public class ProfilingConnection {
       return;
     }
 
-    ApplicationManager.getApplication().executeOnPooledThread(() -> {
-      int bytesRead = 0;
-      try {
-        while (true) {
-          String x = myInputStream.readUTF();
-          if (x == null) break;
-          LOG.debug(x);
-          bytesRead += x.length();
-          try {
-            if (myCurrentPacketProcessor == null) {
-              String marker = x;
-              int i = x.indexOf('\0');
-              if (i != -1) marker = x.substring(0, i + 1);
-              myCurrentPacketProcessor = myInitialString2ProcessorsMap.get(marker);
-              if (myCurrentPacketProcessor != null) {
-                myCurrentPacketProcessor.startingPacket(x);
-              }
-            }
-            if (myCurrentPacketProcessor != null) {
-              PacketProcessor.ProcessingResult processingResult = myCurrentPacketProcessor.process(x);
-              if (processingResult == PacketProcessor.ProcessingResult.FINISHED) myCurrentPacketProcessor = null;
-              if (processingResult == PacketProcessor.ProcessingResult.STOP) return;
-            }
-            else {
-              LOG.warn("No processing:" + x);
-            }
-          }
-          catch (Exception e) {
-            LOG.error(e);
-          }
+    // samples arrive at a high rate while profiling, so they are read on a dedicated thread that doesn't compete with pooled tasks
+    final DataInputStream inputStream = myInputStream;
+    final Thread readerThread = new Thread(() -> readPackets(inputStream), "ActionScript profiler agent reader");
+    readerThread.setDaemon(true);
+    readerThread.start();
+  }
+
+  private void readPackets(@NotNull DataInputStream inputStream) {
+    final ProfilerPacket packet = new ProfilerPacket(inputStream);
+    long bytesRead = 0;
+    long reportedSamples = mySamplesProcessor.getDecodedSamples();
+    try {
+      while (true) {
+        packet.read();
+        bytesRead += packet.getByteCount();
+        try {
+          if (!processPacket(packet)) return;
         }
+        catch (Exception e) {
+          LOG.error(e);
+        }
+
+        final long decodedSamples = mySamplesProcessor.getDecodedSamples();
+        myThroughputCounter.add((int)(decodedSamples - reportedSamples), packet.getByteCount());
+        reportedSamples = decodedSamples;
       }
-      catch (IOException ex) {
-        LOG.debug("Bytes read:" + bytesRead);
-        myIoHandler.finished(null, ex);
-      }
-      catch (Throwable t) {
-        LOG.error(t);
+    }
+    catch (IOException ex) {
+      LOG.debug("Bytes read:" + bytesRead);
+      myIoHandler.finished(null, ex);
+    }
+    catch (Throwable t) {
+      LOG.error(t);
+    }
+  }
+
+  /**
+   * Passes the packet to the processor of the command being read, or to the processor found by the packet marker if a new command starts
+   *
+   * @return false if no more packets should be read
+   */
+  boolean processPacket(@NotNull ProfilerPacket packet) throws IOException {
+    if (myCurrentPacketProcessor == null) {
+      myCurrentPacketProcessor = findProcessor(packet);
+      if (myCurrentPacketProcessor != null) {
+        myCurrentPacketProcessor.startingPacket(packet);
       }
-    });
+    }
+    if (myCurrentPacketProcessor != null) {
+      PacketProcessor.ProcessingResult processingResult = myCurrentPacketProcessor.process(packet);
+      if (processingResult == PacketProcessor.ProcessingResult.FINISHED) myCurrentPacketProcessor = null;
+      if (processingResult == PacketProcessor.ProcessingResult.STOP) return false;
+    }
+    else {
+      LOG.warn("No processing:" + packet);
+    }
+    return true;
+  }
+
+  /**
+   * Markers end with '\0', so this is the same as looking up the packet text up to the first '\0' in {@link #myInitialString2ProcessorsMap}
+   */
+  @Nullable
+  private PacketProcessor findProcessor(@NotNull ProfilerPacket packet) {
+    for (int i = 0; i < myMarkers.length; i++) {
+      if (packet.startsWith(myMarkers[i])) return myMarkerProcessors[i];
+    }
+    return null;
   }
 
   private void ensurePolicyServedEvenOnFlashSecurityPort() {
@@ -234,10 +277,10 @@ public class ProfilingConnection {
       CONTINUE, FINISHED, STOP
     }
 
-    void startingPacket(String output) {
+    void startingPacket(ProfilerPacket packet) {
     }
 
-    abstract ProcessingResult process(String output) throws IOException;
+    abstract ProcessingResult process(ProfilerPacket packet) throws IOException;
   }
 
   class PolicyFileRequestProcessor extends PacketProcessor {
@@ -249,7 +292,7 @@ public class ProfilingConnection {
     }
 
     @Override
-    ProcessingResult process(String output) throws IOException {
+    ProcessingResult process(ProfilerPacket packet) throws IOException {
       String s = policyFileRequestAnswer(myPort);
       synchronized (myOutputStream) {
         LOG.debug("policy served");     // TODO merge with FlexUnit code
@@ -274,20 +317,25 @@ public class ProfilingConnection {
     private static final String SAMPLE_MARKER = "s\0";
     private static final String CREATE_OBJECT_SAMPLE_MARKER = "c\0";
     private static final String DELETE_OBJECT_SAMPLE_MARKER = "d\0";
+    private static final String UNCHANGED_FRAMES_MARKER = "u>:";
 
     private final ProfilerDataConsumer mySampleProcessor;
 
     private long sampleDuration = -1;
     private int frameIndex;
 
-    private final Map<String, String> dictionary = new HashMap<>(1000);
-    private final Map<String, String> typeDictionary = new HashMap<>(1000);
+    // the agent numbers new stack frames starting from 1 and new types starting from 0
+    private final List<FrameInfo> dictionary = new ArrayList<>(1000);
+    private final List<String> typeDictionary = new ArrayList<>(1000);
     private FrameInfo[] frames;
-    private String type;
-    private String specialArgs;
+    private char sampleKind;
+    private int objectId;
+    private String objectClassName;
+    private int objectSize;
     static final int INDEX = SAMPLE_MARKER.length();
     private int cpuSamples;
     private int memorySamples;
+    private long decodedSamples;
     private Sample lastCpuSample;
     private Sample lastCreateObjectSample;
     private final FrameInfoBuilder frameInfoBuilder = new FrameInfoBuilder();
@@ -296,29 +344,38 @@ public class ProfilingConnection {
       this.mySampleProcessor = sampleProcessor;
     }
 
+    /**
+     * Number of samples passed to the {@link ProfilerDataConsumer} so far, accessed only by the reader thread
+     */
+    long getDecodedSamples() {
+      return decodedSamples;
+    }
+
     @Override
-    ProcessingResult process(String output) throws IOException {
+    ProcessingResult process(ProfilerPacket packet) throws IOException {
       if (frameIndex == -1) {
-        if (output.startsWith(BATCH_MARKER)) return ProcessingResult.FINISHED;
+        if (packet.startsWith(BATCH_MARKER)) return ProcessingResult.FINISHED;
 
-        int i = INDEX + 1; //output.indexOf(' ', INDEX);
-        final boolean cpuSample = output.startsWith(SAMPLE_MARKER);
+        int i = INDEX + 1;
+        final boolean cpuSample = packet.startsWith(SAMPLE_MARKER);
 
         if (cpuSample) {
-          i = output.indexOf(' ', INDEX);
-          sampleDuration = Long.parseLong(output.substring(INDEX, i));
+          i = packet.indexOf(' ', INDEX);
+          sampleDuration = packet.parseLong(INDEX, i);
           i += 2;
         }
 
         if (cpuSample ||
-            output.startsWith(CREATE_OBJECT_SAMPLE_MARKER) ||
-            output.startsWith(DELETE_OBJECT_SAMPLE_MARKER)) {
-          int i2 = output.indexOf(' ', i);
-          int frameCount = Integer.parseInt(output.substring(i - 1, i2 != -1 ? i2 : output.length()));
+            packet.startsWith(CREATE_OBJECT_SAMPLE_MARKER) ||
+            packet.startsWith(DELETE_OBJECT_SAMPLE_MARKER)) {
+          int i2 = packet.indexOf(' ', i);
+          int frameCount = packet.parseInt(i - 1, i2 != -1 ? i2 : packet.length());
+          if (!cpuSample) {
+            parseObjectSampleArgs(packet, i2 + 1, packet.startsWith(CREATE_OBJECT_SAMPLE_MARKER));
+          }
           frames = frameCount > 0 ? new FrameInfo[frameCount] : FrameInfo.EMPTY_FRAME_INFO_ARRAY;
           frameIndex = 0;
-          type = output;
-          specialArgs = i2 != -1 ? output.substring(i2 + 1) : "";
+          sampleKind = packet.charAt(0);
 
           return maybeFinishSample();
         }
@@ -326,66 +383,61 @@ public class ProfilingConnection {
 
       if (frames != null && frameIndex >= 0 && frameIndex < frames.length) {
 
-        char ch = output.charAt(0);
-        if (output.startsWith("u>:")) {
-          int count = Integer.parseInt(output.substring(output.indexOf(':') + 1));
-          Sample s =
-            type.startsWith(CREATE_OBJECT_SAMPLE_MARKER) ? lastCreateObjectSample : type.startsWith(SAMPLE_MARKER) ? lastCpuSample : null;
+        char ch = packet.charAt(0);
+        if (packet.startsWith(UNCHANGED_FRAMES_MARKER)) {
+          int count = packet.parseInt(UNCHANGED_FRAMES_MARKER.length(), packet.length());
+          Sample s = sampleKind == 'c' ? lastCreateObjectSample : sampleKind == 's' ? lastCpuSample : null;
           for (int i = s.frames.length - count; i < s.frames.length; ++i) {
             frames[frameIndex++] = s.frames[i];
           }
         }
+        else if (Character.isDigit(ch)) {
+          frames[frameIndex++] = dictionary.get(packet.parseInt(0, packet.length()) - 1);
+        }
         else {
-          if (Character.isDigit(ch)) {
-            output = dictionary.get(output);
-          }
-          else {
-            dictionary.put("" + (dictionary.size() + 1), output);
-          }
-
-          frames[frameIndex++] = frameInfoBuilder.buildInstance(output);
+          final FrameInfo frame = frameInfoBuilder.buildInstance(packet.toString());
+          dictionary.add(frame);
+          frames[frameIndex++] = frame;
         }
         return maybeFinishSample();
       }
 
-      LOG.warn("Unexpected:" + output);
+      LOG.warn("Unexpected:" + packet);
 
       return ProcessingResult.FINISHED;
     }
 
+    /**
+     * Parses {@code "<id> <type> <size>"} of create and delete object samples; {@code <size>} is optional for delete samples.
+     */
+    private void parseObjectSampleArgs(ProfilerPacket packet, int start, boolean createSample) {
+      final int endIndex = packet.indexOf(' ', start);
+      int endIndex2 = packet.indexOf(' ', endIndex + 1);
+      if (endIndex2 == -1 && !createSample) endIndex2 = packet.length();
+
+      objectId = packet.parseInt(start, endIndex);
+      objectClassName = getClassName(packet, endIndex + 1, endIndex2);
+      objectSize = endIndex2 != packet.length() ? packet.parseInt(endIndex2 + 1, packet.length()) : 0;
+    }
+
     private ProcessingResult maybeFinishSample() {
       if (frameIndex == frames.length) {
         Sample sample;
-        if (type.startsWith(CREATE_OBJECT_SAMPLE_MARKER)) {
+        if (sampleKind == 'c') {
           ++memorySamples;
-          final int endIndex = specialArgs.indexOf(' ');
-          final int endIndex2 = specialArgs.indexOf(' ', endIndex + 1);
-
-          final int id = Integer.parseInt(specialArgs.substring(0, endIndex));
-          String className = specialArgs.substring(endIndex + 1, endIndex2);
-          className = getClassName(className);
-          final int size = Integer.parseInt(specialArgs.substring(endIndex2 + 1));
           sample = new CreateObjectSample(
             sampleDuration,
             frames,
-            id,
-            className,
-            size
+            objectId,
+            objectClassName,
+            objectSize
           );
           lastCreateObjectSample = sample;
         }
-        else if (type.startsWith(DELETE_OBJECT_SAMPLE_MARKER)) {
+        else if (sampleKind == 'd') {
           ++memorySamples;
-          final int endIndex = specialArgs.indexOf(' ');
-          int endIndex2 = specialArgs.indexOf(' ', endIndex + 1);
-          if (endIndex2 == -1) endIndex2 = specialArgs.length();
-          final int id = Integer.parseInt(specialArgs.substring(0, endIndex));
-          String type = specialArgs.substring(endIndex + 1, endIndex2);
-          final int size = endIndex2 != specialArgs.length() ? Integer.parseInt(specialArgs.substring(endIndex2 + 1)) : 0;
-          if (type != null) {
-            type = getClassName(type);
-            mySampleProcessor.process(new DeleteObjectSample(sampleDuration, frames, id, type, size));
-          }
+          ++decodedSamples;
+          mySampleProcessor.process(new DeleteObjectSample(sampleDuration, frames, objectId, objectClassName, objectSize));
           return ProcessingResult.FINISHED;
         }
         else {
@@ -393,6 +445,7 @@ public class ProfilingConnection {
           sample = new Sample(sampleDuration, frames);
           lastCpuSample = sample;
         }
+        ++decodedSamples;
         mySampleProcessor.process(sample);
         frameIndex = -1;
         return ProcessingResult.FINISHED;
@@ -402,24 +455,24 @@ public class ProfilingConnection {
       }
     }
 
-    private String getClassName(String className) {
-      if (Character.isDigit(className.charAt(0))) {
-        className = typeDictionary.get(className);
+    private String getClassName(ProfilerPacket packet, int start, int end) {
+      if (Character.isDigit(packet.charAt(start))) {
+        final int index = packet.parseInt(start, end);
+        return index < typeDictionary.size() ? typeDictionary.get(index) : null;
       }
-      else {
-        className = className.replace("::", ".");
-        if (className.startsWith(CodeContext.AS3_VEC_VECTOR_QUALIFIED_NAME)) {
-          className = JSCommonTypeNames.VECTOR_CLASS_NAME + className.substring(CodeContext.AS3_VEC_VECTOR_QUALIFIED_NAME.length());
-        }
-        typeDictionary.put(String.valueOf(typeDictionary.size()), className);
+
+      String className = packet.substring(start, end).replace("::", ".");
+      if (className.startsWith(CodeContext.AS3_VEC_VECTOR_QUALIFIED_NAME)) {
+        className = JSCommonTypeNames.VECTOR_CLASS_NAME + className.substring(CodeContext.AS3_VEC_VECTOR_QUALIFIED_NAME.length());
       }
+      typeDictionary.add(className);
       return className;
     }
 
-    void startingPacket(String output) {
-      if (output.startsWith(BATCH_MARKER)) {
+    void startingPacket(ProfilerPacket packet) {
+      if (packet.startsWith(BATCH_MARKER)) {
         if (LOG.isDebugEnabled()) {
-          LOG.debug(output + "," + System.currentTimeMillis() + "," + cpuSamples + "," + memorySamples);
+          LOG.debug(packet + "," + System.currentTimeMillis() + "," + cpuSamples + "," + memorySamples);
         }
         memorySamples = 0;
         cpuSamples = 0;
@@ -427,8 +480,8 @@ public class ProfilingConnection {
 
       frameIndex = -1;
       frames = null;
-      type = null;
-      specialArgs = null;
+      sampleKind = 0;
+      objectClassName = null;
     }
 
     private void clearProfilingState() {
@@ -445,12 +498,12 @@ public class ProfilingConnection {
     static final String END_COMMAND_MARKER = "e\0";
 
     @Override
-    ProcessingResult process(String output) throws IOException {
+    ProcessingResult process(ProfilerPacket packet) throws IOException {
       Callback callback;
       synchronized (myOutputStream) {
         callback = callbacks.removeFirst();
       }
-      callback.finished(output, null);
+      callback.finished(packet.toString(), null);
       return ProcessingResult.FINISHED;
     }
   }
@@ -459,8 +512,8 @@ public class ProfilingConnection {
     static final String VERSION_COMMAND_MARKER = "v\0";
 
     @Override
-    ProcessingResult process(String output) throws IOException {
-      if (Integer.parseInt(output.substring(output.lastIndexOf(' ') + 1)) != ourAgentVersion) {
+    ProcessingResult process(ProfilerPacket packet) throws IOException {
+      if (packet.parseInt(packet.lastIndexOf(' ') + 1, packet.length()) != ourAgentVersion) {
         LOG.warn("Version mismatch");
         myIoHandler.finished(null, new AgentVersionMismatchProblem());
         myOutputStream.close();
@@ -479,22 +532,22 @@ public class ProfilingConnection {
     }
 
     @Override
-    ProcessingResult process(String output) throws IOException {
-      if (output.startsWith("EndSnapshot")) return ProcessingResult.FINISHED;
-      if (output.startsWith(COMMAND_MARKER)) return ProcessingResult.CONTINUE;
-      if (output.startsWith("cls:")) {
+    ProcessingResult process(ProfilerPacket packet) throws IOException {
+      if (packet.startsWith("EndSnapshot")) return ProcessingResult.FINISHED;
+      if (packet.startsWith(COMMAND_MARKER)) return ProcessingResult.CONTINUE;
+      if (packet.startsWith("cls:")) {
         return ProcessingResult.CONTINUE;
       }
 
-      int i = output.indexOf(',');
-      int id = Integer.parseInt(output.substring(0, i));
+      int i = packet.indexOf(',', 0);
+      int id = packet.parseInt(0, i);
 
       while (i != -1) {
-        int nextI = output.indexOf(',', i + 1);
-        if (nextI == -1) nextI = output.length();
-        int nextId = Integer.parseInt(output.substring(i + 1, nextI));
+        int nextI = packet.indexOf(',', i + 1);
+        if (nextI == -1) nextI = packet.length();
+        int nextId = packet.parseInt(i + 1, nextI);
         myDataConsumer.referenced(id, nextId);
-        if (nextI == output.length()) break;
+        if (nextI == packet.length()) break;
         i = nextI;
       }
       return ProcessingResult.CONTINUE;
@@ -10,6 +10,7 @@ public class ProfilingManager {
   private static final Logger LOG = Logger.getInstance(ProfilingManager.class.getName());
   private final int myPort;
   private ProfilingConnection myConnection;
+  private final ProfilerThroughputCounter myThroughputCounter = new ProfilerThroughputCounter();
 
   private final LinkedBlockingQueue<Runnable> myAsyncExecutionQueue = new LinkedBlockingQueue<>();
 
@@ -28,7 +29,7 @@ public class ProfilingManager {
 
   public void initializeProfiling(final ProfilerDataConsumer sampleProcessor, final Callback ioExceptionProcessor) {
     myAsyncExecutionQueue.offer(() -> {
-      myConnection = new ProfilingConnection(myPort, sampleProcessor, ioExceptionProcessor);
+      myConnection = new ProfilingConnection(myPort, sampleProcessor, ioExceptionProcessor, myThroughputCounter);
       myConnection.connect();
     });
   }
@@ -36,6 +37,10 @@ public class ProfilingManager {
   public interface Callback extends ProfilingConnection.Callback {
   }
 
+  public ProfilerThroughputCounter getThroughputCounter() {
+    return myThroughputCounter;
+  }
+
   public void startCollectingLiveObjects(final Callback finished) {
     myAsyncExecutionQueue.offer(() -> {
       try {
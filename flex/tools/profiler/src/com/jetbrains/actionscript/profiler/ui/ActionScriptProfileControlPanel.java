@@ -17,6 +17,7 @@ import com.jetbrains.actionscript.profiler.base.ProfilerActionGroup;
 import com.jetbrains.actionscript.profiler.livetable.LiveModelController;
 import com.jetbrains.actionscript.profiler.model.ActionScriptProfileSettings;
 import com.jetbrains.actionscript.profiler.model.ProfilerDataConsumer;
+import com.jetbrains.actionscript.profiler.model.ProfilerThroughputCounter;
 import com.jetbrains.actionscript.profiler.model.ProfilingManager;
 import com.jetbrains.actionscript.profiler.ui.node.CPUSnapshotNode;
 import com.jetbrains.actionscript.profiler.ui.node.LiveObjectsNode;
@@ -45,7 +46,9 @@ public class ActionScriptProfileControlPanel implements ProfilerActionGroup, Dis
   private final String runConfigurationName;
 
   private final Alarm myAlarm = new Alarm();
+  private final Alarm myThroughputAlarm = new Alarm();
   private static final int MINUTE = 60 * 1000;
+  private static final int THROUGHPUT_UPDATE_DELAY = 1000;
 
   public ActionScriptProfileControlPanel(String runConfigurationName, final Module module) {
     this.runConfigurationName = runConfigurationName;
@@ -76,6 +79,16 @@ public class ActionScriptProfileControlPanel implements ProfilerActionGroup, Dis
     ApplicationManager.getApplication().invokeLater(() -> myStatusLabel.setText(status));
   }
 
+  private void scheduleThroughputUpdate(final ProfilerThroughputCounter counter) {
+    myThroughputAlarm.addRequest(() -> {
+      if (currentState == State.NONE) return;
+      myStatusLabel.setText(ProfilerBundle.message("agent.connection.open.throughput",
+                                                   counter.getSamplesPerSecond(),
+                                                   counter.getBytesPerSecond() / 1024));
+      scheduleThroughputUpdate(counter);
+    }, THROUGHPUT_UPDATE_DELAY);
+  }
+
   private void setupComponents() {
     EditSourceOnDoubleClickHandler.install(snapshotTree);
     PopupHandler.installPopupHandler(snapshotTree, PROFILER_SNAPSHOT_GROUP_ID, ActionPlaces.UNKNOWN);
@@ -111,10 +124,11 @@ public class ActionScriptProfileControlPanel implements ProfilerActionGroup, Dis
       profilingManager.dispose();
     }
     profilingManager = new ProfilingManager(ActionScriptProfileSettings.getInstance().getPort());
-    final LiveModelController liveModelController = new LiveModelController();
+    profilerDataConsumer = new ProfilerDataConsumer();
+    final LiveModelController liveModelController = new LiveModelController(profilerDataConsumer.getProfileData().getLiveObjects());
 
     final LiveObjectsNode liveObjectsNode = new LiveObjectsNode(runConfigurationName, module, profilingManager, liveModelController);
-    profilerDataConsumer = new ProfilerDataConsumer(liveModelController);
+    final ProfilerThroughputCounter throughputCounter = profilingManager.getThroughputCounter();
 
     setStatus(ProfilerBundle.message("agent.connection.waiting"));
     myAlarm.cancelAllRequests();
@@ -127,8 +141,11 @@ public class ActionScriptProfileControlPanel implements ProfilerActionGroup, Dis
           setStatus(ProfilerBundle.message("agent.connection.open"));
           ApplicationManager.getApplication().invokeLater(connectionCallback);
           setCurrentState(State.NORMAL);
+          myThroughputAlarm.cancelAllRequests();
+          scheduleThroughputUpdate(throughputCounter);
         }
         else if (ex != null) {
+          myThroughputAlarm.cancelAllRequests();
           setStatus(ProfilerBundle.message("agent.connection.close"));
           setCurrentState(State.NONE);
           ApplicationManager.getApplication().invokeLater(() -> treeModel.removeNodeFromParent(liveObjectsNode));
@@ -147,6 +164,7 @@ public class ActionScriptProfileControlPanel implements ProfilerActionGroup, Dis
   public void dispose() {
     profilingManager.dispose();
     Disposer.dispose(myAlarm);
+    Disposer.dispose(myThroughputAlarm);
   }
 
   public DefaultActionGroup createProfilerActionGroup() {
@@ -0,0 +1,86 @@
+package com.jetbrains.actionscript.profiler.calltree;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.FrameUtil;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays a stream of samples shaped like the ones sent by the profiler agent: stacks of a few dozen frames that share long common
+ * prefixes and come back to the same methods recursively.
+ */
+public class CallTreePerformanceTest extends TestCase {
+  private static final int FRAME_COUNT = 500;
+  private static final int SAMPLE_COUNT = 200000;
+
+  private static List<FrameInfo[]> createSampleStream() {
+    final FrameInfo[] frames = new FrameInfo[FRAME_COUNT];
+    for (int i = 0; i < frames.length; i++) {
+      frames[i] = FrameUtil.getFrameInfo("com.foo.Class" + i % 50 + ".method" + i);
+    }
+
+    final Random random = new Random(42);
+    final List<FrameInfo[]> samples = new ArrayList<>(SAMPLE_COUNT);
+    final List<FrameInfo> stack = new ArrayList<>();
+    stack.add(frames[0]);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      final int depth = 1 + random.nextInt(Math.min(stack.size(), 4));
+      for (int j = 1; j < depth && stack.size() > 1; j++) {
+        stack.remove(stack.size() - 1);
+      }
+      while (stack.size() < 40 && random.nextInt(4) != 0) {
+        stack.add(frames[1 + random.nextInt(random.nextBoolean() ? 20 : FRAME_COUNT - 1)]);
+      }
+      // agent sends the innermost frame first
+      final FrameInfo[] sample = new FrameInfo[stack.size()];
+      for (int j = 0; j < sample.length; j++) {
+        sample[j] = stack.get(stack.size() - 1 - j);
+      }
+      samples.add(sample);
+    }
+    return samples;
+  }
+
+  private static CallTree replay(List<FrameInfo[]> samples) {
+    final CallTree callTree = new CallTree();
+    for (FrameInfo[] sample : samples) {
+      callTree.addFrames(sample, 1);
+    }
+    return callTree;
+  }
+
+  public void testTimeMapsOfReplayedSamples() {
+    final List<FrameInfo[]> samples = createSampleStream();
+    final Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> maps = replay(samples).getTimeMaps();
+
+    final FrameInfo main = samples.get(0)[samples.get(0).length - 1];
+    assertEquals(Long.valueOf(SAMPLE_COUNT), maps.getFirst().get(main));
+    long selfTime = 0;
+    for (Long time : maps.getSecond().values()) {
+      selfTime += time;
+    }
+    assertEquals(SAMPLE_COUNT, selfTime);
+  }
+
+  public void testReplayAndQuery() {
+    final List<FrameInfo[]> samples = createSampleStream();
+    final FrameInfo[] queries = {FrameUtil.getFrameInfo("com.foo.Class1.method1"), FrameUtil.getFrameInfo("com.foo.Class7.method7"),
+      FrameUtil.getFrameInfo("com.foo.Class13.method263")};
+
+    PlatformTestUtil.startPerformanceTest("Call tree replay of " + SAMPLE_COUNT + " samples", 3000, () -> {
+      final CallTree callTree = replay(samples);
+      callTree.getTimeMaps();
+      CallTreeUtil.filterSystemStuff(callTree).getTimeMaps();
+      for (FrameInfo query : queries) {
+        callTree.getCallersTimeMaps(new FrameInfo[]{query});
+        callTree.getCalleesTimeMaps(new FrameInfo[]{query});
+      }
+    }).assertTiming();
+  }
+}
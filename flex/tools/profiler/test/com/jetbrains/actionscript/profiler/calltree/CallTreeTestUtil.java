@@ -11,26 +11,31 @@ public class CallTreeTestUtil {
   }
 
   public static CallTree getCallTreeFromXmlFile(@NotNull XmlTag rootTag) {
-    CallTreeNode root = getCallTreeNodeFromXmlTag(rootTag);
-    return new CallTree(root);
+    CallTree callTree = new CallTree();
+    addChildren(callTree, CallTree.ROOT, rootTag, getCount(rootTag));
+    return callTree;
   }
 
-  private static CallTreeNode getCallTreeNodeFromXmlTag(XmlTag rootTag) {
-    int count = Integer.MAX_VALUE;
-    String countStr = rootTag.getAttributeValue("count");
-    if (countStr != null) {
-      count = Integer.parseInt(countStr);
+  private static void addChildren(CallTree callTree, int node, XmlTag tag, long count) {
+    for (XmlTag childTag : tag.getSubTags()) {
+      long childCount = getCount(childTag);
+      FrameInfo frameInfo = FrameUtil.getFrameInfo(childTag.getName());
+      int childNode = callTree.addChild(node, callTree.getFrameTable().getOrAddId(frameInfo), childCount);
+      addChildren(callTree, childNode, childTag, childCount);
+      Assert.assertTrue("Bad edge " + tag.getName() + "->" + childTag.getName(), getChildrenCount(childTag) <= count);
     }
-    FrameInfo frameInfo = FrameUtil.getFrameInfo(rootTag.getName());
-    CallTreeNode node = new CallTreeNode(frameInfo, count);
-    if (rootTag.isEmpty()) {
-      return node;
-    }
-    for (XmlTag childTag : rootTag.getSubTags()) {
-      CallTreeNode childNode = getCallTreeNodeFromXmlTag(childTag);
-      node.addChildRecursive(childNode);
-      Assert.assertTrue("Bad edge " + node.getFrameInfo() + "->" + childNode.getFrameInfo(), childNode.calcSelfTiming() <= count);
+  }
+
+  private static long getChildrenCount(XmlTag tag) {
+    long result = 0;
+    for (XmlTag childTag : tag.getSubTags()) {
+      result += getCount(childTag);
     }
-    return node;
+    return result;
+  }
+
+  private static long getCount(XmlTag tag) {
+    String countStr = tag.getAttributeValue("count");
+    return countStr != null ? Long.parseLong(countStr) : Integer.MAX_VALUE;
   }
 }
@@ -0,0 +1,128 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import com.intellij.lang.javascript.psi.JSCommonTypeNames;
+import com.jetbrains.actionscript.profiler.sampler.CreateObjectSample;
+import com.jetbrains.actionscript.profiler.sampler.DeleteObjectSample;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.Sample;
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchSamplesProcessorTest extends TestCase {
+
+  private static final String RUN = "Main/run()[C:\\work;com\\foo;Main.as:12]";
+  private static final String MAIN = "Main/main()[C:\\work;com\\foo;Main.as:5]";
+  private static final String DRAW = "Main/draw()[C:\\work;com\\foo;Main.as:20]";
+
+  // packets as the agent sends them: a sample header followed by one packet per stack frame
+  private static final String[] RECORDED_PACKETS = {
+    "b\0 1",
+    // new frames are added to the dictionary that is numbered from 1
+    "s\0" + "1500 2", RUN, MAIN,
+    // 'u>:2' repeats the 2 bottom frames of the previous cpu sample
+    "s\0" + "700 3", DRAW, "u>:2",
+    // frames known from the dictionary: DRAW is #3, RUN is #1
+    "s\0" + "300 2", "3", "1",
+    // <frame count> <id> <type> <size>; new types are added to the type dictionary that is numbered from 0
+    "c\0" + "1 7 flash.display::Sprite 64", "2",
+    "c\0" + "2 8 __AS3__.vec::Vector.<int> 32", "3", "u>:1",
+    "b\0 2",
+    // types known from the type dictionary, size is optional for delete samples
+    "d\0" + "0 7 0",
+    "d\0" + "0 8 1 32",
+  };
+
+  private static List<Sample> replay(String... packets) throws IOException {
+    final List<Sample> samples = new ArrayList<>();
+    final ProfilerDataConsumer consumer = new ProfilerDataConsumer() {
+      @Override
+      public void process(Sample sample) {
+        samples.add(sample);
+      }
+    };
+    final ProfilingConnection connection = new ProfilingConnection(0, consumer, (data, ex) -> {}, new ProfilerThroughputCounter());
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    for (String packet : packets) {
+      out.writeUTF(packet);
+    }
+
+    final ProfilerPacket packet = new ProfilerPacket(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    for (int i = 0; i < packets.length; i++) {
+      packet.read();
+      assertTrue(connection.processPacket(packet));
+    }
+    return samples;
+  }
+
+  private static void assertFrame(FrameInfo frame, String methodName, int line) {
+    assertEquals("com.foo", frame.getPackageName());
+    assertEquals("Main.as", frame.getFileName());
+    assertEquals(methodName, frame.getMethodName());
+    assertEquals(line, frame.getFileLine());
+  }
+
+  public void testRecordedStream() throws IOException {
+    final List<Sample> samples = replay(RECORDED_PACKETS);
+    assertEquals(7, samples.size());
+
+    final Sample first = samples.get(0);
+    assertEquals(1500, first.duration);
+    assertEquals(2, first.frames.length);
+    final FrameInfo run = first.frames[0];
+    final FrameInfo main = first.frames[1];
+    assertFrame(run, "run", 12);
+    assertFrame(main, "main", 5);
+
+    final Sample second = samples.get(1);
+    assertEquals(700, second.duration);
+    assertEquals(3, second.frames.length);
+    final FrameInfo draw = second.frames[0];
+    assertFrame(draw, "draw", 20);
+    assertSame(run, second.frames[1]);
+    assertSame(main, second.frames[2]);
+
+    final Sample third = samples.get(2);
+    assertEquals(300, third.duration);
+    assertEquals(2, third.frames.length);
+    assertSame(draw, third.frames[0]);
+    assertSame(run, third.frames[1]);
+
+    final CreateObjectSample sprite = (CreateObjectSample)samples.get(3);
+    assertEquals(7, sprite.id);
+    assertEquals("flash.display.Sprite", sprite.className);
+    assertEquals(64, sprite.size);
+    assertEquals(1, sprite.frames.length);
+    assertSame(main, sprite.frames[0]);
+
+    final CreateObjectSample vector = (CreateObjectSample)samples.get(4);
+    assertEquals(8, vector.id);
+    assertEquals(JSCommonTypeNames.VECTOR_CLASS_NAME + ".<int>", vector.className);
+    assertEquals(32, vector.size);
+    assertEquals(2, vector.frames.length);
+    assertSame(draw, vector.frames[0]);
+    assertSame(main, vector.frames[1]);
+
+    final DeleteObjectSample spriteDeleted = (DeleteObjectSample)samples.get(5);
+    assertEquals(7, spriteDeleted.id);
+    assertEquals("flash.display.Sprite", spriteDeleted.className);
+    assertEquals(0, spriteDeleted.size);
+    assertEquals(0, spriteDeleted.frames.length);
+
+    final DeleteObjectSample vectorDeleted = (DeleteObjectSample)samples.get(6);
+    assertEquals(8, vectorDeleted.id);
+    assertEquals(JSCommonTypeNames.VECTOR_CLASS_NAME + ".<int>", vectorDeleted.className);
+    assertEquals(32, vectorDeleted.size);
+  }
+
+  public void testUnknownTypeIndex() throws IOException {
+    final List<Sample> samples = replay("d\0" + "0 7 5");
+    assertEquals(1, samples.size());
+    assertEquals(7, ((DeleteObjectSample)samples.get(0)).id);
+    assertNull(((DeleteObjectSample)samples.get(0)).className);
+  }
+}
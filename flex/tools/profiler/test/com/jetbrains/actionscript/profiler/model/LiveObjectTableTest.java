@@ -0,0 +1,86 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.FrameUtil;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LiveObjectTableTest extends TestCase {
+  private static final FrameInfo[] FOO_TRACE = {FrameUtil.getFrameInfo("Foo.create"), FrameUtil.getFrameInfo("Main.run")};
+  private static final FrameInfo[] BAR_TRACE = {FrameUtil.getFrameInfo("Bar.create"), FrameUtil.getFrameInfo("Main.run")};
+
+  /**
+   * @return changed nodes as "<name> <size> <count>" in the order they are reported
+   */
+  private static List<String> getChanges(LiveObjectTable table) {
+    final List<String> changes = new ArrayList<>();
+    table.processChangedNodes((node, parent, className, frameInfo, size, count) -> {
+      assertTrue(parent < node);
+      changes.add((className != null ? className : frameInfo.getQName()) + " " + size + " " + count);
+    });
+    return changes;
+  }
+
+  public void testCountersOfClassesAndTraces() {
+    final LiveObjectTable table = new LiveObjectTable();
+    table.create(1, "String", FOO_TRACE, 10);
+    table.create(2, "String", FOO_TRACE, 20);
+    table.create(3, "String", BAR_TRACE, 40);
+    table.create(4, "Array", FOO_TRACE, 100);
+    assertEquals(170, table.getTotalSize());
+    assertEquals(4, table.getObjectCount());
+
+    final List<String> changes = getChanges(table);
+    assertEquals(8, changes.size());
+    assertTrue(changes.contains("String 70 3"));
+    assertTrue(changes.contains("Foo.create 30 2"));
+    assertTrue(changes.contains("Bar.create 40 1"));
+    assertTrue(changes.contains("Array 100 1"));
+  }
+
+  public void testOnlyChangedNodesAreReported() {
+    final LiveObjectTable table = new LiveObjectTable();
+    table.create(1, "String", FOO_TRACE, 10);
+    table.create(2, "String", BAR_TRACE, 20);
+    table.create(3, "Array", FOO_TRACE, 100);
+    getChanges(table);
+
+    assertTrue(table.delete(2));
+    final List<String> changes = getChanges(table);
+    assertEquals(3, changes.size());
+    assertEquals("String 10 1", changes.get(0));
+    assertTrue(changes.contains("Bar.create 0 0"));
+    assertTrue(changes.contains("Main.run 0 0"));
+
+    assertTrue(getChanges(table).isEmpty());
+    assertEquals(110, table.getTotalSize());
+  }
+
+  public void testUnknownAndRepeatedIds() {
+    final LiveObjectTable table = new LiveObjectTable();
+    assertFalse(table.delete(1));
+
+    table.create(1, "String", FOO_TRACE, 10);
+    table.create(1, "Array", FOO_TRACE, 100);
+    assertEquals(1, table.getObjectCount());
+    assertEquals(100, table.getTotalSize());
+
+    assertTrue(table.delete(1));
+    assertFalse(table.delete(1));
+    assertEquals(0, table.getTotalSize());
+  }
+
+  public void testClear() {
+    final LiveObjectTable table = new LiveObjectTable();
+    table.create(1, "String", FOO_TRACE, 10);
+    getChanges(table);
+
+    table.clear();
+    assertEquals(0, table.getObjectCount());
+    final List<String> changes = getChanges(table);
+    assertEquals(3, changes.size());
+    assertEquals("String 0 0", changes.get(0));
+  }
+}
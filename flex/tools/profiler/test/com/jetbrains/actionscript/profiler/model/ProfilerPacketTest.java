@@ -0,0 +1,87 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+
+public class ProfilerPacketTest extends TestCase {
+
+  private static ProfilerPacket createPacket(String... packets) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    for (String packet : packets) {
+      out.writeUTF(packet);
+    }
+    return new ProfilerPacket(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  public void testDecodingSameAsReadUTF() throws IOException {
+    final String[] texts = {"s\0 12 3", "", "Main/run()[C:\\work;com\\foo;Main.as:12]", "\u0444\u0443\u043d\u043a\u0446\u0438\u044f/\u20ac()"};
+    final ProfilerPacket packet = createPacket(texts);
+    for (String text : texts) {
+      packet.read();
+      assertEquals(text, packet.toString());
+      assertEquals(text.length(), packet.length());
+    }
+
+    try {
+      packet.read();
+      fail("EOFException expected");
+    }
+    catch (EOFException ignored) {
+    }
+  }
+
+  public void testByteCount() throws IOException {
+    final ProfilerPacket packet = createPacket("abc", "\u20ac");
+    packet.read();
+    assertEquals(5, packet.getByteCount());
+    packet.read();
+    assertEquals(5, packet.getByteCount());
+  }
+
+  public void testLargePacket() throws IOException {
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      builder.append(i % 10);
+    }
+    final ProfilerPacket packet = createPacket("short", builder.toString(), "short again");
+    packet.read();
+    packet.read();
+    assertEquals(builder.toString(), packet.toString());
+    packet.read();
+    assertEquals("short again", packet.toString());
+  }
+
+  public void testParsing() throws IOException {
+    final ProfilerPacket packet = createPacket("s\0 -1234567890123 42");
+    packet.read();
+
+    assertTrue(packet.startsWith("s\0"));
+    assertFalse(packet.startsWith("si\0"));
+    assertTrue(packet.startsWith("42", packet.length() - 2));
+    assertFalse(packet.startsWith("42x", packet.length() - 2));
+
+    final int space = packet.indexOf(' ', 0);
+    final int lastSpace = packet.lastIndexOf(' ');
+    assertEquals(2, space);
+    assertEquals(-1, packet.indexOf('x', 0));
+    assertEquals(-1234567890123L, packet.parseLong(space + 1, lastSpace));
+    assertEquals(42, packet.parseInt(lastSpace + 1, packet.length()));
+    assertEquals("42", packet.substring(lastSpace + 1));
+
+    checkNumberFormatException(packet, 0, 1);
+    checkNumberFormatException(packet, space, space);
+    checkNumberFormatException(packet, space + 1, space + 2);
+    checkNumberFormatException(packet, space + 1, lastSpace); // out of int range
+  }
+
+  private static void checkNumberFormatException(ProfilerPacket packet, int start, int end) {
+    try {
+      packet.parseInt(start, end);
+      fail("NumberFormatException expected for " + start + ".." + end);
+    }
+    catch (NumberFormatException ignored) {
+    }
+  }
+}
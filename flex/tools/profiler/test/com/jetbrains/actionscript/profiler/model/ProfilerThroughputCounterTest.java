@@ -0,0 +1,15 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import junit.framework.TestCase;
+
+public class ProfilerThroughputCounterTest extends TestCase {
+
+  public void testTotals() {
+    final ProfilerThroughputCounter counter = new ProfilerThroughputCounter();
+    counter.add(3, 100);
+    counter.add(0, 20);
+    assertEquals(3, counter.getTotalSamples());
+    assertEquals(120, counter.getTotalBytes());
+    assertEquals(0, counter.getSamplesPerSecond()); // the first window has not completed yet
+  }
+}